@@ -0,0 +1,124 @@
+package com.yidong.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.model.BlockHeader;
+import com.yidong.storage.BlockFileReader;
+import com.yidong.storage.BlockSegmentWriter;
+import com.yidong.storage.BlockStore;
+import com.yidong.storage.SegmentCompression;
+import com.yidong.storage.SegmentIndexer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按区块号读取已保存的区块：通过分段索引和内存映射读取（readIndexed），
+ * 与建立索引之前从文件开头扫描到该区块（scanFile）比较；indexFile 为已有文件建立索引的耗时。
+ * 每次操作读取一个随机区块。
+ * <p>
+ * compression=deflate 时分段按块压缩（字典取自第一个区块），readIndexed 包含解压区块所在块的耗时；
+ * 压缩率在准备阶段输出
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlockStoreBenchmark {
+
+    @Param({"1", "20"})
+    private int scale;
+
+    @Param({"none", "deflate"})
+    private String compression;
+
+    @Param({"16384"})
+    private int chunkBytes;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private File dir;
+    private Path segment;
+    private BlockStore store;
+    private long firstBlockNum;
+    private int blockCount;
+
+    @Setup
+    public void setup() throws IOException {
+        List<byte[]> blocks = SampleBlocks.toBytes(SampleBlocks.load(scale));
+        firstBlockNum = SampleBlocks.load(1).get(0).get("block_num").asLong();
+        blockCount = blocks.size();
+        dir = Files.createTempDirectory("bench-store-").toFile();
+        SegmentCompression segmentCompression = SegmentCompression.of(compression, 6, chunkBytes, "auto");
+        long bytes;
+        try (BlockSegmentWriter writer = new BlockSegmentWriter(dir, 0, 0, segmentCompression)) {
+            for (int i = 0; i < blocks.size(); i++) {
+                writer.append(firstBlockNum + i, blocks.get(i));
+            }
+            bytes = writer.getSegmentBytes();
+        }
+        segment = dir.toPath().resolve(String.format("blocks_%d_%d.json%s", firstBlockNum,
+            firstBlockNum + blockCount - 1, segmentCompression != null ? SegmentCompression.SUFFIX : ""));
+        System.out.printf("%n分段 %d 字节，文件 %d 字节（%.1f%%）%n", bytes, Files.size(segment),
+            100.0 * Files.size(segment) / bytes);
+        store = new BlockStore(dir);
+        store.refresh();
+    }
+
+    @TearDown
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private long randomBlock() {
+        return firstBlockNum + ThreadLocalRandom.current().nextInt(blockCount);
+    }
+
+    @Benchmark
+    public ByteBuffer readIndexed() throws IOException {
+        return store.read(randomBlock());
+    }
+
+    @Benchmark
+    public BlockHeader scanFile() throws IOException {
+        long target = randomBlock();
+        try (BlockFileReader<BlockHeader> reader = BlockFileReader.headers(segment, objectMapper)) {
+            while (reader.hasNext()) {
+                BlockHeader header = reader.next();
+                if (header.getBlockNum() == target) {
+                    return header;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public int indexFile() throws IOException {
+        return SegmentIndexer.index(segment, objectMapper);
+    }
+}
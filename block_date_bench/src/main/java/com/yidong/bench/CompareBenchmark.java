@@ -0,0 +1,74 @@
+package com.yidong.bench;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.model.BlockHeader;
+import com.yidong.service.BlockComparator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线验证中逐个区块的比较：compareBlockData 和 verifyLocalContinuity。
+ * 每次操作处理一个区块，结果即为每秒可处理的区块数
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompareBenchmark {
+
+    private BlockHeader[] localBlocks;
+    private BlockHeader[] chainBlocks;
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        // 本地和链上区块分别解析，避免两边是同一个对象
+        ObjectMapper objectMapper = new ObjectMapper();
+        List<byte[]> raw = SampleBlocks.toBytes(SampleBlocks.load(1));
+        localBlocks = new BlockHeader[raw.size()];
+        chainBlocks = new BlockHeader[raw.size()];
+        for (int i = 0; i < raw.size(); i++) {
+            localBlocks[i] = parse(objectMapper, raw.get(i));
+            chainBlocks[i] = parse(objectMapper, raw.get(i));
+        }
+    }
+
+    private static BlockHeader parse(ObjectMapper objectMapper, byte[] json) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            parser.nextToken();
+            return BlockHeader.parse(parser);
+        }
+    }
+
+    private int nextIndex() {
+        index = index + 1 < localBlocks.length ? index + 1 : 1;
+        return index;
+    }
+
+    @Benchmark
+    public boolean compareBlockData() {
+        int i = nextIndex();
+        return BlockComparator.compareBlockData(localBlocks[i], chainBlocks[i]);
+    }
+
+    @Benchmark
+    public boolean verifyLocalContinuity() {
+        int i = nextIndex();
+        return BlockComparator.verifyLocalContinuity(localBlocks[i], localBlocks[i - 1]);
+    }
+}
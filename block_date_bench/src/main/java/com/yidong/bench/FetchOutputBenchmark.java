@@ -0,0 +1,83 @@
+package com.yidong.bench;
+
+import com.yidong.storage.BlockSegmentWriter;
+import com.yidong.storage.SegmentFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 获取结果的写出：按区块号顺序把节点返回的原始 JSON 追加到分段文件。
+ * 每次操作写出整个范围，segmentMaxBytes 为 0 时不滚动分段
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FetchOutputBenchmark {
+
+    @Param({"1", "20"})
+    private int scale;
+
+    @Param({"0", "1048576"})
+    private long segmentMaxBytes;
+
+    private List<byte[]> blocks;
+    private long firstBlockNum;
+    private File dir;
+
+    @Setup
+    public void setup() throws IOException {
+        blocks = SampleBlocks.toBytes(SampleBlocks.load(scale));
+        firstBlockNum = SampleBlocks.load(1).get(0).get("block_num").asLong();
+        dir = Files.createTempDirectory("bench-fetch-").toFile();
+    }
+
+    @TearDown
+    public void tearDown() {
+        deleteOutput();
+        dir.delete();
+    }
+
+    /**
+     * 每次操作后删除输出文件，避免下一次写出时与已存在的分段重名
+     */
+    @TearDown(Level.Invocation)
+    public void deleteOutput() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    @Benchmark
+    public List<SegmentFile> appendRange() throws IOException {
+        BlockSegmentWriter writer = new BlockSegmentWriter(dir, segmentMaxBytes, 0);
+        try (writer) {
+            for (int i = 0; i < blocks.size(); i++) {
+                writer.append(firstBlockNum + i, blocks.get(i));
+            }
+        }
+        return writer.getCompletedSegments();
+    }
+}
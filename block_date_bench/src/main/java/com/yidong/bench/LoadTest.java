@@ -0,0 +1,288 @@
+package com.yidong.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yidong.BlockDataApplication;
+import com.yidong.job.Job;
+import com.yidong.job.JobScheduler;
+import com.yidong.model.FollowStatus;
+import com.yidong.model.VerificationMode;
+import com.yidong.service.BlockDataService;
+import com.yidong.service.BlockVerificationService;
+import com.yidong.service.ChainFollowService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 端到端负载测试：启动 {@link MockChainNode} 和应用的服务（不启动 Web 服务器），
+ * 通过 BlockDataService 获取区块，再用 BlockVerificationService 验证获取的文件，
+ * 输出每个阶段的区块/秒以及 RPC 延迟的 p50/p99。
+ * <p>
+ * 运行：java -cp target/benchmarks.jar com.yidong.bench.LoadTest --blocks=4900 --latency=lognormal:30,0.5
+ * <ul>
+ *   <li>--blocks=N 由样本扩展出 N 个区块；--source=文件 使用指定的区块文件</li>
+ *   <li>--nodes=N 启动 N 个相同配置的节点</li>
+ *   <li>--latency、--error-rate、--timeout-rate、--hang-ms、--max-concurrent、--rps：节点配置，见 {@link MockChainNode.Options}</li>
+ *   <li>--tamper=9852:id,9860:previous 篡改节点上的区块；--tamper-local=... 篡改获取到的文件后再验证</li>
+ *   <li>--verify=online|offline|audit|deep|both|all|none 验证方式，默认 online；deep 为在线深度比较，
+ *   both 为在线和离线，all 再加上审计和深度比较</li>
+ *   <li>--repeat=N 重复验证 N 次，之后几轮的在线和审计验证使用验证结果缓存</li>
+ *   <li>--follow=秒数 获取和验证之后再以跟随模式运行这么长时间；--produce-ms、--irreversible-lag 控制节点的出块间隔和不可逆区块滞后</li>
+ * </ul>
+ * 其他参数（例如 --block.fetch.concurrency=32）作为应用配置传入。
+ */
+public class LoadTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            String[] parts = arg.replaceFirst("^--", "").split("=", 2);
+            if (parts[0].contains(".")) {
+                appArgs.add(arg);
+            } else {
+                options.put(parts[0], parts.length > 1 ? parts[1] : "true");
+            }
+        }
+
+        List<JsonNode> blocks = options.containsKey("source")
+            ? SampleBlocks.read(Paths.get(options.get("source")))
+            : SampleBlocks.chain(Integer.parseInt(options.getOrDefault("blocks", "490")));
+        MockChainNode.Options nodeOptions = new MockChainNode.Options()
+            .latency(MockChainNode.Latency.parse(options.getOrDefault("latency", "fixed:20")))
+            .errorRate(Double.parseDouble(options.getOrDefault("error-rate", "0")))
+            .timeoutRate(Double.parseDouble(options.getOrDefault("timeout-rate", "0")))
+            .hangMs(Long.parseLong(options.getOrDefault("hang-ms", "60000")))
+            .maxConcurrent(Integer.parseInt(options.getOrDefault("max-concurrent", "0")))
+            .maxRequestsPerSecond(Double.parseDouble(options.getOrDefault("rps", "0")))
+            .irreversibleLag(Long.parseLong(options.getOrDefault("irreversible-lag", "0")))
+            .produceIntervalMs(Long.parseLong(options.getOrDefault("produce-ms", "0")))
+            .tamper(MockChainNode.parseTamper(options.get("tamper")));
+
+        Path outputDir = Files.createTempDirectory("load-test-");
+        appArgs.add("--block.output.dir=" + outputDir);
+        List<MockChainNode> nodes = new ArrayList<>();
+        ConfigurableApplicationContext context = null;
+        try {
+            List<String> apiUrls = new ArrayList<>();
+            for (int i = 0; i < Integer.parseInt(options.getOrDefault("nodes", "1")); i++) {
+                MockChainNode node = new MockChainNode(blocks, nodeOptions);
+                nodes.add(node);
+                apiUrls.add(node.getBlockUrl());
+            }
+            long first = nodes.get(0).getFirstBlockNum();
+            long last = nodes.get(0).getHeadBlockNum();
+            System.out.printf("节点 %d 个，区块 %d-%d（%d 个）%n", nodes.size(), first, last, last - first + 1);
+
+            context = new SpringApplicationBuilder(BlockDataApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.main.banner-mode=off", "logging.level.root=WARN")
+                .run(appArgs.toArray(new String[0]));
+            MeterRegistry registry = context.getBean(MeterRegistry.class);
+
+            // 获取
+            Job fetch = context.getBean(BlockDataService.class).startFetch(apiUrls, first, last);
+            long elapsed = await(fetch);
+            report("获取", fetch, last - first + 1, elapsed, registry, "fetch.rpc");
+            System.out.printf("  重试 %.0f 次%n", registry.get("block.fetch.retries").counter().count());
+
+            // 验证；重复验证时后几轮使用前一轮写入的验证结果缓存
+            int repeat = Integer.parseInt(options.getOrDefault("repeat", "1"));
+            for (int round = 1; round <= repeat; round++) {
+                if (repeat > 1) {
+                    System.out.printf("第 %d 轮验证%n", round);
+                }
+                String verify = options.getOrDefault("verify", "online");
+                Path fetched = fetchedFile(outputDir);
+                if (!verify.equals("none") && fetched != null) {
+                    BlockVerificationService verification = context.getBean(BlockVerificationService.class);
+                    Map<Long, String> tamperLocal = MockChainNode.parseTamper(options.get("tamper-local"));
+                    if (verify.equals("online") || verify.equals("both") || verify.equals("all")) {
+                        Map<String, Double> before = outcomes(registry);
+                        long requestsBefore = requests(nodes);
+                        Job job = verification.startVerification(copy(fetched, tamperLocal), apiUrls, VerificationMode.ONLINE);
+                        report("在线验证", job, last - first + 1, await(job), registry, "verify.chain");
+                        System.out.printf("  节点请求 %d 次%n", requests(nodes) - requestsBefore);
+                        printOutcomes(registry, before);
+                    }
+                    if (verify.equals("audit") || verify.equals("all")) {
+                        Map<String, Double> before = outcomes(registry);
+                        long requestsBefore = requests(nodes);
+                        Job job = verification.startVerification(copy(fetched, tamperLocal), apiUrls, VerificationMode.AUDIT);
+                        report("审计验证", job, last - first + 1, await(job), registry, "verify.chain");
+                        System.out.printf("  节点请求 %d 次%n", requests(nodes) - requestsBefore);
+                        printOutcomes(registry, before);
+                    }
+                    if (verify.equals("deep") || verify.equals("all")) {
+                        Map<String, Double> before = outcomes(registry);
+                        long requestsBefore = requests(nodes);
+                        Job job = verification.startVerification(copy(fetched, tamperLocal), apiUrls, VerificationMode.ONLINE, true);
+                        report("深度比较", job, last - first + 1, await(job), registry, "verify.deep");
+                        System.out.printf("  节点请求 %d 次%n", requests(nodes) - requestsBefore);
+                        printOutcomes(registry, before);
+                    }
+                    if (verify.equals("offline") || verify.equals("both") || verify.equals("all")) {
+                        Map<String, Double> before = outcomes(registry);
+                        Job job = verification.startVerification(copy(fetched, tamperLocal), List.of(), VerificationMode.OFFLINE);
+                        report("离线验证", job, last - first + 1, await(job), registry, "verify.hash");
+                        printOutcomes(registry, before);
+                        if (!options.containsKey("source")) {
+                            System.out.println("  合成区块的 id 不能通过哈希校验，离线验证只有样本中的区块会通过");
+                        }
+                    }
+                }
+            }
+
+            if (options.containsKey("follow")) {
+                follow(context, apiUrls, first, Long.parseLong(options.get("follow")), registry);
+            }
+
+            for (int i = 0; i < nodes.size(); i++) {
+                System.out.printf("节点 %d: %s%n", i, nodes.get(i).getStats());
+            }
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            nodes.forEach(MockChainNode::close);
+            deleteRecursively(outputDir);
+        }
+        // 应用的线程池不是守护线程，关闭上下文后需要显式退出
+        System.exit(0);
+    }
+
+    /**
+     * 从第一个区块开始跟随，每秒输出一次状态，运行指定的秒数后取消
+     */
+    private static void follow(ConfigurableApplicationContext context, List<String> apiUrls, long first, long seconds,
+                               MeterRegistry registry) throws InterruptedException {
+        ChainFollowService followService = context.getBean(ChainFollowService.class);
+        Job job = followService.startFollow(apiUrls, first);
+        for (long i = 0; i < seconds && !job.getStatus().isFinished(); i++) {
+            TimeUnit.SECONDS.sleep(1);
+            FollowStatus status = followService.getStatus();
+            System.out.printf("跟随: 最新 %d 不可逆 %d 已获取 %s 已写入 %s 落后 %d 暂存 %d 回退 %d，%.1f 区块/秒%n",
+                status.getHeadBlockNum(), status.getIrreversibleBlockNum(), status.getLastFetchedBlock(),
+                status.getLastWrittenBlock(), status.getLag(), status.getUnconfirmedBlocks(),
+                status.getRolledBackBlocks(), status.getBlocksPerSecond());
+        }
+        context.getBean(JobScheduler.class).cancel(job.getId());
+        await(job);
+        System.out.printf("跟随结束: %s，block.follow.lag=%.0f，block.follow.forks=%.0f%s%n", job.getStatus(),
+            registry.get("block.follow.lag").gauge().value(), registry.get("block.follow.forks").counter().count(),
+            job.getError() != null ? "，错误: " + job.getError() : "");
+    }
+
+    /**
+     * 等待任务结束，返回从提交到结束的毫秒数
+     */
+    private static long await(Job job) throws InterruptedException {
+        while (!job.getStatus().isFinished()) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        return Math.max(1, job.getFinishedAt() - job.getCreatedAt());
+    }
+
+    private static void report(String name, Job job, long blockCount, long elapsedMs, MeterRegistry registry,
+                               String stage) {
+        System.out.printf("%s: %s，%d 个区块，耗时 %d ms，%.1f 区块/秒%s%n", name, job.getStatus(), blockCount,
+            elapsedMs, blockCount * 1000.0 / elapsedMs, job.getError() != null ? "，错误: " + job.getError() : "");
+        Timer timer = registry.find("block.stage.duration").tag("stage", stage).timer();
+        if (timer == null) {
+            return;
+        }
+        // 客户端计算的百分位在一个滑动窗口内，反映本阶段最近的请求
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        StringBuilder percentiles = new StringBuilder();
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            percentiles.append(String.format(" p%s=%.1fms", trimPercentile(value.percentile()),
+                value.value(TimeUnit.MILLISECONDS)));
+        }
+        System.out.printf("  %s: 次数=%d 平均=%.1fms 最大=%.1fms%s%n", stage, snapshot.count(),
+            snapshot.mean(TimeUnit.MILLISECONDS), snapshot.max(TimeUnit.MILLISECONDS), percentiles);
+    }
+
+    private static String trimPercentile(double percentile) {
+        String value = String.valueOf(percentile * 100);
+        return value.endsWith(".0") ? value.substring(0, value.length() - 2) : value;
+    }
+
+    private static long requests(List<MockChainNode> nodes) {
+        return nodes.stream().mapToLong(node -> node.getStats().get("requests")).sum();
+    }
+
+    private static Map<String, Double> outcomes(MeterRegistry registry) {
+        Map<String, Double> outcomes = new TreeMap<>();
+        for (Counter counter : registry.find("block.verify.results").counters()) {
+            outcomes.put(counter.getId().getTag("outcome"), counter.count());
+        }
+        return outcomes;
+    }
+
+    /**
+     * 本次验证各类结果的数量
+     */
+    private static void printOutcomes(MeterRegistry registry, Map<String, Double> before) {
+        StringBuilder line = new StringBuilder("  验证结果:");
+        outcomes(registry).forEach((outcome, count) ->
+            line.append(String.format(" %s=%.0f", outcome, count - before.getOrDefault(outcome, 0.0))));
+        System.out.println(line);
+    }
+
+    private static Path fetchedFile(Path outputDir) throws IOException {
+        try (Stream<Path> files = Files.list(outputDir)) {
+            return files.filter(file -> file.getFileName().toString().matches("blocks_\\d+_\\d+\\.json(\\.dz)?"))
+                .findFirst().orElse(null);
+        }
+    }
+
+    /**
+     * 验证结束后会删除上传的文件，因此每次验证使用一份副本，需要时在副本中篡改区块
+     */
+    private static Path copy(Path fetched, Map<Long, String> tamper) throws IOException {
+        Path copy = Files.createTempFile("load-test-verify-", ".json");
+        if (tamper.isEmpty()) {
+            Files.copy(fetched, copy, StandardCopyOption.REPLACE_EXISTING);
+            return copy;
+        }
+        List<JsonNode> blocks = SampleBlocks.read(fetched);
+        for (JsonNode block : blocks) {
+            String field = tamper.get(block.get("block_num").asLong());
+            if (field != null) {
+                SampleBlocks.tamper((ObjectNode) block, field);
+            }
+        }
+        MAPPER.writeValue(copy.toFile(), Map.of("blocks", blocks));
+        return copy;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.yidong.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地模拟的 EOS 节点，提供 /v1/chain/get_block 和 /v1/chain/get_info，用于离线测试获取和验证的吞吐量。
+ * <p>
+ * 区块来自区块文件或合成的区块链；可以配置响应延迟分布、按比例注入错误和超时、
+ * 并发数和每秒请求数限制（超出时返回 429 和 Retry-After），以及篡改指定区块的字段。
+ */
+public class MockChainNode implements Closeable {
+
+    /**
+     * validateApi 用区块 1000000 探测节点是否可用，节点中没有该区块时返回第一个区块
+     */
+    private static final long PROBE_BLOCK_NUM = 1000000;
+
+    /** get_info 返回的 chain_id，验证结果缓存按它区分链 */
+    static final String CHAIN_ID = "0000000000000000000000000000000000000000000000000000000000006d6f636b";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Options options;
+    private final Map<Long, byte[]> blocksByNum = new HashMap<>();
+    private final Map<String, byte[]> blocksById = new HashMap<>();
+    private final long firstBlockNum;
+    private final long headBlockNum;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long startedAt = System.currentTimeMillis();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong injectedTimeouts = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final Object rateLock = new Object();
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * 启动节点
+     * @param blocks 节点提供的区块，按区块号排列
+     * @param options 延迟、错误注入、限流和篡改配置
+     */
+    public MockChainNode(List<JsonNode> blocks, Options options) throws IOException {
+        if (blocks.isEmpty()) {
+            throw new IllegalArgumentException("没有区块数据");
+        }
+        this.options = options;
+        for (JsonNode original : blocks) {
+            ObjectNode block = original.deepCopy();
+            long blockNum = block.get("block_num").asLong();
+            String field = options.tamper.get(blockNum);
+            if (field != null) {
+                SampleBlocks.tamper(block, field);
+            }
+            byte[] json = objectMapper.writeValueAsBytes(block);
+            blocksByNum.put(blockNum, json);
+            blocksById.put(block.get("id").asText(), json);
+        }
+        this.firstBlockNum = blocks.get(0).get("block_num").asLong();
+        this.headBlockNum = blocks.get(blocks.size() - 1).get("block_num").asLong();
+        this.tokens = options.maxRequestsPerSecond;
+
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "mock-chain-node");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", options.port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/v1/chain/get_block", exchange -> handle(exchange, this::getBlock));
+        server.createContext("/v1/chain/get_info", exchange -> handle(exchange, body -> getInfo()));
+        server.start();
+    }
+
+    /**
+     * get_block 的完整地址，可直接作为 apiUrl 使用
+     */
+    public String getBlockUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chain/get_block";
+    }
+
+    public long getFirstBlockNum() {
+        return firstBlockNum;
+    }
+
+    public long getHeadBlockNum() {
+        return headBlockNum;
+    }
+
+    /**
+     * 节点处理的请求统计
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("injectedErrors", injectedErrors.get());
+        stats.put("injectedTimeouts", injectedTimeouts.get());
+        stats.put("throttled", throttled.get());
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private interface Handler {
+        byte[] handle(JsonNode body) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        requests.incrementAndGet();
+        int concurrent = inFlight.incrementAndGet();
+        try (exchange) {
+            JsonNode body;
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] bytes = in.readAllBytes();
+                body = bytes.length > 0 ? objectMapper.readTree(bytes) : objectMapper.createObjectNode();
+            }
+            if ((options.maxConcurrent > 0 && concurrent > options.maxConcurrent) || !tryAcquireRate()) {
+                throttled.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(options.retryAfterSeconds));
+                send(exchange, 429, error(429, "too_many_requests", "请求过多"));
+                return;
+            }
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (options.timeoutRate > 0 && random.nextDouble() < options.timeoutRate) {
+                // 模拟无响应：挂起直到客户端超时断开
+                injectedTimeouts.incrementAndGet();
+                sleep(options.hangMs);
+                send(exchange, 504, error(504, "timeout", "模拟超时"));
+                return;
+            }
+            sleep(options.latency.sampleMillis(random));
+            if (options.errorRate > 0 && random.nextDouble() < options.errorRate) {
+                injectedErrors.incrementAndGet();
+                send(exchange, 500, error(500, "internal_error", "模拟错误"));
+                return;
+            }
+
+            byte[] response = handler.handle(body);
+            if (response == null) {
+                send(exchange, 500, error(3100002, "unknown_block_exception", "Could not find block"));
+            } else {
+                send(exchange, 200, response);
+            }
+        } catch (IOException e) {
+            // 客户端已断开
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private byte[] getBlock(JsonNode body) {
+        String key = body.path("block_num_or_id").asText();
+        if (key.matches("\\d+")) {
+            long blockNum = Long.parseLong(key);
+            if (blockNum > currentHead() && blockNum != PROBE_BLOCK_NUM) {
+                return null;
+            }
+            byte[] block = blocksByNum.get(blockNum);
+            if (block == null && blockNum == PROBE_BLOCK_NUM) {
+                block = blocksByNum.get(firstBlockNum);
+            }
+            return block;
+        }
+        return blocksById.get(key);
+    }
+
+    /**
+     * 当前已经"产生"的最新区块：配置了出块间隔时从第一个区块开始按间隔增长，直到最后一个区块
+     */
+    private long currentHead() {
+        if (options.produceIntervalMs <= 0) {
+            return headBlockNum;
+        }
+        return Math.min(headBlockNum, firstBlockNum + (System.currentTimeMillis() - startedAt) / options.produceIntervalMs);
+    }
+
+    private byte[] getInfo() throws IOException {
+        long head = currentHead();
+        ObjectNode info = objectMapper.createObjectNode();
+        info.put("head_block_num", head);
+        info.put("last_irreversible_block_num", Math.max(firstBlockNum, head - options.irreversibleLag));
+        info.put("head_block_id", objectMapper.readTree(blocksByNum.get(head)).get("id").asText());
+        info.put("chain_id", CHAIN_ID);
+        return objectMapper.writeValueAsBytes(info);
+    }
+
+    private boolean tryAcquireRate() {
+        if (options.maxRequestsPerSecond <= 0) {
+            return true;
+        }
+        synchronized (rateLock) {
+            long now = System.nanoTime();
+            tokens = Math.min(options.maxRequestsPerSecond,
+                tokens + (now - lastRefillNanos) / 1_000_000_000.0 * options.maxRequestsPerSecond);
+            lastRefillNanos = now;
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private byte[] error(int code, String name, String message) throws IOException {
+        ObjectNode error = objectMapper.createObjectNode();
+        error.put("code", code);
+        error.put("message", message);
+        error.putObject("error").put("name", name).put("what", message);
+        return objectMapper.writeValueAsBytes(error);
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 响应延迟分布
+     */
+    public interface Latency {
+        long sampleMillis(ThreadLocalRandom random);
+
+        /**
+         * 解析延迟配置：fixed:50、uniform:20-80、lognormal:50,0.5（中位数毫秒,σ）
+         */
+        static Latency parse(String spec) {
+            String[] parts = spec.split(":", 2);
+            String args = parts.length > 1 ? parts[1] : "";
+            switch (parts[0]) {
+                case "fixed": {
+                    long millis = Long.parseLong(args);
+                    return random -> millis;
+                }
+                case "uniform": {
+                    String[] range = args.split("-");
+                    long min = Long.parseLong(range[0]);
+                    long max = Long.parseLong(range[1]);
+                    return random -> min + random.nextLong(max - min + 1);
+                }
+                case "lognormal": {
+                    String[] params = args.split(",");
+                    double median = Double.parseDouble(params[0]);
+                    double sigma = Double.parseDouble(params[1]);
+                    return random -> Math.round(median * Math.exp(sigma * random.nextGaussian()));
+                }
+                default:
+                    throw new IllegalArgumentException("不支持的延迟分布: " + spec);
+            }
+        }
+    }
+
+    /**
+     * 节点配置
+     */
+    public static class Options {
+        private int port;
+        private Latency latency = random -> 0;
+        private double errorRate;
+        private double timeoutRate;
+        private long hangMs = 60000;
+        private int maxConcurrent;
+        private double maxRequestsPerSecond;
+        private int retryAfterSeconds = 1;
+        private long irreversibleLag;
+        private long produceIntervalMs;
+        private final Map<Long, String> tamper = new HashMap<>();
+
+        /** 监听端口，0 表示随机端口 */
+        public Options port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Options latency(Latency latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /** 返回 500 的请求比例 */
+        public Options errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /** 挂起 hangMs 后才响应的请求比例 */
+        public Options timeoutRate(double timeoutRate) {
+            this.timeoutRate = timeoutRate;
+            return this;
+        }
+
+        public Options hangMs(long hangMs) {
+            this.hangMs = hangMs;
+            return this;
+        }
+
+        /** 同时处理的请求数上限，超出返回 429，0 表示不限制 */
+        public Options maxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+            return this;
+        }
+
+        /** 每秒请求数上限，超出返回 429，0 表示不限制 */
+        public Options maxRequestsPerSecond(double maxRequestsPerSecond) {
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            return this;
+        }
+
+        public Options retryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+
+        /** get_info 中不可逆区块落后于最新区块的数量 */
+        public Options irreversibleLag(long irreversibleLag) {
+            this.irreversibleLag = irreversibleLag;
+            return this;
+        }
+
+        /** 出块间隔：启动时只有第一个区块，之后每隔这么多毫秒增加一个区块，0 表示全部区块一开始就存在 */
+        public Options produceIntervalMs(long produceIntervalMs) {
+            this.produceIntervalMs = produceIntervalMs;
+            return this;
+        }
+
+        /** 篡改区块的字段，格式与 {@link #parseTamper} 相同 */
+        public Options tamper(Map<Long, String> tamper) {
+            this.tamper.putAll(tamper);
+            return this;
+        }
+    }
+
+    /**
+     * 解析篡改配置，例如 9852:id,9860:previous
+     */
+    public static Map<Long, String> parseTamper(String spec) {
+        Map<Long, String> tamper = new LinkedHashMap<>();
+        if (spec == null || spec.isBlank()) {
+            return tamper;
+        }
+        for (String item : spec.split(",")) {
+            String[] parts = item.trim().split(":", 2);
+            tamper.put(Long.parseLong(parts[0]), parts.length > 1 ? parts[1] : "id");
+        }
+        return tamper;
+    }
+}
@@ -0,0 +1,127 @@
+package com.yidong.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yidong.storage.BlockFileReader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基准测试使用的区块数据：block_data 中的真实样本，以及按倍数扩展的合成区块链。
+ * <p>
+ * 扩展时复制样本区块并重新编号，id 的前 4 个字节替换为新的区块号，previous 指向前一个区块的 id，
+ * 因此扩展后的区块仍然连续，但 id 不能通过哈希校验。
+ */
+final class SampleBlocks {
+
+    /** 样本文件，可通过 -Dbench.sample 指定 */
+    static final Path SAMPLE = Paths.get(System.getProperty("bench.sample", "../block_data/blocks_9852_9900.json"));
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SampleBlocks() {
+    }
+
+    /**
+     * 读取样本并扩展为 scale 倍的区块
+     */
+    static List<JsonNode> load(int scale) throws IOException {
+        JsonNode sample = MAPPER.readTree(SAMPLE.toFile()).get("blocks");
+        List<JsonNode> blocks = new ArrayList<>(sample.size() * scale);
+        long firstBlockNum = sample.get(0).get("block_num").asLong();
+        String previousId = null;
+        for (int copy = 0; copy < scale; copy++) {
+            for (JsonNode original : sample) {
+                ObjectNode block = original.deepCopy();
+                long blockNum = firstBlockNum + blocks.size();
+                String id = String.format("%08x", blockNum) + original.get("id").asText().substring(8);
+                block.put("block_num", blockNum);
+                block.put("id", id);
+                if (previousId != null) {
+                    block.put("previous", previousId);
+                }
+                blocks.add(block);
+                previousId = id;
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * 由样本扩展出的指定数量的连续区块
+     */
+    static List<JsonNode> chain(int blockCount) throws IOException {
+        int sampleSize = MAPPER.readTree(SAMPLE.toFile()).get("blocks").size();
+        List<JsonNode> blocks = load((blockCount + sampleSize - 1) / sampleSize);
+        return new ArrayList<>(blocks.subList(0, Math.min(blockCount, blocks.size())));
+    }
+
+    /**
+     * 读取区块文件（{"blocks":[...]} 或区块数组）
+     */
+    static List<JsonNode> read(Path file) throws IOException {
+        List<JsonNode> blocks = new ArrayList<>();
+        try (BlockFileReader<JsonNode> reader = BlockFileReader.trees(file, MAPPER)) {
+            reader.forEachRemaining(blocks::add);
+        }
+        return blocks;
+    }
+
+    /**
+     * 篡改区块的一个字段：把值的最后一个十六进制字符改为另一个字符，
+     * 用于模拟 block_data/备注 中记录的修改（9852 改了 id，9860 改了 previous）
+     */
+    static void tamper(ObjectNode block, String field) {
+        // 以 / 开头时为区块内的 JSON Pointer，例如 /transactions/0/cpu_usage_us
+        ObjectNode parent = block;
+        if (field.startsWith("/")) {
+            int split = field.lastIndexOf('/');
+            JsonNode node = block.at(field.substring(0, split));
+            parent = node.isObject() ? (ObjectNode) node : null;
+            field = field.substring(split + 1);
+        }
+        String value = parent != null ? parent.path(field).asText() : "";
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("区块 " + block.path("block_num").asText() + " 没有字段 " + field);
+        }
+        char last = value.charAt(value.length() - 1);
+        parent.put(field, value.substring(0, value.length() - 1) + (last == '0' ? '1' : '0'));
+    }
+
+    /**
+     * 每个区块序列化后的字节，与 ChainClient 返回的原始 JSON 相同
+     */
+    static List<byte[]> toBytes(List<JsonNode> blocks) throws IOException {
+        List<byte[]> result = new ArrayList<>(blocks.size());
+        for (JsonNode block : blocks) {
+            result.add(MAPPER.writeValueAsBytes(block));
+        }
+        return result;
+    }
+
+    /**
+     * 按获取结果的 {"blocks":[...]} 格式写入临时文件
+     */
+    static Path writeTempFile(List<byte[]> blocks) throws IOException {
+        Path file = Files.createTempFile("bench-blocks-", ".json");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write("{\"blocks\":[\n".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < blocks.size(); i++) {
+                if (i > 0) {
+                    out.write(",\n".getBytes(StandardCharsets.UTF_8));
+                }
+                out.write(blocks.get(i));
+            }
+            out.write("\n]}".getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+}
@@ -0,0 +1,99 @@
+package com.yidong.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.model.BlockHeader;
+import com.yidong.storage.BlockFileReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * verifyBlocks 读取上传文件的过程：在线验证只解析区块头，离线验证解析完整的区块树。
+ * readAndConvert 是改用区块头之前的做法（解析为树再转换为 Map），保留作对比。每次操作解析整个文件，scale 为样本的倍数（1 倍为 49 个区块）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerifyParseBenchmark {
+
+    @Param({"1", "20"})
+    private int scale;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        file = SampleBlocks.writeTempFile(SampleBlocks.toBytes(SampleBlocks.load(scale)));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * 在线验证：直接从 JSON 流解析区块头，跳过交易
+     */
+    @Benchmark
+    public int readHeaders(Blackhole blackhole) throws IOException {
+        int count = 0;
+        try (BlockFileReader<BlockHeader> reader = BlockFileReader.headers(file, objectMapper)) {
+            while (reader.hasNext()) {
+                blackhole.consume(reader.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public int readAndConvert(Blackhole blackhole) throws IOException {
+        int count = 0;
+        try (BlockFileReader<JsonNode> reader = BlockFileReader.trees(file, objectMapper)) {
+            while (reader.hasNext()) {
+                JsonNode node = reader.next();
+                Map<String, Object> block = objectMapper.convertValue(node, Map.class);
+                blackhole.consume(block);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 离线验证：只解析为 JsonNode，与 readAndConvert 对比可得出转换为 Map 的开销
+     */
+    @Benchmark
+    public int readOnly(Blackhole blackhole) throws IOException {
+        int count = 0;
+        try (BlockFileReader<JsonNode> reader = BlockFileReader.trees(file, objectMapper)) {
+            while (reader.hasNext()) {
+                blackhole.consume(reader.next());
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,28 @@
+#!/bin/sh
+# 为命令行批处理模式生成类数据共享（AppCDS）归档：解压可执行 jar，用样本文件做一次离线验证作为训练运行，
+# 记录加载过的类。之后用 -XX:SharedArchiveFile 启动，省去大部分类的加载和校验：
+#
+#   ./cds.sh
+#   java -XX:SharedArchiveFile=target/cds/app.jsa -jar target/cds/block_date_save-0.0.1-SNAPSHOT-exec.jar \
+#       verify --file=blocks.json --mode=offline
+#
+# Web 模式同样可以使用这个归档。归档与 JDK 版本和 jar 内容绑定，重新打包或更换 JDK 后需要重新生成。
+# 训练文件可通过 CDS_TRAINING_FILE 指定。
+set -e
+cd "$(dirname "$0")"
+OUT=${1:-target/cds}
+SAMPLE=${CDS_TRAINING_FILE:-../block_data/blocks_9852_9900.json}
+
+mvn -B -q package -DskipTests
+JAR=$(ls target/*-exec.jar | head -1)
+rm -rf "$OUT"
+# 解压后的 jar 通过 Class-Path 引用 lib/ 中的依赖，CDS 不能归档嵌套 jar 中的类
+java -Djarmode=tools -jar "$JAR" extract --destination "$OUT"
+APP="$OUT/$(basename "$JAR")"
+
+# 样本中有未通过的区块时退出码为 1，同样会在退出时写出归档
+java -XX:ArchiveClassesAtExit="$OUT/app.jsa" -jar "$APP" verify --file="$SAMPLE" --mode=offline \
+    --block.output.dir="$OUT/training" > /dev/null || [ $? -eq 1 ]
+rm -rf "$OUT/training"
+echo "CDS 归档: $OUT/app.jsa"
+echo "运行: java -XX:SharedArchiveFile=$OUT/app.jsa -jar $APP verify|fetch ..."
@@ -1,11 +1,16 @@
 package com.yidong;
 
+import com.yidong.batch.BatchRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 @SpringBootApplication
 public class BlockDataApplication {
     public static void main(String[] args) {
+        // fetch / verify 命令以批处理模式运行，不启动 Web 服务器
+        if (BatchRunner.isBatchCommand(args)) {
+            System.exit(BatchRunner.run(args));
+        }
         SpringApplication.run(BlockDataApplication.class, args);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,316 @@
+package com.yidong.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.BlockDataApplication;
+import com.yidong.job.Job;
+import com.yidong.job.JobScheduler;
+import com.yidong.job.JobStatus;
+import com.yidong.model.ExportFormat;
+import com.yidong.model.VerificationMode;
+import com.yidong.model.VerificationProgress;
+import com.yidong.service.BlockDataService;
+import com.yidong.service.BlockVerificationService;
+import com.yidong.storage.ExportWriter;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.Banner;
+import org.springframework.boot.DefaultApplicationArguments;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 命令行批处理模式：不启动 Web 服务器，执行一个获取或验证任务，进度按行输出到标准输出，结束后以退出码表示结果。
+ * <pre>
+ * java -jar block_date_save-exec.jar fetch --apiUrl=http://节点/v1/chain/get_block --from=1 --to=100000
+ * java -jar block_date_save-exec.jar verify --file=blocks.json [--mode=online|offline|audit] [--apiUrl=...] [--deep]
+ *     [--export=failures.csv.gz] [--failures-only]
+ * </pre>
+ * 其他 --key=value 参数作为应用配置传入（例如 --block.output.dir=/data/blocks）。
+ * Bean 延迟初始化，只创建任务用到的服务；日志默认只输出警告和错误，可用 --logging.level.com.yidong=INFO 打开。
+ * 每行进度是一个 JSON 对象，最后一行的 status 为任务的最终状态。
+ */
+public final class BatchRunner {
+
+    /** 任务完成；验证时所有区块都通过 */
+    public static final int EXIT_OK = 0;
+    /** 验证完成，但有未通过的区块 */
+    public static final int EXIT_VERIFY_FAILED = 1;
+    /** 任务失败，或导出结果失败 */
+    public static final int EXIT_JOB_FAILED = 2;
+    /** 任务被取消 */
+    public static final int EXIT_CANCELLED = 3;
+    /** 参数错误 */
+    public static final int EXIT_USAGE = 64;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+        "用法:",
+        "  fetch  --apiUrl=<地址[,地址]> --from=<起始区块> --to=<结束区块>",
+        "  verify --file=<区块文件> [--mode=online|offline|audit] [--apiUrl=<地址[,地址]>] [--deep]",
+        "         [--export=<结果文件.csv|.ndjson[.gz]>] [--failures-only]",
+        "其他 --key=value 参数作为应用配置传入，例如 --block.output.dir=/data/blocks");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String command;
+    private final ApplicationArguments arguments;
+    private final String[] springArgs;
+
+    private BatchRunner(String[] args) {
+        this.command = args[0];
+        this.springArgs = Arrays.copyOfRange(args, 1, args.length);
+        this.arguments = new DefaultApplicationArguments(springArgs);
+    }
+
+    /**
+     * 第一个参数是批处理命令时以批处理模式运行
+     */
+    public static boolean isBatchCommand(String[] args) {
+        return args.length > 0 && (args[0].equals("fetch") || args[0].equals("verify"));
+    }
+
+    /**
+     * 执行批处理命令
+     * @return 进程退出码
+     */
+    public static int run(String[] args) {
+        return new BatchRunner(args).run();
+    }
+
+    private int run() {
+        try {
+            validate();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BlockDataApplication.class)
+                .web(WebApplicationType.NONE)
+                .lazyInitialization(true)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .registerShutdownHook(false)
+                // 默认配置，命令行参数可以覆盖
+                .properties("logging.level.root=WARN", "logging.level.com.yidong=WARN")
+                .run(springArgs)) {
+            Job job = command.equals("fetch") ? startFetch(context) : startVerify(context);
+            // 进程被终止时取消任务并等待结束，获取任务可以保存检查点后从断点继续
+            JobScheduler jobScheduler = context.getBean(JobScheduler.class);
+            Thread shutdownHook = new Thread(() -> {
+                if (jobScheduler.cancel(job.getId())) {
+                    awaitQuietly(job, TimeUnit.SECONDS.toMillis(30));
+                }
+            }, "batch-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+            try {
+                long interval = context.getEnvironment().getProperty("block.batch.progress-interval-ms", Long.class, 1000L);
+                streamProgress(job, interval);
+            } finally {
+                removeShutdownHook(shutdownHook);
+            }
+            return exitCode(context, job);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return EXIT_USAGE;
+        } catch (Exception e) {
+            System.err.println("批处理失败: " + e.getMessage());
+            return EXIT_JOB_FAILED;
+        }
+    }
+
+    /**
+     * 启动前检查参数，参数错误时不启动应用
+     */
+    private void validate() {
+        if (command.equals("fetch")) {
+            if (apiUrls().isEmpty()) {
+                throw new IllegalArgumentException("fetch 需要 --apiUrl");
+            }
+            if (longOption("to") < longOption("from")) {
+                throw new IllegalArgumentException("结束区块不能小于起始区块");
+            }
+            return;
+        }
+        Path file = Paths.get(requiredOption("file"));
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("文件不存在: " + file);
+        }
+        VerificationMode mode = mode();
+        if (mode != VerificationMode.OFFLINE && apiUrls().isEmpty()) {
+            throw new IllegalArgumentException("在线验证和审计验证需要 --apiUrl");
+        }
+        if (arguments.containsOption("deep") && mode != VerificationMode.ONLINE) {
+            throw new IllegalArgumentException("--deep 只用于在线验证");
+        }
+        String export = option("export");
+        if (export != null) {
+            exportFormat(export);
+        }
+    }
+
+    private Job startFetch(ConfigurableApplicationContext context) {
+        return context.getBean(BlockDataService.class).startFetch(apiUrls(), longOption("from"), longOption("to"));
+    }
+
+    private Job startVerify(ConfigurableApplicationContext context) {
+        // 验证的是用户的文件，结束后不删除
+        return context.getBean(BlockVerificationService.class).startVerification(Paths.get(requiredOption("file")),
+            apiUrls(), mode(), arguments.containsOption("deep"), false);
+    }
+
+    /**
+     * 按间隔输出进度，任务结束后再输出一行最终状态
+     */
+    private void streamProgress(Job job, long interval) throws IOException, InterruptedException {
+        long nextPrint = 0;
+        while (!job.getStatus().isFinished()) {
+            long now = System.currentTimeMillis();
+            if (now >= nextPrint) {
+                printProgress(job);
+                nextPrint = now + interval;
+            }
+            TimeUnit.MILLISECONDS.sleep(Math.min(50, Math.max(1, interval)));
+        }
+        printProgress(job);
+    }
+
+    private void printProgress(Job job) throws IOException {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("jobId", job.getId());
+        line.put("type", job.getType());
+        line.put("status", job.getStatus());
+        long startedAt = job.getStartedAt() != 0 ? job.getStartedAt() : job.getCreatedAt();
+        long endAt = job.getFinishedAt() != 0 ? job.getFinishedAt() : System.currentTimeMillis();
+        line.put("elapsedMs", Math.max(0, endAt - startedAt));
+        line.put("progress", job.getWork().getProgress());
+        if (job.getError() != null) {
+            line.put("error", job.getError());
+        }
+        System.out.println(objectMapper.writeValueAsString(line));
+        System.out.flush();
+    }
+
+    private int exitCode(ConfigurableApplicationContext context, Job job) {
+        JobStatus status = job.getStatus();
+        if (status == JobStatus.CANCELLED) {
+            return EXIT_CANCELLED;
+        }
+        if (status != JobStatus.COMPLETED) {
+            return EXIT_JOB_FAILED;
+        }
+        if (!command.equals("verify")) {
+            return EXIT_OK;
+        }
+        String export = option("export");
+        if (export != null && !exportResults(context, Paths.get(export))) {
+            return EXIT_JOB_FAILED;
+        }
+        VerificationProgress progress = (VerificationProgress) job.getWork().getProgress();
+        return progress.getFailedCount() == 0 ? EXIT_OK : EXIT_VERIFY_FAILED;
+    }
+
+    /**
+     * 把验证结果导出到文件，格式由扩展名决定：.csv 或 .ndjson，再加 .gz 时压缩
+     */
+    private boolean exportResults(ConfigurableApplicationContext context, Path file) {
+        String name = file.getFileName().toString();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            ExportWriter writer = ExportWriter.results(out, exportFormat(name), name.endsWith(".gz"), objectMapper);
+            long rows = context.getBean(BlockVerificationService.class)
+                .exportVerificationResults(writer, arguments.containsOption("failures-only"), null, null);
+            writer.finish();
+            System.err.println("已导出验证结果 " + rows + " 条到 " + file);
+            return true;
+        } catch (IOException e) {
+            System.err.println("导出验证结果失败: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static ExportFormat exportFormat(String fileName) {
+        String name = fileName.endsWith(".gz") ? fileName.substring(0, fileName.length() - 3) : fileName;
+        for (ExportFormat format : ExportFormat.values()) {
+            if (name.endsWith("." + format.getExtension())) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("导出文件的扩展名应为 .csv 或 .ndjson（可再加 .gz）: " + fileName);
+    }
+
+    private VerificationMode mode() {
+        String mode = option("mode");
+        try {
+            return mode != null ? VerificationMode.valueOf(mode.toUpperCase()) : VerificationMode.ONLINE;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的验证方式: " + mode);
+        }
+    }
+
+    /**
+     * --apiUrl 可以出现多次，也可以用逗号分隔多个地址
+     */
+    private List<String> apiUrls() {
+        List<String> urls = new ArrayList<>();
+        List<String> values = arguments.getOptionValues("apiUrl");
+        for (String value : values != null ? values : List.<String>of()) {
+            for (String url : value.split(",")) {
+                if (!url.isBlank() && !urls.contains(url.trim())) {
+                    urls.add(url.trim());
+                }
+            }
+        }
+        return urls;
+    }
+
+    private String option(String name) {
+        List<String> values = arguments.getOptionValues(name);
+        return values != null && !values.isEmpty() ? values.get(values.size() - 1) : null;
+    }
+
+    private String requiredOption(String name) {
+        String value = option(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException(command + " 需要 --" + name);
+        }
+        return value;
+    }
+
+    private long longOption(String name) {
+        String value = requiredOption(name);
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " 不是有效的区块号: " + value);
+        }
+    }
+
+    private static void awaitQuietly(Job job, long timeoutMs) {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            while (!job.getStatus().isFinished() && System.currentTimeMillis() < deadline) {
+                TimeUnit.MILLISECONDS.sleep(20);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void removeShutdownHook(Thread hook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // 已在关闭过程中
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.yidong.chain;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单个节点的自适应并发限制（AIMD）和请求速率上限。
+ * <p>
+ * 延迟和错误率正常时每完成一个请求把并发上限增加 1/limit（约每轮增加 1）；
+ * 遇到 429、5xx、超时或延迟突增时把上限乘以 backoffRatio，每个冷却周期最多降低一次，
+ * 避免同一时刻的多个失败把上限连续压到最低。
+ * <p>
+ * 许可既可以阻塞等待（{@link #acquire()}），也可以排队异步等待（{@link #acquireAsync}），
+ * 排队的调用在其他请求结束或暂停、限速的等待时间到达后按顺序获得许可。
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /** 请求结果 */
+    public enum Outcome {
+        /** 成功 */
+        SUCCESS,
+        /** 节点过载：429、5xx、超时、连接失败 */
+        OVERLOAD,
+        /** 与负载无关的失败（如 4xx），不调整上限 */
+        IGNORE
+    }
+
+    private static final double LATENCY_EWMA_ALPHA = 0.1;
+    private static final long MIN_DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private final double minLimit;
+    private final double maxLimit;
+    private final double backoffRatio;
+    private final double latencySpikeFactor;
+    private final double maxRequestsPerSecond;
+
+    private double limit;
+    private int inFlight;
+    private double baselineLatencyNanos;
+    private long lastDecreaseNanos;
+    private long pausedUntilNanos;
+    private double tokens;
+    private long lastRefillNanos;
+    // 异步等待许可的调用，按排队顺序
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private ScheduledExecutorService timer;
+    private boolean drainScheduled;
+
+    /**
+     * @param initialLimit 初始并发上限
+     * @param minLimit 并发上限的下限
+     * @param maxLimit 并发上限的上限
+     * @param backoffRatio 过载时的乘法退避系数
+     * @param latencySpikeFactor 延迟超过基线的多少倍视为过载
+     * @param maxRequestsPerSecond 每秒请求数上限，0 表示不限制
+     */
+    public AdaptiveConcurrencyLimiter(double initialLimit, double minLimit, double maxLimit,
+                                      double backoffRatio, double latencySpikeFactor,
+                                      double maxRequestsPerSecond) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.backoffRatio = backoffRatio;
+        this.latencySpikeFactor = latencySpikeFactor;
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.tokens = Math.max(1, maxRequestsPerSecond);
+        this.lastRefillNanos = System.nanoTime();
+        this.lastDecreaseNanos = lastRefillNanos - TimeUnit.DAYS.toNanos(1);
+    }
+
+    /**
+     * 等待直到可以发出一个请求
+     */
+    public void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                long waitNanos = tryAcquireLocked();
+                if (waitNanos == 0) {
+                    return;
+                }
+                if (waitNanos < 0) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(waitNanos);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 异步获取请求许可，不占用线程等待：可以立即发出时返回已完成的 Future，否则排队。
+     * 取消返回的 Future 即放弃排队；已获得许可的 Future 不能再取消，许可由调用方通过 {@link #release} 归还
+     * @param timer 暂停或限速时用于在等待时间到达后继续分配许可
+     */
+    public CompletableFuture<Void> acquireAsync(ScheduledExecutorService timer) {
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            this.timer = timer;
+            waiters.addLast(waiter);
+            granted = grantWaitersLocked();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+        return waiter;
+    }
+
+    /**
+     * 不等待地尝试获取请求许可
+     */
+    public boolean tryAcquire() {
+        lock.lock();
+        try {
+            return tryAcquireLocked() == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 请求结束后归还许可并根据结果调整并发上限
+     * @param latencyNanos 请求耗时
+     * @param outcome 请求结果
+     */
+    public void release(long latencyNanos, Outcome outcome) {
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            inFlight--;
+            long now = System.nanoTime();
+            if (outcome == Outcome.SUCCESS) {
+                boolean spike = baselineLatencyNanos > 0 && latencyNanos > baselineLatencyNanos * latencySpikeFactor;
+                baselineLatencyNanos = baselineLatencyNanos == 0
+                    ? latencyNanos
+                    : baselineLatencyNanos + LATENCY_EWMA_ALPHA * (latencyNanos - baselineLatencyNanos);
+                if (spike) {
+                    decrease(now);
+                } else {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            } else if (outcome == Outcome.OVERLOAD) {
+                decrease(now);
+            }
+            granted = grantWaitersLocked();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    /**
+     * 节点要求暂停（如 429 的 Retry-After）时，在指定时间内不再发出请求
+     */
+    public void pause(long millis) {
+        lock.lock();
+        try {
+            pausedUntilNanos = Math.max(pausedUntilNanos, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+            decrease(System.nanoTime());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return 0 表示已获取许可；大于 0 表示需要等待的纳秒数；小于 0 表示需要等待其他请求结束
+     */
+    private long tryAcquireLocked() {
+        long now = System.nanoTime();
+        if (pausedUntilNanos > now) {
+            return pausedUntilNanos - now;
+        }
+        if (inFlight >= (int) limit) {
+            return -1;
+        }
+        if (maxRequestsPerSecond > 0) {
+            tokens = Math.min(Math.max(1, maxRequestsPerSecond),
+                tokens + (now - lastRefillNanos) * maxRequestsPerSecond / 1_000_000_000.0);
+            lastRefillNanos = now;
+            if (tokens < 1) {
+                return Math.max(1, (long) ((1 - tokens) * 1_000_000_000.0 / maxRequestsPerSecond));
+            }
+            tokens -= 1;
+        }
+        inFlight++;
+        return 0;
+    }
+
+    /**
+     * 按排队顺序把可用的许可分给异步等待的调用，已取消的跳过；需要等待一段时间时安排一次延迟分配
+     * @return 获得许可的调用，在释放锁之后完成
+     */
+    private List<CompletableFuture<Void>> grantWaitersLocked() {
+        List<CompletableFuture<Void>> granted = null;
+        while (!waiters.isEmpty()) {
+            if (waiters.peekFirst().isDone()) {
+                waiters.pollFirst();
+                continue;
+            }
+            long waitNanos = tryAcquireLocked();
+            if (waitNanos != 0) {
+                if (waitNanos > 0 && timer != null && !drainScheduled) {
+                    drainScheduled = true;
+                    timer.schedule(this::grantScheduled, waitNanos, TimeUnit.NANOSECONDS);
+                }
+                break;
+            }
+            if (granted == null) {
+                granted = new ArrayList<>();
+            }
+            granted.add(waiters.pollFirst());
+        }
+        return granted;
+    }
+
+    private void grantScheduled() {
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            drainScheduled = false;
+            granted = grantWaitersLocked();
+        } finally {
+            lock.unlock();
+        }
+        complete(granted);
+    }
+
+    /**
+     * 通知获得许可的调用；调用在此期间被取消时归还它的许可
+     */
+    private void complete(List<CompletableFuture<Void>> granted) {
+        if (granted == null) {
+            return;
+        }
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                release(0, Outcome.IGNORE);
+            }
+        }
+    }
+
+    private void decrease(long now) {
+        long interval = Math.max(MIN_DECREASE_INTERVAL_NANOS, (long) baselineLatencyNanos);
+        if (now - lastDecreaseNanos < interval) {
+            return;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+}
@@ -0,0 +1,785 @@
+package com.yidong.chain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.model.BlockHeader;
+import com.yidong.model.ChainInfo;
+import com.yidong.model.ChainClientStats;
+import com.yidong.model.ChainEndpointStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 所有链上 RPC 调用共用的客户端。
+ * <p>
+ * 基于 JDK HttpClient：连接池复用 keep-alive 连接，https 节点优先使用 HTTP/2，响应支持 gzip；
+ * 同时在途的调用数受 max-connections 限制，并统计池占用率和每次调用的延迟。
+ * <p>
+ * 每个节点有独立的 {@link AdaptiveConcurrencyLimiter}，获取和验证任务共用，
+ * 根据延迟和错误自动调整对该节点的并发数，并限制每秒请求数。
+ * <p>
+ * 传入多个节点时按观测到的延迟和在途请求数选择节点，连续失败的节点会被暂时剔除；
+ * 配置了对冲分位数时（默认关闭），请求超过该节点的延迟分位数仍未返回时，向另一个节点发出对冲请求，先返回的结果生效，另一个请求被取消。
+ */
+@Component
+public class ChainClient {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient http2Client;
+    private final HttpClient http1Client;
+    private final ExecutorService asyncExecutor;
+    private final Duration readTimeout;
+    private final int maxConnections;
+    private final Semaphore connectionPermits;
+    // 异步等待连接许可的调用
+    private final Queue<CompletableFuture<Void>> connectionWaiters = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger inFlightCalls = new AtomicInteger();
+    private final AtomicLong totalCalls = new AtomicLong();
+    private final AtomicLong failedCalls = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private volatile long lastLatencyNanos;
+    private final AtomicLong hedgedCalls = new AtomicLong();
+
+    // 每个节点的自适应并发限制
+    private final Map<String, AdaptiveConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    @Value("${chain.limiter.initial-limit:8}")
+    private double limiterInitialLimit;
+
+    @Value("${chain.limiter.min-limit:1}")
+    private double limiterMinLimit;
+
+    @Value("${chain.limiter.max-limit:64}")
+    private double limiterMaxLimit;
+
+    @Value("${chain.limiter.backoff-ratio:0.5}")
+    private double limiterBackoffRatio;
+
+    @Value("${chain.limiter.latency-spike-factor:3}")
+    private double limiterLatencySpikeFactor;
+
+    /** 对单个节点每秒请求数的上限，0 表示不限制 */
+    @Value("${chain.limiter.max-requests-per-second:0}")
+    private double limiterMaxRequestsPerSecond;
+
+    // 每个节点的健康状态
+    private final Map<String, ChainEndpoint> endpoints = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService hedgeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "chain-hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** 连续失败多少次后剔除节点 */
+    @Value("${chain.endpoints.eject-after-failures:3}")
+    private int ejectAfterFailures;
+
+    /** 节点被剔除后多久重新尝试 */
+    @Value("${chain.endpoints.eject-cooldown-ms:10000}")
+    private long ejectCooldownMs;
+
+    /** 超过该节点延迟的哪个分位数后发出对冲请求，例如 0.95；默认 0 表示不对冲 */
+    @Value("${chain.endpoints.hedge-percentile:0}")
+    private double hedgePercentile;
+
+    /** 对冲请求的最小等待时间 */
+    @Value("${chain.endpoints.hedge-min-delay-ms:20}")
+    private long hedgeMinDelayMs;
+
+    public ChainClient(
+        @Value("${chain.client.connect-timeout-ms:5000}") long connectTimeoutMs,
+        @Value("${chain.client.read-timeout-ms:30000}") long readTimeoutMs,
+        @Value("${chain.client.max-connections:64}") int maxConnections,
+        @Value("${chain.client.http2:true}") boolean http2
+    ) {
+        this.maxConnections = Math.max(1, maxConnections);
+        this.connectionPermits = new Semaphore(this.maxConnections);
+        this.readTimeout = Duration.ofMillis(readTimeoutMs);
+        this.asyncExecutor = Executors.newCachedThreadPool();
+        Duration connectTimeout = Duration.ofMillis(connectTimeoutMs);
+        this.http1Client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(connectTimeout)
+            .executor(asyncExecutor)
+            .build();
+        // 明文 http 不做 h2c 升级，HTTP/2 只用于 https（通过 ALPN 协商，节点不支持时自动回退到 HTTP/1.1）
+        this.http2Client = http2
+            ? HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(connectTimeout)
+                .executor(asyncExecutor)
+                .build()
+            : http1Client;
+    }
+
+    /**
+     * 获取区块的原始 JSON 字节
+     * @param apiUrl get_block 接口地址
+     * @param blockNumOrId 区块号或区块 id
+     */
+    public byte[] getBlock(String apiUrl, Object blockNumOrId) {
+        return post(apiUrl, Map.of("block_num_or_id", blockNumOrId));
+    }
+
+    /**
+     * 非阻塞获取区块的原始 JSON 字节
+     */
+    public CompletableFuture<byte[]> getBlockAsync(String apiUrl, Object blockNumOrId) {
+        return postAsync(apiUrl, Map.of("block_num_or_id", blockNumOrId));
+    }
+
+    /**
+     * 从多个节点中选择一个获取区块，必要时对冲或切换到其他节点
+     */
+    public byte[] getBlock(List<String> apiUrls, Object blockNumOrId) {
+        try {
+            return getBlockAsync(apiUrls, blockNumOrId).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof ChainClientException
+                ? (ChainClientException) e.getCause()
+                : new ChainClientException("请求失败: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    public CompletableFuture<byte[]> getBlockAsync(List<String> apiUrls, Object blockNumOrId) {
+        return postAsync(apiUrls, Map.of("block_num_or_id", blockNumOrId));
+    }
+
+    /**
+     * 获取区块并解析为 Map
+     */
+    public Map<String, Object> getBlockAsMap(String apiUrl, Object blockNumOrId) {
+        return parseBlock(getBlock(apiUrl, blockNumOrId));
+    }
+
+    public Map<String, Object> getBlockAsMap(List<String> apiUrls, Object blockNumOrId) {
+        return parseBlock(getBlock(apiUrls, blockNumOrId));
+    }
+
+    /**
+     * 获取区块头，只解析比较用到的字段
+     */
+    public BlockHeader getBlockHeader(List<String> apiUrls, Object blockNumOrId) {
+        return parseHeader(getBlock(apiUrls, blockNumOrId));
+    }
+
+    private BlockHeader parseHeader(byte[] body) {
+        try {
+            return BlockHeader.parse(objectMapper.getFactory(), body);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new ChainClientException("解析区块数据失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 获取链的最新区块和不可逆区块。按顺序尝试各节点，返回第一个成功的结果
+     * @param apiUrls get_block 接口地址，get_info 地址由其推出
+     */
+    public ChainInfo getInfo(List<String> apiUrls) {
+        ChainClientException lastError = null;
+        for (String apiUrl : apiUrls) {
+            try {
+                JsonNode info = objectMapper.readTree(post(infoUrl(apiUrl), Map.of()));
+                return new ChainInfo(
+                    info.path("head_block_num").asLong(),
+                    info.path("head_block_id").asText(null),
+                    info.path("last_irreversible_block_num").asLong(),
+                    info.path("last_irreversible_block_id").asText(null),
+                    info.path("chain_id").asText(null));
+            } catch (ChainClientException e) {
+                lastError = e;
+            } catch (IOException e) {
+                lastError = new ChainClientException("解析链状态失败: " + e.getMessage(), e);
+            }
+        }
+        throw lastError != null ? lastError : new ChainClientException("未提供API地址", null);
+    }
+
+    /**
+     * 由 get_block 地址推出同一节点的 get_info 地址；不是 get_block 地址时视为节点根地址
+     */
+    static String infoUrl(String apiUrl) {
+        String url = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+        return url.endsWith("/get_block")
+            ? url.substring(0, url.length() - "get_block".length()) + "get_info"
+            : url + "/v1/chain/get_info";
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseBlock(byte[] body) {
+        try {
+            return objectMapper.readValue(body, Map.class);
+        } catch (IOException e) {
+            throw new ChainClientException("解析区块数据失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 发送 POST 请求，返回响应体字节
+     */
+    public byte[] post(String apiUrl, Object requestBody) {
+        AdaptiveConcurrencyLimiter limiter = limiterFor(apiUrl);
+        acquireLimiter(limiter);
+        connectionPermits.acquireUninterruptibly();
+        ChainEndpoint endpoint = endpointFor(apiUrl);
+        endpoint.begin();
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            return send(apiUrl, requestBody);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            releaseConnection();
+            finishCall(limiter, endpoint, System.nanoTime() - start, failure);
+        }
+    }
+
+    /**
+     * 非阻塞发送 POST 请求。没有空闲的并发许可或连接许可时排队等待，不占用线程；
+     * 取消返回的 Future 会放弃排队，或中止已发出的请求，许可随之归还
+     */
+    public CompletableFuture<byte[]> postAsync(String apiUrl, Object requestBody) {
+        return new AsyncCall(apiUrl, requestBody).start();
+    }
+
+    private CompletableFuture<Void> acquireConnection() {
+        if (connectionWaiters.isEmpty() && connectionPermits.tryAcquire()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        connectionWaiters.add(waiter);
+        grantConnections();
+        return waiter;
+    }
+
+    private void releaseConnection() {
+        connectionPermits.release();
+        grantConnections();
+    }
+
+    /**
+     * 把空闲的连接许可按排队顺序分给等待的调用，已取消的调用不占用许可
+     */
+    private void grantConnections() {
+        while (!connectionWaiters.isEmpty() && connectionPermits.tryAcquire()) {
+            CompletableFuture<Void> waiter = connectionWaiters.poll();
+            if (waiter == null || !waiter.complete(null)) {
+                connectionPermits.release();
+            }
+        }
+    }
+
+    /**
+     * 向多个节点中的一个发送请求。
+     * <p>
+     * 请求超过所选节点的延迟分位数仍未返回时向另一个节点发出对冲请求；首个请求失败时切换到另一个节点。
+     * 每次调用最多额外发出一个请求，避免放大节点负载。
+     */
+    public CompletableFuture<byte[]> postAsync(List<String> apiUrls, Object requestBody) {
+        if (apiUrls.size() == 1) {
+            return postAsync(apiUrls.get(0), requestBody);
+        }
+        MultiEndpointCall call = new MultiEndpointCall(apiUrls, requestBody);
+        call.start();
+
+        long hedgeDelayNanos = hedgePercentile > 0
+            ? endpointFor(call.primary).latencyPercentileNanos(hedgePercentile) : -1;
+        if (hedgeDelayNanos >= 0 && !call.result.isDone()) {
+            long delayNanos = Math.max(hedgeDelayNanos, TimeUnit.MILLISECONDS.toNanos(hedgeMinDelayMs));
+            ScheduledFuture<?> hedge = hedgeScheduler.schedule(() -> {
+                if (call.tryExtraAttempt()) {
+                    hedgedCalls.incrementAndGet();
+                }
+            }, delayNanos, TimeUnit.NANOSECONDS);
+            call.result.whenComplete((body, error) -> hedge.cancel(false));
+        }
+        return call.result;
+    }
+
+    /**
+     * 选择代价最低的可用节点：平均延迟 ×（在途请求数 + 1）。所有节点都被剔除时选择最早恢复的节点
+     * @param exclude 不参与选择的节点，只剩它时仍返回它
+     */
+    String selectEndpoint(List<String> apiUrls, String exclude) {
+        long now = System.nanoTime();
+        String best = null;
+        double bestCost = Double.MAX_VALUE;
+        String earliest = null;
+        long earliestUntil = Long.MAX_VALUE;
+        double defaultLatency = defaultLatencyNanos(apiUrls);
+        for (String apiUrl : apiUrls) {
+            if (apiUrl.equals(exclude)) {
+                continue;
+            }
+            ChainEndpoint endpoint = endpointFor(apiUrl);
+            if (endpoint.isAvailable(now)) {
+                double cost = endpoint.getAvgLatencyMs() > 0
+                    ? endpoint.cost()
+                    : defaultLatency * (endpoint.getInFlight() + 1);
+                if (cost < bestCost) {
+                    best = apiUrl;
+                    bestCost = cost;
+                }
+            } else if (endpoint.getEjectedUntilNanos() - earliestUntil < 0 || earliest == null) {
+                earliest = apiUrl;
+                earliestUntil = endpoint.getEjectedUntilNanos();
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        return earliest != null ? earliest : apiUrls.get(0);
+    }
+
+    /**
+     * 还没有延迟样本的节点按其他节点的平均延迟估算，避免所有请求都涌向新节点
+     */
+    private double defaultLatencyNanos(List<String> apiUrls) {
+        double sum = 0;
+        int count = 0;
+        for (String apiUrl : apiUrls) {
+            double latencyMs = endpointFor(apiUrl).getAvgLatencyMs();
+            if (latencyMs > 0) {
+                sum += latencyMs * 1_000_000;
+                count++;
+            }
+        }
+        return count > 0 ? sum / count : 1;
+    }
+
+    private ChainEndpoint endpointFor(String apiUrl) {
+        return endpoints.computeIfAbsent(apiUrl, ChainEndpoint::new);
+    }
+
+    /**
+     * 当前对该节点的并发上限
+     */
+    public double getConcurrencyLimit(String apiUrl) {
+        return limiterFor(apiUrl).getLimit();
+    }
+
+    /**
+     * 多个节点的并发上限之和
+     */
+    public double getConcurrencyLimit(List<String> apiUrls) {
+        double total = 0;
+        for (String apiUrl : apiUrls) {
+            total += getConcurrencyLimit(apiUrl);
+        }
+        return total;
+    }
+
+    private AdaptiveConcurrencyLimiter limiterFor(String apiUrl) {
+        return limiters.computeIfAbsent(apiUrl, url -> new AdaptiveConcurrencyLimiter(
+            limiterInitialLimit, limiterMinLimit, limiterMaxLimit,
+            limiterBackoffRatio, limiterLatencySpikeFactor, limiterMaxRequestsPerSecond));
+    }
+
+    private void acquireLimiter(AdaptiveConcurrencyLimiter limiter) {
+        try {
+            limiter.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ChainClientException("请求被中断", e);
+        }
+    }
+
+    private void finishCall(AdaptiveConcurrencyLimiter limiter, ChainEndpoint endpoint, long latencyNanos,
+                            Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+            ? failure.getCause() : failure;
+        if (cause instanceof CancellationException) {
+            // 对冲中落后的请求被取消，与节点健康和负载无关
+            endpoint.cancelled();
+            limiter.release(latencyNanos, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+            return;
+        }
+        // 4xx 等与节点健康无关的错误不计入连续失败
+        boolean healthy = cause == null
+            || (cause instanceof ChainClientException && !((ChainClientException) cause).isOverload());
+        endpoint.end(latencyNanos, healthy, ejectAfterFailures, ejectCooldownMs);
+        if (cause == null) {
+            limiter.release(latencyNanos, AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+        } else if (cause instanceof ChainClientException && ((ChainClientException) cause).isOverload()) {
+            long retryAfterMs = ((ChainClientException) cause).getRetryAfterMs();
+            limiter.release(latencyNanos, AdaptiveConcurrencyLimiter.Outcome.OVERLOAD);
+            if (retryAfterMs > 0) {
+                limiter.pause(retryAfterMs);
+            }
+        } else {
+            limiter.release(latencyNanos, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+        }
+    }
+
+    public int getInFlightCalls() {
+        return inFlightCalls.get();
+    }
+
+    public long getTotalCalls() {
+        return totalCalls.get();
+    }
+
+    public long getFailedCalls() {
+        return failedCalls.get();
+    }
+
+    public long getHedgedCalls() {
+        return hedgedCalls.get();
+    }
+
+    public ChainClientStats getStats() {
+        long calls = totalCalls.get();
+        int inFlight = inFlightCalls.get();
+        long now = System.nanoTime();
+        List<ChainEndpointStats> endpointStats = new ArrayList<>();
+        new TreeMap<>(endpoints).forEach((url, endpoint) -> endpointStats.add(new ChainEndpointStats(
+            url,
+            endpoint.isAvailable(now),
+            endpoint.getInFlight(),
+            getConcurrencyLimit(url),
+            endpoint.getAvgLatencyMs(),
+            endpoint.getTotalCalls(),
+            endpoint.getFailedCalls(),
+            endpoint.getEjections()
+        )));
+        return new ChainClientStats(
+            inFlight,
+            maxConnections,
+            (double) inFlight / maxConnections,
+            calls,
+            failedCalls.get(),
+            calls > 0 ? totalLatencyNanos.get() / 1_000_000.0 / calls : 0,
+            maxLatencyNanos.get() / 1_000_000.0,
+            lastLatencyNanos / 1_000_000.0,
+            hedgedCalls.get(),
+            endpointStats
+        );
+    }
+
+    private byte[] send(String apiUrl, Object requestBody) {
+        HttpRequest request = buildRequest(apiUrl, requestBody);
+        long start = beginCall();
+        try {
+            HttpResponse<byte[]> response = clientFor(apiUrl).send(request, HttpResponse.BodyHandlers.ofByteArray());
+            byte[] body = handleResponse(apiUrl, response);
+            endCall(start, true);
+            return body;
+        } catch (InterruptedException e) {
+            endCall(start, false);
+            Thread.currentThread().interrupt();
+            throw new ChainClientException("请求被中断", e);
+        } catch (IOException e) {
+            endCall(start, false);
+            throw new ChainClientException("请求 " + apiUrl + " 失败: " + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            endCall(start, false);
+            throw e;
+        }
+    }
+
+    /**
+     * @param onExchange 接收 HttpClient 返回的 Future，取消它即中止请求
+     */
+    private CompletableFuture<byte[]> sendAsync(String apiUrl, Object requestBody,
+                                                Consumer<CompletableFuture<?>> onExchange) {
+        HttpRequest request;
+        try {
+            request = buildRequest(apiUrl, requestBody);
+        } catch (ChainClientException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long start = beginCall();
+        CompletableFuture<HttpResponse<byte[]>> exchange =
+            clientFor(apiUrl).sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+        onExchange.accept(exchange);
+        return exchange
+            .thenApply(response -> handleResponse(apiUrl, response))
+            .handle((body, error) -> {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                endCall(start, error == null || cause instanceof CancellationException);
+                if (error == null) {
+                    return body;
+                }
+                if (cause instanceof CancellationException) {
+                    throw (CancellationException) cause;
+                }
+                if (cause instanceof ChainClientException) {
+                    throw (ChainClientException) cause;
+                }
+                throw new ChainClientException("请求 " + apiUrl + " 失败: " + cause.getMessage(), cause);
+            });
+    }
+
+    private HttpRequest buildRequest(String apiUrl, Object requestBody) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(requestBody);
+        } catch (IOException e) {
+            throw new ChainClientException("序列化请求失败: " + e.getMessage(), e);
+        }
+        return HttpRequest.newBuilder(URI.create(apiUrl))
+            .timeout(readTimeout)
+            .header("Content-Type", "application/json")
+            .header("Accept", "application/json")
+            .header("Accept-Encoding", "gzip")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(json))
+            .build();
+    }
+
+    private byte[] handleResponse(String apiUrl, HttpResponse<byte[]> response) {
+        byte[] body = decode(response);
+        int status = response.statusCode();
+        if (status < 200 || status >= 300) {
+            String detail = new String(body, 0, Math.min(body.length, 512), StandardCharsets.UTF_8);
+            long retryAfterMs = response.headers().firstValue("Retry-After")
+                .map(ChainClient::parseRetryAfterMs)
+                .orElse(0L);
+            throw new ChainClientException(status, status + " 请求 " + apiUrl + " 失败: " + detail, retryAfterMs);
+        }
+        if (body.length == 0) {
+            throw new ChainClientException(status, "API返回空数据");
+        }
+        return body;
+    }
+
+    private static long parseRetryAfterMs(String value) {
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // HTTP 日期格式的 Retry-After 不常见，忽略
+            return 0;
+        }
+    }
+
+    private byte[] decode(HttpResponse<byte[]> response) {
+        byte[] body = response.body();
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+            .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+            .orElse(false);
+        if (!gzip || body == null) {
+            return body == null ? new byte[0] : body;
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("解压响应失败", e);
+        }
+    }
+
+    private HttpClient clientFor(String apiUrl) {
+        return apiUrl.regionMatches(true, 0, "https:", 0, 6) ? http2Client : http1Client;
+    }
+
+    private long beginCall() {
+        inFlightCalls.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    private void endCall(long start, boolean success) {
+        long latency = System.nanoTime() - start;
+        inFlightCalls.decrementAndGet();
+        totalCalls.incrementAndGet();
+        if (!success) {
+            failedCalls.incrementAndGet();
+        }
+        totalLatencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        lastLatencyNanos = latency;
+    }
+
+    /**
+     * 一次非阻塞调用：依次等待节点的并发许可和连接许可，再发出请求。
+     * 结果被取消时取消当前所处的阶段，已获得的许可在该阶段结束时归还
+     */
+    private final class AsyncCall {
+        private final String apiUrl;
+        private final Object requestBody;
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        // 当前所处的阶段：等待并发许可、等待连接许可或请求
+        private volatile CompletableFuture<?> stage;
+
+        AsyncCall(String apiUrl, Object requestBody) {
+            this.apiUrl = apiUrl;
+            this.requestBody = requestBody;
+            this.limiter = limiterFor(apiUrl);
+        }
+
+        CompletableFuture<byte[]> start() {
+            result.whenComplete((body, error) -> {
+                CompletableFuture<?> current = stage;
+                if (result.isCancelled() && current != null) {
+                    current.cancel(true);
+                }
+            });
+            track(limiter.acquireAsync(hedgeScheduler)).whenComplete((ignored, error) -> {
+                if (error == null) {
+                    awaitConnection();
+                }
+            });
+            return result;
+        }
+
+        private void awaitConnection() {
+            if (result.isCancelled()) {
+                limiter.release(0, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+                return;
+            }
+            track(acquireConnection()).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    limiter.release(0, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+                } else if (result.isCancelled()) {
+                    releaseConnection();
+                    limiter.release(0, AdaptiveConcurrencyLimiter.Outcome.IGNORE);
+                } else {
+                    send();
+                }
+            });
+        }
+
+        private void send() {
+            ChainEndpoint endpoint = endpointFor(apiUrl);
+            endpoint.begin();
+            long start = System.nanoTime();
+            sendAsync(apiUrl, requestBody, this::track).whenComplete((body, error) -> {
+                releaseConnection();
+                finishCall(limiter, endpoint, System.nanoTime() - start, error);
+                if (error == null) {
+                    result.complete(body);
+                } else {
+                    result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+                }
+            });
+        }
+
+        private <T> CompletableFuture<T> track(CompletableFuture<T> next) {
+            stage = next;
+            if (result.isCancelled()) {
+                next.cancel(true);
+            }
+            return next;
+        }
+    }
+
+    /**
+     * 一次多节点调用：首个请求发往所选节点，对冲或失败切换时再向另一个节点发出一个请求；
+     * 调用完成后取消仍在进行的请求，归还它占用的节点和并发许可
+     */
+    private final class MultiEndpointCall {
+        private final List<String> apiUrls;
+        private final Object requestBody;
+        private final String primary;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private final List<CompletableFuture<byte[]>> attempts = new ArrayList<>(2);
+        private int pending;
+        private boolean extraAttempted;
+
+        MultiEndpointCall(List<String> apiUrls, Object requestBody) {
+            this.apiUrls = apiUrls;
+            this.requestBody = requestBody;
+            this.primary = selectEndpoint(apiUrls, null);
+            result.whenComplete((body, error) -> cancelAttempts());
+        }
+
+        private void cancelAttempts() {
+            List<CompletableFuture<byte[]>> running;
+            synchronized (this) {
+                running = new ArrayList<>(attempts);
+            }
+            running.forEach(attempt -> attempt.cancel(true));
+        }
+
+        void start() {
+            synchronized (this) {
+                pending++;
+            }
+            send(primary);
+        }
+
+        /**
+         * 调用尚未完成且还没有发出过额外请求时，向另一个节点发出请求
+         */
+        boolean tryExtraAttempt() {
+            synchronized (this) {
+                if (result.isDone() || extraAttempted) {
+                    return false;
+                }
+                extraAttempted = true;
+                pending++;
+            }
+            send(selectEndpoint(apiUrls, primary));
+            return true;
+        }
+
+        private void send(String apiUrl) {
+            CompletableFuture<byte[]> attempt = postAsync(apiUrl, requestBody);
+            synchronized (this) {
+                attempts.add(attempt);
+            }
+            if (result.isDone()) {
+                attempt.cancel(true);
+            }
+            attempt.whenComplete((body, error) -> {
+                if (error == null) {
+                    result.complete(body);
+                    return;
+                }
+                boolean failover;
+                synchronized (this) {
+                    pending--;
+                    if (pending > 0 || result.isDone()) {
+                        return;
+                    }
+                    // 没有其他在途请求：还没有切换过节点时切换一次，否则返回错误
+                    failover = !extraAttempted;
+                    if (failover) {
+                        extraAttempted = true;
+                        pending++;
+                    }
+                }
+                if (failover) {
+                    send(selectEndpoint(apiUrls, primary));
+                } else {
+                    result.completeExceptionally(error);
+                }
+            });
+        }
+    }
+}
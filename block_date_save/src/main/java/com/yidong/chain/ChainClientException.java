@@ -0,0 +1,44 @@
+package com.yidong.chain;
+
+/**
+ * 链上 API 调用失败。statusCode 为节点返回的 HTTP 状态码，网络错误或超时时为 0
+ */
+public class ChainClientException extends RuntimeException {
+
+    private final int statusCode;
+    private final long retryAfterMs;
+
+    public ChainClientException(int statusCode, String message) {
+        this(statusCode, message, 0);
+    }
+
+    public ChainClientException(int statusCode, String message, long retryAfterMs) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public ChainClientException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = 0;
+        this.retryAfterMs = 0;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 节点通过 Retry-After 要求的等待时间，没有时为 0
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /**
+     * 是否表示节点过载：429、5xx 或网络错误/超时
+     */
+    public boolean isOverload() {
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -0,0 +1,128 @@
+package com.yidong.chain;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 单个节点的健康状态：延迟统计、连续失败次数和剔除时间。
+ * <p>
+ * 连续失败达到阈值后在冷却时间内不再被选中；冷却结束后重新参与选择，
+ * 再次失败会立即重新剔除，成功一次即恢复正常。
+ */
+public class ChainEndpoint {
+
+    private static final double LATENCY_EWMA_ALPHA = 0.2;
+    private static final int LATENCY_SAMPLES = 128;
+
+    private final String url;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // 最近的延迟样本（环形缓冲区），用于计算对冲请求的延迟分位数
+    private final long[] samples = new long[LATENCY_SAMPLES];
+    private int sampleCount;
+    private int sampleIndex;
+
+    private double ewmaLatencyNanos;
+    private int consecutiveFailures;
+    private long ejectedUntilNanos;
+    private long totalCalls;
+    private long failedCalls;
+    private long ejections;
+
+    public ChainEndpoint(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    void begin() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * 记录一次调用结果
+     * @param latencyNanos 调用耗时
+     * @param success 是否成功
+     * @param ejectAfterFailures 连续失败多少次后剔除
+     * @param ejectCooldownMillis 剔除后的冷却时间
+     */
+    synchronized void end(long latencyNanos, boolean success, int ejectAfterFailures, long ejectCooldownMillis) {
+        inFlight.decrementAndGet();
+        totalCalls++;
+        if (success) {
+            consecutiveFailures = 0;
+            ejectedUntilNanos = 0;
+            ewmaLatencyNanos = ewmaLatencyNanos == 0
+                ? latencyNanos
+                : ewmaLatencyNanos + LATENCY_EWMA_ALPHA * (latencyNanos - ewmaLatencyNanos);
+            samples[sampleIndex] = latencyNanos;
+            sampleIndex = (sampleIndex + 1) % LATENCY_SAMPLES;
+            sampleCount = Math.min(sampleCount + 1, LATENCY_SAMPLES);
+            return;
+        }
+        failedCalls++;
+        consecutiveFailures++;
+        if (consecutiveFailures >= ejectAfterFailures) {
+            ejectedUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ejectCooldownMillis);
+            ejections++;
+        }
+    }
+
+    /**
+     * 调用被取消（对冲中落后的请求），不计入延迟和失败
+     */
+    void cancelled() {
+        inFlight.decrementAndGet();
+    }
+
+    synchronized boolean isAvailable(long now) {
+        return ejectedUntilNanos == 0 || now - ejectedUntilNanos >= 0;
+    }
+
+    synchronized long getEjectedUntilNanos() {
+        return ejectedUntilNanos;
+    }
+
+    /**
+     * 选择节点时的代价：平均延迟 ×（在途请求数 + 1），没有样本的节点代价为 0，会被优先尝试
+     */
+    synchronized double cost() {
+        return ewmaLatencyNanos * (inFlight.get() + 1);
+    }
+
+    /**
+     * 最近成功调用延迟的分位数，样本不足时返回 -1
+     */
+    synchronized long latencyPercentileNanos(double percentile) {
+        if (sampleCount < 10) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, sampleCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(sampleCount - 1, Math.ceil(percentile * sampleCount) - 1);
+        return sorted[Math.max(0, index)];
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public synchronized double getAvgLatencyMs() {
+        return ewmaLatencyNanos / 1_000_000.0;
+    }
+
+    public synchronized long getTotalCalls() {
+        return totalCalls;
+    }
+
+    public synchronized long getFailedCalls() {
+        return failedCalls;
+    }
+
+    public synchronized long getEjections() {
+        return ejections;
+    }
+}
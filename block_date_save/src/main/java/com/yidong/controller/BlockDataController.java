@@ -1,42 +1,85 @@
 package com.yidong.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.chain.ChainClient;
+import com.yidong.job.Job;
 import com.yidong.model.ApiResponse;
+import com.yidong.model.ChainClientStats;
 import com.yidong.model.BlockDataRequest;
+import com.yidong.model.ExportFormat;
+import com.yidong.model.FollowStatus;
 import com.yidong.model.ProgressStatus;
-import com.yidong.model.VerificationResult;
+import com.yidong.model.VerificationMode;
 import com.yidong.model.VerificationProgress;
 import com.yidong.service.BlockDataService;
+import com.yidong.service.BlockStoreService;
 import com.yidong.service.BlockVerificationService;
+import com.yidong.service.ChainFollowService;
+import com.yidong.service.ProgressStreamer;
+import com.yidong.storage.ExportWriter;
+import com.yidong.storage.VerificationResultStore;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.Map;
 import java.util.List;
 import java.util.HashMap;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.nio.file.Files;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
 
 @RestController
 @RequestMapping("/api/blocks")
 @CrossOrigin(origins = "http://localhost:5173") // Vite默认端口
 public class BlockDataController {
 
+    /** 每页验证结果的数量上限 */
+    private static final int MAX_RESULTS_PER_PAGE = 10000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     @Autowired
     private BlockDataService blockDataService;
 
     @Autowired
     private BlockVerificationService blockVerificationService;
 
+    @Autowired
+    private ChainFollowService chainFollowService;
+
+    @Autowired
+    private BlockStoreService blockStoreService;
+
+    @Autowired
+    private ChainClient chainClient;
+
+    @Autowired
+    private ProgressStreamer progressStreamer;
+
     @PostMapping("/fetch")
     public ResponseEntity<?> fetchBlockData(@RequestBody BlockDataRequest request) {
         try {
-            blockDataService.fetchAndSaveBlocks(
-                request.getApiUrl(),
+            List<String> apiUrls = parseApiUrls(request.getApiUrl(), request.getApiUrls());
+            if (apiUrls.isEmpty()) {
+                throw new IllegalArgumentException("需要提供 apiUrl");
+            }
+            Job job = blockDataService.startFetch(
+                apiUrls,
                 request.getStartBlock(),
                 request.getEndBlock()
             );
-            return ResponseEntity.ok(new ApiResponse(true, "数据获取任务已开始"));
+            return ResponseEntity.ok(jobStarted(job, "数据获取任务已开始"));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                 .body(new ApiResponse(false, "数据获取失败：" + e.getMessage()));
@@ -48,6 +91,120 @@ public class BlockDataController {
         return ResponseEntity.ok(blockDataService.getProgress());
     }
 
+    /**
+     * 以 Server-Sent Events 推送获取进度，任务结束后关闭
+     */
+    @GetMapping(value = "/progress/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamProgress() {
+        return progressStreamer.stream(blockDataService::getProgress, blockDataService::isProcessing);
+    }
+
+    /**
+     * 开始跟随链上最新区块。startBlock 为 0 时从上次跟随写入的区块之后继续，没有记录时从当前不可逆区块之后开始；
+     * 通过 /api/jobs/{id}/cancel 停止
+     */
+    @PostMapping("/follow")
+    public ResponseEntity<?> startFollow(@RequestBody BlockDataRequest request) {
+        try {
+            List<String> apiUrls = parseApiUrls(request.getApiUrl(), request.getApiUrls());
+            if (apiUrls.isEmpty()) {
+                throw new IllegalArgumentException("需要提供 apiUrl");
+            }
+            Job job = chainFollowService.startFollow(apiUrls,
+                request.getStartBlock() > 0 ? request.getStartBlock() : null);
+            return ResponseEntity.ok(jobStarted(job, "跟随任务已开始"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                .body(new ApiResponse(false, "跟随失败：" + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/follow/status")
+    public ResponseEntity<FollowStatus> getFollowStatus() {
+        return ResponseEntity.ok(chainFollowService.getStatus());
+    }
+
+    /**
+     * 以 Server-Sent Events 推送跟随状态，任务结束后关闭
+     */
+    @GetMapping(value = "/follow/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamFollowStatus() {
+        return progressStreamer.stream(chainFollowService::getStatus, chainFollowService::isFollowing);
+    }
+
+    /**
+     * 按区块号读取已保存的区块，返回节点响应的原始 JSON。只查找已建立索引的分段文件
+     */
+    @GetMapping("/{blockNum:\\d+}")
+    public ResponseEntity<?> getBlock(@PathVariable long blockNum) {
+        try {
+            byte[] block = blockStoreService.getBlock(blockNum);
+            if (block == null) {
+                return ResponseEntity.status(404)
+                    .body(new ApiResponse(false, "区块 " + blockNum + " 不存在或所在文件尚未建立索引"));
+            }
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(block);
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError()
+                .body(new ApiResponse(false, "读取区块失败: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 按 {"blocks":[...]} 格式流式返回区块范围 from-to（包含两端）内已保存的区块，不存在的区块被跳过
+     */
+    @GetMapping("/range")
+    public ResponseEntity<StreamingResponseBody> getBlockRange(@RequestParam("from") long from,
+                                                               @RequestParam("to") long to) {
+        if (to < from) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "结束区块不能小于起始区块");
+        }
+        StreamingResponseBody body = out -> blockStoreService.writeRange(from, to, Channels.newChannel(out));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * 流式导出区块范围 from-to（包含两端）内已保存的区块：ndjson 每行一个区块的原始 JSON，csv 只有区块头字段；
+     * gzip 为 true 时压缩
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportBlocks(
+        @RequestParam("from") long from,
+        @RequestParam("to") long to,
+        @RequestParam(value = "format", defaultValue = "ndjson") String format,
+        @RequestParam(value = "gzip", defaultValue = "false") boolean gzip
+    ) {
+        if (to < from) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "结束区块不能小于起始区块");
+        }
+        ExportFormat exportFormat = parseExportFormat(format);
+        StreamingResponseBody body = out -> {
+            ExportWriter writer = ExportWriter.blocks(out, exportFormat, gzip, objectMapper);
+            blockStoreService.exportRange(from, to, writer);
+            writer.finish();
+        };
+        return exportResponse("blocks_" + from + "_" + to, exportFormat, gzip, body);
+    }
+
+    /**
+     * 为输出目录中没有索引的区块文件（例如之前获取的 blocks_*.json）建立索引；rebuild 为 true 时全部重建
+     */
+    @PostMapping("/index")
+    public ResponseEntity<?> startIndex(@RequestParam(value = "rebuild", defaultValue = "false") boolean rebuild) {
+        try {
+            Job job = blockStoreService.startIndex(rebuild);
+            return ResponseEntity.ok(jobStarted(job, "索引任务已开始"));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest()
+                .body(new ApiResponse(false, "建立索引失败：" + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/chain/stats")
+    public ResponseEntity<ChainClientStats> getChainClientStats() {
+        return ResponseEntity.ok(chainClient.getStats());
+    }
+
     @PostMapping("/validate")
     public ResponseEntity<?> validateApi(@RequestBody BlockDataRequest request) {
         Map<String, Object> result = blockDataService.validateApi(request.getApiUrl());
@@ -57,12 +214,28 @@ public class BlockDataController {
     @PostMapping("/verify")
     public ResponseEntity<?> verifyBlocks(
         @RequestParam("file") MultipartFile file,
-        @RequestParam("apiUrl") String apiUrl
+        @RequestParam(value = "apiUrl", required = false) List<String> apiUrl,
+        @RequestParam(value = "mode", defaultValue = "online") String mode,
+        @RequestParam(value = "deep", defaultValue = "false") boolean deep
     ) {
         try {
-            String content = new String(file.getBytes(), StandardCharsets.UTF_8);
-            blockVerificationService.startVerification(content, apiUrl);
-            return ResponseEntity.ok(new ApiResponse(true, "验证任务已开始"));
+            VerificationMode verificationMode = VerificationMode.valueOf(mode.toUpperCase());
+            List<String> chainApiUrls = parseApiUrls(null, apiUrl);
+            if (verificationMode != VerificationMode.OFFLINE && chainApiUrls.isEmpty()) {
+                throw new IllegalArgumentException("在线验证和审计验证需要提供 apiUrl");
+            }
+            
+            // 上传内容直接保存到临时文件，由验证服务增量解析
+            Path tempFile = Files.createTempFile("verify-", ".json");
+            Job job;
+            try {
+                file.transferTo(tempFile);
+                job = blockVerificationService.startVerification(tempFile, chainApiUrls, verificationMode, deep);
+            } catch (Exception e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+            return ResponseEntity.ok(jobStarted(job, "验证任务已开始"));
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                 .body(new ApiResponse(false, "验证失败: " + e.getMessage()));
@@ -74,17 +247,116 @@ public class BlockDataController {
         return ResponseEntity.ok(blockVerificationService.getVerificationProgress());
     }
 
+    /**
+     * 以 Server-Sent Events 推送验证进度和 after 游标之后新增的结果，任务结束后关闭
+     */
+    @GetMapping(value = "/verify/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamVerification(@RequestParam(value = "after", defaultValue = "0") int after) {
+        return progressStreamer.stream(
+            blockVerificationService::getVerificationProgress,
+            blockVerificationService::isVerifying,
+            blockVerificationService::getVerificationResults,
+            after
+        );
+    }
+
+    /**
+     * 分页获取验证结果。从 after 游标开始最多返回 limit 个，nextCursor 用于获取下一页；
+     * failuresOnly 只返回未通过的区块，fromBlock/toBlock 限定区块号范围
+     */
     @GetMapping("/verify/results")
-    public ResponseEntity<?> getVerificationResults() {
+    public ResponseEntity<?> getVerificationResults(
+        @RequestParam(value = "after", defaultValue = "0") int after,
+        @RequestParam(value = "limit", defaultValue = "1000") int limit,
+        @RequestParam(value = "failuresOnly", defaultValue = "false") boolean failuresOnly,
+        @RequestParam(value = "fromBlock", required = false) Long fromBlock,
+        @RequestParam(value = "toBlock", required = false) Long toBlock
+    ) {
         try {
-            List<VerificationResult> results = blockVerificationService.getVerificationResults();
+            VerificationResultStore.Page page = blockVerificationService.queryVerificationResults(
+                after, Math.min(Math.max(0, limit), MAX_RESULTS_PER_PAGE), failuresOnly, fromBlock, toBlock);
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("results", results);
+            response.put("results", page.getResults());
+            response.put("nextCursor", page.getNextCursor());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             return ResponseEntity.badRequest()
                 .body(new ApiResponse(false, "获取验证结果失败: " + e.getMessage()));
         }
     }
+
+    /**
+     * 流式导出最近一个验证任务的结果，过滤条件与 /verify/results 相同；format 为 ndjson 或 csv，gzip 为 true 时压缩。
+     * 结果按页从结果存储读取后直接写入响应，服务端内存占用与导出的数量无关
+     */
+    @GetMapping("/verify/results/export")
+    public ResponseEntity<StreamingResponseBody> exportVerificationResults(
+        @RequestParam(value = "format", defaultValue = "ndjson") String format,
+        @RequestParam(value = "failuresOnly", defaultValue = "false") boolean failuresOnly,
+        @RequestParam(value = "fromBlock", required = false) Long fromBlock,
+        @RequestParam(value = "toBlock", required = false) Long toBlock,
+        @RequestParam(value = "gzip", defaultValue = "false") boolean gzip
+    ) {
+        ExportFormat exportFormat = parseExportFormat(format);
+        StreamingResponseBody body = out -> {
+            ExportWriter writer = ExportWriter.results(out, exportFormat, gzip, objectMapper);
+            blockVerificationService.exportVerificationResults(writer, failuresOnly, fromBlock, toBlock);
+            writer.finish();
+        };
+        return exportResponse("verification-results", exportFormat, gzip, body);
+    }
+
+    private static ExportFormat parseExportFormat(String format) {
+        try {
+            return ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "不支持的导出格式: " + format);
+        }
+    }
+
+    /**
+     * 以附件形式返回导出内容，压缩时文件名加 .gz
+     */
+    private static ResponseEntity<StreamingResponseBody> exportResponse(String name, ExportFormat format, boolean gzip,
+                                                                        StreamingResponseBody body) {
+        String fileName = name + "." + format.getExtension() + (gzip ? ".gz" : "");
+        MediaType contentType = gzip
+            ? MediaType.parseMediaType("application/gzip")
+            : MediaType.parseMediaType(format.getContentType() + ";charset=UTF-8");
+        return ResponseEntity.ok()
+            .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+            .contentType(contentType)
+            .body(body);
+    }
+
+    private static Map<String, Object> jobStarted(Job job, String message) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", message);
+        response.put("jobId", job.getId());
+        return response;
+    }
+
+    /**
+     * 合并节点地址：支持多个参数，也支持用逗号分隔的多个地址，去掉空白和重复项
+     */
+    private static List<String> parseApiUrls(String apiUrl, List<String> apiUrls) {
+        Set<String> result = new LinkedHashSet<>();
+        List<String> values = new ArrayList<>();
+        if (apiUrl != null) {
+            values.add(apiUrl);
+        }
+        if (apiUrls != null) {
+            values.addAll(apiUrls);
+        }
+        for (String value : values) {
+            for (String url : value.split(",")) {
+                if (!url.isBlank()) {
+                    result.add(url.trim());
+                }
+            }
+        }
+        return new ArrayList<>(result);
+    }
 }
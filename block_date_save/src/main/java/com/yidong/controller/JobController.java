@@ -0,0 +1,120 @@
+package com.yidong.controller;
+
+import com.yidong.job.Job;
+import com.yidong.job.JobScheduler;
+import com.yidong.model.ApiResponse;
+import com.yidong.model.JobInfo;
+import com.yidong.service.ProgressStreamer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 按任务 ID 查询、取消、暂停和恢复获取与验证任务
+ */
+@RestController
+@RequestMapping("/api/jobs")
+@CrossOrigin(origins = "http://localhost:5173")
+public class JobController {
+
+    @Autowired
+    private JobScheduler jobScheduler;
+
+    @Autowired
+    private ProgressStreamer progressStreamer;
+
+    @GetMapping
+    public ResponseEntity<List<JobInfo>> listJobs() {
+        return ResponseEntity.ok(jobScheduler.list().stream().map(this::toInfo).collect(Collectors.toList()));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<JobInfo> getJob(@PathVariable String id) {
+        return ResponseEntity.ok(toInfo(findJob(id)));
+    }
+
+    /**
+     * 任务游标之后的结果，只有验证任务有结果
+     */
+    @GetMapping("/{id}/results")
+    public ResponseEntity<?> getResults(
+        @PathVariable String id,
+        @RequestParam(value = "after", defaultValue = "0") int after,
+        @RequestParam(value = "limit", defaultValue = "1000") int limit
+    ) {
+        List<?> results = findJob(id).getWork().resultsAfter(after, limit);
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("results", results);
+        response.put("nextCursor", Math.max(0, after) + results.size());
+        return ResponseEntity.ok(response);
+    }
+
+    /**
+     * 以 Server-Sent Events 推送任务状态和新增结果，任务结束后关闭
+     */
+    @GetMapping(value = "/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamJob(@PathVariable String id,
+                                @RequestParam(value = "after", defaultValue = "0") int after) {
+        Job job = findJob(id);
+        return progressStreamer.stream(
+            () -> toInfo(job),
+            () -> !job.getStatus().isFinished(),
+            (cursor, limit) -> job.getWork().resultsAfter(cursor, limit),
+            after
+        );
+    }
+
+    @PostMapping("/{id}/cancel")
+    public ResponseEntity<ApiResponse> cancelJob(@PathVariable String id) {
+        return control(jobScheduler.cancel(id), "任务已取消");
+    }
+
+    @PostMapping("/{id}/pause")
+    public ResponseEntity<ApiResponse> pauseJob(@PathVariable String id) {
+        return control(jobScheduler.pause(id), "任务已暂停");
+    }
+
+    @PostMapping("/{id}/resume")
+    public ResponseEntity<ApiResponse> resumeJob(@PathVariable String id) {
+        return control(jobScheduler.resume(id), "任务已恢复");
+    }
+
+    private ResponseEntity<ApiResponse> control(boolean changed, String message) {
+        if (!changed) {
+            return ResponseEntity.badRequest().body(new ApiResponse(false, "任务不存在或已结束"));
+        }
+        return ResponseEntity.ok(new ApiResponse(true, message));
+    }
+
+    private Job findJob(String id) {
+        Job job = jobScheduler.get(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "任务不存在: " + id);
+        }
+        return job;
+    }
+
+    private JobInfo toInfo(Job job) {
+        return new JobInfo(
+            job.getId(),
+            job.getType(),
+            job.getStatus(),
+            job.getDescription(),
+            job.getCreatedAt(),
+            job.getStartedAt(),
+            job.getFinishedAt(),
+            job.getError(),
+            job.getWork().getProgress()
+        );
+    }
+}
@@ -0,0 +1,369 @@
+package com.yidong.crypto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按 EOSIO 的序列化规则在本地重新计算区块 id 和 transaction_mroot，无需访问节点。
+ * <p>
+ * 区块 id = sha256(序列化的区块头)，并用大端序的区块号替换前 4 个字节；
+ * transaction_mroot = 各交易回执摘要的 merkle 根。
+ */
+public final class EosBlockHasher {
+
+    /** 区块时间戳的起点 2000-01-01T00:00:00Z，单位毫秒 */
+    private static final long BLOCK_TIMESTAMP_EPOCH_MS = 946684800000L;
+    private static final long BLOCK_INTERVAL_MS = 500;
+    private static final String NAME_CHARS = ".12345abcdefghijklmnopqrstuvwxyz";
+    private static final String BASE58_CHARS = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private EosBlockHasher() {
+    }
+
+    /**
+     * 根据区块头字段计算区块 id
+     */
+    public static byte[] computeBlockId(JsonNode block) {
+        Writer out = new Writer();
+        out.uint32(blockTimestampSlot(block.get("timestamp").asText()));
+        out.uint64(encodeName(block.get("producer").asText()));
+        out.uint16(block.get("confirmed").asInt());
+        out.bytes(fromHex(block.get("previous").asText()));
+        out.bytes(fromHex(block.get("transaction_mroot").asText()));
+        out.bytes(fromHex(block.get("action_mroot").asText()));
+        out.uint32(block.get("schedule_version").asLong());
+        writeNewProducers(out, block.get("new_producers"));
+        writeExtensions(out, block.get("header_extensions"));
+
+        byte[] id = sha256(out.toByteArray());
+        long blockNum = block.get("block_num").asLong();
+        id[0] = (byte) (blockNum >>> 24);
+        id[1] = (byte) (blockNum >>> 16);
+        id[2] = (byte) (blockNum >>> 8);
+        id[3] = (byte) blockNum;
+        return id;
+    }
+
+    /**
+     * 根据交易回执计算 transaction_mroot
+     */
+    public static byte[] computeTransactionMroot(JsonNode transactions) {
+        List<byte[]> digests = new ArrayList<>();
+        if (transactions != null) {
+            for (JsonNode receipt : transactions) {
+                digests.add(receiptDigest(receipt));
+            }
+        }
+        return merkle(digests);
+    }
+
+    /**
+     * EOSIO 的 merkle 根：奇数个节点时复制最后一个，左右节点分别清除/设置首字节最高位后拼接哈希
+     */
+    public static byte[] merkle(List<byte[]> digests) {
+        if (digests.isEmpty()) {
+            return new byte[32];
+        }
+        List<byte[]> level = new ArrayList<>(digests);
+        while (level.size() > 1) {
+            if (level.size() % 2 != 0) {
+                level.add(level.get(level.size() - 1));
+            }
+            List<byte[]> next = new ArrayList<>(level.size() / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                byte[] pair = new byte[64];
+                System.arraycopy(level.get(i), 0, pair, 0, 32);
+                System.arraycopy(level.get(i + 1), 0, pair, 32, 32);
+                pair[0] &= 0x7f;
+                pair[32] |= (byte) 0x80;
+                next.add(sha256(pair));
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    public static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("无效的十六进制字符串: " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ((Character.digit(hex.charAt(i * 2), 16) << 4)
+                | Character.digit(hex.charAt(i * 2 + 1), 16));
+        }
+        return bytes;
+    }
+
+    public static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] receiptDigest(JsonNode receipt) {
+        Writer out = new Writer();
+        out.uint8(transactionStatus(receipt.get("status").asText()));
+        out.uint32(receipt.get("cpu_usage_us").asLong());
+        out.varuint32(receipt.get("net_usage_words").asLong());
+
+        JsonNode trx = receipt.get("trx");
+        if (trx.isTextual()) {
+            // 延迟交易等只包含交易 id
+            out.bytes(fromHex(trx.asText()));
+        } else {
+            out.bytes(packedTransactionDigest(trx));
+        }
+        return sha256(out.toByteArray());
+    }
+
+    private static byte[] packedTransactionDigest(JsonNode trx) {
+        // 可裁剪部分：签名和上下文无关数据
+        Writer prunable = new Writer();
+        JsonNode signatures = trx.get("signatures");
+        prunable.varuint32(signatures.size());
+        for (JsonNode signature : signatures) {
+            prunable.bytes(decodeSignature(signature.asText()));
+        }
+        prunable.bytesWithLength(fromHex(trx.get("packed_context_free_data").asText()));
+
+        Writer out = new Writer();
+        out.uint8(compressionType(trx.get("compression").asText()));
+        out.bytesWithLength(fromHex(trx.get("packed_trx").asText()));
+        out.bytes(sha256(prunable.toByteArray()));
+        return sha256(out.toByteArray());
+    }
+
+    private static void writeNewProducers(Writer out, JsonNode newProducers) {
+        if (newProducers == null || newProducers.isNull()) {
+            out.uint8(0);
+            return;
+        }
+        out.uint8(1);
+        out.uint32(newProducers.get("version").asLong());
+        JsonNode producers = newProducers.get("producers");
+        out.varuint32(producers.size());
+        for (JsonNode producer : producers) {
+            out.uint64(encodeName(producer.get("producer_name").asText()));
+            out.bytes(decodePublicKey(producer.get("block_signing_key").asText()));
+        }
+    }
+
+    private static void writeExtensions(Writer out, JsonNode extensions) {
+        if (extensions == null || extensions.isNull()) {
+            out.varuint32(0);
+            return;
+        }
+        out.varuint32(extensions.size());
+        for (JsonNode extension : extensions) {
+            out.uint16(extension.get(0).asInt());
+            out.bytesWithLength(fromHex(extension.get(1).asText()));
+        }
+    }
+
+    static long blockTimestampSlot(String timestamp) {
+        long millis = LocalDateTime.parse(timestamp).toInstant(ZoneOffset.UTC).toEpochMilli();
+        return (millis - BLOCK_TIMESTAMP_EPOCH_MS) / BLOCK_INTERVAL_MS;
+    }
+
+    /**
+     * 把账户名编码为 64 位整数。
+     * 与节点相同，只接受规范形式：最多 13 个字符，第 13 个字符只能是 .1-5a-j，不以 . 结尾，
+     * 否则不同的文本（例如 eosio 和 eosio.）会编码为同一个值
+     */
+    public static long encodeName(CharSequence name) {
+        int length = name.length();
+        if (length > 13 || length > 0 && name.charAt(length - 1) == '.') {
+            throw new IllegalArgumentException("无效的账户名: " + name);
+        }
+        long value = 0;
+        for (int i = 0; i < 13; i++) {
+            long c = i < length ? NAME_CHARS.indexOf(name.charAt(i)) : 0;
+            if (c < 0 || i == 12 && c > 0x0f) {
+                throw new IllegalArgumentException("无效的账户名: " + name);
+            }
+            if (i < 12) {
+                value |= (c & 0x1f) << (64 - 5 * (i + 1));
+            } else {
+                value |= c & 0x0f;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * 把 64 位整数解码为账户名，{@link #encodeName} 的逆运算
+     */
+    public static String decodeName(long value) {
+        char[] chars = new char[13];
+        long remaining = value;
+        for (int i = 0; i < 13; i++) {
+            int c = (int) (i == 0 ? remaining & 0x0f : remaining & 0x1f);
+            chars[12 - i] = NAME_CHARS.charAt(c);
+            remaining >>>= i == 0 ? 4 : 5;
+        }
+        int length = chars.length;
+        while (length > 0 && chars[length - 1] == '.') {
+            length--;
+        }
+        return new String(chars, 0, length);
+    }
+
+    private static int transactionStatus(String status) {
+        switch (status) {
+            case "executed": return 0;
+            case "soft_fail": return 1;
+            case "hard_fail": return 2;
+            case "delayed": return 3;
+            case "expired": return 4;
+            default: throw new IllegalArgumentException("未知的交易状态: " + status);
+        }
+    }
+
+    private static int compressionType(String compression) {
+        switch (compression) {
+            case "none": return 0;
+            case "zlib": return 1;
+            default: throw new IllegalArgumentException("未知的压缩类型: " + compression);
+        }
+    }
+
+    /**
+     * SIG_K1_/SIG_R1_ 签名：类型字节 + 65 字节签名数据（去掉 4 字节校验和）
+     */
+    private static byte[] decodeSignature(String signature) {
+        int type;
+        if (signature.startsWith("SIG_K1_")) {
+            type = 0;
+        } else if (signature.startsWith("SIG_R1_")) {
+            type = 1;
+        } else {
+            throw new IllegalArgumentException("不支持的签名格式: " + signature);
+        }
+        byte[] decoded = base58Decode(signature.substring(7));
+        byte[] packed = new byte[66];
+        packed[0] = (byte) type;
+        System.arraycopy(decoded, 0, packed, 1, 65);
+        return packed;
+    }
+
+    /**
+     * EOS.../PUB_K1_/PUB_R1_ 公钥：类型字节 + 33 字节压缩公钥
+     */
+    private static byte[] decodePublicKey(String key) {
+        int type;
+        String data;
+        if (key.startsWith("PUB_K1_")) {
+            type = 0;
+            data = key.substring(7);
+        } else if (key.startsWith("PUB_R1_")) {
+            type = 1;
+            data = key.substring(7);
+        } else if (key.startsWith("EOS")) {
+            type = 0;
+            data = key.substring(3);
+        } else {
+            throw new IllegalArgumentException("不支持的公钥格式: " + key);
+        }
+        byte[] decoded = base58Decode(data);
+        byte[] packed = new byte[34];
+        packed[0] = (byte) type;
+        System.arraycopy(decoded, 0, packed, 1, 33);
+        return packed;
+    }
+
+    private static byte[] base58Decode(String input) {
+        BigInteger value = BigInteger.ZERO;
+        BigInteger base = BigInteger.valueOf(58);
+        for (int i = 0; i < input.length(); i++) {
+            int digit = BASE58_CHARS.indexOf(input.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("无效的 base58 字符: " + input.charAt(i));
+            }
+            value = value.multiply(base).add(BigInteger.valueOf(digit));
+        }
+        byte[] bytes = value.toByteArray();
+        // 去掉 BigInteger 的符号字节
+        int start = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        int leadingZeros = 0;
+        while (leadingZeros < input.length() && input.charAt(leadingZeros) == '1') {
+            leadingZeros++;
+        }
+        byte[] result = new byte[leadingZeros + bytes.length - start];
+        System.arraycopy(bytes, start, result, leadingZeros, bytes.length - start);
+        return result;
+    }
+
+    /**
+     * 按 fc::raw 规则（小端序）写入的字节缓冲区
+     */
+    private static final class Writer {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+        private final ByteBuffer scratch = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+
+        void uint8(int value) {
+            buffer.write(value);
+        }
+
+        void uint16(int value) {
+            scratch.clear();
+            scratch.putShort((short) value);
+            buffer.write(scratch.array(), 0, 2);
+        }
+
+        void uint32(long value) {
+            scratch.clear();
+            scratch.putInt((int) value);
+            buffer.write(scratch.array(), 0, 4);
+        }
+
+        void uint64(long value) {
+            scratch.clear();
+            scratch.putLong(value);
+            buffer.write(scratch.array(), 0, 8);
+        }
+
+        void varuint32(long value) {
+            do {
+                int b = (int) (value & 0x7f);
+                value >>>= 7;
+                buffer.write(value != 0 ? b | 0x80 : b);
+            } while (value != 0);
+        }
+
+        void bytes(byte[] bytes) {
+            buffer.write(bytes, 0, bytes.length);
+        }
+
+        void bytesWithLength(byte[] bytes) {
+            varuint32(bytes.length);
+            bytes(bytes);
+        }
+
+        byte[] toByteArray() {
+            return buffer.toByteArray();
+        }
+    }
+}
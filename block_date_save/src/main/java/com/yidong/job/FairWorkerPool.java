@@ -0,0 +1,121 @@
+package com.yidong.job;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 所有任务共享的有界线程池。
+ * <p>
+ * 每个任务有自己的等待队列，工作线程按轮询方式每次从一个任务中取一个工作单元，
+ * 因此一个提交了大量工作单元的任务不会挤占其他任务；暂停的任务不参与派发。
+ */
+class FairWorkerPool {
+
+    private final Object lock = new Object();
+    // 有待执行工作单元且未暂停的任务，按轮询顺序排列
+    private final ArrayDeque<Job> ready = new ArrayDeque<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    FairWorkerPool(int threads) {
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::work, "job-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    <T> Future<T> submit(Job job, Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<>(callable);
+        synchronized (lock) {
+            if (job.isCancelled()) {
+                task.cancel(false);
+                return task;
+            }
+            job.queuedTasks.addLast(task);
+            schedule(job);
+            if (job.scheduled) {
+                // 每个工作单元唤醒一个空闲线程
+                lock.notify();
+            }
+        }
+        return task;
+    }
+
+    /**
+     * 恢复派发任务的工作单元
+     */
+    void resume(Job job) {
+        synchronized (lock) {
+            schedule(job);
+            if (job.scheduled) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 停止派发任务的工作单元，已在执行的不受影响
+     */
+    void pause(Job job) {
+        synchronized (lock) {
+            if (job.scheduled) {
+                ready.remove(job);
+                job.scheduled = false;
+            }
+        }
+    }
+
+    /**
+     * 取消任务所有尚未执行的工作单元
+     */
+    void cancel(Job job) {
+        List<FutureTask<?>> cancelled;
+        synchronized (lock) {
+            pause(job);
+            cancelled = new ArrayList<>(job.queuedTasks);
+            job.queuedTasks.clear();
+        }
+        for (FutureTask<?> task : cancelled) {
+            task.cancel(false);
+        }
+    }
+
+    int getThreads() {
+        return workers.size();
+    }
+
+    private void schedule(Job job) {
+        if (!job.scheduled && !job.isPaused() && !job.queuedTasks.isEmpty()) {
+            ready.addLast(job);
+            job.scheduled = true;
+        }
+    }
+
+    private void work() {
+        while (true) {
+            FutureTask<?> task;
+            synchronized (lock) {
+                while (ready.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                Job job = ready.pollFirst();
+                task = job.queuedTasks.pollFirst();
+                if (!job.queuedTasks.isEmpty()) {
+                    ready.addLast(job);
+                } else {
+                    job.scheduled = false;
+                }
+            }
+            task.run();
+        }
+    }
+}
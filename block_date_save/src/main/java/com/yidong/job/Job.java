@@ -0,0 +1,146 @@
+package com.yidong.job;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 一个获取或验证任务。
+ * <p>
+ * 任务的主流程在独立的任务线程中执行，具体的工作单元（获取一个区块、验证一个区块）
+ * 通过 {@link #submit} 提交到所有任务共享的线程池，由线程池在各任务之间轮流派发。
+ */
+public class Job {
+
+    private final String id;
+    private final JobType type;
+    private final String description;
+    private final JobWork work;
+    private final FairWorkerPool pool;
+    private final long createdAt = System.currentTimeMillis();
+
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile boolean started;
+    private volatile boolean pauseRequested;
+    private volatile boolean cancelRequested;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile String error;
+
+    // 以下字段由 FairWorkerPool 在其锁内访问
+    final ArrayDeque<FutureTask<?>> queuedTasks = new ArrayDeque<>();
+    boolean scheduled;
+
+    Job(String id, JobType type, String description, JobWork work, FairWorkerPool pool) {
+        this.id = id;
+        this.type = type;
+        this.description = description;
+        this.work = work;
+        this.pool = pool;
+    }
+
+    /**
+     * 提交一个工作单元到共享线程池
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return pool.submit(this, task);
+    }
+
+    /**
+     * 暂停时阻塞直到恢复；已取消时抛出 {@link JobCancelledException}
+     */
+    public void checkpoint() throws InterruptedException {
+        synchronized (this) {
+            while (pauseRequested && !cancelRequested) {
+                wait();
+            }
+        }
+        if (cancelRequested) {
+            throw new JobCancelledException(id);
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelRequested;
+    }
+
+    public boolean isPaused() {
+        return pauseRequested;
+    }
+
+    synchronized void requestPause() {
+        pauseRequested = true;
+        if (!status.isFinished()) {
+            status = JobStatus.PAUSED;
+        }
+    }
+
+    synchronized void requestResume() {
+        pauseRequested = false;
+        if (status == JobStatus.PAUSED) {
+            status = started ? JobStatus.RUNNING : JobStatus.QUEUED;
+        }
+        notifyAll();
+    }
+
+    synchronized void requestCancel() {
+        cancelRequested = true;
+        if (!started) {
+            // 还在排队的任务直接结束，不必等到轮到它执行
+            markFinished(JobStatus.CANCELLED, null);
+        }
+        notifyAll();
+    }
+
+    synchronized void markStarted() {
+        started = true;
+        if (cancelRequested) {
+            return;
+        }
+        startedAt = System.currentTimeMillis();
+        status = pauseRequested ? JobStatus.PAUSED : JobStatus.RUNNING;
+    }
+
+    synchronized void markFinished(JobStatus finalStatus, String error) {
+        this.status = finalStatus;
+        this.error = error;
+        this.finishedAt = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public JobType getType() {
+        return type;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public JobWork getWork() {
+        return work;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,11 @@
+package com.yidong.job;
+
+/**
+ * 任务被取消时由 {@link Job#checkpoint()} 抛出
+ */
+public class JobCancelledException extends RuntimeException {
+
+    public JobCancelledException(String jobId) {
+        super("任务 " + jobId + " 已取消");
+    }
+}
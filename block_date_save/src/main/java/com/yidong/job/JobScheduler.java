@@ -0,0 +1,164 @@
+package com.yidong.job;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务调度：为每个任务分配 ID，同时运行的任务数有上限，超出的任务排队等待；
+ * 所有任务的工作单元共享一个有界线程池，按任务轮流派发。
+ */
+@Component
+public class JobScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(JobScheduler.class);
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final FairWorkerPool workerPool;
+    private final ExecutorService jobExecutor;
+    private final int historySize;
+
+    public JobScheduler(
+        @Value("${block.jobs.workers:16}") int workers,
+        @Value("${block.jobs.max-running:4}") int maxRunning,
+        @Value("${block.jobs.history-size:100}") int historySize
+    ) {
+        this.workerPool = new FairWorkerPool(Math.max(1, workers));
+        this.jobExecutor = Executors.newFixedThreadPool(Math.max(1, maxRunning));
+        this.historySize = Math.max(1, historySize);
+    }
+
+    /**
+     * 提交任务，返回的任务处于排队或运行状态
+     */
+    public Job submit(JobType type, String description, JobWork work) {
+        Job job = new Job(String.valueOf(sequence.incrementAndGet()), type, description, work, workerPool);
+        jobs.put(job.getId(), job);
+        removeOldJobs();
+        logger.info("提交任务 {} ({}): {}", job.getId(), type, description);
+        jobExecutor.submit(() -> run(job));
+        return job;
+    }
+
+    public Job get(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * 按提交顺序列出任务
+     */
+    public List<Job> list() {
+        List<Job> result = new ArrayList<>(jobs.values());
+        result.sort(Comparator.comparingLong(job -> Long.parseLong(job.getId())));
+        return result;
+    }
+
+    /**
+     * 指定类型最近提交的任务，没有时返回 null
+     */
+    public Job latest(JobType type) {
+        Job latest = null;
+        for (Job job : jobs.values()) {
+            if (job.getType() == type
+                    && (latest == null || Long.parseLong(job.getId()) > Long.parseLong(latest.getId()))) {
+                latest = job;
+            }
+        }
+        return latest;
+    }
+
+    public boolean cancel(String id) {
+        Job job = jobs.get(id);
+        if (job == null || job.getStatus().isFinished()) {
+            return false;
+        }
+        job.requestCancel();
+        workerPool.cancel(job);
+        logger.info("取消任务 {}", id);
+        return true;
+    }
+
+    public boolean pause(String id) {
+        Job job = jobs.get(id);
+        if (job == null || job.getStatus().isFinished()) {
+            return false;
+        }
+        job.requestPause();
+        workerPool.pause(job);
+        logger.info("暂停任务 {}", id);
+        return true;
+    }
+
+    public boolean resume(String id) {
+        Job job = jobs.get(id);
+        if (job == null || job.getStatus().isFinished()) {
+            return false;
+        }
+        job.requestResume();
+        workerPool.resume(job);
+        logger.info("恢复任务 {}", id);
+        return true;
+    }
+
+    public int getWorkerThreads() {
+        return workerPool.getThreads();
+    }
+
+    private void run(Job job) {
+        try {
+            if (job.isCancelled()) {
+                job.markFinished(JobStatus.CANCELLED, null);
+                return;
+            }
+            job.markStarted();
+            job.getWork().run(job);
+            job.markFinished(JobStatus.COMPLETED, null);
+            logger.info("任务 {} 完成", job.getId());
+        } catch (JobCancelledException e) {
+            job.markFinished(JobStatus.CANCELLED, null);
+            logger.info("任务 {} 已取消", job.getId());
+        } catch (Exception e) {
+            job.markFinished(JobStatus.FAILED, e.getMessage());
+            logger.error("任务 {} 失败: {}", job.getId(), e.getMessage());
+        } finally {
+            workerPool.cancel(job);
+            try {
+                job.getWork().onFinished();
+            } catch (Exception e) {
+                logger.error("任务 {} 清理失败: {}", job.getId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 只保留最近的若干个已结束任务
+     */
+    private void removeOldJobs() {
+        List<Job> finished = new ArrayList<>();
+        for (Job job : list()) {
+            if (job.getStatus().isFinished()) {
+                finished.add(job);
+            }
+        }
+        for (int i = 0; i < finished.size() - historySize; i++) {
+            Job job = finished.get(i);
+            if (jobs.remove(job.getId()) != null) {
+                try {
+                    job.getWork().onRemoved();
+                } catch (Exception e) {
+                    logger.error("任务 {} 清理失败: {}", job.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+}
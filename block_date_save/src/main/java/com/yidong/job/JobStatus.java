@@ -0,0 +1,19 @@
+package com.yidong.job;
+
+/**
+ * 任务状态
+ */
+public enum JobStatus {
+    /** 等待空闲的任务槽位 */
+    QUEUED,
+    RUNNING,
+    /** 已暂停，不再派发新的工作单元 */
+    PAUSED,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+}
@@ -0,0 +1,15 @@
+package com.yidong.job;
+
+/**
+ * 任务类型
+ */
+public enum JobType {
+    /** 从链上获取区块并保存 */
+    FETCH,
+    /** 验证上传的区块文件 */
+    VERIFY,
+    /** 跟随链上最新区块持续获取 */
+    FOLLOW,
+    /** 为已有的区块文件建立偏移索引 */
+    INDEX
+}
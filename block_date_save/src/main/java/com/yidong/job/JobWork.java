@@ -0,0 +1,40 @@
+package com.yidong.job;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 任务的具体内容，由各业务服务实现
+ */
+public interface JobWork {
+
+    /**
+     * 执行任务。工作单元通过 {@link Job#submit} 提交到共享线程池，
+     * 并应定期调用 {@link Job#checkpoint()} 以响应暂停和取消
+     */
+    void run(Job job) throws Exception;
+
+    /**
+     * 当前进度的快照
+     */
+    Object getProgress();
+
+    /**
+     * 游标之后的结果，没有结果列表的任务返回空列表
+     */
+    default List<?> resultsAfter(int cursor, int limit) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * 任务结束（包括未开始就被取消）后调用，用于释放资源
+     */
+    default void onFinished() {
+    }
+
+    /**
+     * 已结束的任务从历史中移除时调用，用于释放结束后仍保留以供查询的结果
+     */
+    default void onRemoved() {
+    }
+}
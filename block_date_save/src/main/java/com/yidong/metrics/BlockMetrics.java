@@ -0,0 +1,237 @@
+package com.yidong.metrics;
+
+import com.yidong.chain.ChainClient;
+import com.yidong.model.VerificationResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 获取和验证热路径上的指标，通过 actuator 的 /actuator/metrics 查看。
+ * <p>
+ * 各阶段耗时记录在 block.stage.duration（按 stage 标签区分）中，带百分位直方图；
+ * 吞吐量既有累计计数器（由监控系统计算速率），也有最近固定时间窗口内的平均速率指标，读取不影响速率的计算。
+ */
+@Component
+public class BlockMetrics {
+
+    /**
+     * 热路径上的阶段
+     */
+    public enum Stage {
+        /** 获取：单次 get_block 请求（每次重试单独记录） */
+        FETCH_RPC("fetch.rpc"),
+        /** 获取：按顺序写入时等待下一个区块返回 */
+        FETCH_WAIT("fetch.wait"),
+        /** 获取：追加写入分段文件 */
+        FETCH_WRITE("fetch.write"),
+        /** 验证：从上传文件中解析一个区块 */
+        VERIFY_PARSE("verify.parse"),
+        /** 验证：获取并解析链上区块（含缓存命中） */
+        VERIFY_CHAIN("verify.chain"),
+        /** 验证：与链上区块逐字段比较 */
+        VERIFY_COMPARE("verify.compare"),
+        /** 验证：离线重新计算区块哈希 */
+        VERIFY_HASH("verify.hash"),
+        /** 验证：深度比较交易内容 */
+        VERIFY_DEEP("verify.deep");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final AtomicInteger fetchInFlight = new AtomicInteger();
+    private final AtomicLong followLag = new AtomicLong();
+    private final Counter followForks;
+    private final Counter fetchedBlocks;
+    private final Counter fetchedBytes;
+    private final Counter fetchRetries;
+    private final Counter verifiedBlocks;
+    private final Counter passed;
+    private final Counter dataMismatch;
+    private final Counter hashMismatch;
+    private final Counter localContinuityBreak;
+    private final Counter chainContinuityBreak;
+    private final Rate fetchedBlocksRate;
+    private final Rate fetchedBytesRate;
+    private final Rate verifiedBlocksRate;
+
+    public BlockMetrics(
+        MeterRegistry registry,
+        ChainClient chainClient,
+        @Value("${block.metrics.percentiles:0.5,0.95,0.99}") double[] percentiles,
+        @Value("${block.metrics.rate-window-seconds:10}") int rateWindowSeconds
+    ) {
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("block.stage.duration")
+                .description("获取和验证各阶段的耗时")
+                .tag("stage", stage.tag)
+                .publishPercentiles(percentiles)
+                .publishPercentileHistogram()
+                .register(registry));
+        }
+
+        fetchedBlocks = Counter.builder("block.fetch.blocks").description("已获取并写入的区块数")
+            .baseUnit("blocks").register(registry);
+        fetchedBytes = Counter.builder("block.fetch.bytes").description("已获取并写入的区块字节数")
+            .baseUnit("bytes").register(registry);
+        fetchRetries = Counter.builder("block.fetch.retries").description("获取区块失败后的重试次数")
+            .register(registry);
+        verifiedBlocks = Counter.builder("block.verify.blocks").description("已验证的区块数")
+            .baseUnit("blocks").register(registry);
+        followForks = Counter.builder("block.follow.forks").description("跟随模式因分叉回退的区块数")
+            .register(registry);
+        passed = verifyResults(registry, "passed");
+        dataMismatch = verifyResults(registry, "data_mismatch");
+        hashMismatch = verifyResults(registry, "hash_mismatch");
+        localContinuityBreak = verifyResults(registry, "local_continuity_break");
+        chainContinuityBreak = verifyResults(registry, "chain_continuity_break");
+
+        fetchedBlocksRate = new Rate(rateWindowSeconds);
+        fetchedBytesRate = new Rate(rateWindowSeconds);
+        verifiedBlocksRate = new Rate(rateWindowSeconds);
+        Gauge.builder("block.fetch.blocks.rate", fetchedBlocksRate, Rate::value)
+            .description("获取速率（最近时间窗口内的平均值）").baseUnit("blocks/s").register(registry);
+        Gauge.builder("block.fetch.bytes.rate", fetchedBytesRate, Rate::value)
+            .description("获取字节速率（最近时间窗口内的平均值）").baseUnit("bytes/s").register(registry);
+        Gauge.builder("block.verify.blocks.rate", verifiedBlocksRate, Rate::value)
+            .description("验证速率（最近时间窗口内的平均值）").baseUnit("blocks/s").register(registry);
+
+        Gauge.builder("block.fetch.in-flight", fetchInFlight, AtomicInteger::get)
+            .description("所有获取任务在途的区块请求数").register(registry);
+        Gauge.builder("block.follow.lag", followLag, AtomicLong::get)
+            .description("跟随模式已获取的区块落后链上最新区块的数量，未跟随时为 0").baseUnit("blocks").register(registry);
+        Gauge.builder("chain.client.in-flight", chainClient, ChainClient::getInFlightCalls)
+            .description("在途的链上 RPC 调用数（获取和验证共用）").register(registry);
+        FunctionCounter.builder("chain.client.calls", chainClient, ChainClient::getTotalCalls)
+            .description("链上 RPC 调用次数").register(registry);
+        FunctionCounter.builder("chain.client.failures", chainClient, ChainClient::getFailedCalls)
+            .description("失败的链上 RPC 调用次数").register(registry);
+        FunctionCounter.builder("chain.client.hedged", chainClient, ChainClient::getHedgedCalls)
+            .description("发出的对冲请求次数").register(registry);
+    }
+
+    private static Counter verifyResults(MeterRegistry registry, String outcome) {
+        return Counter.builder("block.verify.results")
+            .description("按结果分类的验证区块数，一个区块可能同时计入多个未通过的分类")
+            .tag("outcome", outcome)
+            .register(registry);
+    }
+
+    /**
+     * 记录从 startNanos（{@link System#nanoTime()}）到现在的阶段耗时
+     */
+    public void record(Stage stage, long startNanos) {
+        stageTimers.get(stage).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void fetchRequestStarted() {
+        fetchInFlight.incrementAndGet();
+    }
+
+    public void fetchRequestFinished() {
+        fetchInFlight.decrementAndGet();
+    }
+
+    public void fetchRetried() {
+        fetchRetries.increment();
+    }
+
+    public void blockFetched(int bytes) {
+        fetchedBlocks.increment();
+        fetchedBytes.increment(bytes);
+        fetchedBlocksRate.add(1);
+        fetchedBytesRate.add(bytes);
+    }
+
+    public void followLag(long blocks) {
+        followLag.set(Math.max(0, blocks));
+    }
+
+    public void forkDetected() {
+        followForks.increment();
+    }
+
+    public void blockVerified(VerificationResult result) {
+        verifiedBlocks.increment();
+        verifiedBlocksRate.add(1);
+        boolean ok = true;
+        if (!result.isDataMatch()) {
+            dataMismatch.increment();
+            ok = false;
+        }
+        if (!result.isHashMatch()) {
+            hashMismatch.increment();
+            ok = false;
+        }
+        if (!result.isLocalContinuous()) {
+            localContinuityBreak.increment();
+            ok = false;
+        }
+        if (!result.isChainContinuous()) {
+            chainContinuityBreak.increment();
+            ok = false;
+        }
+        if (ok) {
+            passed.increment();
+        }
+    }
+
+    /**
+     * 最近 windowSeconds 个完整秒内的平均速率。按秒分桶累加，桶按秒数循环复用；
+     * 读取只汇总窗口内的桶，不改变状态，多个读取方（actuator、监控系统）看到的是同一个值
+     */
+    private static final class Rate {
+        private final int windowSeconds;
+        // 多一个桶给正在进行的这一秒，不覆盖窗口内最早的一秒
+        private final long[] seconds;
+        private final double[] amounts;
+
+        private Rate(int windowSeconds) {
+            this.windowSeconds = Math.max(1, windowSeconds);
+            this.seconds = new long[this.windowSeconds + 1];
+            this.amounts = new double[this.windowSeconds + 1];
+            Arrays.fill(seconds, Long.MIN_VALUE);
+        }
+
+        synchronized void add(double amount) {
+            long second = currentSecond();
+            int index = (int) Math.floorMod(second, (long) seconds.length);
+            if (seconds[index] != second) {
+                seconds[index] = second;
+                amounts[index] = 0;
+            }
+            amounts[index] += amount;
+        }
+
+        synchronized double value() {
+            long now = currentSecond();
+            double sum = 0;
+            for (int i = 0; i < seconds.length; i++) {
+                if (seconds[i] < now && seconds[i] >= now - windowSeconds) {
+                    sum += amounts[i];
+                }
+            }
+            return sum / windowSeconds;
+        }
+
+        private static long currentSecond() {
+            return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        }
+    }
+}
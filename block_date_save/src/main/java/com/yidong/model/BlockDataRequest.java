@@ -2,9 +2,13 @@ package com.yidong.model;
 
 import lombok.Data;
 
+import java.util.List;
+
 @Data
 public class BlockDataRequest {
     private String apiUrl;
+    /** 多个节点地址，与 apiUrl 合并使用 */
+    private List<String> apiUrls;
     private long startBlock;
     private long endBlock;
 } 
\ No newline at end of file
@@ -0,0 +1,437 @@
+package com.yidong.model;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.yidong.crypto.EosBlockHasher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * 验证时使用的区块头：只包含比较和连续性检查用到的字段。
+ * <p>
+ * 直接从 JSON 流中解析，transactions 等其他字段被跳过；四个 32 字节哈希保存在同一个字节数组中，
+ * 时间戳和出块者分别保存为毫秒数和编码后的账户名，比较时不产生字符串。
+ * <p>
+ * 被篡改的区块中可能出现无法解析的值（大写或非十六进制的哈希、无效的账户名、格式错误的时间戳），
+ * 这些字段记为非规范字段并保留原文，解析不会失败；非规范字段只与原文相同的非规范字段相等，
+ * 比较时作为不匹配字段报告。
+ */
+public final class BlockHeader {
+
+    public static final int HASH_SIZE = 32;
+
+    private static final int ID = 0;
+    private static final int PREVIOUS = HASH_SIZE;
+    private static final int TRANSACTION_MROOT = 2 * HASH_SIZE;
+    private static final int ACTION_MROOT = 3 * HASH_SIZE;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS");
+
+    private long blockNum;
+    private long timestampMillis;
+    private long producer;
+    private long scheduleVersion;
+    private final byte[] hashes = new byte[4 * HASH_SIZE];
+    // 字段是否出现（按位），缺少必需字段时解析失败；可选字段缺少时与同样缺少该字段的区块相等
+    private int present;
+    // 非规范字段（与 present 相同的位），这些字段保存的是原文的 SHA-256，原文保存在 raw 中
+    private int nonCanonical;
+    private String[] raw;
+
+    private BlockHeader() {
+    }
+
+    /**
+     * 从位于区块对象开始处（START_OBJECT）的解析器中读取区块头，读取后解析器位于对象结束处
+     */
+    public static BlockHeader parse(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("区块数据不是 JSON 对象");
+        }
+        BlockHeader header = new BlockHeader();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (value.isStructStart()) {
+                // transactions、new_producers 等不参与比较
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "block_num":
+                    header.blockNum = readLong(parser);
+                    header.present |= 1;
+                    break;
+                case "timestamp":
+                    header.readTimestamp(parser);
+                    header.present |= 2;
+                    break;
+                case "producer":
+                    header.readProducer(parser);
+                    header.present |= 4;
+                    break;
+                case "id":
+                    header.readHash(parser, ID);
+                    header.present |= 8;
+                    break;
+                case "previous":
+                    header.readHash(parser, PREVIOUS);
+                    header.present |= 16;
+                    break;
+                case "transaction_mroot":
+                    header.readHash(parser, TRANSACTION_MROOT);
+                    header.present |= 32;
+                    break;
+                case "action_mroot":
+                    header.readHash(parser, ACTION_MROOT);
+                    header.present |= 64;
+                    break;
+                case "schedule_version":
+                    header.scheduleVersion = readLong(parser);
+                    header.present |= 128;
+                    break;
+                default:
+                    break;
+            }
+        }
+        header.checkRequired();
+        return header;
+    }
+
+    /**
+     * 从区块的原始 JSON 字节中读取区块头
+     */
+    public static BlockHeader parse(JsonFactory factory, byte[] json) throws IOException {
+        try (JsonParser parser = factory.createParser(json)) {
+            parser.nextToken();
+            return parse(parser);
+        }
+    }
+
+    /**
+     * 从已解析的区块树中读取区块头
+     */
+    public static BlockHeader from(JsonNode block) throws IOException {
+        try (JsonParser parser = block.traverse()) {
+            parser.nextToken();
+            return parse(parser);
+        }
+    }
+
+    private static long readLong(JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NUMBER_INT ? parser.getLongValue() : Long.parseLong(parser.getText());
+    }
+
+    private void readTimestamp(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            try {
+                timestampMillis = parseTimestamp(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                return;
+            } catch (DateTimeParseException e) {
+                // 按非规范字段处理
+            }
+        }
+        timestampMillis = ByteBuffer.wrap(markNonCanonical(2, parser.getText())).getLong();
+    }
+
+    private void readProducer(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_STRING) {
+            try {
+                producer = EosBlockHasher.encodeName(
+                    CharBuffer.wrap(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength()));
+                return;
+            } catch (IllegalArgumentException e) {
+                // 按非规范字段处理
+            }
+        }
+        producer = ByteBuffer.wrap(markNonCanonical(4, parser.getText())).getLong();
+    }
+
+    /**
+     * 读取 64 个小写十六进制字符的哈希，其他形式按非规范字段处理
+     */
+    private void readHash(JsonParser parser, int offset) throws IOException {
+        char[] chars = parser.getTextCharacters();
+        int start = parser.getTextOffset();
+        boolean valid = parser.currentToken() == JsonToken.VALUE_STRING && parser.getTextLength() == HASH_SIZE * 2;
+        for (int i = 0; i < HASH_SIZE && valid; i++) {
+            int high = hexDigit(chars[start + i * 2]);
+            int low = hexDigit(chars[start + i * 2 + 1]);
+            valid = high >= 0 && low >= 0;
+            hashes[offset + i] = (byte) ((high << 4) | low);
+        }
+        if (!valid) {
+            System.arraycopy(markNonCanonical(hashBit(offset), parser.getText()), 0, hashes, offset, HASH_SIZE);
+        }
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        return c >= 'a' && c <= 'f' ? c - 'a' + 10 : -1;
+    }
+
+    /**
+     * 记录非规范字段的原文，返回原文的 SHA-256 作为该字段的值：
+     * 原文相同的非规范字段相等，与任何规范值都不相等，也使 {@link #contentDigest()} 随原文变化
+     */
+    private byte[] markNonCanonical(int bit, String text) {
+        nonCanonical |= bit;
+        if (raw == null) {
+            raw = new String[8];
+        }
+        raw[Integer.numberOfTrailingZeros(bit)] = text;
+        return EosBlockHasher.sha256(String.valueOf(text).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int hashBit(int offset) {
+        return 8 << (offset / HASH_SIZE);
+    }
+
+    private void checkRequired() {
+        if ((present & 1) == 0) {
+            throw new IllegalArgumentException("区块缺少 block_num");
+        }
+        if ((present & 31) != 31) {
+            throw new IllegalArgumentException("区块 " + blockNum + " 缺少 timestamp、producer、id 或 previous 字段");
+        }
+    }
+
+    /**
+     * 解析 2018-06-09T12:03:14.500 格式的时间戳，其他格式交给 LocalDateTime
+     */
+    private static long parseTimestamp(char[] chars, int offset, int length) {
+        if ((length == 19 || length == 23) && chars[offset + 4] == '-' && chars[offset + 10] == 'T') {
+            int year = digits(chars, offset, 4);
+            int month = digits(chars, offset + 5, 2);
+            int day = digits(chars, offset + 8, 2);
+            int hour = digits(chars, offset + 11, 2);
+            int minute = digits(chars, offset + 14, 2);
+            int second = digits(chars, offset + 17, 2);
+            int millis = length == 23 ? digits(chars, offset + 20, 3) : 0;
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= monthLength(year, month)
+                    && hour >= 0 && hour <= 23 && minute >= 0 && minute <= 59 && second >= 0 && second <= 59
+                    && millis >= 0) {
+                return ((epochDay(year, month, day) * 24 + hour) * 60 + minute) * 60_000L + second * 1000L + millis;
+            }
+        }
+        return LocalDateTime.parse(new String(chars, offset, length)).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            int digit = chars[offset + i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int monthLength(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * 公历日期距 1970-01-01 的天数
+     */
+    private static long epochDay(int year, int month, int day) {
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    public long getBlockNum() {
+        return blockNum;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public long getProducer() {
+        return producer;
+    }
+
+    public long getScheduleVersion() {
+        return scheduleVersion;
+    }
+
+    /**
+     * 是否所有字段都是规范形式
+     */
+    public boolean isCanonical() {
+        return nonCanonical == 0;
+    }
+
+    public boolean timestampEquals(BlockHeader other) {
+        return sameForm(2, other, 2) && timestampMillis == other.timestampMillis;
+    }
+
+    public boolean producerEquals(BlockHeader other) {
+        return sameForm(4, other, 4) && producer == other.producer;
+    }
+
+    public boolean idEquals(BlockHeader other) {
+        return hashEquals(ID, other, ID);
+    }
+
+    public boolean previousEquals(BlockHeader other) {
+        return hashEquals(PREVIOUS, other, PREVIOUS);
+    }
+
+    /**
+     * 本区块的 previous 是否等于 other 的 id
+     */
+    public boolean linksTo(BlockHeader other) {
+        return hashEquals(PREVIOUS, other, ID);
+    }
+
+    public boolean transactionMrootEquals(BlockHeader other) {
+        return samePresence(32, other) && hashEquals(TRANSACTION_MROOT, other, TRANSACTION_MROOT);
+    }
+
+    public boolean actionMrootEquals(BlockHeader other) {
+        return samePresence(64, other) && hashEquals(ACTION_MROOT, other, ACTION_MROOT);
+    }
+
+    public boolean scheduleVersionEquals(BlockHeader other) {
+        return samePresence(128, other) && scheduleVersion == other.scheduleVersion;
+    }
+
+    /**
+     * id 是否等于给定的 32 字节哈希
+     */
+    public boolean idEquals(byte[] hash) {
+        return (nonCanonical & 8) == 0 && Arrays.equals(hashes, ID, ID + HASH_SIZE, hash, 0, HASH_SIZE);
+    }
+
+    /**
+     * transaction_mroot 是否等于给定的 32 字节哈希，缺少该字段时不相等
+     */
+    public boolean transactionMrootEquals(byte[] hash) {
+        return (present & 32) != 0 && (nonCanonical & 32) == 0 && Arrays.equals(hashes, TRANSACTION_MROOT, TRANSACTION_MROOT + HASH_SIZE, hash, 0, HASH_SIZE);
+    }
+
+    /**
+     * previous 是否等于给定的 32 字节哈希
+     */
+    public boolean previousEquals(byte[] hash) {
+        return (nonCanonical & 16) == 0 && Arrays.equals(hashes, PREVIOUS, PREVIOUS + HASH_SIZE, hash, 0, HASH_SIZE);
+    }
+
+    /**
+     * previous 是否为全 0（创世区块）
+     */
+    public boolean isPreviousZero() {
+        if ((nonCanonical & 16) != 0) {
+            return false;
+        }
+        for (int i = PREVIOUS; i < PREVIOUS + HASH_SIZE; i++) {
+            if (hashes[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 参与比较的全部字段（区块号、时间戳、出块者、schedule_version、四个哈希以及字段是否出现）的摘要，
+     * 取 SHA-256 的前 16 字节，用于判断区块头在两次验证之间是否变化
+     */
+    public byte[] contentDigest() {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * 8 + 2 * 4 + hashes.length)
+            .putLong(blockNum).putLong(timestampMillis).putLong(producer).putLong(scheduleVersion)
+            .putInt(present).putInt(nonCanonical).put(hashes);
+        return Arrays.copyOf(EosBlockHasher.sha256(buffer.array()), 16);
+    }
+
+    /**
+     * 以 id 为内容的只读键，可用于按 id 索引
+     */
+    public ByteBuffer idKey() {
+        return ByteBuffer.wrap(hashes, ID, HASH_SIZE).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 以 previous 为内容的只读键，与前一个区块的 {@link #idKey()} 相等
+     */
+    public ByteBuffer previousKey() {
+        return ByteBuffer.wrap(hashes, PREVIOUS, HASH_SIZE).slice().asReadOnlyBuffer();
+    }
+
+    private boolean samePresence(int bit, BlockHeader other) {
+        return (present & bit) == (other.present & bit);
+    }
+
+    private boolean sameForm(int bit, BlockHeader other, int otherBit) {
+        return ((nonCanonical & bit) == 0) == ((other.nonCanonical & otherBit) == 0);
+    }
+
+    private boolean hashEquals(int offset, BlockHeader other, int otherOffset) {
+        return sameForm(hashBit(offset), other, hashBit(otherOffset)) && Arrays.equals(hashes, offset, offset + HASH_SIZE, other.hashes, otherOffset, otherOffset + HASH_SIZE);
+    }
+
+    // 以下方法只在生成验证结果和日志时使用
+
+    // 非规范字段返回原文
+
+    public String getId() {
+        return hex(ID);
+    }
+
+    public String getPrevious() {
+        return hex(PREVIOUS);
+    }
+
+    public String getTransactionMroot() {
+        return (present & 32) != 0 ? hex(TRANSACTION_MROOT) : null;
+    }
+
+    public String getActionMroot() {
+        return (present & 64) != 0 ? hex(ACTION_MROOT) : null;
+    }
+
+    public String getTimestamp() {
+        if ((nonCanonical & 2) != 0) {
+            return raw[1];
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(timestampMillis, 1000),
+            Math.floorMod(timestampMillis, 1000) * 1_000_000, ZoneOffset.UTC).format(TIMESTAMP_FORMAT);
+    }
+
+    public String getProducerName() {
+        return (nonCanonical & 4) != 0 ? raw[2] : EosBlockHasher.decodeName(producer);
+    }
+
+    private String hex(int offset) {
+        int bit = hashBit(offset);
+        if ((nonCanonical & bit) != 0) {
+            return raw[Integer.numberOfTrailingZeros(bit)];
+        }
+        return EosBlockHasher.toHex(Arrays.copyOfRange(hashes, offset, offset + HASH_SIZE));
+    }
+
+    @Override
+    public String toString() {
+        return "BlockHeader{blockNum=" + blockNum + ", id=" + getId() + ", previous=" + getPrevious() + "}";
+    }
+}
@@ -0,0 +1,22 @@
+package com.yidong.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+public class ChainClientStats {
+    private int inFlightCalls;
+    private int maxConnections;
+    private double poolUtilization;
+    private long totalCalls;
+    private long failedCalls;
+    private double avgLatencyMs;
+    private double maxLatencyMs;
+    private double lastLatencyMs;
+    private long hedgedCalls;
+    /** 每个节点的状态 */
+    private List<ChainEndpointStats> endpoints;
+}
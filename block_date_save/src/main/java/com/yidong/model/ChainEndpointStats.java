@@ -0,0 +1,20 @@
+package com.yidong.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ChainEndpointStats {
+    private String url;
+    /** 未被剔除 */
+    private boolean available;
+    private int inFlightCalls;
+    /** 当前的自适应并发上限 */
+    private double concurrencyLimit;
+    private double avgLatencyMs;
+    private long totalCalls;
+    private long failedCalls;
+    /** 被剔除的次数 */
+    private long ejections;
+}
@@ -0,0 +1,20 @@
+package com.yidong.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * get_info 返回的链状态中跟随模式和验证结果缓存用到的字段
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChainInfo {
+    private long headBlockNum;
+    private String headBlockId;
+    private long lastIrreversibleBlockNum;
+    /** 节点没有返回时为 null */
+    private String lastIrreversibleBlockId;
+    private String chainId;
+}
@@ -0,0 +1,27 @@
+package com.yidong.model;
+
+/**
+ * 导出格式
+ */
+public enum ExportFormat {
+    /** 每行一个 JSON 对象 */
+    NDJSON("application/x-ndjson", "ndjson"),
+    /** 第一行为列名的 CSV */
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
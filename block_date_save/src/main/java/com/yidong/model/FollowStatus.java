@@ -0,0 +1,28 @@
+package com.yidong.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class FollowStatus {
+    private boolean isFollowing;
+    private boolean hasError;
+    /** 本次跟随的第一个区块号 */
+    private long startBlock;
+    private long headBlockNum;
+    private long irreversibleBlockNum;
+    /** 已获取并通过 previous 链接检查的最后一个区块号 */
+    private Long lastFetchedBlock;
+    /** 已写入磁盘的最后一个区块号 */
+    private Long lastWrittenBlock;
+    /** 已获取的区块落后最新区块的数量 */
+    private long lag;
+    /** 已获取但尚未确认、暂存在内存中的区块数 */
+    private int unconfirmedBlocks;
+    private long writtenBlocks;
+    /** 因分叉丢弃并重新获取的区块数 */
+    private long rolledBackBlocks;
+    private double blocksPerSecond;
+    private double concurrencyLimit;
+}
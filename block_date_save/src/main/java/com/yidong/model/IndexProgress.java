@@ -0,0 +1,17 @@
+package com.yidong.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class IndexProgress {
+    private boolean isIndexing;
+    private boolean hasError;
+    private int totalFiles;
+    private int indexedFiles;
+    /** 已建立索引的区块数 */
+    private long indexedBlocks;
+    private String currentFile;
+    private double bytesPerSecond;
+}
@@ -0,0 +1,21 @@
+package com.yidong.model;
+
+import com.yidong.job.JobStatus;
+import com.yidong.job.JobType;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class JobInfo {
+    private String id;
+    private JobType type;
+    private JobStatus status;
+    private String description;
+    private long createdAt;
+    private long startedAt;
+    private long finishedAt;
+    private String error;
+    /** 获取任务为 ProgressStatus，验证任务为 VerificationProgress，跟随任务为 FollowStatus，索引任务为 IndexProgress */
+    private Object progress;
+}
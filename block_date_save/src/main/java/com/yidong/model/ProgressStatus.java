@@ -11,4 +11,8 @@ public class ProgressStatus {
     private boolean hasError;
     private long totalBlocks;
     private Long currentBlockNum;
+    private int inFlightRequests;
+    private double blocksPerSecond;
+    private long skippedBlocks;
+    private double concurrencyLimit;
 } 
\ No newline at end of file
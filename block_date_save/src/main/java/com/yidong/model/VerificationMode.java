@@ -0,0 +1,13 @@
+package com.yidong.model;
+
+/**
+ * 验证方式
+ */
+public enum VerificationMode {
+    /** 逐个区块与链上数据比对 */
+    ONLINE,
+    /** 本地重新计算区块 id 和 transaction_mroot，只对未通过的区块访问链上数据 */
+    OFFLINE,
+    /** 本地检查 previous 链接，锚定每段最后一个区块并二分定位不一致的区块，只逐块比对不一致的范围 */
+    AUDIT
+}
@@ -1,13 +1,15 @@
 package com.yidong.model;
 
-import java.util.List;
-
 public class VerificationProgress {
     private Long currentBlock;
     private int verifiedCount;
+    private int failedCount;
     private int totalBlocks;
     private boolean isVerifying;
-    private List<VerificationResult> verificationResults;
+    private long cacheHits;
+    private long cacheMisses;
+    private double concurrencyLimit;
+    private long resultCacheHits;
 
     // Getters and Setters
     public Long getCurrentBlock() {
@@ -26,6 +28,14 @@ public class VerificationProgress {
         this.verifiedCount = verifiedCount;
     }
 
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public void setFailedCount(int failedCount) {
+        this.failedCount = failedCount;
+    }
+
     public int getTotalBlocks() {
         return totalBlocks;
     }
@@ -42,11 +52,35 @@ public class VerificationProgress {
         isVerifying = verifying;
     }
 
-    public List<VerificationResult> getVerificationResults() {
-        return verificationResults;
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public void setCacheHits(long cacheHits) {
+        this.cacheHits = cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    public void setCacheMisses(long cacheMisses) {
+        this.cacheMisses = cacheMisses;
+    }
+
+    public double getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public void setConcurrencyLimit(double concurrencyLimit) {
+        this.concurrencyLimit = concurrencyLimit;
+    }
+
+    public long getResultCacheHits() {
+        return resultCacheHits;
     }
 
-    public void setVerificationResults(List<VerificationResult> verificationResults) {
-        this.verificationResults = verificationResults;
+    public void setResultCacheHits(long resultCacheHits) {
+        this.resultCacheHits = resultCacheHits;
     }
-} 
\ No newline at end of file
+}
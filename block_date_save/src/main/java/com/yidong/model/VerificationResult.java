@@ -1,12 +1,16 @@
 package com.yidong.model;
 
+import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Builder;
+import lombok.NoArgsConstructor;
 import java.util.List;
 import java.util.Map;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 public class VerificationResult {
     private Long blockNum;
     private boolean dataMatch;
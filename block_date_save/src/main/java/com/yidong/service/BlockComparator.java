@@ -0,0 +1,108 @@
+package com.yidong.service;
+
+import com.yidong.model.BlockHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 区块数据比较和本地连续性检查，不依赖链上访问，在线验证和基准测试共用
+ */
+public final class BlockComparator {
+    private static final Logger logger = LoggerFactory.getLogger(BlockComparator.class);
+
+    private BlockComparator() {
+    }
+
+    /**
+     * 比较本地区块与链上区块的区块头字段，全部一致时不产生任何对象
+     */
+    public static boolean compareBlockData(BlockHeader localBlock, BlockHeader chainBlock) {
+        if (localBlock.getBlockNum() == chainBlock.getBlockNum()
+                && localBlock.timestampEquals(chainBlock)
+                && localBlock.producerEquals(chainBlock)
+                && localBlock.previousEquals(chainBlock)
+                && localBlock.transactionMrootEquals(chainBlock)
+                && localBlock.actionMrootEquals(chainBlock)
+                && localBlock.scheduleVersionEquals(chainBlock)) {
+            return true;
+        }
+
+        List<String> mismatchFields = mismatchFields(localBlock, chainBlock);
+        logger.error("区块 {} 数据不匹配的字段: {}", localBlock.getBlockNum(), String.join(", ", mismatchFields));
+        // 记录不匹配字段的具体值
+        for (String field : mismatchFields) {
+            logger.error("区块 {} 字段 {} 不匹配: 本地值={}, 链上值={}",
+                localBlock.getBlockNum(), field, fieldValue(localBlock, field), fieldValue(chainBlock, field));
+        }
+        return false;
+    }
+
+    /**
+     * 本地区块与链上区块不一致的区块头字段
+     */
+    public static List<String> mismatchFields(BlockHeader localBlock, BlockHeader chainBlock) {
+        List<String> mismatchFields = new ArrayList<>();
+        if (localBlock.getBlockNum() != chainBlock.getBlockNum()) {
+            mismatchFields.add("block_num");
+        }
+        if (!localBlock.timestampEquals(chainBlock)) {
+            mismatchFields.add("timestamp");
+        }
+        if (!localBlock.producerEquals(chainBlock)) {
+            mismatchFields.add("producer");
+        }
+        if (!localBlock.previousEquals(chainBlock)) {
+            mismatchFields.add("previous");
+        }
+        if (!localBlock.transactionMrootEquals(chainBlock)) {
+            mismatchFields.add("transaction_mroot");
+        }
+        if (!localBlock.actionMrootEquals(chainBlock)) {
+            mismatchFields.add("action_mroot");
+        }
+        if (!localBlock.scheduleVersionEquals(chainBlock)) {
+            mismatchFields.add("schedule_version");
+        }
+        return mismatchFields;
+    }
+
+    /**
+     * 区块头字段的文本形式，只在记录不一致时使用
+     */
+    public static String fieldValue(BlockHeader block, String field) {
+        switch (field) {
+            case "block_num": return String.valueOf(block.getBlockNum());
+            case "timestamp": return block.getTimestamp();
+            case "producer": return block.getProducerName();
+            case "id": return block.getId();
+            case "previous": return block.getPrevious();
+            case "transaction_mroot": return block.getTransactionMroot();
+            case "action_mroot": return block.getActionMroot();
+            case "schedule_version": return String.valueOf(block.getScheduleVersion());
+            default: return null;
+        }
+    }
+
+    /**
+     * 检查当前区块与前一个区块的区块号和 previous 链接是否连续
+     */
+    public static boolean verifyLocalContinuity(BlockHeader currentBlock, BlockHeader previousBlock) {
+        // 验证区块号连续性
+        if (currentBlock.getBlockNum() - previousBlock.getBlockNum() != 1) {
+            logger.error("本地区块号不连续: 区块 {} 与区块 {} 之间存在间隔",
+                currentBlock.getBlockNum(), previousBlock.getBlockNum());
+            return false;
+        }
+
+        // 验证区块哈希连续性
+        if (!currentBlock.linksTo(previousBlock)) {
+            logger.error("本地区块哈希不连续: 区块 {} 的 previous ({}) 与区块 {} 的 id ({}) 不匹配",
+                currentBlock.getBlockNum(), currentBlock.getPrevious(), previousBlock.getBlockNum(), previousBlock.getId());
+            return false;
+        }
+        return true;
+    }
+}
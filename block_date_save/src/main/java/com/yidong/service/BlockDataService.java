@@ -1,42 +1,104 @@
 package com.yidong.service;
 
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import java.io.File;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.yidong.chain.ChainClient;
+import com.yidong.job.Job;
+import com.yidong.job.JobCancelledException;
+import com.yidong.job.JobScheduler;
+import com.yidong.job.JobType;
+import com.yidong.job.JobWork;
+import com.yidong.metrics.BlockMetrics;
+import com.yidong.metrics.BlockMetrics.Stage;
+import com.yidong.model.FollowStatus;
 import com.yidong.model.ProgressStatus;
-import org.springframework.scheduling.annotation.Async;
-import java.util.List;
+import com.yidong.storage.BlockSegmentWriter;
+import com.yidong.storage.FetchCheckpoint;
+import com.yidong.storage.FetchCheckpointStore;
+import com.yidong.storage.SegmentCompression;
+import com.yidong.storage.SegmentFile;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.lang.StringBuilder;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Deque;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 @Service
 public class BlockDataService {
     
-    private static final String OUTPUT_DIR = "block_data";
     private static final Logger log = LoggerFactory.getLogger(BlockDataService.class);
-    private static final long RETRY_DELAY_MS = 500;
-    private static final long MAX_RETRY_DELAY_MS = 2000;
     
-    private volatile long totalBlocks = 0;
-    private volatile long processedBlockCount = 0;
-    private volatile boolean isProcessing = false;
-    private volatile boolean hasError = false;
-    private volatile Long currentBlockNum = null;
+    @Autowired
+    private ChainClient chainClient;
+    
+    @Autowired
+    private JobScheduler jobScheduler;
+    
+    @Autowired
+    private BlockMetrics metrics;
+    
+    /** 同时在途的区块请求数量（并发窗口大小） */
+    @Value("${block.fetch.concurrency:8}")
+    private int fetchConcurrency;
+    
+    /** 每写入多少个区块更新一次检查点 */
+    @Value("${block.fetch.checkpoint-interval:100}")
+    private long checkpointInterval;
+    
+    /** 获取结果和检查点的输出目录 */
+    @Value("${block.output.dir:block_data}")
+    private String outputDir;
+    
+    /** 单个分段文件的最大字节数，0 表示不滚动 */
+    @Value("${block.output.segment-max-bytes:0}")
+    private long segmentMaxBytes;
+    
+    /** 单个分段文件的最大区块数，0 表示不滚动 */
+    @Value("${block.output.segment-max-blocks:0}")
+    private long segmentMaxBlocks;
+    
+    /** 分段文件的压缩方式：none 或 deflate */
+    @Value("${block.output.compression:none}")
+    private String compressionMode;
+    
+    /** Deflater 压缩级别 0-9，-1 为默认级别 */
+    @Value("${block.output.compression.level:-1}")
+    private int compressionLevel;
+    
+    /** 每个压缩块解压后的目标字节数，越小单个区块的读取越快，压缩率越低 */
+    @Value("${block.output.compression.chunk-bytes:16384}")
+    private int compressionChunkBytes;
+    
+    /** 预置字典：字典文件路径；auto 使用每个分段的第一个区块；为空不使用字典 */
+    @Value("${block.output.compression.dictionary:auto}")
+    private String compressionDictionary;
+    
+    private SegmentCompression compression;
+    private boolean compressionLoaded;
     
+    /**
+     * 最近一个获取任务的进度，没有任务时各项为 0
+     */
     public ProgressStatus getProgress() {
-        return new ProgressStatus(
-            processedBlockCount,
-            isProcessing,
-            hasError,
-            totalBlocks,
-            currentBlockNum
-        );
+        Job job = jobScheduler.latest(JobType.FETCH);
+        return job != null
+            ? (ProgressStatus) job.getWork().getProgress()
+            : new ProgressStatus(0, false, false, 0, null, 0, 0, 0, 0);
+    }
+    
+    /**
+     * 最近一个获取任务是否仍在进行
+     */
+    public boolean isProcessing() {
+        Job job = jobScheduler.latest(JobType.FETCH);
+        return job != null && !job.getStatus().isFinished();
     }
     
     /**
@@ -46,18 +108,10 @@ public class BlockDataService {
      */
     public Map<String, Object> validateApi(String apiUrl) {
         Map<String, Object> result = new HashMap<>();
-        RestTemplate restTemplate = new RestTemplate();
         
         try {
             // 使用区块号 1000000 作为测试
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("block_num_or_id", 1000000);
-            
-            String response = restTemplate.postForObject(
-                apiUrl,
-                requestBody,
-                String.class
-            );
+            byte[] response = chainClient.getBlock(apiUrl, 1000000);
             
             if (response != null) {
                 result.put("success", true);
@@ -75,96 +129,259 @@ public class BlockDataService {
         return result;
     }
     
-    @Async
-    public void fetchAndSaveBlocks(String apiUrl, long startBlock, long endBlock) {
-        try {
-            // 先验证API
+    /**
+     * 验证多个节点，返回可用的节点；全部不可用时抛出异常
+     */
+    List<String> validateApis(List<String> apiUrls) {
+        List<String> available = new ArrayList<>();
+        String lastMessage = "未提供API地址";
+        for (String apiUrl : apiUrls) {
             Map<String, Object> validationResult = validateApi(apiUrl);
-            if (!(Boolean)validationResult.get("success")) {
-                throw new RuntimeException((String)validationResult.get("message"));
+            if ((Boolean) validationResult.get("success")) {
+                available.add(apiUrl);
+            } else {
+                lastMessage = (String) validationResult.get("message");
+                log.warn("节点 {} 不可用，本次任务不使用: {}", apiUrl, lastMessage);
             }
-            
-            processedBlockCount = 0;
+        }
+        if (available.isEmpty()) {
+            throw new RuntimeException(lastMessage);
+        }
+        return available;
+    }
+    
+    /**
+     * 提交获取任务，与正在进行的获取任务范围重叠时拒绝
+     * @return 任务
+     */
+    public Job startFetch(List<String> apiUrls, long startBlock, long endBlock) {
+        if (endBlock < startBlock) {
+            throw new IllegalArgumentException("结束区块不能小于起始区块");
+        }
+        synchronized (this) {
+            Job overlapping = overlappingFetch(startBlock, endBlock);
+            if (overlapping != null) {
+                throw new IllegalStateException("区块范围与正在进行的获取任务 " + overlapping.getId() + " 重叠");
+            }
+            for (Job job : jobScheduler.list()) {
+                if (job.getType() == JobType.FOLLOW && !job.getStatus().isFinished()
+                        && ((FollowStatus) job.getWork().getProgress()).getStartBlock() <= endBlock) {
+                    throw new IllegalStateException("区块范围与正在进行的跟随任务 " + job.getId() + " 重叠");
+                }
+            }
+            return jobScheduler.submit(JobType.FETCH, "获取区块 " + startBlock + "-" + endBlock,
+                new FetchJob(apiUrls, startBlock, endBlock));
+        }
+    }
+    
+    /**
+     * 区块范围与 [startBlock, endBlock] 重叠的正在进行的获取任务，没有时返回 null。
+     * 检查后提交任务时需持有本对象的锁，跟随任务提交时同样检查
+     */
+    Job overlappingFetch(long startBlock, long endBlock) {
+        for (Job job : jobScheduler.list()) {
+            if (job.getType() == JobType.FETCH && !job.getStatus().isFinished()) {
+                FetchJob running = (FetchJob) job.getWork();
+                if (startBlock <= running.endBlock && running.startBlock <= endBlock) {
+                    return job;
+                }
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 按输出配置创建分段写入器，获取和跟随任务共用
+     */
+    BlockSegmentWriter newSegmentWriter(File dir) throws IOException {
+        return new BlockSegmentWriter(dir, segmentMaxBytes, segmentMaxBlocks, compression());
+    }
+    
+    private synchronized SegmentCompression compression() throws IOException {
+        if (!compressionLoaded) {
+            compression = SegmentCompression.of(compressionMode, compressionLevel, compressionChunkBytes,
+                compressionDictionary);
+            compressionLoaded = true;
+        }
+        return compression;
+    }
+    
+    /**
+     * 读取与本次范围相同的检查点；存在未完成的分段时让写入器从检查点记录的位置继续写入
+     */
+    private FetchCheckpoint restoreCheckpoint(FetchCheckpointStore checkpointStore, BlockSegmentWriter writer,
+                                              long startBlock, long endBlock) throws IOException {
+        FetchCheckpoint checkpoint = checkpointStore.load(startBlock, endBlock);
+        if (checkpoint == null) {
+            checkpoint = new FetchCheckpoint();
+            checkpoint.setStartBlock(startBlock);
+            checkpoint.setEndBlock(endBlock);
+            return checkpoint;
+        }
+        
+        log.info("找到检查点: 范围 {}-{}, 已连续写入至区块 {}, 已完成分段 {} 个",
+            startBlock, endBlock, checkpoint.getLastWrittenBlock(), checkpoint.getCompletedSegments().size());
+        checkpointStore.resume(checkpoint, writer);
+        return checkpoint;
+    }
+    
+    /**
+     * 一个获取任务的状态与执行流程
+     */
+    private final class FetchJob implements JobWork {
+        private final List<String> requestedApiUrls;
+        private final long startBlock;
+        private final long endBlock;
+        private final long totalBlocks;
+        private volatile long processedBlockCount = 0;
+        private volatile long skippedBlockCount = 0;
+        private volatile boolean isProcessing = false;
+        private volatile boolean hasError = false;
+        private volatile Long currentBlockNum = null;
+        private volatile long fetchStartTime = 0;
+        private volatile List<String> apiUrls = null;
+        private volatile BlockFetcher fetcher = null;
+        
+        private FetchJob(List<String> apiUrls, long startBlock, long endBlock) {
+            this.requestedApiUrls = apiUrls;
+            this.startBlock = startBlock;
+            this.endBlock = endBlock;
+            this.totalBlocks = endBlock - startBlock + 1;
+        }
+        
+        @Override
+        public ProgressStatus getProgress() {
+            List<String> urls = apiUrls;
+            BlockFetcher currentFetcher = fetcher;
+            return new ProgressStatus(
+                processedBlockCount,
+                isProcessing,
+                hasError,
+                totalBlocks,
+                currentBlockNum,
+                currentFetcher != null ? currentFetcher.getInFlightRequests() : 0,
+                calculateBlocksPerSecond(),
+                skippedBlockCount,
+                urls != null ? chainClient.getConcurrencyLimit(urls) : 0
+            );
+        }
+        
+        private double calculateBlocksPerSecond() {
+            long startTime = fetchStartTime;
+            if (startTime == 0) {
+                return 0;
+            }
+            double elapsedSeconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            return elapsedSeconds > 0 ? (processedBlockCount - skippedBlockCount) / elapsedSeconds : 0;
+        }
+        
+        @Override
+        public void run(Job job) throws Exception {
             isProcessing = true;
-            hasError = false;
-            totalBlocks = endBlock - startBlock + 1;
+            try {
+                fetchAndSaveBlocks(job);
+            } catch (JobCancelledException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("获取过程中发生错误: {}", e.getMessage());
+                hasError = true;
+                throw e;
+            } finally {
+                currentBlockNum = null;
+                isProcessing = false;
+                fetchStartTime = 0;
+                log.info("数据获取任务 {} 结束. 总计: {}, 成功: {}, 是否有错误: {}", 
+                    job.getId(), totalBlocks, processedBlockCount, hasError);
+            }
+        }
+        
+        private void fetchAndSaveBlocks(Job job) throws Exception {
+            // 先验证API
+            List<String> apiUrls = validateApis(requestedApiUrls);
+            this.apiUrls = apiUrls;
+            BlockFetcher fetcher = new BlockFetcher(chainClient, metrics, job, apiUrls, () -> hasError = true);
+            this.fetcher = fetcher;
             
-            File dir = new File(OUTPUT_DIR);
+            File dir = new File(outputDir);
             if (!dir.exists()) {
                 dir.mkdirs();
             }
             
-            // 创建一个列表来存储所有区块数据
-            List<String> blockDataList = new ArrayList<>();
-            RestTemplate restTemplate = new RestTemplate();
+            FetchCheckpointStore checkpointStore = new FetchCheckpointStore(dir);
+            BlockSegmentWriter writer = newSegmentWriter(dir);
+            FetchCheckpoint checkpoint = restoreCheckpoint(checkpointStore, writer, startBlock, endBlock);
             
-            for (long blockNum = startBlock; blockNum <= endBlock; blockNum++) {
-                currentBlockNum = blockNum;
-                boolean blockSuccess = false;
-                int retryCount = 0;
-                
-                while (!blockSuccess) {
-                    try {
-                        Map<String, Object> requestBody = new HashMap<>();
-                        requestBody.put("block_num_or_id", blockNum);
-                        
-                        String blockData = restTemplate.postForObject(
-                            apiUrl,
-                            requestBody,
-                            String.class
-                        );
-                        
-                        // 将区块数据添加到列表中
-                        blockDataList.add(blockData);
-                        
-                        blockSuccess = true;
-                        processedBlockCount++;
-                        log.info("成功获取区块 {} 的数据 ({}/{})", 
-                            blockNum, processedBlockCount, totalBlocks);
-                        
-                    } catch (Exception e) {
-                        retryCount++;
-                        hasError = true;
-                        log.error("获取区块 {} 数据失败 (尝试 {}): {}", 
-                            blockNum, retryCount, e.getMessage());
-                        
-                        try {
-                            long waitTime = Math.min(RETRY_DELAY_MS * retryCount, MAX_RETRY_DELAY_MS);
-                            log.info("等待 {} 毫秒后重试区块 {}", waitTime, blockNum);
-                            Thread.sleep(waitTime);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            throw new RuntimeException("线程被中断", ie);
-                        }
-                    }
-                }
+            // 已写入磁盘的区块（所有检查点记录的已完成分段 + 本任务未完成的分段）不再重复获取
+            List<SegmentFile> onDisk = new ArrayList<>(checkpointStore.completedSegments());
+            if (writer.getPartFileName() != null) {
+                onDisk.add(new SegmentFile(writer.getPartFileName(),
+                    writer.getSegmentFirstBlock(), writer.getSegmentLastBlock()));
+            }
+            MissingBlocks missingBlocks = new MissingBlocks(onDisk, startBlock, endBlock);
+            skippedBlockCount = totalBlocks - missingBlocks.count();
+            processedBlockCount = skippedBlockCount;
+            if (skippedBlockCount > 0) {
+                log.info("跳过已存在于磁盘的区块 {} 个，剩余 {} 个待获取", skippedBlockCount, missingBlocks.count());
             }
             
-            // 将所有区块数据写入单个文件
-            if (!blockDataList.isEmpty()) {
-                // 构建包含所有区块的 JSON 数组
-                StringBuilder jsonContent = new StringBuilder();
-                jsonContent.append("{\n  \"blocks\": [\n");
+            // 并发获取区块，但按区块号顺序交给写入器，每个区块到达后立即追加到文件；
+            // 获取请求作为工作单元提交到所有任务共享的线程池
+            int window = Math.max(1, fetchConcurrency);
+            Deque<BlockFetcher.Pending> inFlight = new ArrayDeque<>();
+            fetchStartTime = System.nanoTime();
+            Long lastWrittenBlock = checkpoint.getLastWrittenBlock();
+            JobCancelledException cancelled = null;
+            
+            try (writer) {
+                while (missingBlocks.hasNext() && inFlight.size() < window) {
+                    inFlight.addLast(fetcher.submit(missingBlocks.next()));
+                }
                 
-                for (int i = 0; i < blockDataList.size(); i++) {
-                    jsonContent.append(blockDataList.get(i));
-                    if (i < blockDataList.size() - 1) {
-                        jsonContent.append(",\n");
+                long sinceCheckpoint = 0;
+                while (!inFlight.isEmpty()) {
+                    job.checkpoint();
+                    BlockFetcher.Pending pending = inFlight.pollFirst();
+                    long blockNum = pending.blockNum;
+                    currentBlockNum = blockNum;
+                    long waitStart = System.nanoTime();
+                    byte[] blockData = fetcher.await(pending);
+                    metrics.record(Stage.FETCH_WAIT, waitStart);
+                    
+                    int completedBefore = writer.getCompletedSegments().size();
+                    long writeStart = System.nanoTime();
+                    writer.append(blockNum, blockData);
+                    metrics.record(Stage.FETCH_WRITE, writeStart);
+                    metrics.blockFetched(blockData.length);
+                    lastWrittenBlock = blockNum;
+                    processedBlockCount++;
+                    log.info("成功获取区块 {} 的数据 ({}/{})", 
+                        blockNum, processedBlockCount, totalBlocks);
+                    
+                    // 分段完成或写入一定数量区块后更新检查点
+                    if (++sinceCheckpoint >= checkpointInterval
+                            || writer.getCompletedSegments().size() != completedBefore) {
+                        writer.flush();
+                        checkpointStore.update(checkpoint, writer, blockNum);
+                        sinceCheckpoint = 0;
+                    }
+                    
+                    if (missingBlocks.hasNext()) {
+                        inFlight.addLast(fetcher.submit(missingBlocks.next()));
                     }
                 }
-                
-                jsonContent.append("\n  ]\n}");
-                
-                // 生成文件名，包含区块范围
-                String fileName = String.format("blocks_%d_%d.json", startBlock, endBlock);
-                File outputFile = new File(dir, fileName);
-                
-                Files.write(
-                    outputFile.toPath(),
-                    jsonContent.toString().getBytes(StandardCharsets.UTF_8)
-                );
-                
-                log.info("成功将所有区块数据保存到文件: {}", fileName);
+            } catch (JobCancelledException e) {
+                // 取消时已写入的区块保留，写入器关闭后记录检查点，下次获取同一范围时跳过
+                cancelled = e;
+            } finally {
+                for (BlockFetcher.Pending pending : inFlight) {
+                    pending.cancel();
+                }
+            }
+            
+            // 写入器关闭后所有分段均已完成，记录最终检查点
+            checkpointStore.update(checkpoint, writer, cancelled != null ? lastWrittenBlock : endBlock);
+            if (cancelled != null) {
+                throw cancelled;
             }
             
             // 所有区块都处理完成后的检查
@@ -175,15 +392,69 @@ public class BlockDataService {
                 hasError = true;
                 log.error("部分区块数据获取失败. 总计: {}, 成功: {}", totalBlocks, processedBlockCount);
             }
-            
-        } catch (Exception e) {
-            log.error("获取过程中发生错误: {}", e.getMessage());
-            hasError = true;
-        } finally {
-            currentBlockNum = null;
-            isProcessing = false;
-            log.info("数据获取任务结束. 总计: {}, 成功: {}, 是否有错误: {}", 
-                totalBlocks, processedBlockCount, hasError);
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 按顺序遍历 [startBlock, endBlock] 中未被已有分段覆盖的区块号
+     */
+    private static final class MissingBlocks {
+        private final long[][] covered;
+        private final long endBlock;
+        private int rangeIndex = 0;
+        private long next;
+        
+        private MissingBlocks(List<SegmentFile> segments, long startBlock, long endBlock) {
+            // 合并重叠的分段范围
+            List<long[]> merged = new ArrayList<>();
+            segments.stream()
+                .sorted(Comparator.comparingLong(SegmentFile::getFirstBlock))
+                .forEach(segment -> {
+                    long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                    if (last != null && segment.getFirstBlock() <= last[1] + 1) {
+                        last[1] = Math.max(last[1], segment.getLastBlock());
+                    } else {
+                        merged.add(new long[] {segment.getFirstBlock(), segment.getLastBlock()});
+                    }
+                });
+            this.covered = merged.toArray(new long[0][]);
+            this.endBlock = endBlock;
+            this.next = skipCovered(startBlock);
+        }
+        
+        boolean hasNext() {
+            return next <= endBlock;
+        }
+        
+        long next() {
+            long blockNum = next;
+            next = skipCovered(blockNum + 1);
+            return blockNum;
+        }
+        
+        long count() {
+            long count = 0;
+            long blockNum = next;
+            int savedIndex = rangeIndex;
+            while (blockNum <= endBlock) {
+                long[] range = rangeIndex < covered.length ? covered[rangeIndex] : null;
+                long gapEnd = range == null ? endBlock : Math.min(endBlock, range[0] - 1);
+                count += gapEnd - blockNum + 1;
+                blockNum = range == null ? endBlock + 1 : skipCovered(range[1] + 1);
+            }
+            rangeIndex = savedIndex;
+            return count;
+        }
+        
+        private long skipCovered(long blockNum) {
+            while (rangeIndex < covered.length && covered[rangeIndex][1] < blockNum) {
+                rangeIndex++;
+            }
+            if (rangeIndex < covered.length && covered[rangeIndex][0] <= blockNum) {
+                blockNum = covered[rangeIndex][1] + 1;
+                rangeIndex++;
+            }
+            return blockNum;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.yidong.service;
+
+import com.yidong.chain.ChainClient;
+import com.yidong.chain.ChainClientException;
+import com.yidong.job.Job;
+import com.yidong.job.JobCancelledException;
+import com.yidong.metrics.BlockMetrics;
+import com.yidong.metrics.BlockMetrics.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 获取任务和跟随任务共用的区块获取：每个区块的请求作为工作单元提交到任务共享的线程池，
+ * 失败时按退避间隔重试，直到成功或任务被取消；调用方按提交顺序等待结果
+ */
+final class BlockFetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockFetcher.class);
+    private static final long RETRY_DELAY_MS = 500;
+    private static final long MAX_RETRY_DELAY_MS = 2000;
+
+    private final ChainClient chainClient;
+    private final BlockMetrics metrics;
+    private final Job job;
+    private final List<String> apiUrls;
+    // 每次请求失败时调用，获取任务用来标记进度中的错误
+    private final Runnable onFailure;
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+
+    BlockFetcher(ChainClient chainClient, BlockMetrics metrics, Job job, List<String> apiUrls, Runnable onFailure) {
+        this.chainClient = chainClient;
+        this.metrics = metrics;
+        this.job = job;
+        this.apiUrls = apiUrls;
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * 提交一个区块的获取
+     */
+    Pending submit(long blockNum) {
+        return new Pending(blockNum, job.submit(() -> fetch(blockNum)));
+    }
+
+    /**
+     * 等待区块获取完成，任务被取消时抛出 {@link JobCancelledException}
+     */
+    byte[] await(Pending pending) throws Exception {
+        try {
+            return pending.future.get();
+        } catch (CancellationException e) {
+            throw new JobCancelledException(job.getId());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JobCancelledException) {
+                throw (JobCancelledException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 正在进行的请求数
+     */
+    int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * 获取单个区块，失败时重试，直到成功或任务被取消
+     * @return 区块原始JSON字节
+     */
+    private byte[] fetch(long blockNum) {
+        int retryCount = 0;
+        while (true) {
+            if (job.isCancelled()) {
+                throw new JobCancelledException(job.getId());
+            }
+            inFlightRequests.incrementAndGet();
+            metrics.fetchRequestStarted();
+            long start = System.nanoTime();
+            long retryAfterMs;
+            try {
+                return chainClient.getBlock(apiUrls, blockNum);
+            } catch (Exception e) {
+                retryCount++;
+                onFailure.run();
+                metrics.fetchRetried();
+                retryAfterMs = e instanceof ChainClientException ? ((ChainClientException) e).getRetryAfterMs() : 0;
+                log.error("获取区块 {} 数据失败 (尝试 {}): {}", blockNum, retryCount, e.getMessage());
+            } finally {
+                metrics.record(Stage.FETCH_RPC, start);
+                metrics.fetchRequestFinished();
+                inFlightRequests.decrementAndGet();
+            }
+
+            try {
+                // 节点返回 Retry-After 时按节点要求的时间等待
+                long waitTime = Math.max(retryAfterMs, Math.min(RETRY_DELAY_MS * retryCount, MAX_RETRY_DELAY_MS));
+                log.info("等待 {} 毫秒后重试区块 {}", waitTime, blockNum);
+                Thread.sleep(waitTime);
+            } catch (InterruptedException ie) {
+                // 工作线程被中断（任务取消或线程池关闭）时保留中断状态，按取消处理
+                Thread.currentThread().interrupt();
+                throw new JobCancelledException(job.getId());
+            }
+        }
+    }
+
+    /**
+     * 已提交的区块获取
+     */
+    static final class Pending {
+        final long blockNum;
+        private final Future<byte[]> future;
+
+        private Pending(long blockNum, Future<byte[]> future) {
+            this.blockNum = blockNum;
+            this.future = future;
+        }
+
+        /**
+         * 不再需要结果时取消，尚未开始的请求不会发出
+         */
+        void cancel() {
+            future.cancel(false);
+        }
+    }
+}
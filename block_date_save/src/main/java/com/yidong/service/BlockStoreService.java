@@ -0,0 +1,152 @@
+package com.yidong.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.job.Job;
+import com.yidong.job.JobScheduler;
+import com.yidong.job.JobType;
+import com.yidong.job.JobWork;
+import com.yidong.model.IndexProgress;
+import com.yidong.storage.BlockStore;
+import com.yidong.storage.ExportWriter;
+import com.yidong.storage.SegmentIndexer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 按区块号读取输出目录中已保存的区块，以及为已有的区块文件建立索引
+ */
+@Service
+public class BlockStoreService {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockStoreService.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private JobScheduler jobScheduler;
+
+    /** 获取结果和检查点的输出目录 */
+    @Value("${block.output.dir:block_data}")
+    private String outputDir;
+
+    private BlockStore store;
+
+    private synchronized BlockStore store() {
+        if (store == null) {
+            store = new BlockStore(new File(outputDir));
+        }
+        return store;
+    }
+
+    /**
+     * 区块的原始 JSON，不存在时返回 null
+     */
+    public byte[] getBlock(long blockNum) throws IOException {
+        return store().readBytes(blockNum);
+    }
+
+    /**
+     * 按 {"blocks":[...]} 格式写出范围内存在的区块
+     * @return 写出的区块数
+     */
+    public long writeRange(long fromBlock, long toBlock, WritableByteChannel out) throws IOException {
+        return store().writeRange(fromBlock, toBlock, out);
+    }
+
+    /**
+     * 逐个写出范围内存在的区块，每次只读取一个区块。按分段遍历索引记录，
+     * 范围很大时不会逐个查找不存在的区块
+     * @return 写出的区块数
+     */
+    public long exportRange(long fromBlock, long toBlock, ExportWriter writer) throws IOException {
+        store().forEachInRange(fromBlock, toBlock, (blockNum, block) -> writer.writeBlock(block));
+        return writer.getRows();
+    }
+
+    /**
+     * 提交索引任务：为输出目录中没有索引或索引已过期的分段文件建立索引
+     * @param rebuild 为 true 时重建所有分段文件的索引
+     * @return 任务
+     */
+    public Job startIndex(boolean rebuild) {
+        synchronized (this) {
+            for (Job job : jobScheduler.list()) {
+                if (job.getType() == JobType.INDEX && !job.getStatus().isFinished()) {
+                    throw new IllegalStateException("已有正在进行的索引任务 " + job.getId());
+                }
+            }
+            return jobScheduler.submit(JobType.INDEX, rebuild ? "重建区块文件索引" : "为区块文件建立索引",
+                new IndexJob(rebuild));
+        }
+    }
+
+    /**
+     * 一个索引任务的状态与执行流程
+     */
+    private final class IndexJob implements JobWork {
+        private final boolean rebuild;
+        private volatile boolean isIndexing;
+        private volatile boolean hasError;
+        private volatile int totalFiles;
+        private volatile int indexedFiles;
+        private volatile long indexedBlocks;
+        private volatile long indexedBytes;
+        private volatile String currentFile;
+        private volatile long indexStartTime;
+
+        private IndexJob(boolean rebuild) {
+            this.rebuild = rebuild;
+        }
+
+        @Override
+        public IndexProgress getProgress() {
+            long startTime = indexStartTime;
+            double elapsedSeconds = startTime != 0 ? (System.nanoTime() - startTime) / 1_000_000_000.0 : 0;
+            return new IndexProgress(isIndexing, hasError, totalFiles, indexedFiles, indexedBlocks, currentFile,
+                elapsedSeconds > 0 ? indexedBytes / elapsedSeconds : 0);
+        }
+
+        @Override
+        public void run(Job job) throws Exception {
+            isIndexing = true;
+            indexStartTime = System.nanoTime();
+            try {
+                BlockStore blockStore = store();
+                List<Path> files = rebuild ? blockStore.segmentFiles() : blockStore.unindexedSegments();
+                totalFiles = files.size();
+                log.info("开始建立索引: 分段文件 {} 个", files.size());
+                for (Path file : files) {
+                    job.checkpoint();
+                    currentFile = file.getFileName().toString();
+                    long start = System.nanoTime();
+                    int blocks = SegmentIndexer.index(file, objectMapper);
+                    indexedBlocks += blocks;
+                    indexedBytes += Files.size(file);
+                    indexedFiles++;
+                    log.info("分段 {} 索引完成: 区块 {} 个，耗时 {} ms", currentFile, blocks,
+                        (System.nanoTime() - start) / 1_000_000);
+                }
+                blockStore.refresh();
+            } catch (Exception e) {
+                if (!job.isCancelled()) {
+                    hasError = true;
+                    log.error("建立索引失败 ({}): {}", currentFile, e.getMessage());
+                }
+                throw e;
+            } finally {
+                currentFile = null;
+                isIndexing = false;
+            }
+        }
+    }
+}
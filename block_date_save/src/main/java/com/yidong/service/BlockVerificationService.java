@@ -2,280 +2,846 @@ package com.yidong.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.yidong.chain.ChainClient;
+import com.yidong.crypto.EosBlockHasher;
+import com.yidong.job.Job;
+import com.yidong.job.JobCancelledException;
+import com.yidong.job.JobScheduler;
+import com.yidong.job.JobType;
+import com.yidong.job.JobWork;
+import com.yidong.metrics.BlockMetrics;
+import com.yidong.metrics.BlockMetrics.Stage;
+import com.yidong.model.BlockHeader;
+import com.yidong.model.ChainInfo;
+import com.yidong.model.VerificationMode;
 import com.yidong.model.VerificationProgress;
 import com.yidong.model.VerificationResult;
+import com.yidong.storage.BlockFileReader;
+import com.yidong.storage.ExportWriter;
+import com.yidong.storage.VerificationCache;
+import com.yidong.storage.VerificationResultStore;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.LongFunction;
 
 @Service
 public class BlockVerificationService {
     private static final Logger logger = LoggerFactory.getLogger(BlockVerificationService.class);
+    /** 导出时每次从结果存储读取的数量 */
+    private static final int EXPORT_PAGE_SIZE = 1000;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final ChainClient chainClient;
     
-    // 存储验证进度和结果
-    private VerificationProgress currentProgress;
-    private List<VerificationResult> verificationResults;
-    private ExecutorService executorService;
-    private boolean isVerifying = false;
-
-    public BlockVerificationService() {
-        this.executorService = Executors.newSingleThreadExecutor();
-        this.verificationResults = new ArrayList<>();
-        this.currentProgress = new VerificationProgress();
+    private final JobScheduler jobScheduler;
+    
+    private final BlockMetrics metrics;
+    
+    // 链上区块缓存与预取：每个验证任务有自己的缓存，加载共用一个线程池
+    private final int cacheSize;
+    private final ExecutorService prefetchExecutor;
+    private final int prefetchDepth;
+    
+    // 每个任务同时比较的区块数；比较本身作为工作单元提交到任务共享的线程池
+    private final int verifyWorkers;
+    
+    // 离线校验的并行度，按 CPU 核数
+    private final int offlineWorkers;
+    
+    // 每个任务在内存中保存的未通过结果数量，超出后写入临时文件
+    private final int maxFailuresInMemory;
+    
+    // 验证结果缓存的目录，为空时不使用；每条链一个缓存文件，同一条链的任务共用
+    private final String resultCacheDir;
+    private final Map<String, VerificationCache> resultCaches = new ConcurrentHashMap<>();
+
+    // 深度比较：交易较多的区块在这个线程池中并行计算交易摘要
+    private final ForkJoinPool digestPool;
+    private final TransactionComparator transactionComparator;
+
+    public BlockVerificationService(
+        ChainClient chainClient,
+        JobScheduler jobScheduler,
+        BlockMetrics metrics,
+        @Value("${block.verify.cache-size:1024}") int cacheSize,
+        @Value("${block.verify.prefetch-depth:8}") int prefetchDepth,
+        @Value("${block.verify.workers:4}") int verifyWorkers,
+        @Value("${block.verify.results.max-failures-in-memory:10000}") int maxFailuresInMemory,
+        @Value("${block.verify.result-cache.dir:${block.output.dir:block_data}/verify-cache}") String resultCacheDir
+    ) {
+        this.chainClient = chainClient;
+        this.jobScheduler = jobScheduler;
+        this.metrics = metrics;
+        this.cacheSize = cacheSize;
+        this.prefetchDepth = Math.max(0, prefetchDepth);
+        this.verifyWorkers = Math.max(1, verifyWorkers);
+        this.prefetchExecutor = Executors.newFixedThreadPool(Math.max(this.verifyWorkers, this.prefetchDepth));
+        this.offlineWorkers = Runtime.getRuntime().availableProcessors();
+        this.maxFailuresInMemory = maxFailuresInMemory;
+        this.resultCacheDir = resultCacheDir;
+        this.digestPool = new ForkJoinPool(this.offlineWorkers);
+        this.transactionComparator = new TransactionComparator(digestPool);
+    }
+
+    /**
+     * 应用关闭时停止链上区块预取和交易摘要的线程池
+     */
+    @PreDestroy
+    public void shutdown() {
+        prefetchExecutor.shutdownNow();
+        digestPool.shutdownNow();
+    }
+
+    /**
+     * 提交验证任务，多个验证任务可以同时进行
+     * @param file 上传内容保存的临时文件，验证结束后删除
+     * @param apiUrls 链上API地址，可以有多个；离线模式下可以为空（为空时不对未通过的区块做链上比对）
+     * @param mode 验证方式
+     * @return 任务
+     */
+    public Job startVerification(Path file, List<String> apiUrls, VerificationMode mode) {
+        return startVerification(file, apiUrls, mode, false);
     }
 
-    public void startVerification(String content, String apiUrl) {
-        if (isVerifying) {
-            throw new IllegalStateException("验证任务正在进行中");
+    /**
+     * 提交验证任务
+     * @param deep 在线验证时同时逐个交易比较完整的区块内容，不一致的字段路径记录在 mismatchFields 和 fieldDetails 中；
+     *             需要解析并获取完整的区块，也不使用验证结果缓存
+     */
+    public Job startVerification(Path file, List<String> apiUrls, VerificationMode mode, boolean deep) {
+        return startVerification(file, apiUrls, mode, deep, true);
+    }
+
+    /**
+     * 提交验证任务
+     * @param deleteFile 验证结束后是否删除文件；验证用户指定的文件（命令行批处理）时为 false
+     */
+    public Job startVerification(Path file, List<String> apiUrls, VerificationMode mode, boolean deep,
+                                 boolean deleteFile) {
+        if (mode == VerificationMode.AUDIT && apiUrls.isEmpty()) {
+            throw new IllegalArgumentException("审计验证需要提供 apiUrl");
+        }
+        if (deep && mode != VerificationMode.ONLINE) {
+            throw new IllegalArgumentException("深度比较只用于在线验证");
         }
+        return jobScheduler.submit(JobType.VERIFY, modeName(mode) + (deep ? "深度" : "") + "验证 " + file.getFileName(),
+            new VerifyJob(file, apiUrls, mode, deep, deleteFile));
+    }
 
-        isVerifying = true;
-        verificationResults.clear();
-        
-        executorService.submit(() -> {
-            try {
-                List<VerificationResult> results = verifyBlocks(content, apiUrl);
-                synchronized (this) {
-                    verificationResults.addAll(results);
-                    isVerifying = false;
-                    updateProgress(results.size(), results.size(), null, results);
-                }
-            } catch (Exception e) {
-                logger.error("验证过程发生错误", e);
-                isVerifying = false;
-                updateProgress(0, 0, null, Collections.emptyList());
-            }
-        });
+    private static String modeName(VerificationMode mode) {
+        switch (mode) {
+            case OFFLINE: return "离线";
+            case AUDIT: return "审计";
+            default: return "在线";
+        }
     }
 
-    private List<VerificationResult> verifyBlocks(String content, String apiUrl) {
-        try {
-            // 解析上传的文件内容
-            JsonNode rootNode = objectMapper.readTree(content);
-            List<Map<String, Object>> blocks = new ArrayList<>();
-            
-            // 处理不同的文件格式
-            if (rootNode.isArray()) {
-                // 如果是数组格式
-                rootNode.forEach(node -> blocks.add(objectMapper.convertValue(node, Map.class)));
-            } else if (rootNode.has("blocks")) {
-                // 如果是 {blocks: [...]} 格式
-                rootNode.get("blocks").forEach(node -> blocks.add(objectMapper.convertValue(node, Map.class)));
-            } else if (rootNode.has("block_num")) {
-                // 如果是单个区块
-                blocks.add(objectMapper.convertValue(rootNode, Map.class));
-            } else {
-                throw new RuntimeException("无效的文件格式：需要区块数组或包含blocks字段的对象");
+    /**
+     * 一个验证任务的状态与执行流程。验证结果只追加到结果存储，通过的区块只记录区块号
+     */
+    private final class VerifyJob implements JobWork {
+        private final Path file;
+        private final List<String> apiUrls;
+        private final VerificationMode mode;
+        private final boolean deep;
+        private final boolean deleteFile;
+        private final VerificationResultStore verificationResults = new VerificationResultStore(maxFailuresInMemory);
+        private final ChainBlockCache chainBlockCache = new ChainBlockCache(cacheSize);
+        private volatile boolean isVerifying = true;
+        private volatile Long currentBlock;
+        private volatile int verifiedCount;
+        private volatile int totalBlocks;
+        // 验证结果缓存：本次命中的区块跳过链上比对，新通过的不可逆区块在任务结束时写入
+        private VerificationCache resultCache;
+        private long irreversibleBlockNum;
+        private final VerificationCache.Updates cacheUpdates = new VerificationCache.Updates();
+        private volatile long resultCacheHits;
+        // 深度比较：链上区块加载时解析的完整区块，按区块号暂存到比较时取出，避免再次请求；
+        // 只暂存窗口中等待深度比较的区块，预取和链接检查加载的其他区块只进入区块头缓存
+        private final Map<Long, JsonNode> chainTrees = new ConcurrentHashMap<>();
+        private final Set<Long> deepWindow = ConcurrentHashMap.newKeySet();
+
+        private VerifyJob(Path file, List<String> apiUrls, VerificationMode mode, boolean deep, boolean deleteFile) {
+            this.file = file;
+            this.apiUrls = apiUrls;
+            this.mode = mode;
+            this.deep = deep;
+            this.deleteFile = deleteFile;
+        }
+
+        @Override
+        public void run(Job job) throws Exception {
+            // 出错或取消时，之前已完成的验证结果保留，可以继续查询
+            try {
+                verifyBlocks(job, file, apiUrls, mode);
+                totalBlocks = verifiedCount;
+            } finally {
+                currentBlock = null;
+                deepWindow.clear();
+                chainTrees.clear();
+                saveResultCache();
             }
+        }
 
-            if (blocks.isEmpty()) {
-                throw new RuntimeException("未找到任何区块数据");
+        @Override
+        public void onFinished() {
+            isVerifying = false;
+            if (deleteFile) {
+                deleteTempFile(file);
             }
+        }
+
+        @Override
+        public void onRemoved() {
+            verificationResults.close();
+        }
+
+        /**
+         * 当前进度的快照，只包含计数，不包含验证结果
+         */
+        @Override
+        public VerificationProgress getProgress() {
+            VerificationProgress progress = new VerificationProgress();
+            progress.setVerifiedCount(verifiedCount);
+            progress.setFailedCount(verificationResults.getFailedCount());
+            progress.setTotalBlocks(totalBlocks);
+            progress.setCurrentBlock(currentBlock);
+            progress.setVerifying(isVerifying);
+            progress.setCacheHits(chainBlockCache.getHits());
+            progress.setCacheMisses(chainBlockCache.getMisses());
+            progress.setConcurrencyLimit(apiUrls.isEmpty() ? 0 : chainClient.getConcurrencyLimit(apiUrls));
+            progress.setResultCacheHits(resultCacheHits);
+            return progress;
+        }
+
+        /**
+         * 获取游标之后的验证结果
+         * @param cursor 客户端已获取的结果数量
+         * @param limit 最多返回的数量
+         */
+        @Override
+        public List<VerificationResult> resultsAfter(int cursor, int limit) {
+            return verificationResults.resultsAfter(cursor, limit);
+        }
+
+        private void verifyBlocks(Job job, Path file, List<String> apiUrls, VerificationMode mode) {
+            boolean offline = mode == VerificationMode.OFFLINE;
+            LongFunction<BlockHeader> chainLoader = apiUrls.isEmpty() ? null
+                : deep ? num -> fetchChainTree(apiUrls, num)
+                : num -> fetchChainBlock(apiUrls, num);
+            // 增量解析上传的文件，只有窗口内的区块在内存中，解析到第一个区块即开始验证；
+            // 在线验证只解析区块头，离线验证需要交易回执、深度比较需要交易内容，解析完整的区块
+            try (BlockFileReader<?> reader = offline || deep
+                    ? BlockFileReader.trees(file, objectMapper)
+                    : BlockFileReader.headers(file, objectMapper)) {
+                if (!reader.hasNext()) {
+                    throw new RuntimeException("未找到任何区块数据");
+                }
+                // 结果缓存只记录区块头摘要，不能代替深度比较
+                if (!offline && !deep) {
+                    openResultCache(apiUrls);
+                }
+                // 审计验证先扫描一遍文件定位需要逐块比对的区块，之后与在线验证相同，只是跳过已确认的区块
+                ChainAudit audit = mode == VerificationMode.AUDIT ? audit(job, file, chainLoader) : null;
             
-            List<VerificationResult> results = new ArrayList<>();
-            int totalBlocks = blocks.size();
+                BlockHeader previousLocalBlock = null;
+                byte[] previousComputedId = null;
+                boolean hasPrevious = false;
+                int position = 0;
+                // 各区块的比较（在线：与链上数据比较；离线：重新计算哈希）相互独立，在工作线程中并行执行；
+                // 本地连续性和 previous 链接在按区块顺序收集结果时完成
+                int window = offline ? offlineWorkers * 2 : verifyWorkers + prefetchDepth;
+                Deque<PendingVerification> pending = new ArrayDeque<>();
             
-            for (int i = 0; i < blocks.size(); i++) {
-                Map<String, Object> localBlock = blocks.get(i);
-                Long blockNum = Long.valueOf(localBlock.get("block_num").toString());
-                
-                // 验证本地区块连续性
-                boolean isLocalContinuous = true;
-                if (i > 0) {
-                    // 获取前一个区块进行连续性验证
-                    Map<String, Object> previousLocalBlock = blocks.get(i - 1);
-                    isLocalContinuous = verifyLocalContinuity(localBlock, previousLocalBlock);
-                } else {
-                    // 对于第一个区块，检查其 previous 是否为全0哈希（如果不是第一个区块号，则标记为不连续）
-                    String firstBlockPrevious = (String) localBlock.get("previous");
-                    if (blockNum == 1) {
-                        isLocalContinuous = firstBlockPrevious.matches("^0{64}$");
-                        if (!isLocalContinuous) {
-                            logger.error("第一个区块的 previous 不是全0哈希: {}", firstBlockPrevious);
+                while (true) {
+                    while (pending.size() < window && reader.hasNext()) {
+                        long parseStart = System.nanoTime();
+                        Object parsed = reader.next();
+                        if (offline) {
+                            JsonNode node = (JsonNode) parsed;
+                            BlockHeader block = BlockHeader.from(node);
+                            metrics.record(Stage.VERIFY_PARSE, parseStart);
+                            pending.addLast(new PendingVerification(block, null,
+                                job.submit(() -> checkOffline(node, block, chainLoader))));
+                        } else if (deep) {
+                            JsonNode node = (JsonNode) parsed;
+                            BlockHeader block = BlockHeader.from(node);
+                            metrics.record(Stage.VERIFY_PARSE, parseStart);
+                            deepWindow.add(block.getBlockNum());
+                            pending.addLast(new PendingVerification(block,
+                                job.submit(() -> compareWithChain(block, node, chainLoader)), (byte[]) null));
+                        } else {
+                            BlockHeader block = (BlockHeader) parsed;
+                            byte[] digest = resultCache != null ? block.contentDigest() : null;
+                            metrics.record(Stage.VERIFY_PARSE, parseStart);
+                            if (digest != null && resultCache.contains(block.getBlockNum(), digest)) {
+                                resultCacheHits++;
+                                pending.addLast(new PendingVerification(block, "验证通过（结果缓存）"));
+                            } else if (audit != null && audit.isCertified(position)) {
+                                pending.addLast(new PendingVerification(block,
+                                    "审计通过: 由区块 " + audit.anchorOf(position) + " 的链上 id 确认"));
+                            } else {
+                                pending.addLast(new PendingVerification(block,
+                                    job.submit(() -> compareWithChain(block, null, chainLoader)), digest));
+                            }
                         }
-                    } else {
-                        isLocalContinuous = false;
-                        logger.error("文件中的第一个区块号不是1: {}", blockNum);
+                        position++;
+                    }
+                    if (pending.isEmpty()) {
+                        break;
                     }
-                }
                 
-                try {
-                    // 从链上获取当前区块数据
-                    Map<String, Object> requestBody = new HashMap<>();
-                    requestBody.put("block_num_or_id", blockNum);
-                    Map chainBlock = restTemplate.postForObject(apiUrl, requestBody, Map.class);
-
-                    // 验证链上区块的连续性
-                    boolean currentChainContinuous = true;
-                    // 获取当前区块的 previous 哈希
-                    String currentPrevious = chainBlock.get("previous").toString();
-                    
-                    // 通过 API 获取前一个区块的信息
-                    Map<String, Object> previousRequestBody = new HashMap<>();
-                    previousRequestBody.put("block_num_or_id", blockNum - 1);
-                    try {
-                        Map<String, Object> prevChainBlock = restTemplate.postForObject(apiUrl, previousRequestBody, Map.class);
-                        // 验证区块号连续性
-                        Long currentBlockNum = Long.valueOf(chainBlock.get("block_num").toString());
-                        Long previousBlockNum = Long.valueOf(prevChainBlock.get("block_num").toString());
-                        boolean isBlockNumContinuous = (currentBlockNum - previousBlockNum == 1);
-                        
-                        // 验证区块哈希连续性
-                        String previousId = prevChainBlock.get("id").toString();
-                        boolean isHashContinuous = currentPrevious.equals(previousId);
-                        
-                        currentChainContinuous = isBlockNumContinuous && isHashContinuous;
-                        
-                        if (!currentChainContinuous) {
-                            if (!isBlockNumContinuous) {
-                                logger.error("链上区块号不连续: 当前区块号 {} 与前一区块号 {} 不连续",
-                                    currentBlockNum, previousBlockNum);
-                            }
-                            if (!isHashContinuous) {
-                                logger.error("链上区块哈希不连续: 区块 {} 的 previous ({}) 与前一个区块的 id ({}) 不匹配",
-                                    currentBlockNum, currentPrevious, previousId);
-                            }
+                    job.checkpoint();
+                    PendingVerification head = pending.pollFirst();
+                    BlockHeader localBlock = head.localBlock;
+                    long blockNum = localBlock.getBlockNum();
+                
+                    // 验证本地区块连续性
+                    boolean isLocalContinuous = checkLocalContinuity(blockNum, localBlock, previousLocalBlock);
+                    previousLocalBlock = localBlock;
+                
+                    VerificationResult result;
+                    if (offline) {
+                        OfflineCheck check = head.offlineCheck.get();
+                        result = createOfflineResult(blockNum, localBlock, check, previousComputedId, hasPrevious,
+                            isLocalContinuous);
+                        previousComputedId = check.computedId;
+                        hasPrevious = true;
+                        boolean passed = result.isDataMatch() && result.isHashMatch() && result.isChainContinuous();
+                        if (!passed && chainLoader != null) {
+                            // 离线校验未通过的区块再与链上数据比对；id 或交易根不一致时比对已在校验的工作单元中完成，
+                            // 只有 previous 链接不一致时才在这里提交
+                            logger.info("区块 {} 离线校验未通过，与链上数据比对", blockNum);
+                            ChainComparison comparison = check.chainComparison != null ? check.chainComparison
+                                : job.submit(() -> compareWithChain(localBlock, null, chainLoader)).get();
+                            result = createOnlineResult(blockNum, localBlock, comparison, isLocalContinuous, chainLoader);
+                            result.setMessage("离线校验未通过，链上比对: " + result.getMessage());
                         }
-                    } catch (Exception e) {
-                        // 如果是第一个区块，previous 应该是全0的哈希
-                        if (blockNum > 1) {
-                            logger.error("获取链上前一个区块时发生错误: {}", e.getMessage());
-                            currentChainContinuous = false;
-                        } else {
-                            // 对于第一个区块，检查 previous 是否为全0哈希
-                            currentChainContinuous = currentPrevious.matches("^0{64}$");
+                    } else if (head.comparison == null) {
+                        result = createConfirmedResult(blockNum, localBlock, head.confirmation, isLocalContinuous);
+                    } else {
+                        result = createOnlineResult(blockNum, localBlock, head.comparison.get(), isLocalContinuous, chainLoader);
+                        if (head.digest != null && blockNum <= irreversibleBlockNum
+                                && result.isDataMatch() && result.isHashMatch() && result.isChainContinuous()) {
+                            cacheUpdates.add(blockNum, head.digest);
                         }
                     }
+                
+                    verificationResults.add(result);
+                    metrics.blockVerified(result);
+                    verifiedCount++;
+                    currentBlock = blockNum;
+                    totalBlocks = audit != null ? audit.size() : (int) reader.estimateTotalBlocks();
+                }
+            } catch (JobCancelledException e) {
+                throw e;
+            } catch (CancellationException e) {
+                throw new JobCancelledException(job.getId());
+            } catch (Exception e) {
+                logger.error("验证过程发生错误", e);
+                throw new RuntimeException("验证过程发生错误: " + e.getMessage());
+            }
+        }
 
-                    // 获取哈希值
-                    String chainHash = chainBlock.get("id").toString();
-                    String localHash = localBlock.get("id").toString();
-                    
-                    // 比较数据
-                    boolean dataMatch = compareBlockData(localBlock, chainBlock);
-                    boolean hashMatch = chainHash.equals(localHash);
-
-                    // 创建验证结果
-                    VerificationResult result = VerificationResult.builder()
-                        .blockNum(blockNum)
-                        .dataMatch(dataMatch)
-                        .hashMatch(hashMatch)
-                        .chainHash(chainHash)
-                        .localHash(localHash)
-                        .message(createVerificationMessage(dataMatch, hashMatch, new ArrayList<>()))
-                        .isLocalContinuous(isLocalContinuous)
-                        .isChainContinuous(currentChainContinuous)
-                        .build();
-                    
-                    results.add(result);
-                    updateProgress(i + 1, totalBlocks, blockNum, results);
-                    
-                    logger.info("验证区块 {}: 数据匹配={}, 哈希匹配={}, 本地连续={}, 链上连续={}", 
-                        blockNum, dataMatch, hashMatch, isLocalContinuous, currentChainContinuous);
-                    
-                } catch (Exception e) {
-                    logger.error("验证区块 {} 时发生错误: {}", blockNum, e.getMessage());
-                    VerificationResult result = VerificationResult.builder()
-                        .blockNum(blockNum)
-                        .dataMatch(false)
-                        .hashMatch(false)
-                        .chainHash("获取失败")
-                        .localHash(localBlock.get("id").toString())
-                        .message("验证失败: " + e.getMessage())
-                        .isLocalContinuous(isLocalContinuous)
-                        .isChainContinuous(false)  // 出错时设置为 false
-                        .build();
-                    results.add(result);
-                    updateProgress(i + 1, totalBlocks, blockNum, results);
+        /**
+         * 审计验证的第一遍扫描：解析交易之外的字段，在本地检查链接并重新计算 id，
+         * 再用锚点和二分查找定位不一致的区块
+         */
+        private ChainAudit audit(Job job, Path file, LongFunction<BlockHeader> chainLoader)
+                throws IOException, InterruptedException {
+            ChainAudit audit = new ChainAudit();
+            try (BlockFileReader<JsonNode> reader = BlockFileReader.headerTrees(file, objectMapper)) {
+                while (reader.hasNext()) {
+                    if ((audit.size() & 1023) == 0) {
+                        job.checkpoint();
+                        totalBlocks = (int) reader.estimateTotalBlocks();
+                    }
+                    JsonNode node = reader.next();
+                    BlockHeader block = BlockHeader.from(node);
+                    // 结果缓存中的区块已确认与链上一致，可以直接作为锚点
+                    audit.add(block, resultCache != null && resultCache.contains(block.getBlockNum(), block.contentDigest()),
+                        idVerified(node, block));
                 }
             }
-            
-            return results;
-        } catch (Exception e) {
-            logger.error("验证过程发生错误", e);
-            throw new RuntimeException("验证过程发生错误: " + e.getMessage());
+            if (audit.size() == 0) {
+                throw new RuntimeException("未找到任何区块数据");
+            }
+            totalBlocks = audit.size();
+            logger.info("审计验证: 区块 {} 个，本地断点 {} 处", audit.size(), audit.getBreakCount());
+            audit.locate(num -> getChainBlock(num, chainLoader));
+            return audit;
         }
-    }
 
-    private void updateProgress(int verified, int total, Long currentBlock, List<VerificationResult> results) {
-        synchronized (this) {
-            currentProgress.setVerifiedCount(verified);
-            currentProgress.setTotalBlocks(total);
-            currentProgress.setCurrentBlock(currentBlock);
-            currentProgress.setVerifying(isVerifying);
-            currentProgress.setVerificationResults(new ArrayList<>(results));
+        /**
+         * 按区块头重新计算的 id 是否与区块的 id 一致，无法计算时视为不一致
+         */
+        private boolean idVerified(JsonNode node, BlockHeader block) {
+            long start = System.nanoTime();
+            try {
+                return block.idEquals(EosBlockHasher.computeBlockId(node));
+            } catch (Exception e) {
+                logger.warn("无法计算区块 {} 的 id，逐块比对: {}", block.getBlockNum(), e.getMessage());
+                return false;
+            } finally {
+                metrics.record(Stage.VERIFY_HASH, start);
+            }
         }
-    }
 
-    public VerificationProgress getVerificationProgress() {
-        synchronized (this) {
-            return currentProgress;
+        /**
+         * 不单独访问链上数据而确认的区块：由审计锚点确认（id 与链上一致，区块头与 id 一致），
+         * 或与结果缓存中验证通过的记录相同
+         */
+        private VerificationResult createConfirmedResult(long blockNum, BlockHeader localBlock, String message,
+                                                         boolean isLocalContinuous) {
+            return VerificationResult.builder()
+                .blockNum(blockNum)
+                .dataMatch(true)
+                .hashMatch(true)
+                .chainHash(localBlock.getId())
+                .localHash(localBlock.getId())
+                .message(message)
+                .isLocalContinuous(isLocalContinuous)
+                .isChainContinuous(true)
+                .build();
         }
-    }
 
-    public List<VerificationResult> getVerificationResults() {
-        synchronized (this) {
-            return new ArrayList<>(verificationResults);
+        /**
+         * 按 get_info 返回的 chain_id 打开结果缓存，并记录当前的不可逆区块号；获取失败时本次不使用缓存
+         */
+        private void openResultCache(List<String> apiUrls) {
+            if (resultCacheDir == null || resultCacheDir.isBlank() || apiUrls.isEmpty()) {
+                return;
+            }
+            try {
+                ChainInfo info = chainClient.getInfo(apiUrls);
+                String chainId = info.getChainId();
+                if (chainId == null || !chainId.matches("[0-9a-fA-F]{1,128}")) {
+                    logger.warn("节点未返回有效的 chain_id，本次验证不使用结果缓存");
+                    return;
+                }
+                resultCache = resultCaches.computeIfAbsent(chainId.toLowerCase(), id -> {
+                    try {
+                        return VerificationCache.open(Paths.get(resultCacheDir, id + VerificationCache.SUFFIX));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                irreversibleBlockNum = info.getLastIrreversibleBlockNum();
+                logger.info("验证结果缓存: {} 条记录，不可逆区块 {}", resultCache.size(), irreversibleBlockNum);
+            } catch (Exception e) {
+                logger.warn("无法打开验证结果缓存，本次验证不使用缓存: {}", e.getMessage());
+                resultCache = null;
+            }
         }
-    }
 
-    private boolean compareBlockData(Map<String, Object> localBlock, Map<String, Object> chainBlock) {
-        try {
-            List<String> mismatchFields = new ArrayList<>();
-            
-            // 检查基本字段
-            if (!Objects.equals(localBlock.get("block_num").toString(), chainBlock.get("block_num").toString())) {
-                mismatchFields.add("block_num");
+        /**
+         * 把本次新验证通过的不可逆区块写入结果缓存，出错或取消时已通过的部分同样写入
+         */
+        private void saveResultCache() {
+            if (resultCache == null || cacheUpdates.size() == 0) {
+                return;
             }
-            if (!Objects.equals(localBlock.get("timestamp"), chainBlock.get("timestamp"))) {
-                mismatchFields.add("timestamp");
+            try {
+                int size = resultCache.merge(cacheUpdates);
+                logger.info("验证结果缓存新增 {} 条记录，共 {} 条", cacheUpdates.size(), size);
+            } catch (IOException e) {
+                logger.warn("写入验证结果缓存失败: {}", e.getMessage());
             }
-            if (!Objects.equals(localBlock.get("producer"), chainBlock.get("producer"))) {
-                mismatchFields.add("producer");
+        }
+
+        private VerificationResult createOnlineResult(long blockNum, BlockHeader localBlock,
+                                                      ChainComparison comparison, boolean isLocalContinuous,
+                                                      LongFunction<BlockHeader> chainLoader) {
+            if (comparison.error != null) {
+                logger.error("验证区块 {} 时发生错误: {}", blockNum, comparison.error.getMessage());
+                return VerificationResult.builder()
+                    .blockNum(blockNum)
+                    .dataMatch(false)
+                    .hashMatch(false)
+                    .chainHash("获取失败")
+                    .localHash(localBlock.getId())
+                    .message("验证失败: " + comparison.error.getMessage())
+                    .isLocalContinuous(isLocalContinuous)
+                    .isChainContinuous(false)  // 出错时设置为 false
+                    .build();
             }
-            if (!Objects.equals(localBlock.get("previous"), chainBlock.get("previous"))) {
-                mismatchFields.add("previous");
+        
+            // 验证链上区块的连续性
+            boolean currentChainContinuous = verifyChainContinuity(blockNum, comparison.chainBlock, chainLoader);
+            boolean dataMatch = comparison.dataMatch;
+            boolean hashMatch = comparison.hashMatch;
+            List<String> mismatchFields = comparison.mismatchFields;
+            Map<String, Object> fieldDetails = comparison.fieldDetails;
+        
+            logger.info("验证区块 {}: 数据匹配={}, 哈希匹配={}, 本地连续={}, 链上连续={}", 
+                blockNum, dataMatch, hashMatch, isLocalContinuous, currentChainContinuous);
+
+            // 创建验证结果，哈希只在这里转换为字符串
+            return VerificationResult.builder()
+                .blockNum(blockNum)
+                .dataMatch(dataMatch)
+                .hashMatch(hashMatch)
+                .chainHash(comparison.chainBlock.getId())
+                .localHash(localBlock.getId())
+                .message(createVerificationMessage(dataMatch, hashMatch,
+                    mismatchFields != null ? mismatchFields : new ArrayList<>()))
+                .isLocalContinuous(isLocalContinuous)
+                .isChainContinuous(currentChainContinuous)
+                .mismatchFields(mismatchFields)
+                .fieldDetails(fieldDetails)
+                .build();
+        }
+
+        /**
+         * 离线校验；重新计算的 id 或 transaction_mroot 不一致（或无法计算）时，在同一个工作单元中与链上数据比对
+         */
+        private OfflineCheck checkOffline(JsonNode node, BlockHeader block, LongFunction<BlockHeader> chainLoader) {
+            OfflineCheck check = verifyOffline(node, block);
+            if (chainLoader != null && (check.error != null || !check.idMatch || !check.mrootMatch)) {
+                check.chainComparison = compareWithChain(block, null, chainLoader);
             }
-            if (!Objects.equals(localBlock.get("transaction_mroot"), chainBlock.get("transaction_mroot"))) {
-                mismatchFields.add("transaction_mroot");
+            return check;
+        }
+
+        /**
+         * 获取链上区块并与本地区块比较，不依赖其他区块，可在工作线程中并行执行
+         * @param localTree 深度比较时本地的完整区块，否则为 null
+         */
+        private ChainComparison compareWithChain(BlockHeader localBlock, JsonNode localTree,
+                                                 LongFunction<BlockHeader> chainLoader) {
+            ChainComparison comparison = new ChainComparison();
+            try {
+                long blockNum = localBlock.getBlockNum();
+                // 链接检查需要前一个区块，提前加载
+                if (blockNum > 1) {
+                    chainBlockCache.prefetch(blockNum - 1, chainLoader, prefetchExecutor);
+                }
+            
+                // 从链上获取当前区块数据（优先使用缓存）
+                long chainStart = System.nanoTime();
+                BlockHeader chainBlock = getChainBlock(blockNum, chainLoader);
+                metrics.record(Stage.VERIFY_CHAIN, chainStart);
+                comparison.chainBlock = chainBlock;
+            
+                // 比较数据和哈希
+                long compareStart = System.nanoTime();
+                comparison.dataMatch = BlockComparator.compareBlockData(localBlock, chainBlock);
+                comparison.hashMatch = localBlock.idEquals(chainBlock);
+                if (!comparison.dataMatch) {
+                    comparison.mismatchFields = BlockComparator.mismatchFields(localBlock, chainBlock);
+                    comparison.fieldDetails = new LinkedHashMap<>();
+                    for (String field : comparison.mismatchFields) {
+                        Map<String, Object> values = new LinkedHashMap<>();
+                        values.put("local", BlockComparator.fieldValue(localBlock, field));
+                        values.put("chain", BlockComparator.fieldValue(chainBlock, field));
+                        comparison.fieldDetails.put(field, values);
+                    }
+                }
+                metrics.record(Stage.VERIFY_COMPARE, compareStart);
+                if (localTree != null) {
+                    compareTransactions(localTree, comparison);
+                }
+            } catch (Exception e) {
+                comparison.error = e;
+            } finally {
+                if (localTree != null) {
+                    deepWindow.remove(localBlock.getBlockNum());
+                    chainTrees.remove(localBlock.getBlockNum());
+                }
+            }
+            return comparison;
+        }
+
+        /**
+         * 深度比较：逐个交易比较完整的区块内容，不一致的路径追加到区块头的不一致字段之后
+         */
+        private void compareTransactions(JsonNode localTree, ChainComparison comparison) throws IOException {
+            long blockNum = comparison.chainBlock.getBlockNum();
+            JsonNode chainTree = chainTrees.remove(blockNum);
+            if (chainTree == null) {
+                // 链上区块由缓存提供时加载时暂存的完整区块可能已被取出，重新获取
+                chainTree = objectMapper.readTree(chainClient.getBlock(apiUrls, blockNum));
+            }
+            long deepStart = System.nanoTime();
+            TransactionComparator.Result deepResult = transactionComparator.compare(localTree, chainTree);
+            metrics.record(Stage.VERIFY_DEEP, deepStart);
+            if (deepResult.isMatch()) {
+                return;
             }
-            if (!Objects.equals(localBlock.get("action_mroot"), chainBlock.get("action_mroot"))) {
-                mismatchFields.add("action_mroot");
+            List<String> mismatchFields = comparison.mismatchFields != null ? comparison.mismatchFields : new ArrayList<>();
+            for (String path : deepResult.getPaths()) {
+                if (!mismatchFields.contains(path)) {
+                    mismatchFields.add(path);
+                }
             }
-            if (!Objects.equals(localBlock.get("schedule_version"), chainBlock.get("schedule_version"))) {
-                mismatchFields.add("schedule_version");
+            Map<String, Object> fieldDetails = comparison.fieldDetails != null ? comparison.fieldDetails : new LinkedHashMap<>();
+            fieldDetails.putAll(deepResult.getDetails());
+            comparison.dataMatch = false;
+            comparison.mismatchFields = mismatchFields;
+            comparison.fieldDetails = fieldDetails;
+            logger.error("区块 {} 深度比较不一致: 交易 {} 个, 字段 {}{}", blockNum, deepResult.getMismatchedTransactions(),
+                String.join(", ", deepResult.getPaths()), deepResult.isTruncated() ? " 等" : "");
+        }
+
+        /**
+         * 获取完整的链上区块，区块头进入缓存；窗口中等待深度比较的区块暂存完整区块，到比较时取出
+         */
+        private BlockHeader fetchChainTree(List<String> apiUrls, long blockNum) {
+            try {
+                JsonNode tree = objectMapper.readTree(chainClient.getBlock(apiUrls, blockNum));
+                BlockHeader header = BlockHeader.from(tree);
+                if (deepWindow.contains(blockNum)) {
+                    chainTrees.put(blockNum, tree);
+                }
+                return header;
+            } catch (IOException e) {
+                throw new UncheckedIOException("解析区块数据失败: " + e.getMessage(), e);
             }
+        }
 
-            boolean dataMatch = mismatchFields.isEmpty();
+        /**
+         * 验证链上区块与前一个区块的 previous 链接，前一个区块通常已在缓存中
+         */
+        private boolean verifyChainContinuity(long blockNum, BlockHeader chainBlock, LongFunction<BlockHeader> chainLoader) {
+            boolean currentChainContinuous;
+            // 获取前一个区块的信息：先按 previous 哈希查缓存，没有时按区块号获取
+            try {
+                BlockHeader prevChainBlock = chainBlockCache.getById(chainBlock.previousKey());
+                if (prevChainBlock == null) {
+                    prevChainBlock = getChainBlock(blockNum - 1, chainLoader);
+                }
+                // 验证区块号连续性
+                long currentBlockNum = chainBlock.getBlockNum();
+                long previousBlockNum = prevChainBlock.getBlockNum();
+                boolean isBlockNumContinuous = (currentBlockNum - previousBlockNum == 1);
             
-            if (!dataMatch) {
-                logger.error("区块 {} 数据不匹配的字段: {}", 
-                    localBlock.get("block_num"), 
-                    String.join(", ", mismatchFields));
-                
-                // 记录不匹配字段的具体值
-                for (String field : mismatchFields) {
-                    logger.error("区块 {} 字段 {} 不匹配: 本地值={}, 链上值={}", 
-                        localBlock.get("block_num"),
-                        field,
-                        localBlock.get(field),
-                        chainBlock.get(field));
+                // 验证区块哈希连续性
+                boolean isHashContinuous = chainBlock.linksTo(prevChainBlock);
+            
+                currentChainContinuous = isBlockNumContinuous && isHashContinuous;
+            
+                if (!currentChainContinuous) {
+                    if (!isBlockNumContinuous) {
+                        logger.error("链上区块号不连续: 当前区块号 {} 与前一区块号 {} 不连续",
+                            currentBlockNum, previousBlockNum);
+                    }
+                    if (!isHashContinuous) {
+                        logger.error("链上区块哈希不连续: 区块 {} 的 previous ({}) 与前一个区块的 id ({}) 不匹配",
+                            currentBlockNum, chainBlock.getPrevious(), prevChainBlock.getId());
+                    }
+                }
+            } catch (Exception e) {
+                // 如果是第一个区块，previous 应该是全0的哈希
+                if (blockNum > 1) {
+                    logger.error("获取链上前一个区块时发生错误: {}", e.getMessage());
+                    currentChainContinuous = false;
+                } else {
+                    // 对于第一个区块，检查 previous 是否为全0哈希
+                    currentChainContinuous = chainBlock.isPreviousZero();
+                }
+            }
+            return currentChainContinuous;
+        }
+
+        private BlockHeader getChainBlock(long blockNum, LongFunction<BlockHeader> chainLoader) {
+            try {
+                return chainBlockCache.get(blockNum, chainLoader, prefetchExecutor).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new RuntimeException(cause.getMessage(), cause);
+            }
+        }
+    }
+
+    private boolean checkLocalContinuity(long blockNum, BlockHeader localBlock, BlockHeader previousLocalBlock) {
+        boolean isLocalContinuous = true;
+        if (previousLocalBlock != null) {
+            // 与前一个区块进行连续性验证
+            isLocalContinuous = BlockComparator.verifyLocalContinuity(localBlock, previousLocalBlock);
+        } else {
+            // 对于第一个区块，检查其 previous 是否为全0哈希（如果不是第一个区块号，则标记为不连续）
+            if (blockNum == 1) {
+                isLocalContinuous = localBlock.isPreviousZero();
+                if (!isLocalContinuous) {
+                    logger.error("第一个区块的 previous 不是全0哈希: {}", localBlock.getPrevious());
                 }
+            } else {
+                isLocalContinuous = false;
+                logger.error("文件中的第一个区块号不是1: {}", blockNum);
             }
+        }
+        return isLocalContinuous;
+    }
 
-            return dataMatch;
+    /**
+     * 离线校验结果：hashMatch 表示重新计算的 id 与文件中的 id 一致，dataMatch 表示 transaction_mroot 一致，
+     * isChainContinuous 表示 previous 与前一个区块重新计算的 id 一致
+     * @param previousComputedId 前一个区块重新计算的 id，无法计算或没有前一个区块时为 null
+     * @param hasPrevious 文件中是否有前一个区块
+     */
+    private VerificationResult createOfflineResult(long blockNum, BlockHeader localBlock, OfflineCheck check,
+                                                   byte[] previousComputedId, boolean hasPrevious,
+                                                   boolean isLocalContinuous) {
+        String localHash = localBlock.getId();
+        if (check.error != null) {
+            logger.error("离线校验区块 {} 时发生错误: {}", blockNum, check.error.getMessage());
+            return VerificationResult.builder()
+                .blockNum(blockNum)
+                .dataMatch(false)
+                .hashMatch(false)
+                .chainHash("计算失败")
+                .localHash(localHash)
+                .message("离线校验失败: " + check.error.getMessage())
+                .isLocalContinuous(isLocalContinuous)
+                .isChainContinuous(false)
+                .build();
+        }
+        
+        // previous 链接：文件中的第一个区块没有前一个区块可比较，只检查创世区块的全0哈希；
+        // 前一个区块的 id 无法计算时不能确认链接，按不连续处理
+        boolean previousUnknown = previousComputedId == null && hasPrevious;
+        boolean linked = previousComputedId != null
+            ? localBlock.previousEquals(previousComputedId)
+            : !previousUnknown && (blockNum != 1 || localBlock.isPreviousZero());
+        
+        List<String> mismatchFields = new ArrayList<>();
+        if (!check.idMatch) {
+            mismatchFields.add("id");
+        }
+        if (!check.mrootMatch) {
+            mismatchFields.add("transaction_mroot");
+        }
+        
+        logger.info("离线校验区块 {}: 交易根匹配={}, 哈希匹配={}, 本地连续={}, 哈希链接={}",
+            blockNum, check.mrootMatch, check.idMatch, isLocalContinuous, linked);
+        
+        return VerificationResult.builder()
+            .blockNum(blockNum)
+            .dataMatch(check.mrootMatch)
+            .hashMatch(check.idMatch)
+            .chainHash(EosBlockHasher.toHex(check.computedId))
+            .localHash(localHash)
+            .message("离线校验: " + createVerificationMessage(check.mrootMatch, check.idMatch, mismatchFields)
+                + (previousUnknown ? "，前一个区块的 id 无法计算，未能确认 previous 链接" : ""))
+            .isLocalContinuous(isLocalContinuous)
+            .isChainContinuous(linked)
+            .mismatchFields(mismatchFields)
+            .build();
+    }
+
+    /**
+     * 根据区块头和交易回执重新计算 id 和 transaction_mroot，纯 CPU 计算，可在多个核心上并行执行
+     */
+    private OfflineCheck verifyOffline(JsonNode block, BlockHeader header) {
+        OfflineCheck check = new OfflineCheck();
+        long start = System.nanoTime();
+        try {
+            check.computedId = EosBlockHasher.computeBlockId(block);
+            check.idMatch = header.idEquals(check.computedId);
+            check.mrootMatch = header.transactionMrootEquals(EosBlockHasher.computeTransactionMroot(block.get("transactions")));
         } catch (Exception e) {
-            logger.error("比较区块数据时发生错误: {}", e.getMessage());
-            return false;
+            check.error = e;
+        } finally {
+            metrics.record(Stage.VERIFY_HASH, start);
+        }
+        return check;
+    }
+
+    private BlockHeader fetchChainBlock(List<String> apiUrls, long blockNum) {
+        return chainClient.getBlockHeader(apiUrls, blockNum);
+    }
+
+
+    private void deleteTempFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("删除临时文件 {} 失败: {}", file, e.getMessage());
         }
     }
 
+    /**
+     * 最近一个验证任务的进度，没有任务时各项为 0
+     */
+    public VerificationProgress getVerificationProgress() {
+        VerifyJob work = latestWork();
+        return work != null ? work.getProgress() : new VerificationProgress();
+    }
+
+    /**
+     * 最近一个验证任务是否仍在进行
+     */
+    public boolean isVerifying() {
+        VerifyJob work = latestWork();
+        return work != null && work.isVerifying;
+    }
+
+    /**
+     * 最近一个验证任务游标之后的结果
+     */
+    public List<VerificationResult> getVerificationResults(int cursor, int limit) {
+        VerifyJob work = latestWork();
+        return work != null ? work.resultsAfter(cursor, limit) : new ArrayList<>();
+    }
+
+    /**
+     * 分页查询最近一个验证任务的结果，可以只查询未通过的区块或指定区块号范围
+     * @param cursor 从这个游标开始查找，取上一页返回的 nextCursor
+     * @param limit 最多返回的数量
+     * @param failuresOnly 只返回未通过的结果
+     * @param fromBlock 区块号下限（包含），可以为空
+     * @param toBlock 区块号上限（包含），可以为空
+     */
+    public VerificationResultStore.Page queryVerificationResults(int cursor, int limit, boolean failuresOnly,
+                                                                 Long fromBlock, Long toBlock) {
+        VerifyJob work = latestWork();
+        return work != null
+            ? work.verificationResults.query(cursor, limit, failuresOnly, fromBlock, toBlock)
+            : new VerificationResultStore.Page(new ArrayList<>(), 0);
+    }
+
+    /**
+     * 把最近一个验证任务的结果按顺序写出，过滤条件与 {@link #queryVerificationResults} 相同。
+     * 按页读取结果存储，内存中只有一页结果；只导出开始导出时已有的结果
+     * @return 写出的结果数
+     */
+    public long exportVerificationResults(ExportWriter writer, boolean failuresOnly, Long fromBlock, Long toBlock)
+            throws IOException {
+        VerifyJob work = latestWork();
+        if (work == null) {
+            return 0;
+        }
+        VerificationResultStore store = work.verificationResults;
+        int end = store.size();
+        int cursor = 0;
+        while (cursor < end) {
+            VerificationResultStore.Page page = store.query(cursor, EXPORT_PAGE_SIZE, failuresOnly, fromBlock, toBlock);
+            for (VerificationResult result : page.getResults()) {
+                writer.writeResult(result);
+            }
+            if (page.getNextCursor() <= cursor) {
+                break;
+            }
+            cursor = page.getNextCursor();
+        }
+        return writer.getRows();
+    }
+
+    private VerifyJob latestWork() {
+        Job job = jobScheduler.latest(JobType.VERIFY);
+        return job != null ? (VerifyJob) job.getWork() : null;
+    }
+
     private String createVerificationMessage(boolean dataMatch, boolean hashMatch, List<String> mismatchFields) {
         if (dataMatch && hashMatch) {
             return "验证通过";
@@ -288,34 +854,60 @@ public class BlockVerificationService {
         }
     }
 
-    private boolean verifyLocalContinuity(Map<String, Object> currentBlock, Map<String, Object> previousBlock) {
-        try {
-            // 获取区块号
-            Long currentBlockNum = Long.valueOf(currentBlock.get("block_num").toString());
-            Long previousBlockNum = Long.valueOf(previousBlock.get("block_num").toString());
-            
-            // 验证区块号连续性
-            boolean isBlockNumContinuous = (currentBlockNum - previousBlockNum == 1);
-            if (!isBlockNumContinuous) {
-                logger.error("本地区块号不连续: 区块 {} 与区块 {} 之间存在间隔",
-                    currentBlockNum, previousBlockNum);
-                return false;
-            }
-            
-            // 验证区块哈希连续性
-            String currentPrevious = (String) currentBlock.get("previous");
-            String previousId = (String) previousBlock.get("id");
-            boolean isHashContinuous = Objects.equals(currentPrevious, previousId);
-            if (!isHashContinuous) {
-                logger.error("本地区块哈希不连续: 区块 {} 的 previous ({}) 与区块 {} 的 id ({}) 不匹配",
-                    currentBlockNum, currentPrevious, previousBlockNum, previousId);
-                return false;
-            }
-            
-            return true;
-        } catch (Exception e) {
-            logger.error("验证本地区块连续性时发生错误: {}", e.getMessage());
-            return false;
+    private static final class PendingVerification {
+        private final BlockHeader localBlock;
+        private final Future<ChainComparison> comparison;
+        private final Future<OfflineCheck> offlineCheck;
+        // 区块头摘要，通过后写入结果缓存；不使用缓存时为 null
+        private final byte[] digest;
+        // 不访问链上数据而确认时的说明（审计锚点或结果缓存），此时 comparison 为 null
+        private final String confirmation;
+
+        private PendingVerification(BlockHeader localBlock, Future<ChainComparison> comparison,
+                                    Future<OfflineCheck> offlineCheck) {
+            this(localBlock, comparison, offlineCheck, null, null);
+        }
+
+        private PendingVerification(BlockHeader localBlock, Future<ChainComparison> comparison, byte[] digest) {
+            this(localBlock, comparison, null, digest, null);
         }
+
+        private PendingVerification(BlockHeader localBlock, String confirmation) {
+            this(localBlock, null, null, null, confirmation);
+        }
+
+        private PendingVerification(BlockHeader localBlock, Future<ChainComparison> comparison,
+                                    Future<OfflineCheck> offlineCheck, byte[] digest, String confirmation) {
+            this.localBlock = localBlock;
+            this.comparison = comparison;
+            this.offlineCheck = offlineCheck;
+            this.digest = digest;
+            this.confirmation = confirmation;
+        }
+    }
+
+    /**
+     * 单个区块与链上数据的比较结果，error 不为空表示获取或比较失败
+     */
+    private static final class ChainComparison {
+        private BlockHeader chainBlock;
+        private boolean dataMatch;
+        private boolean hashMatch;
+        // 不一致的字段：区块头字段名，深度比较时还有交易内的路径
+        private List<String> mismatchFields;
+        private Map<String, Object> fieldDetails;
+        private Exception error;
+    }
+
+    /**
+     * 单个区块离线重新计算哈希的结果
+     */
+    private static final class OfflineCheck {
+        private byte[] computedId;
+        private boolean idMatch;
+        private boolean mrootMatch;
+        private Exception error;
+        // id 或交易根不一致时的链上比对结果，没有比对时为 null
+        private ChainComparison chainComparison;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,163 @@
+package com.yidong.service;
+
+import com.yidong.model.BlockHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/**
+ * 审计验证的定位过程：先在本地检查整个文件的 previous → id 链接，再用少量链上查询定位与链不一致的区块。
+ * <p>
+ * 文件按本地链接的断点分成若干段，段内每个区块的 previous 都等于前一个区块的 id。
+ * 区块 id 是包含 previous 的区块头的哈希，因此段内某个区块的 id 与链上一致时，段内它之前的区块也都与链上一致，
+ * “与链上一致”在段内是前缀性质：每段只查询最后一个区块（锚点），不一致时二分查找第一个不一致的区块，
+ * 每段的查询次数为 1 + log2(段长)。
+ * <p>
+ * 之后只有断点两侧的区块和段内第一个不一致的区块到段尾需要逐块与链上比对，其余区块由锚点确认。
+ * 锚点只确认 id 和 previous 链接，因此调用方在本地按区块头重新计算 id，与文件中的 id 不一致的区块
+ * （区块头被修改而 id 未变）同样作为断点，逐块比对；其余区块的区块头字段由 id 确认。
+ * 每个区块在内存中保存区块号和 id（约 40 字节）。
+ */
+final class ChainAudit {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChainAudit.class);
+    private static final int ID_SIZE = BlockHeader.HASH_SIZE;
+
+    private long[] blockNums = new long[1024];
+    private byte[] ids = new byte[1024 * ID_SIZE];
+    private int size;
+    // 与前一个区块不连续（区块号不是加一或 previous 与前一个 id 不一致）或区块头与 id 不一致的位置
+    private final BitSet breaks = new BitSet();
+    // 需要逐块比对的位置
+    private final BitSet compare = new BitSet();
+    // 已确认与链上一致（在验证结果缓存中）的位置，锚定和二分时不需要查询
+    private final BitSet confirmed = new BitSet();
+    // 每段的 {起始位置, 结束位置, 锚点区块号}
+    private final List<long[]> segments = new ArrayList<>();
+    private BlockHeader previous;
+    private int lookups;
+
+    /**
+     * 按文件中的顺序添加区块，检查与前一个区块的链接
+     */
+    void add(BlockHeader block) {
+        add(block, false, true);
+    }
+
+    /**
+     * @param confirmed 该区块是否已确认与链上一致
+     * @param idVerified 按区块头重新计算的 id 是否与区块的 id 一致
+     */
+    void add(BlockHeader block, boolean confirmed, boolean idVerified) {
+        if (confirmed) {
+            this.confirmed.set(size);
+        }
+        if (size == blockNums.length) {
+            blockNums = Arrays.copyOf(blockNums, size * 2);
+            ids = Arrays.copyOf(ids, size * 2 * ID_SIZE);
+        }
+        blockNums[size] = block.getBlockNum();
+        block.idKey().get(ids, size * ID_SIZE, ID_SIZE);
+        if (!idVerified
+                || previous != null && (block.getBlockNum() - previous.getBlockNum() != 1 || !block.linksTo(previous))) {
+            breaks.set(size);
+        }
+        previous = block;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 本地断点数：链接不连续或区块头与 id 不一致的区块
+     */
+    int getBreakCount() {
+        return breaks.cardinality();
+    }
+
+    /**
+     * 定位过程中的链上查询次数
+     */
+    int getLookups() {
+        return lookups;
+    }
+
+    /**
+     * 锚定每一段并定位不一致的区块
+     * @param chainLoader 按区块号获取链上区块头，失败时抛出异常（视为不一致）
+     */
+    void locate(LongFunction<BlockHeader> chainLoader) {
+        int start = 0;
+        while (start < size) {
+            int end = breaks.nextSetBit(start + 1);
+            end = (end < 0 ? size : end) - 1;
+            if (breaks.get(start)) {
+                // 断点两侧都需要逐块比对，找出是哪一个区块被修改
+                compare.set(Math.max(0, start - 1), start + 1);
+            }
+            segments.add(new long[] {start, end, blockNums[end]});
+            if (!matchesChain(end, chainLoader)) {
+                int low = start;
+                int high = end;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (matchesChain(mid, chainLoader)) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                logger.warn("区块 {}-{} 与链上不一致，从区块 {} 开始逐块比对", blockNums[start], blockNums[end], blockNums[low]);
+                compare.set(low, end + 1);
+            }
+            start = end + 1;
+        }
+        logger.info("审计定位完成: 区块 {} 个，分为 {} 段，链上查询 {} 次，需要逐块比对 {} 个",
+            size, segments.size(), lookups, compare.cardinality());
+    }
+
+    /**
+     * 该位置的区块是否已由锚点确认，不需要逐块比对
+     */
+    boolean isCertified(int position) {
+        return position < size && !compare.get(position);
+    }
+
+    /**
+     * 确认该位置区块的锚点区块号
+     */
+    long anchorOf(int position) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (segments.get(mid)[1] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return segments.get(low)[2];
+    }
+
+    private boolean matchesChain(int position, LongFunction<BlockHeader> chainLoader) {
+        if (confirmed.get(position)) {
+            return true;
+        }
+        lookups++;
+        try {
+            return chainLoader.apply(blockNums[position])
+                .idEquals(Arrays.copyOfRange(ids, position * ID_SIZE, (position + 1) * ID_SIZE));
+        } catch (Exception e) {
+            logger.warn("获取链上区块 {} 失败，按不一致处理: {}", blockNums[position], e.getMessage());
+            return false;
+        }
+    }
+}
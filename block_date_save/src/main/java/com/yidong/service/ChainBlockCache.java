@@ -0,0 +1,146 @@
+package com.yidong.service;
+
+import com.yidong.model.BlockHeader;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * 链上区块头的有界缓存，按区块号和区块 id 索引，超出容量时按 LRU 淘汰。
+ * 缓存的是加载中的 Future，同一区块的并发请求（包括预取）只会访问一次节点，加载失败的条目会被移除。
+ */
+public class ChainBlockCache {
+
+    private final int capacity;
+    private final LinkedHashMap<Long, CompletableFuture<BlockHeader>> blocksByNum;
+    private final Map<ByteBuffer, Long> blockNumById = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ChainBlockCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.blocksByNum = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * 获取区块，缓存中没有时用 loader 在 executor 上加载
+     */
+    public CompletableFuture<BlockHeader> get(long blockNum, LongFunction<BlockHeader> loader,
+                                                      Executor executor) {
+        CompletableFuture<BlockHeader> future;
+        boolean created = false;
+        synchronized (this) {
+            future = blocksByNum.get(blockNum);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                blocksByNum.put(blockNum, future);
+                evictIfNeeded();
+                created = true;
+            }
+        }
+
+        if (created) {
+            misses.incrementAndGet();
+            load(blockNum, future, loader, executor);
+        } else {
+            hits.incrementAndGet();
+        }
+        return future;
+    }
+
+    /**
+     * 提前加载区块，不计入命中/未命中统计
+     */
+    public void prefetch(long blockNum, LongFunction<BlockHeader> loader, Executor executor) {
+        CompletableFuture<BlockHeader> future;
+        synchronized (this) {
+            if (blocksByNum.containsKey(blockNum)) {
+                return;
+            }
+            future = new CompletableFuture<>();
+            blocksByNum.put(blockNum, future);
+            evictIfNeeded();
+        }
+        load(blockNum, future, loader, executor);
+    }
+
+    /**
+     * 按区块 id（{@link BlockHeader#idKey()}）查找已加载完成的区块，
+     * 没有时返回 null（未命中不计数，调用方随后会按区块号获取）
+     */
+    public BlockHeader getById(ByteBuffer id) {
+        CompletableFuture<BlockHeader> future;
+        synchronized (this) {
+            Long blockNum = blockNumById.get(id);
+            future = blockNum != null ? blocksByNum.get(blockNum) : null;
+        }
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            hits.incrementAndGet();
+            return future.join();
+        }
+        return null;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 区块 id 索引的条目数
+     */
+    synchronized int getIdCount() {
+        return blockNumById.size();
+    }
+
+    public synchronized void clear() {
+        blocksByNum.clear();
+        blockNumById.clear();
+        hits.set(0);
+        misses.set(0);
+    }
+
+    private void load(long blockNum, CompletableFuture<BlockHeader> future,
+                      LongFunction<BlockHeader> loader, Executor executor) {
+        CompletableFuture.supplyAsync(() -> loader.apply(blockNum), executor).whenComplete((block, error) -> {
+            if (error != null || block == null) {
+                synchronized (this) {
+                    blocksByNum.remove(blockNum, future);
+                }
+                future.completeExceptionally(error != null ? error : new IllegalStateException("区块数据为空"));
+                return;
+            }
+            synchronized (this) {
+                if (blocksByNum.get(blockNum) == future) {
+                    blockNumById.put(block.idKey(), blockNum);
+                }
+            }
+            future.complete(block);
+        });
+    }
+
+    private void evictIfNeeded() {
+        while (blocksByNum.size() > capacity) {
+            Map.Entry<Long, CompletableFuture<BlockHeader>> eldest = blocksByNum.entrySet().iterator().next();
+            long blockNum = eldest.getKey();
+            blocksByNum.remove(blockNum);
+            // 还在加载的区块可能在淘汰之后才登记 id，等加载完成时再移除
+            eldest.getValue().thenAccept(block -> removeId(block.idKey(), blockNum));
+        }
+    }
+
+    private synchronized void removeId(ByteBuffer id, long blockNum) {
+        if (!blocksByNum.containsKey(blockNum)) {
+            blockNumById.remove(id, blockNum);
+        }
+    }
+}
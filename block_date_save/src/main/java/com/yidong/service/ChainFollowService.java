@@ -0,0 +1,505 @@
+package com.yidong.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.chain.ChainClient;
+import com.yidong.chain.ChainClientException;
+import com.yidong.crypto.EosBlockHasher;
+import com.yidong.job.Job;
+import com.yidong.job.JobCancelledException;
+import com.yidong.job.JobScheduler;
+import com.yidong.job.JobType;
+import com.yidong.job.JobWork;
+import com.yidong.metrics.BlockMetrics;
+import com.yidong.metrics.BlockMetrics.Stage;
+import com.yidong.model.BlockHeader;
+import com.yidong.model.ChainInfo;
+import com.yidong.model.FollowStatus;
+import com.yidong.storage.BlockSegmentWriter;
+import com.yidong.storage.FetchCheckpoint;
+import com.yidong.storage.FetchCheckpointStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 跟随模式：通过 get_info 跟踪链上最新区块，持续获取新产生的区块并追加到输出目录的分段文件中。
+ * <p>
+ * 获取到的区块先检查 previous 是否指向前一个区块，再暂存在内存中，确认是链上的不可逆区块（或达到配置的确认数）后才写入磁盘：
+ * 获取时已经不可逆的区块，或与 get_info 返回的不可逆区块 id 一致的区块，连同暂存区中它之前的区块一起视为已确认。
+ * 暂存的区块与下一个区块链接不上时说明发生了分叉，逐个丢弃暂存的区块并重新获取，直到重新链接；
+ * 不可逆区块的 id 与暂存的区块不一致时丢弃整个暂存区重新获取；
+ * 落后较多时按批并发获取，追上后按固定间隔轮询。
+ */
+@Service
+public class ChainFollowService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChainFollowService.class);
+    /** 回退后重新获取的区块与丢弃的相同、仍然链接不上的最大次数，超过后认为节点数据不一致 */
+    private static final int MAX_RELINK_ATTEMPTS = 5;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private ChainClient chainClient;
+
+    @Autowired
+    private JobScheduler jobScheduler;
+
+    @Autowired
+    private BlockMetrics metrics;
+
+    @Autowired
+    private BlockDataService blockDataService;
+
+    /** 同时在途的区块请求数量 */
+    @Value("${block.fetch.concurrency:8}")
+    private int fetchConcurrency;
+
+    /** 每写入多少个区块更新一次检查点 */
+    @Value("${block.fetch.checkpoint-interval:100}")
+    private long checkpointInterval;
+
+    @Value("${block.output.dir:block_data}")
+    private String outputDir;
+
+    /** 追上最新区块后查询 get_info 的间隔，默认与出块间隔相同 */
+    @Value("${block.follow.poll-interval-ms:500}")
+    private long pollIntervalMs;
+
+    /** 区块之上有多少个区块后即写入磁盘，0 表示只写入不可逆区块 */
+    @Value("${block.follow.confirmations:0}")
+    private long confirmations;
+
+    /** 落后时每批获取的最大区块数，每批结束后重新查询最新区块 */
+    @Value("${block.follow.max-batch:1000}")
+    private int maxBatch;
+
+    /**
+     * 提交跟随任务，同一时间只能有一个跟随任务；起始区块落在正在进行的获取任务范围内时拒绝
+     * @param apiUrls get_block 接口地址，get_info 地址由其推出
+     * @param startBlock 起始区块号；为空时从上次跟随写入的区块之后继续，没有记录时从当前不可逆区块之后开始
+     * @return 任务
+     */
+    public Job startFollow(List<String> apiUrls, Long startBlock) {
+        // 与 BlockDataService.startFetch 使用同一个锁，两边的范围检查和提交不会交错
+        synchronized (blockDataService) {
+            Job running = runningJob();
+            if (running != null) {
+                throw new IllegalStateException("已有正在进行的跟随任务 " + running.getId());
+            }
+            if (startBlock != null) {
+                checkNoOverlappingFetch(startBlock);
+            }
+            return jobScheduler.submit(JobType.FOLLOW,
+                startBlock != null ? "跟随链上区块，从 " + startBlock + " 开始" : "跟随链上区块",
+                new FollowJob(apiUrls, startBlock));
+        }
+    }
+
+    /**
+     * 最近一个跟随任务的状态，没有任务时各项为 0
+     */
+    public FollowStatus getStatus() {
+        Job job = jobScheduler.latest(JobType.FOLLOW);
+        return job != null
+            ? (FollowStatus) job.getWork().getProgress()
+            : new FollowStatus(false, false, 0, 0, 0, null, null, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * 最近一个跟随任务是否仍在进行
+     */
+    public boolean isFollowing() {
+        Job job = jobScheduler.latest(JobType.FOLLOW);
+        return job != null && !job.getStatus().isFinished();
+    }
+
+    /**
+     * 跟随写入 startBlock 及之后的所有区块，与包含其中任何区块的获取任务重叠
+     */
+    private void checkNoOverlappingFetch(long startBlock) {
+        Job overlapping = blockDataService.overlappingFetch(startBlock, Long.MAX_VALUE);
+        if (overlapping != null) {
+            throw new IllegalStateException("起始区块 " + startBlock + " 与正在进行的获取任务 " + overlapping.getId() + " 重叠");
+        }
+    }
+
+    private Job runningJob() {
+        for (Job job : jobScheduler.list()) {
+            if (job.getType() == JobType.FOLLOW && !job.getStatus().isFinished()) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一个跟随任务的状态与执行流程。除状态字段外只在任务线程中访问
+     */
+    private final class FollowJob implements JobWork {
+        private final List<String> requestedApiUrls;
+        private final Long requestedStartBlock;
+        private volatile boolean isFollowing;
+        private volatile boolean hasError;
+        private volatile long startBlock;
+        private volatile long headBlockNum;
+        private volatile long irreversibleBlockNum;
+        private volatile String irreversibleBlockId;
+        private volatile Long lastFetchedBlock;
+        private volatile Long lastWrittenBlock;
+        private volatile int unconfirmedCount;
+        private volatile long fetchedBlocks;
+        private volatile long writtenBlocks;
+        private volatile long rolledBackBlocks;
+        private volatile long followStartTime;
+        private volatile List<String> apiUrls;
+
+        // 已获取、尚未写入磁盘的区块，按区块号排列且依次链接
+        private final Deque<UnconfirmedBlock> unconfirmed = new ArrayDeque<>();
+        private FetchCheckpointStore checkpointStore;
+        private FetchCheckpoint checkpoint;
+        private BlockSegmentWriter writer;
+        private BlockFetcher fetcher;
+        // 最后写入磁盘的区块 id，下一个区块（暂存区为空时）的 previous 应与之相同；未知时为 null
+        private ByteBuffer storedTip;
+        private String storedTipId;
+        private long nextBlock;
+        // 已确认在链上的最高区块号，暂存区中不超过它的区块可以写入磁盘
+        private long settledThrough;
+        private long sinceCheckpoint;
+        // 最近一次因分叉丢弃的区块，以及连续丢弃同一个区块的次数
+        private UnconfirmedBlock lastRolledBack;
+        private int relinkAttempts;
+
+        private FollowJob(List<String> apiUrls, Long startBlock) {
+            this.requestedApiUrls = apiUrls;
+            this.requestedStartBlock = startBlock;
+        }
+
+        @Override
+        public FollowStatus getProgress() {
+            List<String> urls = apiUrls;
+            Long fetched = lastFetchedBlock;
+            return new FollowStatus(
+                isFollowing,
+                hasError,
+                startBlock,
+                headBlockNum,
+                irreversibleBlockNum,
+                fetched,
+                lastWrittenBlock,
+                fetched != null ? Math.max(0, headBlockNum - fetched) : 0,
+                unconfirmedCount,
+                writtenBlocks,
+                rolledBackBlocks,
+                calculateBlocksPerSecond(),
+                urls != null ? chainClient.getConcurrencyLimit(urls) : 0
+            );
+        }
+
+        private double calculateBlocksPerSecond() {
+            long startTime = followStartTime;
+            if (startTime == 0) {
+                return 0;
+            }
+            double elapsedSeconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            return elapsedSeconds > 0 ? fetchedBlocks / elapsedSeconds : 0;
+        }
+
+        @Override
+        public void run(Job job) throws Exception {
+            isFollowing = true;
+            try {
+                follow(job);
+            } catch (JobCancelledException e) {
+                throw e;
+            } catch (Exception e) {
+                log.error("跟随过程中发生错误: {}", e.getMessage());
+                hasError = true;
+                throw e;
+            } finally {
+                isFollowing = false;
+                followStartTime = 0;
+                metrics.followLag(0);
+                log.info("跟随任务 {} 结束. 已写入至区块 {}, 本次写入 {} 个, 因分叉回退 {} 个",
+                    job.getId(), lastWrittenBlock, writtenBlocks, rolledBackBlocks);
+            }
+        }
+
+        private void follow(Job job) throws Exception {
+            List<String> apiUrls = blockDataService.validateApis(requestedApiUrls);
+            this.apiUrls = apiUrls;
+            fetcher = new BlockFetcher(chainClient, metrics, job, apiUrls, () -> { });
+
+            File dir = new File(outputDir);
+            if (!dir.exists()) {
+                dir.mkdirs();
+            }
+            checkpointStore = new FetchCheckpointStore(dir);
+            BlockSegmentWriter writer = blockDataService.newSegmentWriter(dir);
+            this.writer = writer;
+            updateChainInfo(chainClient.getInfo(apiUrls));
+            restoreCheckpoint();
+            followStartTime = System.nanoTime();
+            log.info("开始跟随: 从区块 {} 开始, 最新区块 {}, 不可逆区块 {}", nextBlock, headBlockNum, irreversibleBlockNum);
+
+            // 关闭写入器后所有分段均已完成；暂存的区块不保存，下次从最后写入的区块之后继续
+            try (writer) {
+                if (requestedStartBlock == null) {
+                    // 未指定起始区块时，起始区块在恢复检查点后才确定
+                    synchronized (blockDataService) {
+                        checkNoOverlappingFetch(nextBlock);
+                    }
+                }
+                while (true) {
+                    job.checkpoint();
+                    writeConfirmed();
+                    if (nextBlock > headBlockNum) {
+                        if (sinceCheckpoint > 0) {
+                            writer.flush();
+                            saveCheckpoint();
+                        }
+                        Thread.sleep(pollIntervalMs);
+                    } else {
+                        fetchBatch(job, nextBlock, Math.min(headBlockNum, nextBlock + Math.max(1, maxBatch) - 1));
+                    }
+                    refreshChainInfo(apiUrls);
+                    confirmIrreversible();
+                }
+            } finally {
+                saveCheckpoint();
+            }
+        }
+
+        /**
+         * 上次跟随的检查点中有写入记录、且没有指定其他起始区块时从记录之后继续；
+         * 否则从指定的区块或当前不可逆区块之后开始，之前跟随写入的分段仍保留在检查点中
+         */
+        private void restoreCheckpoint() throws IOException {
+            checkpoint = checkpointStore.loadFollow();
+            Long lastWritten = checkpoint != null ? checkpoint.getLastWrittenBlock() : null;
+            if (checkpoint == null) {
+                checkpoint = new FetchCheckpoint();
+                checkpoint.setFollow(true);
+            } else {
+                // 未完成的分段继续写入；从其他区块开始时写入器会在区块号不连续处结束该分段
+                checkpointStore.resume(checkpoint, writer);
+            }
+
+            if (lastWritten != null && (requestedStartBlock == null || requestedStartBlock == lastWritten + 1)) {
+                log.info("找到跟随检查点: 已写入至区块 {}", lastWritten);
+                nextBlock = lastWritten + 1;
+                lastWrittenBlock = lastWritten;
+                storedTipId = checkpoint.getLastBlockId();
+                storedTip = storedTipId != null ? ByteBuffer.wrap(EosBlockHasher.fromHex(storedTipId)) : null;
+                startBlock = checkpoint.getStartBlock();
+                return;
+            }
+            nextBlock = requestedStartBlock != null ? requestedStartBlock : irreversibleBlockNum + 1;
+            if (lastWritten != null) {
+                log.info("跟随检查点已写入至区块 {}，本次从区块 {} 开始", lastWritten, nextBlock);
+            }
+            startBlock = nextBlock;
+            checkpoint.setStartBlock(nextBlock);
+            checkpoint.setLastWrittenBlock(null);
+            checkpoint.setLastBlockId(null);
+        }
+
+        private void saveCheckpoint() {
+            checkpoint.setLastBlockId(storedTipId);
+            checkpointStore.update(checkpoint, writer, lastWrittenBlock);
+            sinceCheckpoint = 0;
+        }
+
+        private void refreshChainInfo(List<String> apiUrls) {
+            try {
+                updateChainInfo(chainClient.getInfo(apiUrls));
+            } catch (ChainClientException e) {
+                // 沿用上一次的链状态，下一轮再查询
+                log.warn("查询链状态失败: {}", e.getMessage());
+            }
+        }
+
+        private void updateChainInfo(ChainInfo info) {
+            headBlockNum = info.getHeadBlockNum();
+            irreversibleBlockNum = info.getLastIrreversibleBlockNum();
+            irreversibleBlockId = info.getLastIrreversibleBlockId();
+            metrics.followLag(headBlockNum - (nextBlock - 1));
+        }
+
+        /**
+         * 用 get_info 返回的不可逆区块确认暂存的区块。暂存区中有该区块号时比较 id：一致时它和之前的区块都已确认；
+         * 不一致时暂存的区块已不在链上（分叉在暂存期间变为不可逆），全部丢弃后重新获取。
+         * 节点没有返回不可逆区块 id 时按区块号确认
+         */
+        private void confirmIrreversible() {
+            if (irreversibleBlockId == null) {
+                settledThrough = Math.max(settledThrough, irreversibleBlockNum);
+                return;
+            }
+            for (UnconfirmedBlock block : unconfirmed) {
+                if (block.blockNum != irreversibleBlockNum) {
+                    continue;
+                }
+                if (block.header.getId().equalsIgnoreCase(irreversibleBlockId)) {
+                    settledThrough = Math.max(settledThrough, block.blockNum);
+                    return;
+                }
+                long firstBlock = unconfirmed.peekFirst().blockNum;
+                log.warn("不可逆区块 {} 的 id ({}) 与暂存的区块 ({}) 不一致，丢弃暂存的 {} 个区块，从区块 {} 重新获取",
+                    block.blockNum, irreversibleBlockId, block.header.getId(), unconfirmed.size(), firstBlock);
+                rolledBackBlocks += unconfirmed.size();
+                for (int i = 0; i < unconfirmed.size(); i++) {
+                    metrics.forkDetected();
+                }
+                unconfirmed.clear();
+                unconfirmedCount = 0;
+                lastRolledBack = null;
+                relinkAttempts = 0;
+                nextBlock = firstBlock;
+                lastFetchedBlock = lastWrittenBlock;
+                return;
+            }
+        }
+
+        /**
+         * 并发获取 [from, to] 的区块，按区块号顺序检查链接；发现分叉时放弃本批剩余的区块
+         */
+        private void fetchBatch(Job job, long from, long to) throws Exception {
+            int window = Math.max(1, fetchConcurrency);
+            Deque<BlockFetcher.Pending> inFlight = new ArrayDeque<>();
+            long nextToSubmit = from;
+            try {
+                while (nextToSubmit <= to && inFlight.size() < window) {
+                    inFlight.addLast(fetcher.submit(nextToSubmit++));
+                }
+                while (!inFlight.isEmpty()) {
+                    job.checkpoint();
+                    BlockFetcher.Pending pending = inFlight.pollFirst();
+                    long waitStart = System.nanoTime();
+                    byte[] blockData = fetcher.await(pending);
+                    metrics.record(Stage.FETCH_WAIT, waitStart);
+                    if (!accept(pending.blockNum, blockData)) {
+                        return;
+                    }
+                    writeConfirmed();
+                    if (nextToSubmit <= to) {
+                        inFlight.addLast(fetcher.submit(nextToSubmit++));
+                    }
+                }
+            } finally {
+                for (BlockFetcher.Pending pending : inFlight) {
+                    pending.cancel();
+                }
+            }
+        }
+
+        /**
+         * 检查区块的 previous 链接，链接上时放入暂存区
+         * @return 发生分叉、已回退时返回 false
+         */
+        private boolean accept(long blockNum, byte[] blockData) throws IOException, InterruptedException {
+            BlockHeader header = BlockHeader.parse(objectMapper.getFactory(), blockData);
+            if (header.getBlockNum() != blockNum) {
+                throw new IllegalStateException("节点返回的区块号 " + header.getBlockNum() + " 与请求的区块号 " + blockNum + " 不一致");
+            }
+            UnconfirmedBlock tail = unconfirmed.peekLast();
+            boolean linked = tail != null
+                ? header.linksTo(tail.header)
+                : storedTip == null || header.previousKey().equals(storedTip);
+            if (!linked) {
+                if (tail == null) {
+                    // 已写入磁盘的区块不能回退
+                    throw new IllegalStateException(String.format(
+                        "区块 %d 的 previous (%s) 与已写入的区块 %d 的 id (%s) 不一致，已写入的区块不在当前链上",
+                        blockNum, header.getPrevious(), lastWrittenBlock, storedTipId));
+                }
+                // 分叉：暂存区最后一个区块已不在当前链上，丢弃后重新获取该区块号
+                unconfirmed.pollLast();
+                if (lastRolledBack != null && lastRolledBack.blockNum == tail.blockNum && lastRolledBack.header.idEquals(tail.header)) {
+                    // 重新获取的仍是同一个区块：节点之间暂时不一致，等待后再试，多次后放弃
+                    if (++relinkAttempts >= MAX_RELINK_ATTEMPTS) {
+                        throw new IllegalStateException(String.format(
+                            "区块 %d 的 previous (%s) 与区块 %d 的 id (%s) 不一致，重新获取 %d 次后仍不一致",
+                            blockNum, header.getPrevious(), tail.blockNum, tail.header.getId(), relinkAttempts));
+                    }
+                    Thread.sleep(pollIntervalMs);
+                } else {
+                    relinkAttempts = 0;
+                }
+                lastRolledBack = tail;
+                settledThrough = Math.min(settledThrough, tail.blockNum - 1);
+                unconfirmedCount = unconfirmed.size();
+                rolledBackBlocks++;
+                metrics.forkDetected();
+                log.warn("检测到分叉: 区块 {} 的 previous ({}) 与区块 {} 的 id ({}) 不一致，回退并重新获取区块 {}",
+                    blockNum, header.getPrevious(), tail.blockNum, tail.header.getId(), tail.blockNum);
+                nextBlock = tail.blockNum;
+                lastFetchedBlock = unconfirmed.isEmpty() ? lastWrittenBlock : unconfirmed.peekLast().blockNum;
+                return false;
+            }
+            unconfirmed.addLast(new UnconfirmedBlock(blockNum, blockData, header));
+            if (blockNum <= irreversibleBlockNum) {
+                // 获取时已经不可逆的区块在链上，暂存区中链接到它的之前的区块也在链上
+                settledThrough = blockNum;
+            }
+            unconfirmedCount = unconfirmed.size();
+            nextBlock = blockNum + 1;
+            lastFetchedBlock = blockNum;
+            fetchedBlocks++;
+            metrics.followLag(headBlockNum - blockNum);
+            return true;
+        }
+
+        /**
+         * 把暂存区中已确认的区块按顺序写入磁盘
+         */
+        private void writeConfirmed() throws IOException {
+            while (!unconfirmed.isEmpty() && isConfirmed(unconfirmed.peekFirst().blockNum)) {
+                UnconfirmedBlock block = unconfirmed.pollFirst();
+                int completedBefore = writer.getCompletedSegments().size();
+                long writeStart = System.nanoTime();
+                writer.append(block.blockNum, block.data, block.header.idKey());
+                metrics.record(Stage.FETCH_WRITE, writeStart);
+                metrics.blockFetched(block.data.length);
+                lastWrittenBlock = block.blockNum;
+                storedTip = block.header.idKey();
+                storedTipId = block.header.getId();
+                writtenBlocks++;
+                log.info("跟随写入区块 {}", block.blockNum);
+
+                if (++sinceCheckpoint >= checkpointInterval
+                        || writer.getCompletedSegments().size() != completedBefore) {
+                    writer.flush();
+                    saveCheckpoint();
+                }
+            }
+            unconfirmedCount = unconfirmed.size();
+        }
+
+        private boolean isConfirmed(long blockNum) {
+            return blockNum <= settledThrough || (confirmations > 0 && blockNum <= headBlockNum - confirmations);
+        }
+    }
+
+    private static final class UnconfirmedBlock {
+        private final long blockNum;
+        private final byte[] data;
+        private final BlockHeader header;
+
+        private UnconfirmedBlock(long blockNum, byte[] data, BlockHeader header) {
+            this.blockNum = blockNum;
+            this.data = data;
+            this.header = header;
+        }
+    }
+}
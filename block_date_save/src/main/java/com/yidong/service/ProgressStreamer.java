@@ -0,0 +1,186 @@
+package com.yidong.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 通过 Server-Sent Events 推送任务进度。
+ * <p>
+ * 每个订阅按固定间隔推送一次 progress 事件，并把游标之后新增的结果作为 results 事件推送，
+ * 每次推送的开销只与新增结果数量有关；任务结束后推送 done 事件并关闭连接。
+ * <p>
+ * 定时线程只负责触发，推送在发送线程池中进行，每个订阅同时只有一次推送；
+ * 上一次推送还没有完成时跳过本次，连续阻塞超过 max-stall-ms 的订阅者被断开，不影响其他订阅者。
+ */
+@Component
+public class ProgressStreamer {
+    private static final Logger logger = LoggerFactory.getLogger(ProgressStreamer.class);
+
+    /** 每个 results 事件最多包含的结果数 */
+    private static final int RESULTS_PER_EVENT = 500;
+
+    /**
+     * 按游标读取结果
+     */
+    public interface ResultSource<T> {
+        /**
+         * @param cursor 已读取的结果数量
+         * @param limit 最多返回的数量
+         */
+        List<T> resultsAfter(int cursor, int limit);
+    }
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "progress-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService senders;
+
+    /** 推送间隔 */
+    private final long intervalMs;
+
+    /** 一次推送阻塞超过这个时间的订阅者被断开 */
+    private final long maxStallMs;
+
+    public ProgressStreamer(
+        @Value("${block.progress.stream-interval-ms:500}") long intervalMs,
+        @Value("${block.progress.sender-threads:4}") int senderThreads,
+        @Value("${block.progress.max-stall-ms:30000}") long maxStallMs
+    ) {
+        this.intervalMs = intervalMs;
+        this.maxStallMs = maxStallMs;
+        this.senders = Executors.newFixedThreadPool(Math.max(1, senderThreads), runnable -> {
+            Thread thread = new Thread(runnable, "progress-send");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 订阅没有结果列表的任务进度
+     */
+    public SseEmitter stream(Supplier<?> progress, BooleanSupplier active) {
+        return stream(progress, active, null, 0);
+    }
+
+    /**
+     * 订阅任务进度和新增结果
+     * @param progress 进度快照
+     * @param active 任务是否仍在进行
+     * @param results 结果来源，没有结果列表时为 null
+     * @param cursor 客户端已有的结果数量，从这里开始推送
+     */
+    public <T> SseEmitter stream(Supplier<?> progress, BooleanSupplier active, ResultSource<T> results, int cursor) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Subscription<T> subscription = new Subscription<>(emitter, progress, active, results, cursor);
+        subscription.future = scheduler.scheduleWithFixedDelay(() -> trigger(subscription), 0, intervalMs,
+            TimeUnit.MILLISECONDS);
+        if (subscription.cancelled) {
+            subscription.cancel();
+        }
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(error -> subscription.cancel());
+        return emitter;
+    }
+
+    /**
+     * 在发送线程池中推送；上一次推送还在进行时跳过，阻塞过久时断开订阅者
+     */
+    private void trigger(Subscription<?> subscription) {
+        if (subscription.sending.compareAndSet(false, true)) {
+            subscription.sendStartedAt = System.nanoTime();
+            try {
+                senders.execute(() -> {
+                    try {
+                        subscription.push();
+                    } finally {
+                        subscription.sending.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                subscription.sending.set(false);
+                throw e;
+            }
+        } else if (System.nanoTime() - subscription.sendStartedAt > TimeUnit.MILLISECONDS.toNanos(maxStallMs)) {
+            logger.warn("进度推送阻塞超过 {} 毫秒，断开订阅者", maxStallMs);
+            subscription.cancel();
+            subscription.emitter.completeWithError(new IOException("进度推送超时"));
+        }
+    }
+
+    private static final class Subscription<T> {
+        private final SseEmitter emitter;
+        private final Supplier<?> progress;
+        private final BooleanSupplier active;
+        private final ResultSource<T> results;
+        private int cursor;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean cancelled;
+        // 是否有推送正在进行，以及开始的时间
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile long sendStartedAt;
+
+        Subscription(SseEmitter emitter, Supplier<?> progress, BooleanSupplier active,
+                     ResultSource<T> results, int cursor) {
+            this.emitter = emitter;
+            this.progress = progress;
+            this.active = active;
+            this.results = results;
+            this.cursor = Math.max(0, cursor);
+        }
+
+        void push() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                // 先读取状态再推送结果，保证任务结束前产生的结果都在 done 之前送出
+                boolean finished = !active.getAsBoolean();
+                emitter.send(SseEmitter.event().name("progress").data(progress.get()));
+                if (results != null) {
+                    List<T> batch;
+                    while (!(batch = results.resultsAfter(cursor, RESULTS_PER_EVENT)).isEmpty()) {
+                        cursor += batch.size();
+                        emitter.send(SseEmitter.event().name("results").id(String.valueOf(cursor))
+                            .data(Map.of("cursor", cursor, "results", batch)));
+                    }
+                }
+                if (finished) {
+                    emitter.send(SseEmitter.event().name("done").data(Map.of("cursor", cursor)));
+                    cancel();
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                // 客户端断开连接
+                logger.debug("进度推送连接已关闭: {}", e.getMessage());
+                cancel();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.yidong.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 深度比较：逐个交易比较本地区块与链上区块的完整内容，发现区块头未变而 transactions 被修改的区块。
+ * <p>
+ * 先为每个交易子树计算规范化摘要（对象字段按名称排序，标量按文本形式），摘要相同的交易不再展开；
+ * 只有摘要不同的交易才同时遍历两棵子树，记录不一致的字段路径，
+ * 例如 transactions[3].trx.transaction.actions[0].data.quantity。
+ * 交易较多的区块按交易区间拆分，在 ForkJoinPool 中并行计算摘要。
+ * transactions 之外的区块字段（header_extensions、producer_signature 等）直接逐字段比较。
+ */
+public final class TransactionComparator {
+
+    /** 每个区块最多记录的不一致路径数 */
+    static final int MAX_PATHS = 20;
+    /** 交易数超过该值时拆分后并行计算摘要 */
+    static final int SPLIT_THRESHOLD = 32;
+    /** 记录的字段值超过该长度时截断 */
+    private static final int MAX_VALUE_LENGTH = 200;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final ForkJoinPool pool;
+
+    public TransactionComparator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 比较两个完整的区块
+     */
+    public Result compare(JsonNode localBlock, JsonNode chainBlock) {
+        Result result = new Result();
+        // transactions 之外的字段数量少，直接比较
+        TreeSet<String> fields = new TreeSet<>();
+        localBlock.fieldNames().forEachRemaining(fields::add);
+        chainBlock.fieldNames().forEachRemaining(fields::add);
+        fields.remove("transactions");
+        for (String field : fields) {
+            diff(field, localBlock.path(field), chainBlock.path(field), result);
+        }
+
+        JsonNode localTransactions = localBlock.path("transactions");
+        JsonNode chainTransactions = chainBlock.path("transactions");
+        int localCount = localTransactions.size();
+        int chainCount = chainTransactions.size();
+        if (localCount != chainCount) {
+            result.record("transactions.length", localCount, chainCount);
+        }
+        int count = Math.min(localCount, chainCount);
+        byte[][] localDigests = new byte[count][];
+        byte[][] chainDigests = new byte[count][];
+        DigestTask task = new DigestTask(localTransactions, chainTransactions, localDigests, chainDigests, 0, count);
+        if (count > SPLIT_THRESHOLD) {
+            pool.invoke(task);
+        } else {
+            task.compute();
+        }
+        for (int i = 0; i < count; i++) {
+            if (!Arrays.equals(localDigests[i], chainDigests[i])) {
+                result.mismatchedTransactions++;
+                result.truncated |= result.isFull();
+                diff("transactions[" + i + "]", localTransactions.get(i), chainTransactions.get(i), result);
+            }
+        }
+        for (int i = count; i < Math.max(localCount, chainCount); i++) {
+            result.mismatchedTransactions++;
+            result.truncated |= result.isFull();
+            diff("transactions[" + i + "]", localTransactions.path(i), chainTransactions.path(i), result);
+        }
+        return result;
+    }
+
+    /**
+     * 子树的规范化摘要：与字段顺序和数字的书写形式（123 或 "123"）无关
+     */
+    static byte[] digest(JsonNode node) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        update(digest, node, ByteBuffer.allocate(8));
+        return digest.digest();
+    }
+
+    private static void update(MessageDigest digest, JsonNode node, ByteBuffer scratch) {
+        if (node.isObject()) {
+            List<String> names = new ArrayList<>(node.size());
+            node.fieldNames().forEachRemaining(names::add);
+            names.sort(null);
+            digest.update((byte) 'o');
+            updateInt(digest, names.size(), scratch);
+            for (String name : names) {
+                updateText(digest, name, scratch);
+                update(digest, node.get(name), scratch);
+            }
+        } else if (node.isArray()) {
+            digest.update((byte) 'a');
+            updateInt(digest, node.size(), scratch);
+            for (JsonNode element : node) {
+                update(digest, element, scratch);
+            }
+        } else if (node.isNull() || node.isMissingNode()) {
+            digest.update((byte) 'n');
+        } else {
+            digest.update((byte) 's');
+            updateText(digest, node.asText(), scratch);
+        }
+    }
+
+    private static void updateInt(MessageDigest digest, int value, ByteBuffer scratch) {
+        digest.update(scratch.clear().putInt(value).array(), 0, 4);
+    }
+
+    private static void updateText(MessageDigest digest, String text, ByteBuffer scratch) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        updateInt(digest, bytes.length, scratch);
+        digest.update(bytes);
+    }
+
+    /**
+     * 同时遍历两棵子树，记录不一致的叶子路径，达到上限后停止
+     */
+    private static void diff(String path, JsonNode local, JsonNode chain, Result result) {
+        if (result.isFull()) {
+            return;
+        }
+        if (local.isObject() && chain.isObject()) {
+            TreeSet<String> names = new TreeSet<>();
+            local.fieldNames().forEachRemaining(names::add);
+            chain.fieldNames().forEachRemaining(names::add);
+            for (String name : names) {
+                diff(path + "." + name, local.path(name), chain.path(name), result);
+            }
+        } else if (local.isArray() && chain.isArray()) {
+            for (int i = 0; i < Math.max(local.size(), chain.size()); i++) {
+                diff(path + "[" + i + "]", local.path(i), chain.path(i), result);
+            }
+        } else if (local.isContainerNode() || chain.isContainerNode()) {
+            result.record(path, value(local), value(chain));
+        } else if (isAbsent(local) != isAbsent(chain) || !local.asText().equals(chain.asText())) {
+            result.record(path, value(local), value(chain));
+        }
+    }
+
+    /** 摘要中 null 与缺少字段相同 */
+    private static boolean isAbsent(JsonNode node) {
+        return node.isMissingNode() || node.isNull();
+    }
+
+    private static Object value(JsonNode node) {
+        if (isAbsent(node)) {
+            return null;
+        }
+        String text = node.isValueNode() ? node.asText() : node.toString();
+        return text.length() > MAX_VALUE_LENGTH ? text.substring(0, MAX_VALUE_LENGTH) + "..." : text;
+    }
+
+    /**
+     * 按交易区间拆分的摘要计算，两侧的同一区间在同一个任务中计算
+     */
+    private static final class DigestTask extends RecursiveAction {
+        private final JsonNode local;
+        private final JsonNode chain;
+        private final byte[][] localDigests;
+        private final byte[][] chainDigests;
+        private final int from;
+        private final int to;
+
+        private DigestTask(JsonNode local, JsonNode chain, byte[][] localDigests, byte[][] chainDigests,
+                           int from, int to) {
+            this.local = local;
+            this.chain = chain;
+            this.localDigests = localDigests;
+            this.chainDigests = chainDigests;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new DigestTask(local, chain, localDigests, chainDigests, from, mid),
+                    new DigestTask(local, chain, localDigests, chainDigests, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                localDigests[i] = digest(local.get(i));
+                chainDigests[i] = digest(chain.get(i));
+            }
+        }
+    }
+
+    /**
+     * 深度比较的结果：不一致的路径以及每个路径的本地值和链上值
+     */
+    public static final class Result {
+        private final List<String> paths = new ArrayList<>();
+        private final Map<String, Object> details = new LinkedHashMap<>();
+        private int mismatchedTransactions;
+        private boolean truncated;
+
+        private void record(String path, Object local, Object chain) {
+            if (isFull()) {
+                truncated = true;
+                return;
+            }
+            paths.add(path);
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("local", local);
+            values.put("chain", chain);
+            details.put(path, values);
+        }
+
+        private boolean isFull() {
+            return paths.size() >= MAX_PATHS;
+        }
+
+        public boolean isMatch() {
+            return paths.isEmpty();
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        public Map<String, Object> getDetails() {
+            return details;
+        }
+
+        /** 内容不一致的交易数 */
+        public int getMismatchedTransactions() {
+            return mismatchedTransactions;
+        }
+
+        /** 不一致的路径超过 {@link #MAX_PATHS}，只记录了前面的部分 */
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+}
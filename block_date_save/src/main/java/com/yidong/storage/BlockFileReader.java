@@ -0,0 +1,197 @@
+package com.yidong.storage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yidong.model.BlockHeader;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 增量读取区块文件，每次只解析一个区块，支持以下格式：
+ * 区块数组 [...]、包含 blocks 字段的对象 {"blocks":[...]}、单个区块 {...}
+ * <p>
+ * 每个区块可以读取为完整的 JsonNode（{@link #trees}），也可以只读取区块头（{@link #headers}），
+ * 后者跳过 transactions 等字段，不为其创建对象；{@link #headerTrees} 读取除 transactions 之外的字段，
+ * 用于在本地重新计算区块 id。
+ * <p>
+ * 压缩分段（{@link SegmentCompression}）按文件开头的魔数识别，边读取边解压。
+ */
+public class BlockFileReader<T> implements Iterator<T>, Closeable {
+
+    /**
+     * 从位于区块对象开始处的解析器中读取一个区块
+     */
+    public interface BlockParser<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    private final ObjectMapper objectMapper;
+    private final BlockParser<T> blockParser;
+    private final Path file;
+    private final long fileSize;
+    private final boolean compressed;
+    private JsonParser parser;
+    private T next;
+    private boolean singleBlock;
+    private long blocksRead;
+
+    /**
+     * 读取完整的区块
+     */
+    public static BlockFileReader<JsonNode> trees(Path file, ObjectMapper objectMapper) throws IOException {
+        return new BlockFileReader<>(file, objectMapper, parser -> objectMapper.readTree(parser));
+    }
+
+    /**
+     * 读取除 transactions 之外的全部字段，包含计算区块 id 所需的 confirmed、new_producers 和 header_extensions
+     */
+    public static BlockFileReader<JsonNode> headerTrees(Path file, ObjectMapper objectMapper) throws IOException {
+        return new BlockFileReader<>(file, objectMapper, parser -> {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("区块数据不是 JSON 对象");
+            }
+            ObjectNode block = objectMapper.createObjectNode();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                parser.nextToken();
+                if ("transactions".equals(field)) {
+                    parser.skipChildren();
+                } else {
+                    block.set(field, objectMapper.readTree(parser));
+                }
+            }
+            return block;
+        });
+    }
+
+    /**
+     * 只读取区块头
+     */
+    public static BlockFileReader<BlockHeader> headers(Path file, ObjectMapper objectMapper) throws IOException {
+        return new BlockFileReader<>(file, objectMapper, BlockHeader::parse);
+    }
+
+    public BlockFileReader(Path file, ObjectMapper objectMapper, BlockParser<T> blockParser) throws IOException {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.blockParser = blockParser;
+        this.compressed = SegmentCompression.isCompressed(file);
+        // 压缩文件的解析位置是解压后的偏移，按解压后的总长度估算
+        this.fileSize = compressed
+            ? SegmentCompression.readChunks(file, Files.size(file)).getLogicalBytes()
+            : Files.size(file);
+        this.parser = createParser();
+        positionAtFirstBlock();
+        this.next = readNext();
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        T current = next;
+        blocksRead++;
+        try {
+            next = readNext();
+        } catch (IOException e) {
+            throw new RuntimeException("解析区块文件失败: " + e.getMessage(), e);
+        }
+        return current;
+    }
+
+    /**
+     * 根据已解析的字节数估算文件中的区块总数
+     */
+    public long estimateTotalBlocks() {
+        if (next == null) {
+            return blocksRead;
+        }
+        long offset = parser.currentLocation().getByteOffset();
+        if (blocksRead == 0 || offset <= 0) {
+            return blocksRead + 1;
+        }
+        long estimated = Math.round((double) fileSize * blocksRead / offset);
+        return Math.max(estimated, blocksRead + 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private void positionAtFirstBlock() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            return;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new RuntimeException("无效的文件格式：需要区块数组或包含blocks字段的对象");
+        }
+
+        // 查找 blocks 字段，其余字段跳过
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+            if ("blocks".equals(fieldName) && valueToken == JsonToken.START_ARRAY) {
+                return;
+            }
+            parser.skipChildren();
+        }
+
+        // 没有 blocks 字段，按单个区块重新解析
+        parser.close();
+        parser = createParser();
+        singleBlock = true;
+    }
+
+    private JsonParser createParser() throws IOException {
+        JsonFactory factory = objectMapper.getFactory();
+        if (compressed) {
+            return factory.createParser(new SegmentCompression.ChunkInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 64 * 1024)));
+        }
+        return factory.createParser(file.toFile());
+    }
+
+    private T readNext() throws IOException {
+        if (singleBlock) {
+            if (blocksRead > 0 || parser.isClosed()) {
+                return null;
+            }
+            T block;
+            try {
+                block = parser.nextToken() == JsonToken.START_OBJECT ? blockParser.read(parser) : null;
+            } catch (IllegalArgumentException e) {
+                // 缺少区块字段，不是单个区块
+                block = null;
+            }
+            parser.close();
+            if (block == null || (block instanceof JsonNode && !((JsonNode) block).has("block_num"))) {
+                throw new RuntimeException("无效的文件格式：需要区块数组或包含blocks字段的对象");
+            }
+            return block;
+        }
+
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        return blockParser.read(parser);
+    }
+}
@@ -0,0 +1,315 @@
+package com.yidong.storage;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.yidong.model.BlockHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 流式区块写入器：每个区块到达后立即追加到输出文件，内存占用与区块范围无关。
+ * 输出保持 {"blocks":[...]} 格式，可按大小或区块数滚动为多个分段文件，
+ * 分段完成后命名为 blocks_<起始区块>_<结束区块>.json。
+ * <p>
+ * 写入时同时生成分段的偏移索引（{@link SegmentIndex}），随分段一起完成和重命名。
+ * 配置了压缩时分段按块压缩（{@link SegmentCompression}），完成后命名为 blocks_<起始区块>_<结束区块>.json.dz。
+ */
+public class BlockSegmentWriter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockSegmentWriter.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String PART_SUFFIX = ".part";
+
+    static final byte[] HEADER = "{\n  \"blocks\": [\n".getBytes(StandardCharsets.UTF_8);
+    static final byte[] SEPARATOR = ",\n".getBytes(StandardCharsets.UTF_8);
+    static final byte[] FOOTER = "\n  ]\n}".getBytes(StandardCharsets.UTF_8);
+
+    private final File dir;
+    private final long maxSegmentBytes;
+    private final long maxSegmentBlocks;
+    private final SegmentCompression compression;
+    private final List<SegmentFile> completedSegments = new ArrayList<>();
+
+    private OutputStream out;
+    // 当前分段是压缩分段时与 out 相同，否则为 null
+    private SegmentCompression.ChunkOutputStream chunkOut;
+    private File partFile;
+    // 续写时索引文件缺失或不完整则为 null，该分段完成后没有索引，可以之后用 SegmentIndexer 重建
+    private SegmentIndex.Writer indexWriter;
+    private long segmentFirstBlock;
+    private long segmentLastBlock;
+    private long segmentBlocks;
+    private long segmentBytes;
+
+    public BlockSegmentWriter(File dir, long maxSegmentBytes, long maxSegmentBlocks) {
+        this(dir, maxSegmentBytes, maxSegmentBlocks, null);
+    }
+
+    /**
+     * @param dir 输出目录
+     * @param maxSegmentBytes 单个分段的最大字节数（压缩时按解压后的字节数计算），0 表示不按大小滚动
+     * @param maxSegmentBlocks 单个分段的最大区块数，0 表示不按区块数滚动
+     * @param compression 压缩参数，为 null 时不压缩
+     */
+    public BlockSegmentWriter(File dir, long maxSegmentBytes, long maxSegmentBlocks, SegmentCompression compression) {
+        this.dir = dir;
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentBlocks = maxSegmentBlocks;
+        this.compression = compression;
+    }
+
+    /**
+     * 追加一个区块的原始JSON字节，从中解析区块 id 写入索引
+     * @param blockNum 区块号，必须按顺序递增
+     * @param blockJson 节点返回的原始响应体
+     */
+    public void append(long blockNum, byte[] blockJson) throws IOException {
+        BlockHeader header = BlockHeader.parse(JSON_FACTORY, blockJson);
+        if (header.getBlockNum() != blockNum) {
+            throw new IllegalArgumentException("区块号不一致: 请求 " + blockNum + "，返回 " + header.getBlockNum());
+        }
+        append(blockNum, blockJson, header.idKey());
+    }
+
+    /**
+     * 追加一个已解析出区块 id 的区块
+     * @param id 32 字节区块 id
+     */
+    public void append(long blockNum, byte[] blockJson, ByteBuffer id) throws IOException {
+        if (out != null && blockNum != segmentLastBlock + 1) {
+            // 区块号不连续时结束当前分段，保证每个分段覆盖连续的区块范围
+            finishSegment();
+        }
+        if (out == null) {
+            openSegment(blockNum, blockJson);
+        } else {
+            out.write(SEPARATOR);
+            segmentBytes += SEPARATOR.length;
+        }
+
+        if (indexWriter != null) {
+            indexWriter.add(blockNum, segmentBytes, blockJson.length, id);
+        }
+        out.write(blockJson);
+        segmentBytes += blockJson.length;
+        segmentBlocks++;
+        segmentLastBlock = blockNum;
+        if (chunkOut != null && chunkOut.getChunkSize() >= chunkOutSettings().getChunkBytes()) {
+            // 块在区块边界处结束，每个区块只在一块中
+            chunkOut.endChunk();
+            recordChunks(chunkOut);
+        }
+
+        if ((maxSegmentBlocks > 0 && segmentBlocks >= maxSegmentBlocks)
+                || (maxSegmentBytes > 0 && segmentBytes >= maxSegmentBytes)) {
+            finishSegment();
+        }
+    }
+
+    /**
+     * 继续写入上次中断的分段临时文件，超出 validBytes 的部分（未记录到检查点的数据）会被截断
+     * @param partFileName 分段临时文件名
+     * @param firstBlock 分段起始区块号
+     * @param lastBlock 分段中最后一个完整写入的区块号
+     * @param blocks 分段中已写入的区块数
+     * @param validBytes 分段中有效数据的字节数（压缩分段为解压后的字节数）
+     * @param validFileBytes 分段文件的有效字节数，0 表示与 validBytes 相同（未压缩分段）
+     */
+    public void resumeSegment(String partFileName, long firstBlock, long lastBlock,
+                              long blocks, long validBytes, long validFileBytes) throws IOException {
+        if (out != null) {
+            throw new IllegalStateException("当前已有正在写入的分段");
+        }
+        partFile = new File(dir, partFileName);
+        boolean compressed = partFileName.endsWith(SegmentCompression.SUFFIX + PART_SUFFIX);
+        long fileBytes = validFileBytes > 0 ? validFileBytes : validBytes;
+        SegmentCompression.Chunks chunks = null;
+        if (compressed) {
+            chunks = SegmentCompression.readChunks(partFile.toPath(), fileBytes);
+            if (chunks.getLogicalBytes() != validBytes || chunks.getFileBytes() != fileBytes) {
+                throw new IOException("检查点与压缩分段文件不一致: " + partFileName);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(partFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(fileBytes);
+        }
+        segmentFirstBlock = firstBlock;
+        segmentLastBlock = lastBlock;
+        segmentBlocks = blocks;
+        segmentBytes = validBytes;
+        out = new BufferedOutputStream(new FileOutputStream(partFile, true), BUFFER_SIZE);
+        if (compressed) {
+            byte[] dictionary;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(partFile))) {
+                dictionary = SegmentCompression.readHeader(in).dictionary;
+            }
+            chunkOut = new SegmentCompression.ChunkOutputStream(out, chunkOutSettings(), dictionary, fileBytes, validBytes);
+            out = chunkOut;
+        }
+        indexWriter = SegmentIndex.Writer.resume(SegmentIndex.pathFor(partFile.toPath()), blocks);
+        if (indexWriter == null) {
+            log.warn("分段 {} 的索引文件缺失或不完整，该分段完成后需要重建索引", partFileName);
+        } else if (chunks != null) {
+            for (long[] chunk : chunks.getChunks()) {
+                indexWriter.addChunk(chunk[0], chunk[1]);
+            }
+        }
+        log.info("继续写入分段文件: {} (已有区块数: {}, 字节数: {})", partFileName, blocks, validBytes);
+    }
+
+    /**
+     * 将缓冲数据写入文件，之后记录的检查点才与磁盘内容一致
+     */
+    public void flush() throws IOException {
+        if (chunkOut != null) {
+            // 检查点只能记录完整的块
+            chunkOut.endChunk();
+            recordChunks(chunkOut);
+        }
+        if (out != null) {
+            out.flush();
+        }
+        if (indexWriter != null) {
+            indexWriter.flush();
+        }
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    /**
+     * 正在写入的分段临时文件名，没有时返回 null
+     */
+    public String getPartFileName() {
+        return out != null ? partFile.getName() : null;
+    }
+
+    public long getSegmentFirstBlock() {
+        return segmentFirstBlock;
+    }
+
+    public long getSegmentLastBlock() {
+        return segmentLastBlock;
+    }
+
+    public long getSegmentBlocks() {
+        return segmentBlocks;
+    }
+
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    /**
+     * 分段文件的字节数，压缩分段在 {@link #flush()} 之后才与 {@link #getSegmentBytes()} 对应
+     */
+    public long getSegmentFileBytes() {
+        return chunkOut != null ? chunkOut.getFileBytes() : segmentBytes;
+    }
+
+    /**
+     * 已完成（已重命名为最终文件名）的分段文件
+     */
+    public List<SegmentFile> getCompletedSegments() {
+        return Collections.unmodifiableList(completedSegments);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) {
+            finishSegment();
+        }
+    }
+
+    private void openSegment(long firstBlock, byte[] firstBlockJson) throws IOException {
+        segmentFirstBlock = firstBlock;
+        segmentLastBlock = firstBlock;
+        segmentBlocks = 0;
+        segmentBytes = HEADER.length;
+        partFile = new File(dir, String.format("blocks_%d.json%s" + PART_SUFFIX, firstBlock,
+            compression != null ? SegmentCompression.SUFFIX : ""));
+        out = new BufferedOutputStream(new FileOutputStream(partFile), BUFFER_SIZE);
+        if (compression != null) {
+            chunkOut = new SegmentCompression.ChunkOutputStream(out, compression, null, 0, 0);
+            chunkOut.start(firstBlockJson);
+            out = chunkOut;
+        }
+        out.write(HEADER);
+        indexWriter = SegmentIndex.Writer.create(SegmentIndex.pathFor(partFile.toPath()));
+    }
+
+    private void finishSegment() throws IOException {
+        SegmentCompression.ChunkOutputStream compressed = chunkOut;
+        try {
+            out.write(FOOTER);
+        } finally {
+            out.close();
+            out = null;
+            chunkOut = null;
+        }
+        long fileBytes = segmentBytes + FOOTER.length;
+        if (compressed != null) {
+            recordChunks(compressed);
+            fileBytes = compressed.getFileBytes();
+        }
+
+        String fileName = String.format("blocks_%d_%d.json%s", segmentFirstBlock, segmentLastBlock,
+            compressed != null ? SegmentCompression.SUFFIX : "");
+        File segmentFile = new File(dir, fileName);
+        // 先删除同名分段的旧索引，避免新分段短暂地与旧索引配对
+        Files.deleteIfExists(SegmentIndex.pathFor(segmentFile.toPath()));
+        Files.move(partFile.toPath(), segmentFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        if (indexWriter != null) {
+            indexWriter.finish(fileBytes);
+            indexWriter = null;
+            Files.move(SegmentIndex.pathFor(partFile.toPath()), SegmentIndex.pathFor(segmentFile.toPath()),
+                StandardCopyOption.REPLACE_EXISTING);
+        }
+        completedSegments.add(new SegmentFile(fileName, segmentFirstBlock, segmentLastBlock));
+        partFile = null;
+
+        if (compressed != null) {
+            log.info("分段文件写入完成: {} (区块数: {}, 字节数: {}, 压缩后: {})",
+                fileName, segmentBlocks, segmentBytes + FOOTER.length, fileBytes);
+        } else {
+            log.info("分段文件写入完成: {} (区块数: {}, 字节数: {})", fileName, segmentBlocks, fileBytes);
+        }
+    }
+
+    /**
+     * 把压缩输出中新完成的块记入索引的块表
+     */
+    private void recordChunks(SegmentCompression.ChunkOutputStream chunks) {
+        for (long[] chunk : chunks.drainCompletedChunks()) {
+            if (indexWriter != null) {
+                indexWriter.addChunk(chunk[0], chunk[1]);
+            }
+        }
+    }
+
+    /**
+     * 续写压缩分段时当前配置可能已不压缩，使用默认的压缩参数
+     */
+    private SegmentCompression chunkOutSettings() {
+        return compression != null ? compression : SegmentCompression.DEFAULT;
+    }
+}
@@ -0,0 +1,374 @@
+package com.yidong.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * 按区块号读取输出目录中的区块。
+ * <p>
+ * 只使用带有效索引（{@link SegmentIndex}）的 blocks_<起始>_<结束>.json 分段：
+ * 先在按起始区块号排列的分段中找到包含该区块的分段，再由索引得到区块在文件中的位置，
+ * 从分段文件的只读内存映射中取出区块 JSON。找不到区块时重新扫描目录以发现新完成的分段，
+ * 扫描间隔不小于 {@link #MIN_REFRESH_INTERVAL_MS}。
+ * <p>
+ * 压缩分段（blocks_*.json.dz）由索引的块表找到区块所在的块，只解压这一块；
+ * 每个分段缓存最近解压的一块，按区块号顺序读取时同一块只解压一次。
+ */
+public class BlockStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockStore.class);
+    private static final Pattern SEGMENT_NAME = Pattern.compile("blocks_\\d+_\\d+\\.json(\\.dz)?");
+    /** 分段文件按这个大小分区映射，跨越分区边界的区块复制后返回 */
+    private static final long REGION_SIZE = 1L << 30;
+    /** 两次因找不到区块而扫描目录的最小间隔 */
+    private static final long MIN_REFRESH_INTERVAL_MS = 1000;
+
+    /**
+     * 按区块号顺序接收范围内的区块
+     */
+    public interface BlockVisitor {
+        /**
+         * @param block 区块的原始 JSON，内存映射的只读视图，只在调用期间有效
+         */
+        void visit(long blockNum, ByteBuffer block) throws IOException;
+    }
+
+    private final File dir;
+    // 按起始区块号排列的分段，刷新时整体替换
+    private volatile NavigableMap<Long, Segment> segments = Collections.emptyNavigableMap();
+    private volatile long lastRefresh;
+
+    public BlockStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 区块的原始 JSON，不存在时返回 null。返回的是内存映射的只读视图，调用方不要长期持有
+     */
+    public ByteBuffer read(long blockNum) throws IOException {
+        Segment segment = locate(blockNum);
+        return segment != null ? segment.read(segment.index.find(blockNum)) : null;
+    }
+
+    /**
+     * 区块的原始 JSON 字节，不存在时返回 null
+     */
+    public byte[] readBytes(long blockNum) throws IOException {
+        ByteBuffer block = read(blockNum);
+        if (block == null) {
+            return null;
+        }
+        byte[] bytes = new byte[block.remaining()];
+        block.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * 按区块号递增的顺序访问范围内存在的区块。先重新扫描目录，只遍历与范围重叠的分段，
+     * 在每个分段内按索引记录顺序读取，不逐个查找范围内不存在的区块号；分段范围重叠时同一区块只访问一次
+     * @param fromBlock 起始区块号（包含）
+     * @param toBlock 结束区块号（包含）
+     * @return 访问的区块数
+     */
+    public long forEachInRange(long fromBlock, long toBlock, BlockVisitor visitor) throws IOException {
+        refresh();
+        long next = fromBlock;
+        long visited = 0;
+        for (Segment segment : segments.values()) {
+            if (segment.index.getFirstBlock() > toBlock) {
+                break;
+            }
+            if (segment.index.getLastBlock() < next) {
+                continue;
+            }
+            for (int record = segment.index.ceiling(next); record < segment.index.getCount(); record++) {
+                long blockNum = segment.index.blockNum(record);
+                if (blockNum > toBlock) {
+                    break;
+                }
+                visitor.visit(blockNum, segment.read(record));
+                visited++;
+                next = blockNum + 1;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * 按 {"blocks":[...]} 格式写出区块范围内存在的区块，区块内容直接从内存映射写入通道
+     * @param fromBlock 起始区块号（包含）
+     * @param toBlock 结束区块号（包含）
+     * @return 写出的区块数
+     */
+    public long writeRange(long fromBlock, long toBlock, WritableByteChannel out) throws IOException {
+        writeFully(out, ByteBuffer.wrap(BlockSegmentWriter.HEADER));
+        long written = forEachInRange(fromBlock, toBlock, new BlockVisitor() {
+            private boolean first = true;
+
+            @Override
+            public void visit(long blockNum, ByteBuffer block) throws IOException {
+                if (!first) {
+                    writeFully(out, ByteBuffer.wrap(BlockSegmentWriter.SEPARATOR));
+                }
+                first = false;
+                writeFully(out, block);
+            }
+        });
+        writeFully(out, ByteBuffer.wrap(BlockSegmentWriter.FOOTER));
+        return written;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * 区块 id，不存在时返回 null
+     */
+    public byte[] readId(long blockNum) throws IOException {
+        Segment segment = locate(blockNum);
+        return segment != null ? segment.index.id(segment.index.find(blockNum)) : null;
+    }
+
+    /**
+     * 重新扫描目录：加载新的和变化过的分段索引，移除已删除的分段
+     */
+    public synchronized void refresh() {
+        lastRefresh = System.currentTimeMillis();
+        Map<String, Segment> current = new HashMap<>();
+        for (Segment segment : segments.values()) {
+            current.put(segment.file.getName(), segment);
+        }
+        NavigableMap<Long, Segment> refreshed = new TreeMap<>();
+        File[] files = dir.listFiles((d, name) -> SEGMENT_NAME.matcher(name).matches());
+        for (File file : files != null ? files : new File[0]) {
+            File indexFile = SegmentIndex.pathFor(file.toPath()).toFile();
+            Segment segment = current.get(file.getName());
+            if (segment == null || !segment.isCurrent(indexFile)) {
+                segment = open(file, indexFile);
+            }
+            if (segment == null) {
+                continue;
+            }
+            // 起始区块相同的分段只保留较长的一个
+            Segment existing = refreshed.get(segment.index.getFirstBlock());
+            if (existing == null || existing.index.getLastBlock() < segment.index.getLastBlock()) {
+                refreshed.put(segment.index.getFirstBlock(), segment);
+            }
+        }
+        segments = Collections.unmodifiableNavigableMap(refreshed);
+    }
+
+    /**
+     * 带有效索引的分段
+     */
+    public List<SegmentFile> indexedSegments() {
+        List<SegmentFile> files = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            files.add(new SegmentFile(segment.file.getName(), segment.index.getFirstBlock(),
+                segment.index.getLastBlock()));
+        }
+        return files;
+    }
+
+    /**
+     * 目录中没有有效索引的分段文件
+     */
+    public List<Path> unindexedSegments() {
+        List<Path> files = segmentFiles();
+        files.removeIf(SegmentIndexer::hasIndex);
+        return files;
+    }
+
+    /**
+     * 目录中所有已完成的分段文件，按文件名排列
+     */
+    public List<Path> segmentFiles() {
+        List<Path> files = new ArrayList<>();
+        File[] all = dir.listFiles((d, name) -> SEGMENT_NAME.matcher(name).matches());
+        for (File file : all != null ? all : new File[0]) {
+            files.add(file.toPath());
+        }
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * 包含该区块的分段，当前分段中没有时按间隔限制重新扫描目录
+     */
+    private Segment locate(long blockNum) {
+        Segment segment = find(segments, blockNum);
+        if (segment == null && System.currentTimeMillis() - lastRefresh >= MIN_REFRESH_INTERVAL_MS) {
+            refresh();
+            segment = find(segments, blockNum);
+        }
+        return segment;
+    }
+
+    private static Segment find(NavigableMap<Long, Segment> segments, long blockNum) {
+        for (Segment segment : candidates(segments, blockNum)) {
+            if (segment.index.find(blockNum) >= 0) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 可能包含该区块的分段：起始区块不大于该区块号，结束区块不小于该区块号，从起始区块最大的开始
+     */
+    private static List<Segment> candidates(NavigableMap<Long, Segment> segments, long blockNum) {
+        Map.Entry<Long, Segment> floor = segments.floorEntry(blockNum);
+        if (floor == null) {
+            return Collections.emptyList();
+        }
+        if (floor.getValue().index.getLastBlock() >= blockNum) {
+            return Collections.singletonList(floor.getValue());
+        }
+        // 分段范围重叠时，更早开始的分段可能覆盖该区块
+        List<Segment> result = new ArrayList<>();
+        for (Segment segment : segments.headMap(floor.getKey(), false).descendingMap().values()) {
+            if (segment.index.getLastBlock() >= blockNum) {
+                result.add(segment);
+            }
+        }
+        return result;
+    }
+
+    private static Segment open(File file, File indexFile) {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try {
+            SegmentIndex index = SegmentIndex.open(indexFile.toPath());
+            if (index.getSegmentBytes() != file.length()) {
+                log.warn("分段 {} 的索引已过期（分段文件已被改写），需要重建索引", file.getName());
+                return null;
+            }
+            return new Segment(file, index, indexFile.lastModified());
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("无法读取分段 {} 的索引: {}", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 一个已建立索引的分段，分区映射在第一次读取时建立
+     */
+    private static final class Segment {
+        private final File file;
+        private final SegmentIndex index;
+        private final long indexModified;
+        private final AtomicReferenceArray<MappedByteBuffer> regions;
+        // 压缩分段：文件头中的字典和最近解压的一块，第一次读取时加载
+        private volatile byte[] dictionary;
+        private volatile InflatedChunk lastChunk;
+
+        private Segment(File file, SegmentIndex index, long indexModified) {
+            this.file = file;
+            this.index = index;
+            this.indexModified = indexModified;
+            this.regions = new AtomicReferenceArray<>((int) ((index.getSegmentBytes() + REGION_SIZE - 1) / REGION_SIZE));
+        }
+
+        private boolean isCurrent(File indexFile) {
+            return indexFile.lastModified() == indexModified && file.length() == index.getSegmentBytes();
+        }
+
+        private ByteBuffer read(int record) throws IOException {
+            if (index.isCompressed()) {
+                return readCompressed(index.offset(record), index.length(record));
+            }
+            return bytes(index.offset(record), index.length(record));
+        }
+
+        private ByteBuffer readCompressed(long offset, int length) throws IOException {
+            int chunk = index.findChunk(offset);
+            InflatedChunk inflated = lastChunk;
+            if (inflated == null || inflated.chunk != chunk) {
+                if (dictionary == null) {
+                    dictionary = SegmentCompression.readHeader(region(0).duplicate()).dictionary;
+                }
+                long fileOffset = index.chunkFileOffset(chunk);
+                long end = chunk + 1 < index.getChunkCount() ? index.chunkFileOffset(chunk + 1) : index.getSegmentBytes();
+                ByteBuffer frame = bytes(fileOffset, (int) (end - fileOffset));
+                int compressedLength = frame.getInt(0);
+                int inflatedLength = frame.getInt(4);
+                byte[] compressed = new byte[compressedLength];
+                frame.get(SegmentCompression.FRAME_HEADER_SIZE, compressed);
+                inflated = new InflatedChunk(chunk, SegmentCompression.inflate(compressed, 0, compressedLength,
+                    inflatedLength, dictionary));
+                lastChunk = inflated;
+            }
+            int position = (int) (offset - index.chunkOffset(chunk));
+            return ByteBuffer.wrap(inflated.data, position, length).slice().asReadOnlyBuffer();
+        }
+
+        /**
+         * 分段文件中的一段字节，位于一个分区内时返回映射的视图，否则复制
+         */
+        private ByteBuffer bytes(long offset, int length) throws IOException {
+            int first = (int) (offset / REGION_SIZE);
+            int last = (int) ((offset + length - 1) / REGION_SIZE);
+            if (first == last) {
+                int position = (int) (offset - first * REGION_SIZE);
+                return region(first).slice(position, length).asReadOnlyBuffer();
+            }
+            ByteBuffer copy = ByteBuffer.allocate(length);
+            for (int i = first; i <= last; i++) {
+                ByteBuffer region = region(i);
+                int position = (int) Math.max(0, offset - i * REGION_SIZE);
+                int size = Math.min(region.capacity() - position, copy.remaining());
+                copy.put(copy.position(), region, position, size);
+                copy.position(copy.position() + size);
+            }
+            return copy.flip().asReadOnlyBuffer();
+        }
+
+        private MappedByteBuffer region(int i) throws IOException {
+            MappedByteBuffer region = regions.get(i);
+            if (region == null) {
+                // 并发首次读取时可能映射多次，只保留先设置的一个
+                long start = i * REGION_SIZE;
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(REGION_SIZE, index.getSegmentBytes() - start));
+                }
+                if (!regions.compareAndSet(i, null, region)) {
+                    region = regions.get(i);
+                }
+            }
+            return region;
+        }
+    }
+
+    private static final class InflatedChunk {
+        private final int chunk;
+        private final byte[] data;
+
+        private InflatedChunk(int chunk, byte[] data) {
+            this.chunk = chunk;
+            this.data = data;
+        }
+    }
+}
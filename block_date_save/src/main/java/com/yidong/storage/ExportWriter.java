@@ -0,0 +1,186 @@
+package com.yidong.storage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.model.BlockHeader;
+import com.yidong.model.ExportFormat;
+import com.yidong.model.VerificationResult;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 按行流式写出验证结果或区块，每次只处理一行，内存占用与导出的行数无关。
+ * <p>
+ * NDJSON：验证结果为 {@link VerificationResult} 的 JSON，区块为节点返回的原始 JSON（含换行时重新序列化为一行）。
+ * CSV：第一行为列名；区块只导出区块头字段。
+ * 一个 ExportWriter 只写一种内容，写完后调用 {@link #finish()}，不关闭底层输出流。
+ */
+public final class ExportWriter {
+
+    static final String RESULT_COLUMNS = "block_num,passed,data_match,hash_match,local_continuous,chain_continuous,"
+        + "local_hash,chain_hash,mismatch_fields,message";
+    static final String BLOCK_COLUMNS = "block_num,id,previous,timestamp,producer,transaction_mroot,action_mroot,"
+        + "schedule_version";
+
+    private static final byte NEWLINE = '\n';
+
+    private final ObjectMapper objectMapper;
+    private final ExportFormat format;
+    private final GZIPOutputStream gzip;
+    private final OutputStream out;
+    private final StringBuilder line = new StringBuilder(256);
+    private long rows;
+
+    private ExportWriter(OutputStream out, ExportFormat format, boolean gzip, ObjectMapper objectMapper,
+                         String columns) throws IOException {
+        this.objectMapper = objectMapper;
+        this.format = format;
+        this.gzip = gzip ? new GZIPOutputStream(out, 64 * 1024) : null;
+        this.out = new BufferedOutputStream(gzip ? this.gzip : out, 64 * 1024);
+        if (format == ExportFormat.CSV) {
+            writeLine(columns);
+        }
+    }
+
+    /**
+     * 导出验证结果
+     * @param gzip 是否以 gzip 压缩写出
+     */
+    public static ExportWriter results(OutputStream out, ExportFormat format, boolean gzip,
+                                       ObjectMapper objectMapper) throws IOException {
+        return new ExportWriter(out, format, gzip, objectMapper, RESULT_COLUMNS);
+    }
+
+    /**
+     * 导出区块
+     * @param gzip 是否以 gzip 压缩写出
+     */
+    public static ExportWriter blocks(OutputStream out, ExportFormat format, boolean gzip,
+                                      ObjectMapper objectMapper) throws IOException {
+        return new ExportWriter(out, format, gzip, objectMapper, BLOCK_COLUMNS);
+    }
+
+    /**
+     * 已写出的行数，不含 CSV 列名
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public void writeResult(VerificationResult result) throws IOException {
+        if (format == ExportFormat.NDJSON) {
+            out.write(objectMapper.writeValueAsBytes(result));
+            out.write(NEWLINE);
+        } else {
+            line.setLength(0);
+            line.append(result.getBlockNum()).append(',')
+                .append(result.isDataMatch() && result.isHashMatch() && result.isLocalContinuous()
+                    && result.isChainContinuous()).append(',')
+                .append(result.isDataMatch()).append(',')
+                .append(result.isHashMatch()).append(',')
+                .append(result.isLocalContinuous()).append(',')
+                .append(result.isChainContinuous()).append(',');
+            appendCsv(result.getLocalHash()).append(',');
+            appendCsv(result.getChainHash()).append(',');
+            appendCsv(result.getMismatchFields() != null ? String.join(";", result.getMismatchFields()) : null).append(',');
+            appendCsv(result.getMessage());
+            writeLine(line);
+        }
+        rows++;
+    }
+
+    /**
+     * 写出一个区块
+     * @param block 节点返回的原始 JSON
+     */
+    public void writeBlock(ByteBuffer block) throws IOException {
+        byte[] json = toArray(block);
+        if (format == ExportFormat.NDJSON) {
+            if (containsLineBreak(json)) {
+                JsonNode tree = objectMapper.readTree(json);
+                json = objectMapper.writeValueAsBytes(tree);
+            }
+            out.write(json);
+            out.write(NEWLINE);
+        } else {
+            BlockHeader header = BlockHeader.parse(objectMapper.getFactory(), json);
+            line.setLength(0);
+            line.append(header.getBlockNum()).append(',');
+            appendCsv(header.getId()).append(',');
+            appendCsv(header.getPrevious()).append(',');
+            appendCsv(header.getTimestamp()).append(',');
+            appendCsv(header.getProducerName()).append(',');
+            appendCsv(header.getTransactionMroot()).append(',');
+            appendCsv(header.getActionMroot()).append(',');
+            line.append(header.getScheduleVersion());
+            writeLine(line);
+        }
+        rows++;
+    }
+
+    /**
+     * 写出缓冲的内容并结束 gzip 流
+     */
+    public void finish() throws IOException {
+        out.flush();
+        if (gzip != null) {
+            gzip.finish();
+            gzip.flush();
+        }
+    }
+
+    private void writeLine(CharSequence text) throws IOException {
+        out.write(text.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(NEWLINE);
+    }
+
+    /**
+     * 按 RFC 4180 追加一个字段：含逗号、引号或换行时加引号，引号写两次
+     */
+    private StringBuilder appendCsv(String value) {
+        if (value == null) {
+            return line;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            return line.append(value);
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static boolean containsLineBreak(byte[] json) {
+        for (byte b : json) {
+            if (b == '\n' || b == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
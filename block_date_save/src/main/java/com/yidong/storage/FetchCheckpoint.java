@@ -0,0 +1,33 @@
+package com.yidong.storage;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 获取任务的检查点，保存在输出目录中，进程重启后据此跳过已写入磁盘的区块。
+ * 跟随模式的检查点没有结束区块，endBlock 不使用
+ */
+@Data
+public class FetchCheckpoint {
+    private long startBlock;
+    private long endBlock;
+    /** 是否为跟随模式的检查点 */
+    private boolean follow;
+    /** 从 startBlock 起连续写入磁盘的最后一个区块号，尚未写入任何区块时为 null */
+    private Long lastWrittenBlock;
+    /** lastWrittenBlock 的区块 id，跟随模式重启后用于检查下一个区块的 previous */
+    private String lastBlockId;
+    private List<SegmentFile> completedSegments = new ArrayList<>();
+
+    /** 正在写入的分段临时文件及其有效内容，没有时 partFile 为 null */
+    private String partFile;
+    private long partFirstBlock;
+    private long partLastBlock;
+    private long partBlocks;
+    /** 分段内容的字节数，压缩分段为解压后的字节数 */
+    private long partBytes;
+    /** 分段文件的字节数，未压缩分段与 partBytes 相同；旧的检查点中为 0 */
+    private long partFileBytes;
+}
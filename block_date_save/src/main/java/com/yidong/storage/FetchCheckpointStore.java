@@ -0,0 +1,159 @@
+package com.yidong.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 检查点文件的读写。检查点命名为 fetch_<起始区块>_<结束区块>.checkpoint.json，跟随模式为 follow.checkpoint.json，
+ * 与区块数据放在同一目录，写入时先写临时文件再原子替换，避免崩溃时留下半个检查点。
+ */
+public class FetchCheckpointStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FetchCheckpointStore.class);
+    private static final Pattern CHECKPOINT_NAME = Pattern.compile("(fetch_\\d+_\\d+|follow)\\.checkpoint\\.json");
+    private static final String FOLLOW_CHECKPOINT = "follow.checkpoint.json";
+
+    private final File dir;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public FetchCheckpointStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 读取指定范围的检查点，不存在时返回 null
+     */
+    public FetchCheckpoint load(long startBlock, long endBlock) {
+        return read(checkpointFile(startBlock, endBlock));
+    }
+
+    /**
+     * 读取跟随模式的检查点，不存在时返回 null
+     */
+    public FetchCheckpoint loadFollow() {
+        return read(new File(dir, FOLLOW_CHECKPOINT));
+    }
+
+    public void save(FetchCheckpoint checkpoint) throws IOException {
+        File target = checkpoint.isFollow()
+            ? new File(dir, FOLLOW_CHECKPOINT)
+            : checkpointFile(checkpoint.getStartBlock(), checkpoint.getEndBlock());
+        File temp = new File(dir, target.getName() + ".tmp");
+        objectMapper.writeValue(temp, checkpoint);
+        Files.move(temp.toPath(), target.toPath(),
+            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 所有检查点中记录的、磁盘上仍然存在的已完成分段，按起始区块号排序
+     */
+    public List<SegmentFile> completedSegments() {
+        List<SegmentFile> segments = new ArrayList<>();
+        File[] files = dir.listFiles((d, name) -> CHECKPOINT_NAME.matcher(name).matches());
+        if (files == null) {
+            return segments;
+        }
+        for (File file : files) {
+            FetchCheckpoint checkpoint = read(file);
+            if (checkpoint == null) {
+                continue;
+            }
+            for (SegmentFile segment : checkpoint.getCompletedSegments()) {
+                if (new File(dir, segment.getFileName()).isFile()) {
+                    segments.add(segment);
+                }
+            }
+        }
+        segments.sort(Comparator.comparingLong(SegmentFile::getFirstBlock));
+        return segments;
+    }
+
+    /**
+     * 分段重命名后、检查点更新前进程退出时，临时文件已不存在，按起始区块号查找已完成的分段文件
+     */
+    public SegmentFile findRenamedSegment(long firstBlock) {
+        Pattern pattern = Pattern.compile("blocks_" + firstBlock + "_(\\d+)\\.json(\\" + SegmentCompression.SUFFIX + ")?");
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return null;
+        }
+        for (File file : files) {
+            Matcher matcher = pattern.matcher(file.getName());
+            if (matcher.matches()) {
+                return new SegmentFile(file.getName(), firstBlock, Long.parseLong(matcher.group(1)));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 检查点中有未完成的分段时让写入器从记录的位置继续写入；分段已重命名但检查点尚未更新时，
+     * 把重命名后的分段记为已完成
+     */
+    public void resume(FetchCheckpoint checkpoint, BlockSegmentWriter writer) throws IOException {
+        String partFile = checkpoint.getPartFile();
+        if (partFile == null) {
+            return;
+        }
+        if (new File(writer.getDir(), partFile).isFile()) {
+            writer.resumeSegment(partFile, checkpoint.getPartFirstBlock(), checkpoint.getPartLastBlock(),
+                checkpoint.getPartBlocks(), checkpoint.getPartBytes(), checkpoint.getPartFileBytes());
+        } else {
+            SegmentFile renamed = findRenamedSegment(checkpoint.getPartFirstBlock());
+            if (renamed != null) {
+                checkpoint.getCompletedSegments().add(renamed);
+            }
+        }
+        checkpoint.setPartFile(null);
+    }
+
+    /**
+     * 按写入器的当前状态更新并保存检查点。写入失败不影响获取，只是重启后需要多获取一些区块
+     */
+    public void update(FetchCheckpoint checkpoint, BlockSegmentWriter writer, Long lastWrittenBlock) {
+        for (SegmentFile segment : writer.getCompletedSegments()) {
+            if (!checkpoint.getCompletedSegments().contains(segment)) {
+                checkpoint.getCompletedSegments().add(segment);
+            }
+        }
+        checkpoint.setLastWrittenBlock(lastWrittenBlock);
+        checkpoint.setPartFile(writer.getPartFileName());
+        checkpoint.setPartFirstBlock(writer.getSegmentFirstBlock());
+        checkpoint.setPartLastBlock(writer.getSegmentLastBlock());
+        checkpoint.setPartBlocks(writer.getSegmentBlocks());
+        checkpoint.setPartBytes(writer.getSegmentBytes());
+        checkpoint.setPartFileBytes(writer.getSegmentFileBytes());
+        try {
+            save(checkpoint);
+        } catch (IOException e) {
+            log.error("保存检查点失败: {}", e.getMessage());
+        }
+    }
+
+    private File checkpointFile(long startBlock, long endBlock) {
+        return new File(dir, String.format("fetch_%d_%d.checkpoint.json", startBlock, endBlock));
+    }
+
+    private FetchCheckpoint read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(file, FetchCheckpoint.class);
+        } catch (IOException e) {
+            log.error("读取检查点文件 {} 失败: {}", file.getName(), e.getMessage());
+            return null;
+        }
+    }
+}
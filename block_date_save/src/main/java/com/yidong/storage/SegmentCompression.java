@@ -0,0 +1,460 @@
+package com.yidong.storage;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 压缩分段文件的格式与压缩参数。
+ * <p>
+ * 压缩分段的内容与未压缩分段相同（{"blocks":[...]}），按块（chunk）分别用 Deflater 压缩，
+ * 每块只包含完整的区块，可以单独解压，按区块号读取时只需解压区块所在的一块。文件格式（大端）：
+ * <pre>
+ * 文件头: 魔数 BDZ1 | 字典压缩后长度 int | 字典长度 int | 压缩后的字典
+ * 每块:   压缩后长度 int | 解压后长度 int | zlib 数据（使用字典时带预置字典）
+ * </pre>
+ * 字典保存在每个文件中，文件可以单独解压；字典为空表示不使用字典。
+ */
+public final class SegmentCompression {
+
+    /** 压缩分段文件名在 .json 之后的后缀 */
+    public static final String SUFFIX = ".dz";
+    public static final int MAGIC = 0x42445a31;
+    /** Deflater 的窗口只有 32KB，更长的字典没有作用 */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    static final int FRAME_HEADER_SIZE = 8;
+    /** 续写压缩分段而当前配置不压缩时使用 */
+    static final SegmentCompression DEFAULT = new SegmentCompression(Deflater.DEFAULT_COMPRESSION, 16 * 1024, null, false);
+
+    private final int level;
+    private final int chunkBytes;
+    private final byte[] dictionary;
+    private final boolean dictionaryFromFirstBlock;
+
+    /**
+     * @param level Deflater 压缩级别 0-9
+     * @param chunkBytes 每块解压后的目标字节数，达到后在区块边界处结束当前块
+     * @param dictionary 预置字典，为 null 时不使用固定字典
+     * @param dictionaryFromFirstBlock 没有固定字典时，是否以分段的第一个区块（最多 32KB）作为该分段的字典
+     */
+    public SegmentCompression(int level, int chunkBytes, byte[] dictionary, boolean dictionaryFromFirstBlock) {
+        this.level = level;
+        this.chunkBytes = Math.max(1, chunkBytes);
+        this.dictionary = dictionary != null ? trimDictionary(dictionary) : null;
+        this.dictionaryFromFirstBlock = dictionaryFromFirstBlock;
+    }
+
+    /**
+     * 按配置创建
+     * @param mode none 或 deflate
+     * @param dictionary 字典文件路径；auto 表示使用每个分段的第一个区块；为空表示不使用字典
+     * @return mode 为 none 时返回 null
+     */
+    public static SegmentCompression of(String mode, int level, int chunkBytes, String dictionary) throws IOException {
+        if (mode == null || mode.isBlank() || mode.equalsIgnoreCase("none")) {
+            return null;
+        }
+        if (!mode.equalsIgnoreCase("deflate")) {
+            throw new IllegalArgumentException("不支持的压缩方式: " + mode);
+        }
+        if (dictionary == null || dictionary.isBlank()) {
+            return new SegmentCompression(level, chunkBytes, null, false);
+        }
+        if (dictionary.equalsIgnoreCase("auto")) {
+            return new SegmentCompression(level, chunkBytes, null, true);
+        }
+        return new SegmentCompression(level, chunkBytes, Files.readAllBytes(Path.of(dictionary)), false);
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getChunkBytes() {
+        return chunkBytes;
+    }
+
+    byte[] getDictionary() {
+        return dictionary;
+    }
+
+    boolean isDictionaryFromFirstBlock() {
+        return dictionaryFromFirstBlock;
+    }
+
+    /**
+     * 字典只有最后 32KB 有效（匹配距离上限），截取末尾部分
+     */
+    static byte[] trimDictionary(byte[] dictionary) {
+        return dictionary.length <= MAX_DICTIONARY_SIZE
+            ? dictionary
+            : Arrays.copyOfRange(dictionary, dictionary.length - MAX_DICTIONARY_SIZE, dictionary.length);
+    }
+
+    /**
+     * 文件开头是否为压缩分段的魔数
+     */
+    public static boolean isCompressed(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // 读满 4 个字节
+            }
+            return !magic.hasRemaining() && magic.flip().getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * 压缩分段的文件头，返回字典和文件头之后第一块的位置
+     */
+    static Header readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 12 || buffer.getInt(buffer.position()) != MAGIC) {
+            throw new IOException("不是压缩分段文件");
+        }
+        int compressedLength = buffer.getInt(buffer.position() + 4);
+        int length = buffer.getInt(buffer.position() + 8);
+        byte[] compressed = new byte[compressedLength];
+        buffer.get(buffer.position() + 12, compressed);
+        byte[] dictionary = length > 0 ? inflate(compressed, 0, compressedLength, length, null) : new byte[0];
+        return new Header(dictionary, 12 + compressedLength);
+    }
+
+    static Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("不是压缩分段文件");
+        }
+        int compressedLength = in.readInt();
+        int length = in.readInt();
+        byte[] compressed = in.readNBytes(compressedLength);
+        if (compressed.length != compressedLength) {
+            throw new IOException("压缩分段文件头不完整");
+        }
+        byte[] dictionary = length > 0 ? inflate(compressed, 0, compressedLength, length, null) : new byte[0];
+        return new Header(dictionary, 12 + compressedLength);
+    }
+
+    static byte[] header(byte[] dictionary) {
+        byte[] compressed = dictionary.length > 0 ? deflate(dictionary, 0, dictionary.length, Deflater.BEST_COMPRESSION, null)
+            : new byte[0];
+        return ByteBuffer.allocate(12 + compressed.length)
+            .putInt(MAGIC).putInt(compressed.length).putInt(dictionary.length).put(compressed).array();
+    }
+
+    /**
+     * 扫描块头，得到每块在文件中的位置和解压后的起始偏移，只读取 8 字节的块头
+     * @param fileBytes 只扫描文件的前这么多字节（例如检查点记录的有效长度）
+     * @return 每块的 {文件偏移, 解压后偏移}，以及之后的解压后总长度
+     */
+    public static Chunks readChunks(Path file, long fileBytes) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long logical = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(12);
+            channel.read(head, 0);
+            head.flip();
+            if (head.remaining() < 12 || head.getInt(0) != MAGIC) {
+                throw new IOException("不是压缩分段文件: " + file.getFileName());
+            }
+            long position = 12 + head.getInt(4);
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+            while (position + FRAME_HEADER_SIZE <= fileBytes) {
+                frame.clear();
+                while (frame.hasRemaining() && channel.read(frame, position + frame.position()) >= 0) {
+                    // 读满块头
+                }
+                int compressedLength = frame.getInt(0);
+                if (position + FRAME_HEADER_SIZE + compressedLength > fileBytes) {
+                    break;
+                }
+                chunks.add(new long[] {position, logical});
+                logical += frame.getInt(4);
+                position += FRAME_HEADER_SIZE + compressedLength;
+            }
+            return new Chunks(chunks, logical, position);
+        }
+    }
+
+    static byte[] deflate(byte[] data, int offset, int length, int level, byte[] dictionary) {
+        Deflater deflater = new Deflater(level);
+        try {
+            if (dictionary != null && dictionary.length > 0) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, length / 4)];
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                size += deflater.deflate(buffer, size, buffer.length - size);
+            }
+            return Arrays.copyOf(buffer, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] data, int offset, int length, int inflatedLength, byte[] dictionary) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, offset, length);
+            byte[] result = new byte[inflatedLength];
+            int size = 0;
+            while (size < inflatedLength) {
+                int n = inflater.inflate(result, size, inflatedLength - size);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null || dictionary.length == 0) {
+                            throw new IOException("压缩块需要字典");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new IOException("压缩块不完整");
+                    }
+                }
+                size += n;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("压缩块数据无效: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 压缩分段的文件头
+     */
+    static final class Header {
+        final byte[] dictionary;
+        /** 文件头的字节数，即第一块的文件偏移 */
+        final int size;
+
+        private Header(byte[] dictionary, int size) {
+            this.dictionary = dictionary;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 压缩分段中的块
+     */
+    public static final class Chunks {
+        private final List<long[]> chunks;
+        private final long logicalBytes;
+        private final long fileBytes;
+
+        private Chunks(List<long[]> chunks, long logicalBytes, long fileBytes) {
+            this.chunks = chunks;
+            this.logicalBytes = logicalBytes;
+            this.fileBytes = fileBytes;
+        }
+
+        /** 每块的 {文件偏移, 解压后偏移} */
+        public List<long[]> getChunks() {
+            return chunks;
+        }
+
+        /** 解压后的总字节数 */
+        public long getLogicalBytes() {
+            return logicalBytes;
+        }
+
+        /** 最后一个完整块之后的文件偏移 */
+        public long getFileBytes() {
+            return fileBytes;
+        }
+    }
+
+    /**
+     * 顺序读取压缩分段，输出解压后的内容，供流式解析使用
+     */
+    public static final class ChunkInputStream extends InputStream {
+        private final DataInputStream in;
+        private final byte[] dictionary;
+        private byte[] chunk = new byte[0];
+        private int position;
+
+        public ChunkInputStream(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            this.dictionary = readHeader(this.in).dictionary;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, offset, n);
+            position += n;
+            return n;
+        }
+
+        private boolean fill() throws IOException {
+            while (position >= chunk.length) {
+                int compressedLength;
+                try {
+                    compressedLength = in.readInt();
+                } catch (EOFException e) {
+                    return false;
+                }
+                int length = in.readInt();
+                byte[] compressed = in.readNBytes(compressedLength);
+                if (compressed.length != compressedLength) {
+                    throw new IOException("压缩分段文件不完整");
+                }
+                chunk = inflate(compressed, 0, compressedLength, length, dictionary);
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * 把写入的内容按块压缩后写入底层输出流。调用 {@link #endChunk()} 结束当前块，
+     * 块内容保存在内存中，结束后才写入文件，因此文件中只有完整的块
+     */
+    static final class ChunkOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final SegmentCompression compression;
+        private byte[] dictionary;
+        private byte[] chunk = new byte[64 * 1024];
+        private int chunkSize;
+        private long fileBytes;
+        private long logicalBytes;
+        private final List<long[]> completedChunks = new ArrayList<>();
+
+        /**
+         * @param out 底层输出流，位于文件头之后（新文件）或最后一个完整块之后（续写）
+         * @param dictionary 续写时使用文件头中的字典；新文件为 null，由 {@link #start} 写入文件头
+         */
+        ChunkOutputStream(OutputStream out, SegmentCompression compression, byte[] dictionary,
+                          long fileBytes, long logicalBytes) {
+            this.out = out;
+            this.compression = compression;
+            this.dictionary = dictionary;
+            this.fileBytes = fileBytes;
+            this.logicalBytes = logicalBytes;
+        }
+
+        /**
+         * 写入新文件的文件头
+         * @param firstBlock 分段的第一个区块，字典取自第一个区块时使用
+         */
+        void start(byte[] firstBlock) throws IOException {
+            if (compression.getDictionary() != null) {
+                dictionary = compression.getDictionary();
+            } else if (compression.isDictionaryFromFirstBlock()) {
+                dictionary = trimDictionary(firstBlock);
+            } else {
+                dictionary = new byte[0];
+            }
+            byte[] header = header(dictionary);
+            out.write(header);
+            fileBytes += header.length;
+        }
+
+        boolean isStarted() {
+            return dictionary != null;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            chunk[chunkSize++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(data, offset, chunk, chunkSize, length);
+            chunkSize += length;
+        }
+
+        int getChunkSize() {
+            return chunkSize;
+        }
+
+        /**
+         * 压缩并写出当前块
+         */
+        void endChunk() throws IOException {
+            if (chunkSize == 0) {
+                return;
+            }
+            byte[] compressed = deflate(chunk, 0, chunkSize, compression.getLevel(), dictionary);
+            completedChunks.add(new long[] {fileBytes, logicalBytes});
+            out.write(ByteBuffer.allocate(FRAME_HEADER_SIZE).putInt(compressed.length).putInt(chunkSize).array());
+            out.write(compressed);
+            fileBytes += FRAME_HEADER_SIZE + compressed.length;
+            logicalBytes += chunkSize;
+            chunkSize = 0;
+        }
+
+        /**
+         * 取出上次调用后完成的块的 {文件偏移, 解压后偏移}
+         */
+        List<long[]> drainCompletedChunks() {
+            List<long[]> chunks = new ArrayList<>(completedChunks);
+            completedChunks.clear();
+            return chunks;
+        }
+
+        /** 已写出的完整块之后的文件字节数 */
+        long getFileBytes() {
+            return fileBytes;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                endChunk();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void ensureCapacity(int length) {
+            if (chunkSize + length > chunk.length) {
+                chunk = Arrays.copyOf(chunk, Math.max(chunk.length * 2, chunkSize + length));
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.yidong.storage;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一个已完成的分段文件及其覆盖的连续区块范围
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SegmentFile {
+    private String fileName;
+    private long firstBlock;
+    private long lastBlock;
+}
@@ -0,0 +1,324 @@
+package com.yidong.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分段文件的偏移索引：与分段文件同名、以 .idx 结尾的旁路文件。
+ * <p>
+ * 格式（大端）：32 字节文件头（魔数 BIDX、版本、记录数、对应分段文件的字节数、块数），
+ * 之后每个区块一条 52 字节的记录（区块号、区块 JSON 在分段内容中的偏移和长度、32 字节区块 id），按区块号递增。
+ * 分段内区块号连续时，第 n 个区块的记录位置可以直接算出；有空缺时退回二分查找。
+ * <p>
+ * 压缩分段（{@link SegmentCompression}）的偏移是解压后内容中的偏移，记录之后是块表：
+ * 每块 16 字节（块在文件中的偏移、块解压后的起始偏移）。未压缩分段的块数为 0。
+ */
+public final class SegmentIndex {
+
+    public static final String SUFFIX = ".idx";
+
+    static final int MAGIC = 0x42494458;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int RECORD_SIZE = 52;
+    static final int ID_SIZE = 32;
+    static final int CHUNK_SIZE = 16;
+
+    private final ByteBuffer records;
+    private final ByteBuffer chunks;
+    private final int count;
+    private final int chunkCount;
+    private final long segmentBytes;
+    private final long firstBlock;
+    private final long lastBlock;
+
+    private SegmentIndex(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("不是区块索引文件");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("不支持的索引版本: " + buffer.getInt(4));
+        }
+        long recordCount = buffer.getLong(8);
+        long chunkTableSize = buffer.getLong(24);
+        if (recordCount <= 0 || chunkTableSize < 0
+                || HEADER_SIZE + recordCount * RECORD_SIZE + chunkTableSize * CHUNK_SIZE != buffer.capacity()) {
+            // 记录数为 0 表示索引未写完
+            throw new IllegalArgumentException("索引文件不完整");
+        }
+        this.count = (int) recordCount;
+        this.chunkCount = (int) chunkTableSize;
+        this.segmentBytes = buffer.getLong(16);
+        int chunksStart = (int) (HEADER_SIZE + recordCount * RECORD_SIZE);
+        this.records = buffer.slice(HEADER_SIZE, chunksStart - HEADER_SIZE);
+        this.chunks = buffer.slice(chunksStart, chunkCount * CHUNK_SIZE);
+        this.firstBlock = blockNum(0);
+        this.lastBlock = blockNum(count - 1);
+    }
+
+    /**
+     * 以只读内存映射打开索引文件
+     */
+    public static SegmentIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new SegmentIndex(buffer);
+        }
+    }
+
+    public static Path pathFor(Path segmentFile) {
+        return segmentFile.resolveSibling(segmentFile.getFileName() + SUFFIX);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * 建立索引时分段文件的字节数，与当前文件大小不同说明分段文件已被改写
+     */
+    public long getSegmentBytes() {
+        return segmentBytes;
+    }
+
+    public long getFirstBlock() {
+        return firstBlock;
+    }
+
+    public long getLastBlock() {
+        return lastBlock;
+    }
+
+    /**
+     * 区块的记录序号，没有该区块时返回 -1
+     */
+    public int find(long blockNum) {
+        if (blockNum < firstBlock || blockNum > lastBlock) {
+            return -1;
+        }
+        long guess = blockNum - firstBlock;
+        if (guess < count && blockNum((int) guess) == blockNum) {
+            return (int) guess;
+        }
+        int low = 0;
+        int high = (int) Math.min(count - 1, guess);
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = blockNum(mid);
+            if (value < blockNum) {
+                low = mid + 1;
+            } else if (value > blockNum) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 第一个区块号不小于 blockNum 的记录序号，没有时返回记录数
+     */
+    public int ceiling(long blockNum) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockNum(mid) < blockNum) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public long blockNum(int record) {
+        return records.getLong(record * RECORD_SIZE);
+    }
+
+    public long offset(int record) {
+        return records.getLong(record * RECORD_SIZE + 8);
+    }
+
+    public int length(int record) {
+        return records.getInt(record * RECORD_SIZE + 16);
+    }
+
+    public byte[] id(int record) {
+        byte[] id = new byte[ID_SIZE];
+        records.get(record * RECORD_SIZE + 20, id);
+        return id;
+    }
+
+    /**
+     * 是否为压缩分段的索引
+     */
+    public boolean isCompressed() {
+        return chunkCount > 0;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    /**
+     * 块在分段文件中的偏移
+     */
+    public long chunkFileOffset(int chunk) {
+        return chunks.getLong(chunk * CHUNK_SIZE);
+    }
+
+    /**
+     * 块解压后的内容在整个分段内容中的起始偏移
+     */
+    public long chunkOffset(int chunk) {
+        return chunks.getLong(chunk * CHUNK_SIZE + 8);
+    }
+
+    /**
+     * 包含分段内容中该偏移的块
+     */
+    public int findChunk(long offset) {
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (chunkOffset(mid) <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 按顺序写入索引记录。写入过程中文件头的记录数为 0，{@link #finish} 后才是完整的索引
+     */
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1024 * RECORD_SIZE).order(ByteOrder.BIG_ENDIAN);
+        private long count;
+        private long lastBlockNum = Long.MIN_VALUE;
+        // 块表在完成时写在记录之后，写入过程中保存在内存中
+        private final List<long[]> chunkTable = new ArrayList<>();
+
+        private Writer(FileChannel channel, long count) {
+            this.channel = channel;
+            this.count = count;
+        }
+
+        /**
+         * 创建新的索引文件，已存在时覆盖
+         */
+        public static Writer create(Path file) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            Writer writer = new Writer(channel, 0);
+            writer.writeHeader(0, 0);
+            return writer;
+        }
+
+        /**
+         * 继续写入未完成的索引文件，保留前 records 条记录，其余截断
+         * @return 文件不存在或记录不足时返回 null
+         */
+        public static Writer resume(Path file, long records) throws IOException {
+            if (!file.toFile().isFile() || file.toFile().length() < HEADER_SIZE + records * RECORD_SIZE) {
+                return null;
+            }
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            channel.truncate(HEADER_SIZE + records * RECORD_SIZE);
+            Writer writer = new Writer(channel, records);
+            if (records > 0) {
+                ByteBuffer last = ByteBuffer.allocate(8);
+                channel.read(last, HEADER_SIZE + (records - 1) * RECORD_SIZE);
+                writer.lastBlockNum = last.flip().getLong();
+            }
+            return writer;
+        }
+
+        /**
+         * 追加一条记录，区块号必须递增
+         * @param id 32 字节区块 id，读取剩余的字节
+         */
+        public void add(long blockNum, long offset, int length, ByteBuffer id) throws IOException {
+            if (blockNum <= lastBlockNum) {
+                throw new IllegalArgumentException("索引中的区块号必须递增: " + lastBlockNum + " -> " + blockNum);
+            }
+            if (id.remaining() != ID_SIZE) {
+                throw new IllegalArgumentException("区块 id 必须是 32 字节");
+            }
+            if (buffer.remaining() < RECORD_SIZE) {
+                flush();
+            }
+            buffer.putLong(blockNum).putLong(offset).putInt(length).put(id.duplicate());
+            lastBlockNum = blockNum;
+            count++;
+        }
+
+        /**
+         * 记录压缩分段的一块，按文件中的顺序添加
+         * @param fileOffset 块在分段文件中的偏移
+         * @param offset 块解压后的起始偏移
+         */
+        public void addChunk(long fileOffset, long offset) {
+            chunkTable.add(new long[] {fileOffset, offset});
+        }
+
+        public void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, channel.size());
+            }
+            buffer.clear();
+        }
+
+        /**
+         * 写入记录数和分段文件字节数并关闭，之后索引可以被读取
+         */
+        public void finish(long segmentBytes) throws IOException {
+            try {
+                flush();
+                for (long[] chunk : chunkTable) {
+                    if (buffer.remaining() < CHUNK_SIZE) {
+                        flush();
+                    }
+                    buffer.putLong(chunk[0]).putLong(chunk[1]);
+                }
+                flush();
+                writeHeader(count, segmentBytes);
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void writeHeader(long records, long segmentBytes) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(records).putLong(segmentBytes)
+                .putLong(records > 0 ? chunkTable.size() : 0).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+}
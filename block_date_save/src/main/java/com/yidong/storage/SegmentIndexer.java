@@ -0,0 +1,131 @@
+package com.yidong.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.model.BlockHeader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 为已有的区块文件（例如建立索引之前获取的 blocks_*.json）生成 {@link SegmentIndex}。
+ * <p>
+ * 用流式解析器扫描文件，每个区块只读取 block_num 和 id，transactions 等字段被跳过，
+ * 区块在文件中的位置取自解析器的字节偏移。区块按区块号递增时边扫描边写索引；
+ * 遇到乱序的文件再扫描一遍，在内存中排序后写入。
+ * 压缩分段边解压边扫描，偏移是解压后内容中的偏移，另外写入块表。
+ */
+public final class SegmentIndexer {
+
+    private SegmentIndexer() {
+    }
+
+    /**
+     * 扫描分段文件并写入旁路索引，已有的索引被替换
+     * @return 索引的区块数
+     */
+    public static int index(Path segmentFile, ObjectMapper objectMapper) throws IOException {
+        long segmentBytes = Files.size(segmentFile);
+        Path indexFile = SegmentIndex.pathFor(segmentFile);
+        Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try {
+            int count = write(segmentFile, objectMapper, tempFile, segmentBytes, false);
+            if (count < 0) {
+                count = write(segmentFile, objectMapper, tempFile, segmentBytes, true);
+            }
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            return count;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * 分段文件是否有与当前内容一致的索引
+     */
+    public static boolean hasIndex(Path segmentFile) {
+        Path indexFile = SegmentIndex.pathFor(segmentFile);
+        if (!Files.isRegularFile(indexFile)) {
+            return false;
+        }
+        try {
+            return SegmentIndex.open(indexFile).getSegmentBytes() == Files.size(segmentFile);
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param sort 是否先读取全部区块再排序
+     * @return 索引的区块数；不排序时遇到乱序的区块返回 -1
+     */
+    private static int write(Path segmentFile, ObjectMapper objectMapper, Path indexFile, long segmentBytes,
+                             boolean sort) throws IOException {
+        try (SegmentIndex.Writer writer = SegmentIndex.Writer.create(indexFile);
+             BlockFileReader<Entry> reader = new BlockFileReader<>(segmentFile, objectMapper, parser -> {
+                 long start = parser.currentTokenLocation().getByteOffset();
+                 BlockHeader header = BlockHeader.parse(parser);
+                 long end = parser.currentLocation().getByteOffset();
+                 return new Entry(header.getBlockNum(), start, (int) (end - start), header.idKey());
+             })) {
+            List<Entry> entries = new ArrayList<>();
+            int count = 0;
+            long last = Long.MIN_VALUE;
+            while (reader.hasNext()) {
+                Entry entry = reader.next();
+                if (sort) {
+                    entries.add(entry);
+                    continue;
+                }
+                if (entry.blockNum < last) {
+                    return -1;
+                }
+                // 文件中重复的区块只保留第一个
+                if (entry.blockNum != last) {
+                    writer.add(entry.blockNum, entry.offset, entry.length, entry.id);
+                    last = entry.blockNum;
+                    count++;
+                }
+            }
+            if (sort) {
+                entries.sort(Comparator.comparingLong(entry -> entry.blockNum));
+                for (Entry entry : entries) {
+                    if (entry.blockNum != last) {
+                        writer.add(entry.blockNum, entry.offset, entry.length, entry.id);
+                        last = entry.blockNum;
+                        count++;
+                    }
+                }
+            }
+            if (count == 0) {
+                throw new IllegalArgumentException("文件中没有区块: " + segmentFile.getFileName());
+            }
+            if (SegmentCompression.isCompressed(segmentFile)) {
+                for (long[] chunk : SegmentCompression.readChunks(segmentFile, segmentBytes).getChunks()) {
+                    writer.addChunk(chunk[0], chunk[1]);
+                }
+            }
+            writer.finish(segmentBytes);
+            return count;
+        }
+    }
+
+    private static final class Entry {
+        private final long blockNum;
+        private final long offset;
+        private final int length;
+        private final ByteBuffer id;
+
+        private Entry(long blockNum, long offset, int length, ByteBuffer id) {
+            this.blockNum = blockNum;
+            this.offset = offset;
+            this.length = length;
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.yidong.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 持久化的验证结果缓存：记录与链上数据逐块比对通过、且当时已不可逆的区块。
+ * 不可逆区块在链上不会再变化，之后的验证中区块头摘要（{@link com.yidong.model.BlockHeader#contentDigest()}）
+ * 与记录相同的区块可以跳过链上比对。
+ * <p>
+ * 每条链一个文件，格式（大端）：16 字节文件头（魔数 VCAC、版本、记录数），之后每条记录 24 字节
+ * （区块号、16 字节摘要），按区块号递增且不重复。文件以只读内存映射打开，
+ * 新记录在验证任务结束时与已有记录合并，写入临时文件后整体替换。
+ */
+public final class VerificationCache {
+
+    public static final String SUFFIX = ".vcache";
+    public static final int DIGEST_SIZE = 16;
+
+    static final int MAGIC = 0x56434143;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 8 + DIGEST_SIZE;
+
+    private final Path file;
+    // 当前的记录，合并后整体替换
+    private volatile ByteBuffer records;
+
+    private VerificationCache(Path file, ByteBuffer records) {
+        this.file = file;
+        this.records = records;
+    }
+
+    /**
+     * 打开缓存文件，文件不存在时为空缓存；文件损坏时抛出 IllegalArgumentException
+     */
+    public static VerificationCache open(Path file) throws IOException {
+        return new VerificationCache(file, Files.isRegularFile(file) ? map(file) : ByteBuffer.allocate(0));
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IllegalArgumentException("不是验证结果缓存文件: " + file.getFileName());
+            }
+            long count = buffer.getLong(8);
+            if (HEADER_SIZE + count * RECORD_SIZE != buffer.capacity()) {
+                throw new IllegalArgumentException("验证结果缓存文件不完整: " + file.getFileName());
+            }
+            return buffer.slice(HEADER_SIZE, (int) (count * RECORD_SIZE));
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int size() {
+        return records.capacity() / RECORD_SIZE;
+    }
+
+    /**
+     * 该区块是否以相同的摘要验证通过过
+     */
+    public boolean contains(long blockNum, byte[] digest) {
+        ByteBuffer current = records;
+        int record = find(current, blockNum);
+        if (record < 0) {
+            return false;
+        }
+        int offset = record * RECORD_SIZE + 8;
+        for (int i = 0; i < DIGEST_SIZE; i++) {
+            if (current.get(offset + i) != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 区块号的记录序号，区块号连续时直接算出位置，否则二分查找
+     */
+    private static int find(ByteBuffer records, long blockNum) {
+        int count = records.capacity() / RECORD_SIZE;
+        if (count == 0) {
+            return -1;
+        }
+        long first = records.getLong(0);
+        long guess = blockNum - first;
+        if (guess >= 0 && guess < count && records.getLong((int) guess * RECORD_SIZE) == blockNum) {
+            return (int) guess;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = records.getLong(mid * RECORD_SIZE);
+            if (value < blockNum) {
+                low = mid + 1;
+            } else if (value > blockNum) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 把新的记录与已有记录合并后写回文件，同一区块以新记录为准
+     * @return 合并后的记录数
+     */
+    public synchronized int merge(Updates updates) throws IOException {
+        if (updates.size == 0) {
+            return size();
+        }
+        int[] order = updates.sortedOrder();
+        ByteBuffer current = records;
+        int currentCount = current.capacity() / RECORD_SIZE;
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        long count = 0;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile), 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(0);
+                byte[] digest = new byte[DIGEST_SIZE];
+                int i = 0;
+                int j = 0;
+                while (i < currentCount || j < order.length) {
+                    long existing = i < currentCount ? current.getLong(i * RECORD_SIZE) : Long.MAX_VALUE;
+                    long updated = j < order.length ? updates.blockNums[order[j]] : Long.MAX_VALUE;
+                    if (updated <= existing) {
+                        out.writeLong(updated);
+                        out.write(updates.digests, order[j] * DIGEST_SIZE, DIGEST_SIZE);
+                        j++;
+                        if (updated == existing) {
+                            i++;
+                        }
+                    } else {
+                        current.get(i * RECORD_SIZE + 8, digest);
+                        out.writeLong(existing);
+                        out.write(digest);
+                        i++;
+                    }
+                    count++;
+                }
+            }
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.allocate(8).putLong(0, count), 8);
+                channel.force(false);
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        records = map(file);
+        return size();
+    }
+
+    /**
+     * 一个验证任务中新验证通过的区块，按任意顺序添加，合并时排序；同一区块保留最后添加的记录
+     */
+    public static final class Updates {
+        private long[] blockNums = new long[256];
+        private byte[] digests = new byte[256 * DIGEST_SIZE];
+        private int size;
+
+        public synchronized void add(long blockNum, byte[] digest) {
+            if (size == blockNums.length) {
+                blockNums = Arrays.copyOf(blockNums, size * 2);
+                digests = Arrays.copyOf(digests, size * 2 * DIGEST_SIZE);
+            }
+            blockNums[size] = blockNum;
+            System.arraycopy(digest, 0, digests, size * DIGEST_SIZE, DIGEST_SIZE);
+            size++;
+        }
+
+        public synchronized int size() {
+            return size;
+        }
+
+        /**
+         * 按区块号排序、去掉重复区块后的记录序号
+         */
+        private synchronized int[] sortedOrder() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            // 稳定排序，同一区块中后添加的排在后面
+            Arrays.sort(order, (a, b) -> Long.compare(blockNums[a], blockNums[b]));
+            int[] unique = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (i + 1 < size && blockNums[order[i + 1]] == blockNums[order[i]]) {
+                    continue;
+                }
+                unique[count++] = order[i];
+            }
+            return Arrays.copyOf(unique, count);
+        }
+    }
+}
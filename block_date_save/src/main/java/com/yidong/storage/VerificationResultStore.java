@@ -0,0 +1,432 @@
+package com.yidong.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.model.VerificationResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * 一个验证任务的结果，按产生的顺序编号（游标即序号）。
+ * <p>
+ * 通过的区块只记录区块号和区块 id：区块号连续、消息相同的通过结果合并为一段，每段只占一条记录，
+ * 段内每个区块的 id（通过时本地哈希与链上哈希相同）按 32 字节依次写入临时文件，内存中只保留段的起始位置，
+ * 查询时再还原为结果对象。未通过的区块，以及哈希不能按这种方式保存的通过结果，保存完整结果；
+ * 内存中的完整结果超过上限后，之后的结果也写入临时文件，内存中只保留文件位置。
+ */
+public class VerificationResultStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerificationResultStore.class);
+    private static final int HASH_SIZE = 32;
+    private static final HexFormat HEX = HexFormat.of();
+    // 区块 id 先攒在缓冲区里再成批写入文件
+    private static final int ID_BUFFER_SIZE = HASH_SIZE * 1024;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int maxFailuresInMemory;
+    private final List<Entry> entries = new ArrayList<>();
+    private int size;
+    private int failedCount;
+    private int failuresInMemory;
+    // 结果是否按区块号递增，递增时按区块号范围查询可以跳过范围外的记录
+    private boolean ordered = true;
+    private long lastBlockNum = Long.MIN_VALUE;
+    private Path spillFile;
+    private FileChannel spillChannel;
+    // 临时文件的逻辑长度，包括缓冲区中尚未写入的区块 id
+    private long spillSize;
+    private ByteBuffer idBuffer;
+
+    /**
+     * @param maxFailuresInMemory 内存中保存的未通过结果数量上限，超出后写入临时文件；小于 0 表示完整结果都保存在内存中
+     */
+    public VerificationResultStore(int maxFailuresInMemory) {
+        this.maxFailuresInMemory = maxFailuresInMemory;
+    }
+
+    public synchronized void add(VerificationResult result) {
+        int index = size++;
+        if (result.getBlockNum() <= lastBlockNum) {
+            ordered = false;
+        }
+        lastBlockNum = result.getBlockNum();
+        boolean passed = isPassed(result);
+        if (passed && isCompactHash(result)) {
+            byte[] hash = result.getLocalHash() != null ? HEX.parseHex(result.getLocalHash()) : null;
+            Entry last = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+            // 只有最后一段可以追加，它的 id 总是位于文件末尾，段内的 id 因此是连续的
+            if (last != null && last.isRun() && last.blockNum + last.count == result.getBlockNum()
+                    && last.message.equals(result.getMessage()) && (last.offset >= 0) == (hash != null)) {
+                last.count++;
+            } else {
+                entries.add(Entry.run(index, result.getBlockNum(), result.getMessage(), hash != null ? spillSize : -1));
+            }
+            if (hash != null) {
+                appendId(hash);
+            }
+            return;
+        }
+        if (!passed) {
+            failedCount++;
+        }
+        Entry entry = Entry.full(index, result.getBlockNum(), passed);
+        if (maxFailuresInMemory < 0 || failuresInMemory < maxFailuresInMemory) {
+            entry.failure = result;
+            failuresInMemory++;
+        } else {
+            entry.offset = spill(result);
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * 结果总数，也是下一个结果的游标
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized int getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized int getPassedCount() {
+        return size - failedCount;
+    }
+
+    /**
+     * 游标之后的结果，不过滤
+     */
+    public List<VerificationResult> resultsAfter(int cursor, int limit) {
+        return query(cursor, limit, false, null, null).getResults();
+    }
+
+    /**
+     * 分页查询
+     * @param cursor 从这个序号开始查找
+     * @param limit 最多返回的数量
+     * @param failuresOnly 只返回未通过的结果
+     * @param fromBlock 区块号下限（包含），为空表示不限
+     * @param toBlock 区块号上限（包含），为空表示不限
+     * @return 结果和下一页的游标；没有更多结果时游标等于当前的结果总数
+     */
+    public synchronized Page query(int cursor, int limit, boolean failuresOnly, Long fromBlock, Long toBlock) {
+        long from = fromBlock != null ? fromBlock : Long.MIN_VALUE;
+        long to = toBlock != null ? toBlock : Long.MAX_VALUE;
+        List<VerificationResult> results = new ArrayList<>();
+        int next = Math.min(Math.max(0, cursor), size);
+        int i = findEntry(next);
+        if (ordered && fromBlock != null) {
+            i = Math.max(i, findEntryByBlock(from));
+        }
+        for (; i < entries.size() && results.size() < limit; i++) {
+            Entry entry = entries.get(i);
+            if (ordered && entry.blockNum > to) {
+                next = size;
+                break;
+            }
+            if (!entry.isRun()) {
+                if (entry.blockNum >= from && entry.blockNum <= to && !(failuresOnly && entry.passed)) {
+                    results.add(readFailure(entry));
+                }
+                next = entry.index + 1;
+                continue;
+            }
+            if (failuresOnly) {
+                next = entry.index + entry.count;
+                continue;
+            }
+            // 段内的区块号连续，直接计算与区块号范围的交集
+            int start = from <= entry.blockNum ? 0 : (int) Math.min(entry.count, from - entry.blockNum);
+            int end = to >= entry.blockNum + entry.count - 1 ? entry.count : (int) Math.max(0, to - entry.blockNum + 1);
+            start = Math.max(start, next - entry.index);
+            int stop = start + Math.max(0, Math.min(end - start, limit - results.size()));
+            for (int k = start; k < stop; ) {
+                int n = Math.min(ID_BUFFER_SIZE / HASH_SIZE, stop - k);
+                byte[] ids = readIds(entry, k, n);
+                for (int j = 0; j < n; j++) {
+                    results.add(passed(entry, k + j, ids, j));
+                }
+                k += n;
+                next = entry.index + k;
+            }
+            if (results.size() < limit) {
+                next = entry.index + entry.count;
+            }
+        }
+        return new Page(results, next);
+    }
+
+    /**
+     * 包含序号 index 的记录位置
+     */
+    private int findEntry(int index) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Entry entry = entries.get(mid);
+            if (entry.index + entry.count <= index) {
+                low = mid + 1;
+            } else if (entry.index > index) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 第一个区块号不小于 blockNum 的记录所在段的位置，只在结果按区块号递增时使用
+     */
+    private int findEntryByBlock(long blockNum) {
+        int low = 0;
+        int high = entries.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Entry entry = entries.get(mid);
+            if (entry.blockNum + entry.count <= blockNum) {
+                low = mid + 1;
+            } else if (entry.blockNum > blockNum) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isPassed(VerificationResult result) {
+        return result.isDataMatch() && result.isHashMatch() && result.isLocalContinuous() && result.isChainContinuous()
+            && result.getMessage() != null
+            && (result.getMismatchFields() == null || result.getMismatchFields().isEmpty())
+            && (result.getFieldDetails() == null || result.getFieldDetails().isEmpty());
+    }
+
+    /**
+     * 通过结果的两个哈希相同（或都为空），且是小写十六进制的 32 字节哈希时，可以只保存一份字节
+     */
+    private static boolean isCompactHash(VerificationResult result) {
+        String hash = result.getLocalHash();
+        if (hash == null) {
+            return result.getChainHash() == null;
+        }
+        if (!hash.equals(result.getChainHash()) || hash.length() != HASH_SIZE * 2) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 还原段内第 k 个区块的通过结果，ids 中第 j 个 id 是它的区块 id
+     */
+    private static VerificationResult passed(Entry run, int k, byte[] ids, int j) {
+        String hash = ids != null ? HEX.formatHex(ids, j * HASH_SIZE, (j + 1) * HASH_SIZE) : null;
+        return VerificationResult.builder()
+            .blockNum(run.blockNum + k)
+            .dataMatch(true)
+            .hashMatch(true)
+            .chainHash(hash)
+            .localHash(hash)
+            .message(run.message)
+            .isLocalContinuous(true)
+            .isChainContinuous(true)
+            .build();
+    }
+
+    private long spill(VerificationResult result) {
+        try {
+            openSpillFile();
+            flushIds();
+            byte[] json = objectMapper.writeValueAsBytes(result);
+            long offset = spillSize;
+            ByteBuffer buffer = ByteBuffer.allocate(4 + json.length);
+            buffer.putInt(json.length).put(json).flip();
+            writeFully(buffer, offset);
+            spillSize += buffer.limit();
+            return offset;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入验证结果失败: " + e.getMessage(), e);
+        }
+    }
+
+    private void appendId(byte[] id) {
+        try {
+            openSpillFile();
+            if (!idBuffer.hasRemaining()) {
+                flushIds();
+            }
+            idBuffer.put(id);
+            spillSize += HASH_SIZE;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入验证结果失败: " + e.getMessage(), e);
+        }
+    }
+
+    private void openSpillFile() throws IOException {
+        if (spillChannel != null) {
+            return;
+        }
+        spillFile = Files.createTempFile("verify-results-", ".bin");
+        spillFile.toFile().deleteOnExit();
+        spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        idBuffer = ByteBuffer.allocate(ID_BUFFER_SIZE);
+        logger.info("验证结果写入临时文件 {}", spillFile);
+    }
+
+    /**
+     * 把缓冲区中的区块 id 写入文件末尾
+     */
+    private void flushIds() throws IOException {
+        if (idBuffer == null || idBuffer.position() == 0) {
+            return;
+        }
+        idBuffer.flip();
+        writeFully(idBuffer, spillSize - idBuffer.limit());
+        idBuffer.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            spillChannel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * 段内从第 k 个区块开始的 n 个区块 id，段内的结果没有哈希时返回 null
+     */
+    private byte[] readIds(Entry run, int k, int n) {
+        if (run.offset < 0) {
+            return null;
+        }
+        try {
+            flushIds();
+            ByteBuffer ids = ByteBuffer.allocate(n * HASH_SIZE);
+            readFully(ids, run.offset + (long) k * HASH_SIZE);
+            return ids.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取验证结果失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 临时文件的长度（包括尚未写入的缓冲区），用于检查结果是否写入了文件
+     */
+    synchronized long getSpillSize() {
+        return spillSize;
+    }
+
+    private VerificationResult readFailure(Entry entry) {
+        if (entry.failure != null) {
+            return entry.failure;
+        }
+        try {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(length, entry.offset);
+            ByteBuffer json = ByteBuffer.allocate(length.flip().getInt());
+            readFully(json, entry.offset + 4);
+            return objectMapper.readValue(json.array(), VerificationResult.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取验证结果失败: " + e.getMessage(), e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (spillChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("验证结果文件不完整");
+            }
+        }
+    }
+
+    /**
+     * 删除临时文件，之后不能再查询
+     */
+    @Override
+    public synchronized void close() {
+        if (spillChannel == null) {
+            return;
+        }
+        try {
+            spillChannel.close();
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            logger.warn("删除验证结果文件 {} 失败: {}", spillFile, e.getMessage());
+        }
+        spillChannel = null;
+    }
+
+    /**
+     * 一页查询结果
+     */
+    public static final class Page {
+        private final List<VerificationResult> results;
+        private final int nextCursor;
+
+        public Page(List<VerificationResult> results, int nextCursor) {
+            this.results = results;
+            this.nextCursor = nextCursor;
+        }
+
+        public List<VerificationResult> getResults() {
+            return results;
+        }
+
+        public int getNextCursor() {
+            return nextCursor;
+        }
+    }
+
+    /**
+     * 一段连续通过的区块，或一个保存完整结果的区块（未通过，或哈希不能按段保存的通过结果）
+     */
+    private static final class Entry {
+        private final int index;
+        private final long blockNum;
+        private final String message;
+        private final boolean passed;
+        private int count = 1;
+        private VerificationResult failure;
+        // 未通过的结果在临时文件中的位置，或段内第一个区块 id 的位置；段内的结果没有哈希时为 -1
+        private long offset = -1;
+
+        private Entry(int index, long blockNum, String message, boolean passed) {
+            this.index = index;
+            this.blockNum = blockNum;
+            this.message = message;
+            this.passed = passed;
+        }
+
+        static Entry run(int index, long blockNum, String message, long idOffset) {
+            Entry entry = new Entry(index, blockNum, message, true);
+            entry.offset = idOffset;
+            return entry;
+        }
+
+        static Entry full(int index, long blockNum, boolean passed) {
+            return new Entry(index, blockNum, null, passed);
+        }
+
+        boolean isRun() {
+            return message != null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.yidong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试共用的样本区块：block_data 中从 mainnet 获取的区块 9852-9900。
+ * 每次调用都重新读取文件，测试可以直接修改返回的区块
+ */
+public final class SampleBlocks {
+
+    /** 未修改的样本文件 */
+    public static final Path FILE = Paths.get("../block_data/blocks_9852_9900.json");
+    /** 修改过的样本文件，见 block_data/备注 */
+    public static final Path TAMPERED = Paths.get("../block_data/9852_9900 test.json");
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private SampleBlocks() {
+    }
+
+    /**
+     * 样本文件中的全部区块
+     */
+    public static List<ObjectNode> blocks() {
+        return read(FILE);
+    }
+
+    /**
+     * 修改过的样本文件中的全部区块
+     */
+    public static List<ObjectNode> tamperedBlocks() {
+        return read(TAMPERED);
+    }
+
+    /**
+     * 样本文件中的第 index 个区块
+     */
+    public static ObjectNode block(int index) {
+        return blocks().get(index);
+    }
+
+    private static List<ObjectNode> read(Path file) {
+        List<ObjectNode> blocks = new ArrayList<>();
+        try {
+            OBJECT_MAPPER.readTree(file.toFile()).get("blocks").forEach(block -> blocks.add((ObjectNode) block));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return blocks;
+    }
+}
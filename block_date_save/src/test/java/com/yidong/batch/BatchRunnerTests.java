@@ -0,0 +1,31 @@
+package com.yidong.batch;
+
+import com.yidong.SampleBlocks;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchRunnerTests {
+
+    private static final String SAMPLE = SampleBlocks.FILE.toString();
+
+    @Test
+    void recognizesBatchCommands() {
+        assertTrue(BatchRunner.isBatchCommand(new String[] {"verify", "--file=" + SAMPLE}));
+        assertTrue(BatchRunner.isBatchCommand(new String[] {"fetch"}));
+        assertFalse(BatchRunner.isBatchCommand(new String[] {"--server.port=8081"}));
+        assertFalse(BatchRunner.isBatchCommand(new String[0]));
+    }
+
+    @Test
+    void rejectsInvalidArgumentsBeforeStarting() {
+        assertEquals(BatchRunner.EXIT_USAGE, BatchRunner.run(new String[] {"fetch", "--from=1", "--to=2"}));
+        assertEquals(BatchRunner.EXIT_USAGE, BatchRunner.run(new String[] {"fetch", "--apiUrl=http://node", "--from=5", "--to=2"}));
+        assertEquals(BatchRunner.EXIT_USAGE, BatchRunner.run(new String[] {"verify", "--file=missing.json", "--mode=offline"}));
+        assertEquals(BatchRunner.EXIT_USAGE, BatchRunner.run(new String[] {"verify", "--file=" + SAMPLE}));
+        assertEquals(BatchRunner.EXIT_USAGE,
+            BatchRunner.run(new String[] {"verify", "--file=" + SAMPLE, "--mode=offline", "--export=results.xlsx"}));
+    }
+}
@@ -0,0 +1,109 @@
+package com.yidong.chain;
+
+import com.yidong.chain.AdaptiveConcurrencyLimiter.Outcome;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTests {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static AdaptiveConcurrencyLimiter limiter() {
+        return new AdaptiveConcurrencyLimiter(8, 1, 16, 0.5, 3, 0);
+    }
+
+    @Test
+    void backsOffOncePerCooldownAndRecoversAdditively() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        for (int i = 0; i < 8; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+
+        // 同一时刻的多个过载只降低一次
+        limiter.release(LATENCY, Outcome.OVERLOAD);
+        limiter.release(LATENCY, Outcome.OVERLOAD);
+        assertEquals(4, limiter.getLimit());
+        assertEquals(6, limiter.getInFlight());
+        assertFalse(limiter.tryAcquire());
+
+        // 与负载无关的失败不调整上限
+        limiter.release(LATENCY, Outcome.IGNORE);
+        assertEquals(4, limiter.getLimit());
+
+        // 每个成功的请求增加 1/limit，约每轮增加 1
+        for (int i = 0; i < 5; i++) {
+            limiter.release(LATENCY, Outcome.SUCCESS);
+        }
+        assertEquals(0, limiter.getInFlight());
+        double afterRound = limiter.getLimit();
+        assertTrue(afterRound > 5 && afterRound < 6, "limit " + afterRound);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(LATENCY, Outcome.SUCCESS);
+        }
+        assertEquals(16, limiter.getLimit());
+    }
+
+    @Test
+    void backsOffOnLatencySpike() {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        assertTrue(limiter.tryAcquire());
+        limiter.release(LATENCY, Outcome.SUCCESS);
+        double limit = limiter.getLimit();
+        assertTrue(limiter.tryAcquire());
+        limiter.release(LATENCY * 10, Outcome.SUCCESS);
+        assertEquals(Math.max(1, limit * 0.5), limiter.getLimit());
+    }
+
+    @Test
+    void pauseStopsRequestsUntilItExpires() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter();
+        limiter.pause(200);
+        assertEquals(4, limiter.getLimit());
+        assertFalse(limiter.tryAcquire());
+        long start = System.nanoTime();
+        limiter.acquire();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        limiter.release(LATENCY, Outcome.SUCCESS);
+    }
+
+    @Test
+    void queuedAsyncWaitersGetPermitsInOrderAndCancelledOnesAreSkipped() throws Exception {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try {
+            AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 2, 0.5, 3, 0);
+            assertTrue(limiter.acquireAsync(timer).isDone());
+            assertTrue(limiter.acquireAsync(timer).isDone());
+            CompletableFuture<Void> cancelled = limiter.acquireAsync(timer);
+            CompletableFuture<Void> waiting = limiter.acquireAsync(timer);
+            assertFalse(cancelled.isDone());
+            assertFalse(waiting.isDone());
+
+            cancelled.cancel(false);
+            limiter.release(LATENCY, Outcome.SUCCESS);
+            assertTrue(waiting.isDone() && !waiting.isCompletedExceptionally());
+            assertEquals(2, limiter.getInFlight());
+
+            // 暂停期间排队，暂停结束后由 timer 分配许可
+            limiter.release(LATENCY, Outcome.SUCCESS);
+            limiter.release(LATENCY, Outcome.SUCCESS);
+            limiter.pause(50);
+            CompletableFuture<Void> afterPause = limiter.acquireAsync(timer);
+            assertFalse(afterPause.isDone());
+            afterPause.get(5, TimeUnit.SECONDS);
+            assertEquals(1, limiter.getInFlight());
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+}
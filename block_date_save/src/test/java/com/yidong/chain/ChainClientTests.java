@@ -0,0 +1,276 @@
+package com.yidong.chain;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.yidong.model.ChainEndpointStats;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChainClientTests {
+
+    private static final long TIMEOUT_MS = 10_000;
+    private static final byte[] BLOCK = "{\"block_num\":1}".getBytes(StandardCharsets.UTF_8);
+    private static final Map<String, Object> REQUEST = Map.of("block_num_or_id", 1);
+
+    /**
+     * 与 application.properties 相同的限流配置，剔除的冷却时间缩短到 300 毫秒
+     */
+    private static ChainClient client(int maxConnections, double hedgePercentile) {
+        ChainClient client = new ChainClient(1000, 10_000, maxConnections, false);
+        ReflectionTestUtils.setField(client, "limiterInitialLimit", 8.0);
+        ReflectionTestUtils.setField(client, "limiterMinLimit", 1.0);
+        ReflectionTestUtils.setField(client, "limiterMaxLimit", 64.0);
+        ReflectionTestUtils.setField(client, "limiterBackoffRatio", 0.5);
+        ReflectionTestUtils.setField(client, "limiterLatencySpikeFactor", 3.0);
+        ReflectionTestUtils.setField(client, "limiterMaxRequestsPerSecond", 0.0);
+        ReflectionTestUtils.setField(client, "ejectAfterFailures", 3);
+        ReflectionTestUtils.setField(client, "ejectCooldownMs", 300L);
+        ReflectionTestUtils.setField(client, "hedgePercentile", hedgePercentile);
+        ReflectionTestUtils.setField(client, "hedgeMinDelayMs", 20L);
+        return client;
+    }
+
+    @Test
+    void sendsFewerRequestsToSlowEndpoint() throws Exception {
+        ChainClient client = client(64, 0);
+        try (Node slow = new Node(); Node fast = new Node()) {
+            slow.delayMs = 100;
+            List<String> urls = List.of(slow.url(), fast.url());
+            ExecutorService callers = Executors.newFixedThreadPool(4);
+            try {
+                List<CompletableFuture<Void>> done = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    done.add(CompletableFuture.runAsync(() -> {
+                        for (int i = 0; i < 25; i++) {
+                            assertArrayEquals(BLOCK, client.postAsync(urls, REQUEST).join());
+                        }
+                    }, callers));
+                }
+                CompletableFuture.allOf(done.toArray(new CompletableFuture[0])).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } finally {
+                callers.shutdownNow();
+            }
+            assertEquals(100, slow.requests.get() + fast.requests.get());
+            assertTrue(slow.requests.get() * 4 < fast.requests.get(),
+                "slow " + slow.requests.get() + ", fast " + fast.requests.get());
+        }
+    }
+
+    @Test
+    void ejectsFailingEndpointAndReadmitsItAfterCooldown() throws Exception {
+        ChainClient client = client(64, 0);
+        try (Node failing = new Node(); Node healthy = new Node()) {
+            failing.status = 500;
+            healthy.delayMs = 50;
+            List<String> urls = List.of(failing.url(), healthy.url());
+            for (int i = 0; i < 3; i++) {
+                CompletableFuture<byte[]> call = client.postAsync(failing.url(), REQUEST);
+                assertThrows(Exception.class, call::join);
+            }
+            assertFalse(stats(client, failing.url()).isAvailable());
+            assertEquals(1, stats(client, failing.url()).getEjections());
+
+            // 冷却期间不再选择被剔除的节点
+            for (int i = 0; i < 3; i++) {
+                assertArrayEquals(BLOCK, client.postAsync(urls, REQUEST).join());
+            }
+            assertEquals(3, failing.requests.get());
+            assertEquals(healthy.url(), client.selectEndpoint(urls, null));
+
+            // 冷却结束后重新参与选择，成功后恢复正常
+            failing.status = 200;
+            Thread.sleep(350);
+            assertTrue(stats(client, failing.url()).isAvailable());
+            List<CompletableFuture<byte[]>> calls = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                calls.add(client.postAsync(urls, REQUEST));
+            }
+            for (CompletableFuture<byte[]> call : calls) {
+                assertArrayEquals(BLOCK, call.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            }
+            assertTrue(failing.requests.get() > 3);
+            assertEquals(1, stats(client, failing.url()).getEjections());
+        }
+    }
+
+    @Test
+    void hedgesSlowRequestAndCancelsTheLoser() throws Exception {
+        ChainClient client = client(64, 0.5);
+        try (Node primary = new Node(); Node backup = new Node()) {
+            List<String> urls = List.of(primary.url(), backup.url());
+            // 积累延迟样本：primary 约 1 毫秒，backup 约 30 毫秒，之后 primary 被选为首选节点
+            backup.delayMs = 30;
+            for (int i = 0; i < 10; i++) {
+                client.postAsync(primary.url(), REQUEST).join();
+                client.postAsync(backup.url(), REQUEST).join();
+            }
+            assertEquals(primary.url(), client.selectEndpoint(urls, null));
+            long primaryCalls = stats(client, primary.url()).getTotalCalls();
+
+            primary.delayMs = 5000;
+            backup.delayMs = 0;
+            long start = System.nanoTime();
+            assertArrayEquals(BLOCK, client.postAsync(urls, REQUEST).get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(elapsedMs >= 20 && elapsedMs < 2000, "elapsed " + elapsedMs);
+            assertEquals(1, client.getHedgedCalls());
+            assertEquals(11, primary.requests.get());
+            assertEquals(11, backup.requests.get());
+
+            // 落后的请求被取消：不再占用节点和连接，也不计入节点的调用和失败
+            await(() -> client.getInFlightCalls() == 0 && stats(client, primary.url()).getInFlightCalls() == 0);
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+            assertEquals(primaryCalls, stats(client, primary.url()).getTotalCalls());
+            assertEquals(0, stats(client, primary.url()).getFailedCalls());
+        }
+    }
+
+    @Test
+    void keepsInFlightRequestsWithinMaxConnections() throws Exception {
+        ChainClient client = client(2, 0);
+        try (Node node = new Node()) {
+            node.delayMs = 50;
+            List<CompletableFuture<byte[]>> calls = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                calls.add(client.postAsync(node.url(), REQUEST));
+            }
+            for (CompletableFuture<byte[]> call : calls) {
+                assertArrayEquals(BLOCK, call.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            }
+            assertEquals(10, node.requests.get());
+            assertEquals(2, node.maxInFlight.get());
+            assertEquals(0, client.getInFlightCalls());
+        }
+    }
+
+    @Test
+    void cancellingQueuedCallReleasesItsPermit() throws Exception {
+        ChainClient client = client(1, 0);
+        try (Node node = new Node()) {
+            node.delayMs = 200;
+            CompletableFuture<byte[]> running = client.postAsync(node.url(), REQUEST);
+            CompletableFuture<byte[]> queued = client.postAsync(node.url(), REQUEST);
+            await(() -> node.requests.get() == 1);
+            assertTrue(queued.cancel(true));
+
+            // 只有一个连接许可：被取消的调用没有归还许可时，之后的调用会一直排队
+            node.delayMs = 0;
+            CompletableFuture<byte[]> next = client.postAsync(node.url(), REQUEST);
+            assertArrayEquals(BLOCK, running.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertArrayEquals(BLOCK, next.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            assertArrayEquals(BLOCK, client.post(node.url(), REQUEST));
+            assertEquals(3, node.requests.get());
+            assertEquals(0, client.getInFlightCalls());
+            assertEquals(0, stats(client, node.url()).getInFlightCalls());
+        }
+    }
+
+    @Test
+    void decodesGzipResponses() throws Exception {
+        ChainClient client = client(2, 0);
+        try (Node node = new Node()) {
+            node.gzip = true;
+            assertArrayEquals(BLOCK, client.post(node.url(), REQUEST));
+            assertArrayEquals(BLOCK, client.postAsync(node.url(), REQUEST).get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private static ChainEndpointStats stats(ChainClient client, String url) {
+        return client.getStats().getEndpoints().stream()
+            .filter(endpoint -> endpoint.getUrl().equals(url))
+            .findFirst()
+            .orElseThrow();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 测试用的节点：按设定的延迟和状态码返回同一个区块（可选 gzip 压缩），并统计收到的请求和同时处理的请求数
+     */
+    private static final class Node implements Closeable {
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newCachedThreadPool();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private volatile long delayMs;
+        private volatile int status = 200;
+        private volatile boolean gzip;
+
+        Node() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/v1/chain/get_block", exchange -> {
+                requests.incrementAndGet();
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    exchange.getRequestBody().readAllBytes();
+                    Thread.sleep(delayMs);
+                    respond(exchange, status, status == 200 ? BLOCK : "{\"error\":\"busy\"}".getBytes(StandardCharsets.UTF_8),
+                        gzip);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    inFlight.decrementAndGet();
+                    exchange.close();
+                }
+            });
+            server.setExecutor(executor);
+            server.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chain/get_block";
+        }
+
+        private static void respond(HttpExchange exchange, int status, byte[] body, boolean gzip) throws IOException {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (gzip) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                    out.write(body);
+                }
+                body = compressed.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
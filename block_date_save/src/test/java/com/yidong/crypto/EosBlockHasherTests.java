@@ -0,0 +1,51 @@
+package com.yidong.crypto;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.yidong.SampleBlocks;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EosBlockHasherTests {
+
+    @Test
+    void recomputesIdAndMrootOfSampleBlocks() throws Exception {
+        List<? extends JsonNode> blocks = SampleBlocks.blocks();
+        assertEquals(49, blocks.size());
+        for (JsonNode block : blocks) {
+            assertEquals(block.get("id").asText(), EosBlockHasher.toHex(EosBlockHasher.computeBlockId(block)));
+            assertEquals(block.get("transaction_mroot").asText(),
+                EosBlockHasher.toHex(EosBlockHasher.computeTransactionMroot(block.get("transactions"))));
+        }
+    }
+
+    @Test
+    void detectsTamperedId() throws Exception {
+        // 备注：9852 修改了区块哈希，9860 修改了 previous
+        for (JsonNode block : SampleBlocks.tamperedBlocks()) {
+            String computed = EosBlockHasher.toHex(EosBlockHasher.computeBlockId(block));
+            long blockNum = block.get("block_num").asLong();
+            if (blockNum == 9852 || blockNum == 9860) {
+                assertNotEquals(block.get("id").asText(), computed);
+            } else {
+                assertEquals(block.get("id").asText(), computed);
+            }
+        }
+    }
+
+    @Test
+    void encodesOnlyNormalizedNames() {
+        assertEquals("eosio", EosBlockHasher.decodeName(EosBlockHasher.encodeName("eosio")));
+        assertEquals("eosio.token", EosBlockHasher.decodeName(EosBlockHasher.encodeName("eosio.token")));
+        assertEquals("aaaaaaaaaaaaj", EosBlockHasher.decodeName(EosBlockHasher.encodeName("aaaaaaaaaaaaj")));
+        // 不同的文本不能编码为同一个值
+        assertThrows(IllegalArgumentException.class, () -> EosBlockHasher.encodeName("eosio."));
+        assertThrows(IllegalArgumentException.class, () -> EosBlockHasher.encodeName("aaaaaaaaaaaaak"));
+        assertThrows(IllegalArgumentException.class, () -> EosBlockHasher.encodeName("aaaaaaaaaaaaz"));
+        assertThrows(IllegalArgumentException.class, () -> EosBlockHasher.encodeName("EOSIO"));
+    }
+}
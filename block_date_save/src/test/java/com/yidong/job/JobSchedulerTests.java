@@ -0,0 +1,140 @@
+package com.yidong.job;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobSchedulerTests {
+
+    private static final long TIMEOUT_MS = 10_000;
+
+    @Test
+    void pauseStopsDispatchingWorkUnitsUntilResumed() throws Exception {
+        JobScheduler scheduler = new JobScheduler(1, 1, 10);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicInteger secondRuns = new AtomicInteger();
+        TestWork work = new TestWork(job -> {
+            job.submit(() -> {
+                firstStarted.countDown();
+                gate.await();
+                return null;
+            });
+            job.submit(secondRuns::incrementAndGet).get();
+            while (true) {
+                job.checkpoint();
+                Thread.sleep(10);
+            }
+        });
+        Job job = scheduler.submit(JobType.FETCH, "pause", work);
+
+        assertTrue(firstStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertTrue(scheduler.pause(job.getId()));
+        assertEquals(JobStatus.PAUSED, job.getStatus());
+        // 暂停时正在执行的工作单元照常完成，排队的工作单元不再派发
+        gate.countDown();
+        Thread.sleep(200);
+        assertEquals(0, secondRuns.get());
+
+        assertTrue(scheduler.resume(job.getId()));
+        assertEquals(JobStatus.RUNNING, job.getStatus());
+        await(() -> secondRuns.get() == 1);
+
+        assertTrue(scheduler.cancel(job.getId()));
+        assertTrue(work.finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(JobStatus.CANCELLED, job.getStatus());
+        assertFalse(scheduler.cancel(job.getId()));
+        assertFalse(scheduler.pause(job.getId()));
+        assertFalse(scheduler.resume(job.getId()));
+    }
+
+    @Test
+    void cancelDropsQueuedWorkUnitsAndFinishesQueuedJobsImmediately() throws Exception {
+        JobScheduler scheduler = new JobScheduler(1, 1, 10);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        AtomicBoolean secondRan = new AtomicBoolean();
+        Future<?>[] second = new Future<?>[1];
+        TestWork running = new TestWork(job -> {
+            job.submit(() -> {
+                firstStarted.countDown();
+                gate.await();
+                return null;
+            });
+            second[0] = job.submit(() -> secondRan.getAndSet(true));
+            while (true) {
+                job.checkpoint();
+                Thread.sleep(10);
+            }
+        });
+        Job first = scheduler.submit(JobType.VERIFY, "running", running);
+        assertTrue(firstStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        // 同时只能运行一个任务，第二个任务在排队中被取消
+        AtomicBoolean queuedRan = new AtomicBoolean();
+        TestWork queued = new TestWork(job -> queuedRan.set(true));
+        Job waiting = scheduler.submit(JobType.VERIFY, "queued", queued);
+        assertEquals(JobStatus.QUEUED, waiting.getStatus());
+        assertTrue(scheduler.cancel(waiting.getId()));
+        assertEquals(JobStatus.CANCELLED, waiting.getStatus());
+        assertEquals(JobStatus.RUNNING, first.getStatus());
+
+        await(() -> second[0] != null);
+        assertTrue(scheduler.cancel(first.getId()));
+        assertTrue(second[0].isCancelled());
+        gate.countDown();
+        assertTrue(running.finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(JobStatus.CANCELLED, first.getStatus());
+
+        // 排队中取消的任务不会执行，但仍会调用 onFinished 释放资源
+        assertTrue(queued.finished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertFalse(queuedRan.get());
+        assertFalse(secondRan.get());
+        assertEquals(JobStatus.CANCELLED, waiting.getStatus());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Body {
+        void run(Job job) throws Exception;
+    }
+
+    private static final class TestWork implements JobWork {
+        private final Body body;
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        TestWork(Body body) {
+            this.body = body;
+        }
+
+        @Override
+        public void run(Job job) throws Exception {
+            body.run(job);
+        }
+
+        @Override
+        public Object getProgress() {
+            return null;
+        }
+
+        @Override
+        public void onFinished() {
+            finished.countDown();
+        }
+    }
+}
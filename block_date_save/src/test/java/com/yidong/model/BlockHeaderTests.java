@@ -0,0 +1,102 @@
+package com.yidong.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yidong.SampleBlocks;
+import com.yidong.crypto.EosBlockHasher;
+import com.yidong.service.BlockComparator;
+import com.yidong.storage.BlockFileReader;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockHeaderTests {
+
+    @Test
+    void headerMatchesTreeFields() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try (BlockFileReader<BlockHeader> reader = BlockFileReader.headers(SampleBlocks.FILE, objectMapper)) {
+            BlockHeader previous = null;
+            for (JsonNode block : SampleBlocks.blocks()) {
+                BlockHeader header = reader.next();
+                assertEquals(block.get("block_num").asLong(), header.getBlockNum());
+                assertEquals(block.get("id").asText(), header.getId());
+                assertEquals(block.get("previous").asText(), header.getPrevious());
+                assertEquals(block.get("transaction_mroot").asText(), header.getTransactionMroot());
+                assertEquals(block.get("producer").asText(), header.getProducerName());
+                assertTrue(block.get("timestamp").asText().startsWith(header.getTimestamp().substring(0, 19)));
+                if (previous != null) {
+                    assertTrue(header.linksTo(previous));
+                    assertEquals(header.previousKey(), previous.idKey());
+                }
+                previous = header;
+            }
+            assertFalse(reader.hasNext());
+        }
+    }
+
+    @Test
+    void timestampsAreComparedAsInstants() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        String json = "{\"block_num\":1,\"producer\":\"eosio\",\"id\":\"%s\",\"previous\":\"%s\",\"timestamp\":\"%s\"}";
+        String zero = "0".repeat(64);
+        BlockHeader withMillis = BlockHeader.from(objectMapper.readTree(
+            String.format(json, zero, zero, "2018-06-09T12:03:14.000")));
+        BlockHeader withoutMillis = BlockHeader.from(objectMapper.readTree(
+            String.format(json, zero, zero, "2018-06-09T12:03:14")));
+        assertEquals(withMillis.getTimestampMillis(), withoutMillis.getTimestampMillis());
+        assertEquals(1528545794000L, withMillis.getTimestampMillis());
+        assertTrue(withMillis.isPreviousZero());
+        assertEquals("eosio", withMillis.getProducerName());
+    }
+
+    @Test
+    void digestChangesWithComparedFields() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode block = SampleBlocks.block(0);
+        byte[] digest = BlockHeader.from(block).contentDigest();
+        // 格式化方式和不参与比较的字段不影响摘要
+        block.remove("transactions");
+        assertArrayEquals(digest, BlockHeader.parse(objectMapper.getFactory(),
+            objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(block)).contentDigest());
+        block.put("schedule_version", block.get("schedule_version").asLong() + 1);
+        assertFalse(Arrays.equals(digest, BlockHeader.from(block).contentDigest()));
+    }
+
+    @Test
+    void nonCanonicalFieldsAreReportedAsMismatches() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectNode block = SampleBlocks.block(0);
+        BlockHeader chain = BlockHeader.from(block);
+        String id = block.get("id").asText();
+        block.put("id", id.toUpperCase());
+        block.put("previous", "xyz");
+        block.put("producer", block.get("producer").asText() + ".");
+        block.put("timestamp", "2018-06-31T12:00:00.000");
+
+        // 解析不失败，非规范字段保留原文，与链上的规范值不相等
+        BlockHeader local = BlockHeader.from(block);
+        assertFalse(local.isCanonical());
+        assertEquals(id.toUpperCase(), local.getId());
+        assertEquals("xyz", local.getPrevious());
+        assertEquals("2018-06-31T12:00:00.000", local.getTimestamp());
+        assertFalse(local.idEquals(chain));
+        assertFalse(local.idEquals(EosBlockHasher.fromHex(id)));
+        assertEquals(List.of("timestamp", "producer", "previous"), BlockComparator.mismatchFields(local, chain));
+        assertFalse(BlockComparator.compareBlockData(local, chain));
+        assertEquals("xyz", BlockComparator.fieldValue(local, "previous"));
+        assertFalse(Arrays.equals(chain.contentDigest(), local.contentDigest()));
+
+        // 原文相同的非规范字段相等
+        BlockHeader same = BlockHeader.from(block);
+        assertTrue(BlockComparator.compareBlockData(local, same));
+        assertTrue(local.idEquals(same));
+    }
+}
@@ -0,0 +1,143 @@
+package com.yidong.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yidong.SampleBlocks;
+import com.yidong.crypto.EosBlockHasher;
+import com.yidong.model.BlockHeader;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChainAuditTests {
+
+    private List<ObjectNode> sampleBlocks() {
+        return SampleBlocks.blocks();
+    }
+
+    private static String flipLastChar(String hex) {
+        char last = hex.charAt(hex.length() - 1);
+        return hex.substring(0, hex.length() - 1) + (last == '0' ? '1' : '0');
+    }
+
+    /**
+     * 链上区块取自未修改的样本，记录查询次数
+     */
+    private LongFunction<BlockHeader> chain(Map<Long, BlockHeader> chainBlocks, int[] lookups) {
+        return num -> {
+            lookups[0]++;
+            BlockHeader block = chainBlocks.get(num);
+            if (block == null) {
+                throw new IllegalStateException("链上没有区块 " + num);
+            }
+            return block;
+        };
+    }
+
+    private ChainAudit audit(List<ObjectNode> local, Map<Long, BlockHeader> chainBlocks, int[] lookups) throws Exception {
+        ChainAudit audit = new ChainAudit();
+        for (JsonNode block : local) {
+            audit.add(BlockHeader.from(block));
+        }
+        audit.locate(chain(chainBlocks, lookups));
+        return audit;
+    }
+
+    private Map<Long, BlockHeader> chainBlocks() throws Exception {
+        Map<Long, BlockHeader> chainBlocks = new HashMap<>();
+        for (JsonNode block : sampleBlocks()) {
+            chainBlocks.put(block.get("block_num").asLong(), BlockHeader.from(block));
+        }
+        return chainBlocks;
+    }
+
+    @Test
+    void certifiesUntouchedFileWithOneLookup() throws Exception {
+        int[] lookups = new int[1];
+        ChainAudit audit = audit(sampleBlocks(), chainBlocks(), lookups);
+        assertEquals(1, lookups[0]);
+        for (int i = 0; i < audit.size(); i++) {
+            assertTrue(audit.isCertified(i));
+            assertEquals(9900, audit.anchorOf(i));
+        }
+    }
+
+    @Test
+    void comparesOnlyAroundLocalBreaks() throws Exception {
+        // block_data/备注 中的两处修改：9852 的 id 和 9860 的 previous
+        List<ObjectNode> local = sampleBlocks();
+        local.get(0).put("id", flipLastChar(local.get(0).get("id").asText()));
+        local.get(8).put("previous", flipLastChar(local.get(8).get("previous").asText()));
+
+        int[] lookups = new int[1];
+        ChainAudit audit = audit(local, chainBlocks(), lookups);
+        assertEquals(2, audit.getBreakCount());
+        // 三段各一个锚点，9852 所在的段只有一个区块
+        assertEquals(3, lookups[0]);
+        List<Long> compared = new ArrayList<>();
+        for (int i = 0; i < audit.size(); i++) {
+            if (!audit.isCertified(i)) {
+                compared.add(local.get(i).get("block_num").asLong());
+            }
+        }
+        assertEquals(List.of(9852L, 9853L, 9859L, 9860L), compared);
+        assertEquals(9859, audit.anchorOf(3));
+    }
+
+    @Test
+    void bisectsDivergenceInsideLinkedRange() throws Exception {
+        // 9880 之后的区块连同 previous 一起被改写，本地链接完整，只有链上查询能发现
+        List<ObjectNode> local = sampleBlocks();
+        String previousId = null;
+        for (ObjectNode block : local) {
+            if (block.get("block_num").asLong() >= 9880) {
+                if (previousId != null) {
+                    block.put("previous", previousId);
+                }
+                block.put("id", flipLastChar(block.get("id").asText()));
+                previousId = block.get("id").asText();
+            }
+        }
+
+        int[] lookups = new int[1];
+        ChainAudit audit = audit(local, chainBlocks(), lookups);
+        assertEquals(0, audit.getBreakCount());
+        // 锚点 1 次，49 个区块二分 6 次
+        assertTrue(lookups[0] <= 7, "查询次数: " + lookups[0]);
+        for (int i = 0; i < audit.size(); i++) {
+            assertEquals(local.get(i).get("block_num").asLong() < 9880, audit.isCertified(i));
+        }
+        assertFalse(audit.isCertified(audit.size()));
+    }
+
+    @Test
+    void comparesBlocksWhoseHeaderDoesNotMatchId() throws Exception {
+        // 9870 的 producer 被修改而 id 未变，链接完整，锚点查询发现不了
+        List<ObjectNode> local = sampleBlocks();
+        local.get(18).put("producer", "eosio.token");
+
+        ChainAudit audit = new ChainAudit();
+        for (JsonNode block : local) {
+            BlockHeader header = BlockHeader.from(block);
+            audit.add(header, false, header.idEquals(EosBlockHasher.computeBlockId(block)));
+        }
+        int[] lookups = new int[1];
+        audit.locate(chain(chainBlocks(), lookups));
+        assertEquals(1, audit.getBreakCount());
+        List<Long> compared = new ArrayList<>();
+        for (int i = 0; i < audit.size(); i++) {
+            if (!audit.isCertified(i)) {
+                compared.add(local.get(i).get("block_num").asLong());
+            }
+        }
+        assertEquals(List.of(9869L, 9870L), compared);
+    }
+}
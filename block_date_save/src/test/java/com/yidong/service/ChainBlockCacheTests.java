@@ -0,0 +1,153 @@
+package com.yidong.service;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yidong.SampleBlocks;
+import com.yidong.model.BlockHeader;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChainBlockCacheTests {
+
+    private static final long FIRST = 9852;
+
+    private final List<BlockHeader> headers = headers();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final LongFunction<BlockHeader> loader = blockNum -> {
+        loads.incrementAndGet();
+        return headers.get((int) (blockNum - FIRST));
+    };
+
+    @Test
+    void evictsLeastRecentlyUsedBlockAndItsId() {
+        ChainBlockCache cache = new ChainBlockCache(2);
+        BlockHeader first = cache.get(FIRST, loader, Runnable::run).join();
+        cache.get(FIRST + 1, loader, Runnable::run).join();
+        assertSame(first, cache.get(FIRST, loader, Runnable::run).join());
+        cache.get(FIRST + 2, loader, Runnable::run).join();
+
+        // 最近使用过的 FIRST 保留，FIRST + 1 被淘汰，它的 id 索引也一起移除
+        assertEquals(2, cache.getIdCount());
+        assertSame(first, cache.getById(first.idKey()));
+        assertNull(cache.getById(headers.get(1).idKey()));
+        assertEquals(3, loads.get());
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+
+        cache.get(FIRST + 1, loader, Runnable::run).join();
+        assertEquals(4, loads.get());
+        assertEquals(4, cache.getMisses());
+        assertEquals(2, cache.getIdCount());
+    }
+
+    @Test
+    void dropsIdOfBlockEvictedWhileLoading() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ChainBlockCache cache = new ChainBlockCache(1);
+            CountDownLatch gate = new CountDownLatch(1);
+            CompletableFuture<BlockHeader> slow = cache.get(FIRST, blockNum -> {
+                await(gate);
+                return loader.apply(blockNum);
+            }, executor);
+            cache.get(FIRST + 1, loader, Runnable::run).join();
+            gate.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, cache.getIdCount());
+            assertNull(cache.getById(headers.get(0).idKey()));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void loadsOnceForConcurrentGetAndPrefetch() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            ChainBlockCache cache = new ChainBlockCache(8);
+            CountDownLatch gate = new CountDownLatch(1);
+            LongFunction<BlockHeader> slowLoader = blockNum -> {
+                await(gate);
+                return loader.apply(blockNum);
+            };
+            cache.prefetch(FIRST, slowLoader, executor);
+            CompletableFuture<BlockHeader> first = cache.get(FIRST, slowLoader, executor);
+            CompletableFuture<BlockHeader> second = cache.get(FIRST, slowLoader, executor);
+            cache.prefetch(FIRST, slowLoader, executor);
+            assertSame(first, second);
+            assertFalse(first.isDone());
+
+            gate.countDown();
+            assertSame(headers.get(0), first.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+            assertEquals(2, cache.getHits());
+            assertEquals(0, cache.getMisses());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void retriesBlockAfterFailedLoad() {
+        ChainBlockCache cache = new ChainBlockCache(8);
+        AtomicInteger attempts = new AtomicInteger();
+        LongFunction<BlockHeader> flaky = blockNum -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("节点不可用");
+            }
+            return loader.apply(blockNum);
+        };
+
+        CompletableFuture<BlockHeader> failed = cache.get(FIRST, flaky, Runnable::run);
+        ExecutionException error = assertThrows(ExecutionException.class, failed::get);
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        assertEquals(0, cache.getIdCount());
+
+        assertSame(headers.get(0), cache.get(FIRST, flaky, Runnable::run).join());
+        assertEquals(2, attempts.get());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getHits());
+        assertSame(headers.get(0), cache.getById(headers.get(0).idKey()));
+        assertEquals(1, cache.getHits());
+    }
+
+    private static void await(CountDownLatch gate) {
+        try {
+            gate.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<BlockHeader> headers() {
+        List<BlockHeader> headers = new ArrayList<>();
+        try {
+            for (ObjectNode block : SampleBlocks.blocks()) {
+                headers.add(BlockHeader.from(block));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,175 @@
+package com.yidong.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.yidong.SampleBlocks;
+import com.yidong.job.Job;
+import com.yidong.job.JobScheduler;
+import com.yidong.model.FollowStatus;
+import com.yidong.storage.BlockStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+class ChainFollowServiceTests {
+
+    private static final Path OUTPUT_DIR = createTempDir();
+    private static final long TIMEOUT_MS = 30_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private ChainFollowService chainFollowService;
+
+    @Autowired
+    private JobScheduler jobScheduler;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("block.output.dir", OUTPUT_DIR::toString);
+        registry.add("block.follow.poll-interval-ms", () -> "20");
+    }
+
+    @Test
+    void rollsBackOneBlockForkAndWritesTheCanonicalBlock() throws Exception {
+        List<ObjectNode> blocks = SampleBlocks.blocks();
+        ObjectNode canonical = blocks.get(18);
+        ObjectNode forked = canonical.deepCopy();
+        String id = canonical.get("id").asText();
+        forked.put("id", id.substring(0, id.length() - 1) + (id.endsWith("0") ? "1" : "0"));
+
+        try (Node node = new Node()) {
+            blocks.forEach(node::put);
+            // 节点先在 9870 上产生一个分叉区块，之后切换到样本中的链
+            node.put(forked);
+            node.setHead(9870, 9860);
+            Job job = chainFollowService.startFollow(List.of(node.apiUrl()), 9852L);
+            try {
+                await(() -> Long.valueOf(9870).equals(status().getLastFetchedBlock()));
+                assertEquals(9860L, status().getLastWrittenBlock());
+
+                node.put(canonical);
+                node.setHead(9900, 9900);
+                await(() -> Long.valueOf(9900).equals(status().getLastWrittenBlock()));
+                assertEquals(1, status().getRolledBackBlocks());
+            } finally {
+                jobScheduler.cancel(job.getId());
+                await(() -> job.getStatus().isFinished());
+            }
+        }
+
+        BlockStore store = new BlockStore(OUTPUT_DIR.toFile());
+        for (ObjectNode block : blocks) {
+            assertEquals(block, objectMapper.readTree(store.readBytes(block.get("block_num").asLong())));
+        }
+    }
+
+    private FollowStatus status() {
+        return chainFollowService.getStatus();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(10);
+        }
+    }
+
+    private static Path createTempDir() {
+        try {
+            Path dir = Files.createTempDirectory("follow-test-");
+            dir.toFile().deleteOnExit();
+            return dir;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 测试用的链上节点：get_info 返回设定的最新区块和不可逆区块（id 取自放入的区块），get_block 返回放入的区块
+     */
+    private static final class Node implements Closeable {
+        private final ObjectMapper objectMapper = new ObjectMapper();
+        private final Map<Long, byte[]> blocks = new ConcurrentHashMap<>();
+        private final HttpServer server;
+        private final ExecutorService executor = Executors.newFixedThreadPool(4);
+        private volatile long head;
+        private volatile long irreversible;
+
+        Node() throws IOException {
+            // 任务开始前的节点可用性检查获取区块 1000000，返回只有区块号的内容即可
+            blocks.put(1000000L, "{\"block_num\":1000000}".getBytes(StandardCharsets.UTF_8));
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/v1/chain/get_info", exchange -> {
+                long lib = irreversible;
+                String libId = objectMapper.readTree(blocks.get(lib)).get("id").asText();
+                respond(exchange, 200, objectMapper.writeValueAsBytes(Map.of("head_block_num", head,
+                    "last_irreversible_block_num", lib, "last_irreversible_block_id", libId)));
+            });
+            server.createContext("/v1/chain/get_block", exchange -> {
+                JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+                byte[] block = blocks.get(request.path("block_num_or_id").asLong());
+                respond(exchange, block != null ? 200 : 500,
+                    block != null ? block : "{\"error\":\"unknown block\"}".getBytes(StandardCharsets.UTF_8));
+            });
+            server.setExecutor(executor);
+            server.start();
+        }
+
+        String apiUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chain/get_block";
+        }
+
+        void put(ObjectNode block) {
+            try {
+                blocks.put(block.get("block_num").asLong(), objectMapper.writeValueAsBytes(block));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void setHead(long head, long irreversible) {
+            this.irreversible = irreversible;
+            this.head = head;
+        }
+
+        private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+}
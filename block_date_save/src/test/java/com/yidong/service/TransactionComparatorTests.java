@@ -0,0 +1,86 @@
+package com.yidong.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yidong.SampleBlocks;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionComparatorTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+    private final TransactionComparator comparator = new TransactionComparator(pool);
+
+    @AfterEach
+    void shutdown() {
+        pool.shutdown();
+    }
+
+    private ObjectNode sampleBlock() {
+        return SampleBlocks.block(0);
+    }
+
+    @Test
+    void identicalBlocksMatch() throws Exception {
+        ObjectNode block = sampleBlock();
+        TransactionComparator.Result result = comparator.compare(block, block.deepCopy());
+        assertTrue(result.isMatch());
+        assertEquals(0, result.getMismatchedTransactions());
+    }
+
+    @Test
+    void digestIgnoresFieldOrderAndNumberForm() throws Exception {
+        ObjectNode a = (ObjectNode) objectMapper.readTree("{\"x\":1,\"y\":{\"b\":\"2\",\"a\":[1,2]}}");
+        ObjectNode b = (ObjectNode) objectMapper.readTree("{\"y\":{\"a\":[\"1\",2],\"b\":2},\"x\":\"1\"}");
+        assertArrayEquals(TransactionComparator.digest(a), TransactionComparator.digest(b));
+    }
+
+    @Test
+    void reportsPathsInsideTamperedTransactions() throws Exception {
+        ObjectNode local = sampleBlock();
+        ObjectNode chain = local.deepCopy();
+        ObjectNode transaction = (ObjectNode) local.get("transactions").get(3);
+        transaction.put("cpu_usage_us", 1);
+        ((ObjectNode) transaction.at("/trx/transaction/actions/0/data")).put("balance", "9999.0000 EOS");
+
+        TransactionComparator.Result result = comparator.compare(local, chain);
+        assertEquals(1, result.getMismatchedTransactions());
+        assertEquals(List.of("transactions[3].cpu_usage_us",
+            "transactions[3].trx.transaction.actions[0].data.balance"), result.getPaths());
+        Map<?, ?> values = (Map<?, ?>) result.getDetails().get("transactions[3].cpu_usage_us");
+        assertEquals("1", values.get("local"));
+        assertEquals(chain.at("/transactions/3/cpu_usage_us").asText(), values.get("chain"));
+    }
+
+    @Test
+    void comparesLargeBlocksInParallelAndLimitsPaths() throws Exception {
+        // 复制出超过拆分阈值的交易，每隔一个修改一个
+        ObjectNode local = sampleBlock();
+        ArrayNode transactions = (ArrayNode) local.get("transactions");
+        while (transactions.size() < 200) {
+            transactions.add(transactions.get(transactions.size() % 14).deepCopy());
+        }
+        ObjectNode chain = local.deepCopy();
+        for (int i = 0; i < transactions.size(); i += 2) {
+            ((ObjectNode) transactions.get(i)).put("status", "soft_fail");
+        }
+        transactions.remove(transactions.size() - 1);
+
+        TransactionComparator.Result result = comparator.compare(local, chain);
+        assertEquals(101, result.getMismatchedTransactions());
+        assertEquals(TransactionComparator.MAX_PATHS, result.getPaths().size());
+        assertEquals("transactions.length", result.getPaths().get(0));
+        assertEquals("transactions[0].status", result.getPaths().get(1));
+        assertTrue(result.isTruncated());
+    }
+}
@@ -0,0 +1,170 @@
+package com.yidong.storage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.SampleBlocks;
+import com.yidong.crypto.EosBlockHasher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockStoreTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<JsonNode> sampleBlocks() {
+        return new ArrayList<>(SampleBlocks.blocks());
+    }
+
+    @Test
+    void readsBlocksWrittenBySegmentWriter(@TempDir Path dir) throws Exception {
+        List<JsonNode> blocks = sampleBlocks();
+        try (BlockSegmentWriter writer = new BlockSegmentWriter(dir.toFile(), 0, 20)) {
+            for (JsonNode block : blocks) {
+                writer.append(block.get("block_num").asLong(), objectMapper.writeValueAsBytes(block));
+            }
+        }
+        assertTrue(Files.isRegularFile(dir.resolve("blocks_9852_9871.json.idx")));
+
+        BlockStore store = new BlockStore(dir.toFile());
+        for (JsonNode block : blocks) {
+            long blockNum = block.get("block_num").asLong();
+            assertEquals(block, objectMapper.readTree(store.readBytes(blockNum)));
+            assertArrayEquals(EosBlockHasher.fromHex(block.get("id").asText()), store.readId(blockNum));
+        }
+        assertNull(store.readBytes(9851));
+        assertNull(store.readBytes(9901));
+        assertEquals(3, store.indexedSegments().size());
+        assertTrue(store.unindexedSegments().isEmpty());
+
+        // 范围读取跨越分段，输出可以作为区块文件读取
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(11, store.writeRange(9865, 9875, Channels.newChannel(out)));
+        JsonNode range = objectMapper.readTree(out.toByteArray()).get("blocks");
+        assertEquals(11, range.size());
+        assertEquals(9865, range.get(0).get("block_num").asLong());
+        assertEquals(9875, range.get(10).get("block_num").asLong());
+
+        // 很大的范围只遍历已有的索引记录
+        out.reset();
+        assertEquals(blocks.size(), store.writeRange(0, Long.MAX_VALUE, Channels.newChannel(out)));
+        range = objectMapper.readTree(out.toByteArray()).get("blocks");
+        for (int i = 0; i < blocks.size(); i++) {
+            assertEquals(blocks.get(i), range.get(i));
+        }
+    }
+
+    @Test
+    void indexesExistingFiles(@TempDir Path dir) throws Exception {
+        // 已有的文件是格式化输出的，区块乱序且有重复
+        List<JsonNode> blocks = sampleBlocks();
+        List<JsonNode> shuffled = new ArrayList<>(blocks);
+        Collections.reverse(shuffled);
+        shuffled.add(blocks.get(3));
+        Path file = dir.resolve("blocks_9852_9900.json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), Map.of("blocks", shuffled));
+
+        BlockStore store = new BlockStore(dir.toFile());
+        assertNull(store.readBytes(9852));
+        assertEquals(List.of(file), store.unindexedSegments());
+
+        assertEquals(blocks.size(), SegmentIndexer.index(file, objectMapper));
+        assertTrue(SegmentIndexer.hasIndex(file));
+        store.refresh();
+        for (JsonNode block : blocks) {
+            assertEquals(block, objectMapper.readTree(store.readBytes(block.get("block_num").asLong())));
+        }
+
+        // 文件被改写后索引失效
+        Files.writeString(file, "\n", StandardOpenOption.APPEND);
+        assertFalse(SegmentIndexer.hasIndex(file));
+        store.refresh();
+        assertNull(store.readBytes(9852));
+    }
+
+    @Test
+    void resumedSegmentKeepsIndex(@TempDir Path dir) throws Exception {
+        resumeSegment(dir, null, "blocks_9852.json.part");
+    }
+
+    @Test
+    void resumedCompressedSegmentKeepsIndex(@TempDir Path dir) throws Exception {
+        resumeSegment(dir, new SegmentCompression(6, 4096, null, true), "blocks_9852.json.dz.part");
+        assertTrue(Files.isRegularFile(dir.resolve("blocks_9852_9861.json.dz")));
+    }
+
+    private void resumeSegment(Path dir, SegmentCompression compression, String partFile) throws Exception {
+        List<JsonNode> blocks = sampleBlocks().subList(0, 10);
+        BlockSegmentWriter writer = new BlockSegmentWriter(dir.toFile(), 0, 0, compression);
+        long validBytes = 0;
+        long validFileBytes = 0;
+        for (int i = 0; i < blocks.size(); i++) {
+            writer.append(blocks.get(i).get("block_num").asLong(), objectMapper.writeValueAsBytes(blocks.get(i)));
+            if (i == 4) {
+                writer.flush();
+                validBytes = writer.getSegmentBytes();
+                validFileBytes = writer.getSegmentFileBytes();
+            }
+        }
+        // 模拟中断：检查点之后写入的数据和索引记录被丢弃
+        writer.flush();
+        BlockSegmentWriter resumed = new BlockSegmentWriter(dir.toFile(), 0, 0, compression);
+        resumed.resumeSegment(partFile, 9852, 9856, 5, validBytes, validFileBytes);
+        for (int i = 5; i < blocks.size(); i++) {
+            resumed.append(blocks.get(i).get("block_num").asLong(), objectMapper.writeValueAsBytes(blocks.get(i)));
+        }
+        resumed.close();
+
+        BlockStore store = new BlockStore(dir.toFile());
+        for (JsonNode block : blocks) {
+            assertEquals(block, objectMapper.readTree(store.readBytes(block.get("block_num").asLong())));
+        }
+    }
+
+    @Test
+    void readsCompressedSegments(@TempDir Path dir) throws Exception {
+        List<JsonNode> blocks = sampleBlocks();
+        // 块很小，每块只有一两个区块，读取要跨越多个块
+        try (BlockSegmentWriter writer = new BlockSegmentWriter(dir.toFile(), 0, 30,
+                new SegmentCompression(6, 2048, null, true))) {
+            for (JsonNode block : blocks) {
+                writer.append(block.get("block_num").asLong(), objectMapper.writeValueAsBytes(block));
+            }
+        }
+        Path file = dir.resolve("blocks_9852_9881.json.dz");
+        assertTrue(SegmentCompression.isCompressed(file));
+        assertTrue(SegmentIndex.open(SegmentIndex.pathFor(file)).getChunkCount() > 1);
+
+        BlockStore store = new BlockStore(dir.toFile());
+        List<JsonNode> reversed = new ArrayList<>(blocks);
+        Collections.reverse(reversed);
+        for (JsonNode block : reversed) {
+            assertEquals(block, objectMapper.readTree(store.readBytes(block.get("block_num").asLong())));
+        }
+
+        // 流式读取边读边解压，重建的索引与写入时的一致
+        List<JsonNode> read = new ArrayList<>();
+        try (BlockFileReader<JsonNode> reader = BlockFileReader.trees(file, objectMapper)) {
+            reader.forEachRemaining(read::add);
+        }
+        assertEquals(blocks.subList(0, 30), read);
+        assertEquals(30, SegmentIndexer.index(file, objectMapper));
+        store.refresh();
+        assertEquals(blocks.get(7), objectMapper.readTree(store.readBytes(9859)));
+    }
+}
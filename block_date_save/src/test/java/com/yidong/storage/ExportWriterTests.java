@@ -0,0 +1,84 @@
+package com.yidong.storage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.SampleBlocks;
+import com.yidong.model.ExportFormat;
+import com.yidong.model.VerificationResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExportWriterTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesResultsAsCsvWithQuoting() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportWriter writer = ExportWriter.results(out, ExportFormat.CSV, false, objectMapper);
+        writer.writeResult(VerificationResult.builder()
+            .blockNum(9852L).dataMatch(true).hashMatch(true).isLocalContinuous(true).isChainContinuous(true)
+            .message("验证通过").build());
+        writer.writeResult(VerificationResult.builder()
+            .blockNum(9853L).dataMatch(false).hashMatch(true).isLocalContinuous(true).isChainContinuous(true)
+            .localHash("aa").chainHash("bb").mismatchFields(List.of("previous", "transactions[0].status"))
+            .message("数据不匹配，不匹配字段: previous, \"status\"").build());
+        writer.finish();
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().collect(Collectors.toList());
+        assertEquals(List.of(
+            ExportWriter.RESULT_COLUMNS,
+            "9852,true,true,true,true,true,,,,验证通过",
+            "9853,false,false,true,true,true,aa,bb,previous;transactions[0].status,"
+                + "\"数据不匹配，不匹配字段: previous, \"\"status\"\"\""), lines);
+        assertEquals(2, writer.getRows());
+    }
+
+    @Test
+    void writesBlocksAsGzippedNdjson() throws Exception {
+        // 样本是格式化过的 JSON，每个区块跨多行，导出时压成一行
+        List<? extends JsonNode> blocks = SampleBlocks.blocks();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportWriter writer = ExportWriter.blocks(out, ExportFormat.NDJSON, true, objectMapper);
+        for (JsonNode block : blocks) {
+            writer.writeBlock(ByteBuffer.wrap(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(block)));
+        }
+        writer.finish();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())), StandardCharsets.UTF_8))) {
+            List<String> lines = reader.lines().collect(Collectors.toList());
+            assertEquals(blocks.size(), lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                assertEquals(blocks.get(i), objectMapper.readTree(lines.get(i)));
+            }
+        }
+    }
+
+    @Test
+    void writesBlockHeadersAsCsv() throws Exception {
+        JsonNode block = SampleBlocks.block(0);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExportWriter writer = ExportWriter.blocks(out, ExportFormat.CSV, false, objectMapper);
+        writer.writeBlock(ByteBuffer.wrap(objectMapper.writeValueAsBytes(block)));
+        writer.finish();
+
+        List<String> lines = out.toString(StandardCharsets.UTF_8).lines().collect(Collectors.toList());
+        assertEquals(ExportWriter.BLOCK_COLUMNS, lines.get(0));
+        assertEquals(String.join(",", block.get("block_num").asText(), block.get("id").asText(),
+            block.get("previous").asText(), block.get("timestamp").asText(), block.get("producer").asText(),
+            block.get("transaction_mroot").asText(), block.get("action_mroot").asText(),
+            block.get("schedule_version").asText()), lines.get(1));
+    }
+}
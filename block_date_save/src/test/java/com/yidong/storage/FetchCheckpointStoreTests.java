@@ -0,0 +1,73 @@
+package com.yidong.storage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yidong.SampleBlocks;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FetchCheckpointStoreTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void resumesPartSegmentAfterDataPastTheCheckpoint(@TempDir Path dir) throws Exception {
+        List<JsonNode> blocks = new ArrayList<>(SampleBlocks.blocks());
+        FetchCheckpointStore checkpointStore = new FetchCheckpointStore(dir.toFile());
+        FetchCheckpoint checkpoint = new FetchCheckpoint();
+        checkpoint.setStartBlock(9852);
+        checkpoint.setEndBlock(9900);
+
+        // 第一次运行：写入 9852-9871 后记录检查点，之后又写入 9872-9876 和半个区块，然后进程退出（不关闭写入器）
+        BlockSegmentWriter crashed = new BlockSegmentWriter(dir.toFile(), 0, 0);
+        for (int i = 0; i < 20; i++) {
+            append(crashed, blocks.get(i));
+        }
+        crashed.flush();
+        checkpointStore.update(checkpoint, crashed, 9871L);
+        for (int i = 20; i < 25; i++) {
+            append(crashed, blocks.get(i));
+        }
+        crashed.flush();
+        byte[] torn = objectMapper.writeValueAsBytes(blocks.get(25));
+        Files.write(dir.resolve(crashed.getPartFileName()), Arrays.copyOf(torn, torn.length / 2),
+            StandardOpenOption.APPEND);
+
+        // 重启：从检查点继续，检查点之后的内容被截断，从 9872 开始重新写入
+        FetchCheckpoint restored = checkpointStore.load(9852, 9900);
+        assertEquals(9871L, restored.getLastWrittenBlock());
+        try (BlockSegmentWriter writer = new BlockSegmentWriter(dir.toFile(), 0, 0)) {
+            checkpointStore.resume(restored, writer);
+            assertNull(restored.getPartFile());
+            assertEquals(20, writer.getSegmentBlocks());
+            for (int i = 20; i < blocks.size(); i++) {
+                append(writer, blocks.get(i));
+            }
+        }
+
+        Path segment = dir.resolve("blocks_9852_9900.json");
+        assertTrue(Files.isRegularFile(segment));
+        JsonNode written = objectMapper.readTree(segment.toFile()).get("blocks");
+        assertEquals(blocks.size(), written.size());
+        BlockStore store = new BlockStore(dir.toFile());
+        for (int i = 0; i < blocks.size(); i++) {
+            assertEquals(blocks.get(i), written.get(i));
+            assertEquals(blocks.get(i), objectMapper.readTree(store.readBytes(9852 + i)));
+        }
+    }
+
+    private void append(BlockSegmentWriter writer, JsonNode block) throws Exception {
+        writer.append(block.get("block_num").asLong(), objectMapper.writeValueAsBytes(block));
+    }
+}
@@ -0,0 +1,54 @@
+package com.yidong.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerificationCacheTests {
+
+    private static byte[] digest(long blockNum, int version) {
+        byte[] digest = new byte[VerificationCache.DIGEST_SIZE];
+        Arrays.fill(digest, (byte) (blockNum + version));
+        return digest;
+    }
+
+    @Test
+    void mergesAndPersistsRecords(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("chain" + VerificationCache.SUFFIX);
+        VerificationCache cache = VerificationCache.open(file);
+        assertEquals(0, cache.size());
+        assertFalse(cache.contains(100, digest(100, 0)));
+
+        // 乱序添加，重复的区块保留最后一条
+        VerificationCache.Updates updates = new VerificationCache.Updates();
+        for (long blockNum = 199; blockNum >= 100; blockNum--) {
+            updates.add(blockNum, digest(blockNum, 0));
+        }
+        updates.add(150, digest(150, 1));
+        assertEquals(100, cache.merge(updates));
+        assertTrue(cache.contains(100, digest(100, 0)));
+        assertTrue(cache.contains(150, digest(150, 1)));
+        assertFalse(cache.contains(150, digest(150, 0)));
+        assertFalse(cache.contains(200, digest(200, 0)));
+
+        // 重新打开后合并：新的区块插入中间，已有区块被新记录替换
+        cache = VerificationCache.open(file);
+        assertEquals(100, cache.size());
+        updates = new VerificationCache.Updates();
+        updates.add(50, digest(50, 0));
+        updates.add(120, digest(120, 2));
+        updates.add(300, digest(300, 0));
+        assertEquals(102, cache.merge(updates));
+        assertTrue(cache.contains(50, digest(50, 0)));
+        assertTrue(cache.contains(120, digest(120, 2)));
+        assertTrue(cache.contains(199, digest(199, 0)));
+        assertTrue(cache.contains(300, digest(300, 0)));
+        assertFalse(cache.contains(250, digest(250, 0)));
+    }
+}
@@ -0,0 +1,158 @@
+package com.yidong.storage;
+
+import com.yidong.model.VerificationResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VerificationResultStoreTests {
+
+    private static VerificationResult result(long blockNum, boolean passed) {
+        return VerificationResult.builder()
+            .blockNum(blockNum)
+            .dataMatch(true)
+            .hashMatch(passed)
+            .chainHash(passed ? null : "chain" + blockNum)
+            .localHash(passed ? null : "local" + blockNum)
+            .message(passed ? "验证通过" : "哈希不匹配")
+            .isLocalContinuous(true)
+            .isChainContinuous(true)
+            .build();
+    }
+
+    /**
+     * 1000-1999，其中 1100、1500、1501 未通过
+     */
+    private static VerificationResultStore store(int maxFailuresInMemory) {
+        VerificationResultStore store = new VerificationResultStore(maxFailuresInMemory);
+        for (long blockNum = 1000; blockNum < 2000; blockNum++) {
+            store.add(result(blockNum, blockNum != 1100 && blockNum != 1500 && blockNum != 1501));
+        }
+        return store;
+    }
+
+    private static List<Long> blockNums(List<VerificationResult> results) {
+        return results.stream().map(VerificationResult::getBlockNum).collect(Collectors.toList());
+    }
+
+    @Test
+    void pagesThroughAllResultsInOrder() {
+        try (VerificationResultStore store = store(-1)) {
+            assertEquals(1000, store.size());
+            assertEquals(3, store.getFailedCount());
+            int cursor = 0;
+            long expected = 1000;
+            while (cursor < store.size()) {
+                VerificationResultStore.Page page = store.query(cursor, 333, false, null, null);
+                for (VerificationResult result : page.getResults()) {
+                    assertEquals(expected, result.getBlockNum());
+                    assertEquals(expected != 1100 && expected != 1500 && expected != 1501, result.isHashMatch());
+                    expected++;
+                }
+                cursor = page.getNextCursor();
+            }
+            assertEquals(2000, expected);
+            assertTrue(store.resultsAfter(1000, 10).isEmpty());
+        }
+    }
+
+    @Test
+    void filtersFailuresAndBlockRange() {
+        try (VerificationResultStore store = store(-1)) {
+            VerificationResultStore.Page failures = store.query(0, 2, true, null, null);
+            assertEquals(List.of(1100L, 1500L), blockNums(failures.getResults()));
+            VerificationResultStore.Page rest = store.query(failures.getNextCursor(), 2, true, null, null);
+            assertEquals(List.of(1501L), blockNums(rest.getResults()));
+            assertEquals(1000, rest.getNextCursor());
+
+            VerificationResultStore.Page range = store.query(0, 100, false, 1498L, 1503L);
+            assertEquals(List.of(1498L, 1499L, 1500L, 1501L, 1502L, 1503L), blockNums(range.getResults()));
+            assertFalse(range.getResults().get(2).isHashMatch());
+            assertEquals(1000, range.getNextCursor());
+        }
+    }
+
+    @Test
+    void readsSpilledFailuresBack() {
+        try (VerificationResultStore store = store(1)) {
+            List<VerificationResult> failures = store.query(0, 10, true, null, null).getResults();
+            assertEquals(List.of(1100L, 1500L, 1501L), blockNums(failures));
+            assertEquals("chain1501", failures.get(2).getChainHash());
+            assertEquals("哈希不匹配", failures.get(2).getMessage());
+        }
+    }
+
+    @Test
+    void keepsHashesOfPassedBlocks() {
+        try (VerificationResultStore store = new VerificationResultStore(-1)) {
+            for (long blockNum = 1; blockNum <= 100; blockNum++) {
+                String hash = String.format("%064x", blockNum);
+                store.add(VerificationResult.builder()
+                    .blockNum(blockNum)
+                    .dataMatch(true)
+                    .hashMatch(true)
+                    .chainHash(hash)
+                    .localHash(blockNum == 50 ? hash.toUpperCase() : hash)
+                    .message("验证通过")
+                    .isLocalContinuous(true)
+                    .isChainContinuous(true)
+                    .build());
+            }
+            assertEquals(0, store.getFailedCount());
+            List<VerificationResult> results = store.query(0, 200, false, null, null).getResults();
+            assertEquals(100, results.size());
+            for (VerificationResult result : results) {
+                String hash = String.format("%064x", result.getBlockNum());
+                assertEquals(hash, result.getChainHash());
+                assertEquals(result.getBlockNum() == 50 ? hash.toUpperCase() : hash, result.getLocalHash());
+            }
+            // 哈希不能按段保存的通过结果保存完整结果，但不是未通过的结果
+            assertTrue(store.query(0, 200, true, null, null).getResults().isEmpty());
+        }
+    }
+
+    @Test
+    void keepsIdsOfLongRunsInTheSpillFile() {
+        int count = 5000;
+        try (VerificationResultStore store = new VerificationResultStore(-1)) {
+            for (long blockNum = 1; blockNum <= count; blockNum++) {
+                String hash = String.format("%064x", blockNum);
+                store.add(VerificationResult.builder()
+                    .blockNum(blockNum)
+                    .dataMatch(true)
+                    .hashMatch(blockNum != 3000)
+                    .chainHash(hash)
+                    .localHash(hash)
+                    .message(blockNum != 3000 ? "验证通过" : "哈希不匹配")
+                    .isLocalContinuous(true)
+                    .isChainContinuous(true)
+                    .build());
+            }
+            // 通过的区块 id 全部写入临时文件，内存中的段只保留文件位置
+            assertEquals(32L * (count - 1), store.getSpillSize());
+
+            int cursor = 0;
+            long expected = 1;
+            while (cursor < store.size()) {
+                VerificationResultStore.Page page = store.query(cursor, 1500, false, null, null);
+                for (VerificationResult result : page.getResults()) {
+                    assertEquals(expected, result.getBlockNum());
+                    assertEquals(String.format("%064x", expected), result.getChainHash());
+                    assertEquals(expected != 3000, result.isHashMatch());
+                    expected++;
+                }
+                cursor = page.getNextCursor();
+            }
+            assertEquals(count + 1, expected);
+
+            List<VerificationResult> range = store.query(0, 10, false, 2999L, 3001L).getResults();
+            assertEquals(List.of(2999L, 3000L, 3001L), blockNums(range));
+            assertEquals(String.format("%064x", 3001), range.get(2).getLocalHash());
+        }
+    }
+}